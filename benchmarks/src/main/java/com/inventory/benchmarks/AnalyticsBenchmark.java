@@ -0,0 +1,174 @@
+package com.inventory.benchmarks;
+
+import com.inventory.AnalyticsSnapshot;
+import com.inventory.CatalogCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sales analysis over SQL, the way the report reads it, against the same question answered from
+ * {@link AnalyticsSnapshot}'s columns, on and off the heap; plus the snapshot's full load and a
+ * refresh that picks up one new purchase. {@code -p historyRows=10000000} shows the gap at scale.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnalyticsBenchmark extends DatabaseState {
+    private static final int CATEGORY_ID = 7;
+    private static final int TOP_SELLERS = 20;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private CatalogCache catalog;
+    private AnalyticsSnapshot snapshot;
+    private LocalDate from;
+    private LocalDate to;
+
+    // H2 hands back the previous result when a query and its tables are unchanged, which would
+    // time a cache lookup rather than the aggregation
+    @Override
+    protected String urlOptions() {
+        return ";OPTIMIZE_REUSE_RESULTS=FALSE";
+    }
+
+    @Override
+    protected void started() throws SQLException {
+        catalog = new CatalogCache(pool);
+        snapshot = new AnalyticsSnapshot(pool, catalog, offHeap, Runtime.getRuntime().availableProcessors());
+        to = LocalDate.now();
+        from = to.minusDays(30);
+    }
+
+    @Benchmark
+    public long inventoryValueQuery() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT SUM(quantity * price) FROM products");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? Math.round(rs.getDouble(1) * 100) : 0;
+        }
+    }
+
+    @Benchmark
+    public long inventoryValueSnapshot() {
+        return snapshot.getInventoryValueCents();
+    }
+
+    @Benchmark
+    public void topSellersQuery(Blackhole blackhole) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT p.id, p.name, SUM(ph.quantity), SUM(ph.total_price) AS total_sales " +
+                 "FROM purchase_history ph JOIN products p ON ph.product_id = p.id " +
+                 "WHERE ph.purchase_date >= ? AND ph.purchase_date < ? " +
+                 "GROUP BY p.id, p.name ORDER BY total_sales DESC LIMIT " + TOP_SELLERS)) {
+            bindRange(pstmt);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                consume(rs, blackhole);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<AnalyticsSnapshot.Total> topSellersSnapshot() {
+        return snapshot.getTopSellers(from, to, 0, TOP_SELLERS);
+    }
+
+    @Benchmark
+    public void categorySalesQuery(Blackhole blackhole) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT SUM(ph.quantity), SUM(ph.total_price) " +
+                 "FROM purchase_history ph JOIN products p ON ph.product_id = p.id " +
+                 "WHERE ph.purchase_date >= ? AND ph.purchase_date < ? AND p.category_id = " + CATEGORY_ID)) {
+            bindRange(pstmt);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                consume(rs, blackhole);
+            }
+        }
+    }
+
+    @Benchmark
+    public AnalyticsSnapshot.Total categorySalesSnapshot() {
+        return snapshot.getSales(from, to, CATEGORY_ID);
+    }
+
+    @Benchmark
+    public void salesByCategoryQuery(Blackhole blackhole) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT c.name, SUM(ph.quantity), SUM(ph.total_price) AS total_sales " +
+                 "FROM purchase_history ph JOIN products p ON ph.product_id = p.id " +
+                 "JOIN categories c ON p.category_id = c.id " +
+                 "WHERE ph.purchase_date >= ? AND ph.purchase_date < ? " +
+                 "GROUP BY c.id, c.name ORDER BY total_sales DESC")) {
+            bindRange(pstmt);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                consume(rs, blackhole);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<AnalyticsSnapshot.Total> salesByCategorySnapshot() {
+        return snapshot.getSalesByCategory(from, to);
+    }
+
+    @Benchmark
+    public void lowStockQuery(Blackhole blackhole) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT id, name, quantity FROM products WHERE quantity <= 5 ORDER BY quantity ASC");
+             ResultSet rs = pstmt.executeQuery()) {
+            consume(rs, blackhole);
+        }
+    }
+
+    @Benchmark
+    public List<AnalyticsSnapshot.Total> lowStockSnapshot() {
+        return snapshot.getLowStock(5);
+    }
+
+    @Benchmark
+    public AnalyticsSnapshot load() throws SQLException {
+        return new AnalyticsSnapshot(pool, catalog, offHeap, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public int refreshAfterPurchase() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO purchase_history (product_id, quantity, total_price, purchase_date) " +
+                 "VALUES (1, 1, 0.99, CURRENT_TIMESTAMP)")) {
+            pstmt.executeUpdate();
+        }
+        snapshot.refresh();
+        return snapshot.getSalesRowCount();
+    }
+
+    private void bindRange(PreparedStatement pstmt) throws SQLException {
+        pstmt.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
+        pstmt.setTimestamp(2, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+    }
+
+    private static void consume(ResultSet rs, Blackhole blackhole) throws SQLException {
+        int columns = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            for (int i = 1; i <= columns; i++) {
+                blackhole.consume(rs.getObject(i));
+            }
+        }
+    }
+}
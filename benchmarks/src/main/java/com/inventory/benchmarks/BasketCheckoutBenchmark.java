@@ -0,0 +1,94 @@
+package com.inventory.benchmarks;
+
+import com.inventory.OrderResult;
+import com.inventory.PurchaseService;
+import com.inventory.StockLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to sell one basket: line by line through {@link PurchaseService#purchase}, the same plus the
+ * in-stock name reload the purchase panel used to do after every sale, and as one
+ * {@link PurchaseService#checkout} order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BasketCheckoutBenchmark extends DatabaseState {
+    @Param({"20"})
+    public int basketSize;
+
+    @Param({"false", "true"})
+    public boolean ledger;
+
+    private StockLedger stockLedger;
+    private PurchaseService service;
+
+    @Override
+    protected void seeded(Statement stmt) throws SQLException {
+        // Never run out, or later iterations would measure refusals
+        stmt.execute("UPDATE products SET quantity = 1000000000");
+    }
+
+    @Override
+    protected void started() throws SQLException {
+        stockLedger = ledger ? new StockLedger(pool, 200) : null;
+        service = new PurchaseService(pool, stockLedger, 2, 128);
+    }
+
+    @Override
+    protected void stopping() {
+        service.close();
+        if (stockLedger != null) {
+            stockLedger.close();
+        }
+    }
+
+    @Benchmark
+    public void lineByLine(Blackhole blackhole) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < basketSize; i++) {
+            blackhole.consume(service.purchase(1 + random.nextInt(products), 1 + random.nextInt(3), 9.99));
+        }
+    }
+
+    @Benchmark
+    public void lineByLineWithReload(Blackhole blackhole) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < basketSize; i++) {
+            blackhole.consume(service.purchase(1 + random.nextInt(products), 1 + random.nextInt(3), 9.99));
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT name FROM products WHERE quantity > 0");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    blackhole.consume(rs.getString(1));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public OrderResult checkout() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] productIds = new int[basketSize];
+        int[] quantities = new int[basketSize];
+        double[] unitPrices = new double[basketSize];
+        for (int i = 0; i < basketSize; i++) {
+            productIds[i] = 1 + random.nextInt(products);
+            quantities[i] = 1 + random.nextInt(3);
+            unitPrices[i] = 9.99;
+        }
+        return service.checkout(productIds, quantities, unitPrices);
+    }
+}
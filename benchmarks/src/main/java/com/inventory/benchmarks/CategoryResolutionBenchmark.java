@@ -0,0 +1,48 @@
+package com.inventory.benchmarks;
+
+import com.inventory.CatalogCache;
+import com.inventory.Category;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Turning a category name from the combo box into its id: a query per save against the catalog cache. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CategoryResolutionBenchmark extends DatabaseState {
+    private CatalogCache catalog;
+
+    @Override
+    protected void started() throws SQLException {
+        catalog = new CatalogCache(pool);
+    }
+
+    @Benchmark
+    public int query() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM categories WHERE name = ?")) {
+            pstmt.setString(1, randomName());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    @Benchmark
+    public int catalogCache() {
+        Category category = catalog.findCategoryByName(randomName());
+        return category == null ? -1 : category.getId();
+    }
+
+    private static String randomName() {
+        return "Category " + (1 + ThreadLocalRandom.current().nextInt(CATEGORIES));
+    }
+}
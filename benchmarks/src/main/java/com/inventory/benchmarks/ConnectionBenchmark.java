@@ -0,0 +1,77 @@
+package com.inventory.benchmarks;
+
+import com.inventory.ConnectionPool;
+import com.inventory.PoolConfig;
+import com.inventory.SqlMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of getting a usable connection: a pool borrow against opening a fresh one each time, and
+ * what the {@link SqlMetrics} instrumentation adds on top of a pooled borrow and query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectionBenchmark extends DatabaseState {
+    private ConnectionPool instrumentedPool;
+
+    @Override
+    protected void started() throws SQLException {
+        instrumentedPool = new ConnectionPool(new PoolConfig(url, "sa", "").setMinIdle(0).setMaxSize(16)
+            .setMetrics(SqlMetrics.getInstance()));
+    }
+
+    @Override
+    protected void stopping() {
+        instrumentedPool.close();
+    }
+
+    @Benchmark
+    public boolean pooledBorrow() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return conn.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public int pooledBorrowAndQuery() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+            pstmt.setInt(1, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    @Benchmark
+    public int instrumentedBorrowAndQuery() throws SQLException {
+        try (Connection conn = instrumentedPool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+            pstmt.setInt(1, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    @Benchmark
+    public int driverManagerConnectAndQuery() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             PreparedStatement pstmt = conn.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+            pstmt.setInt(1, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.inventory.benchmarks;
+
+import com.inventory.BenchDatabase;
+import com.inventory.ConnectionPool;
+import com.inventory.PoolConfig;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An embedded H2 database in MySQL mode with the application's tables, seeded once per trial with
+ * {@link BenchDatabase#seed} plus some purchase history. Sizes come from JMH parameters, e.g.
+ * {@code -p products=1000000 -p historyRows=10000000}.
+ */
+@State(Scope.Benchmark)
+public abstract class DatabaseState {
+    public static final int CATEGORIES = 50;
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    @Param({"1000", "100000"})
+    public int products;
+
+    @Param({"10000"})
+    public int historyRows;
+
+    protected String url;
+    protected ConnectionPool pool;
+
+    @Setup
+    public void createDatabase() throws Exception {
+        url = "jdbc:h2:mem:bench" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1" + urlOptions();
+        pool = new ConnectionPool(new PoolConfig(url, "sa", "").setMinIdle(0).setMaxSize(16));
+        BenchDatabase.seed(pool, CATEGORIES, products, id -> id * 7 % 100);
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            // Spread over 40 days so the 30-day report window sees about three quarters of it
+            stmt.execute("INSERT INTO purchase_history (product_id, quantity, total_price, purchase_date) " +
+                "SELECT MOD(X * 31, " + products + ") + 1, MOD(X, 3) + 1, (MOD(X, 3) + 1) * 9.99, " +
+                "DATEADD('SECOND', -MOD(X * 7919, 3456000), CURRENT_TIMESTAMP) " +
+                "FROM SYSTEM_RANGE(1, " + historyRows + ")");
+            seeded(stmt);
+        }
+        started();
+    }
+
+    /** Hook for extra {@code ;KEY=VALUE} settings on the database URL. */
+    protected String urlOptions() {
+        return "";
+    }
+
+    /** Hook for benchmarks that need extra data on top of the shared seed. */
+    protected void seeded(Statement stmt) throws SQLException {
+    }
+
+    /**
+     * Hook for per-trial setup that needs the seeded database. JMH doesn't order {@code @Setup}
+     * methods across a class hierarchy, so subclasses use this instead of their own.
+     */
+    protected void started() throws Exception {
+    }
+
+    protected void stopping() throws Exception {
+    }
+
+    @TearDown
+    public void dropDatabase() throws Exception {
+        stopping();
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+        pool.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.inventory.benchmarks;
+
+import com.inventory.CatalogCache;
+import com.inventory.ProductPageSource;
+import com.inventory.RowPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading products for the product tab: the first page the table shows, the row count it sizes its
+ * scroll bar with, a page deep in the keyset order, and a full catalog load.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductLoadBenchmark extends DatabaseState {
+    private static final int NAME_COLUMN = 1;
+    private static final int PAGE_SIZE = 200;
+
+    private final ProductPageSource source = new ProductPageSource();
+
+    @Benchmark
+    public RowPage firstPageByName() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return source.fetch(conn, NAME_COLUMN, true, null, 0, PAGE_SIZE);
+        }
+    }
+
+    @Benchmark
+    public RowPage secondPageByNameFromAnchor() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            RowPage first = source.fetch(conn, NAME_COLUMN, true, null, 0, PAGE_SIZE);
+            return source.fetch(conn, NAME_COLUMN, true, source.anchorOf(first, NAME_COLUMN), 0, PAGE_SIZE);
+        }
+    }
+
+    @Benchmark
+    public int count() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return source.count(conn);
+        }
+    }
+
+    @Benchmark
+    public CatalogCache loadCatalog() throws SQLException {
+        return new CatalogCache(pool);
+    }
+}
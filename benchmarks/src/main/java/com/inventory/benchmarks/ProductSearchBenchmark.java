@@ -0,0 +1,96 @@
+package com.inventory.benchmarks;
+
+import com.inventory.CatalogCache;
+import com.inventory.Product;
+import com.inventory.ProductSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A type-ahead keystroke: the top 15 products for a partial query, from the search index versus a
+ * {@code LIKE} scan. Names are made of grocery words so that queries share prefixes the way real
+ * catalogs do; run with {@code -p products=1000000} for the figure that matters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductSearchBenchmark extends DatabaseState {
+    private static final int LIMIT = 15;
+    private static final String[] PREFIXES = {"dark", "org", "sal", "chocolate", "pe", "fresh mango"};
+    private static final String[] WORDS = {"dark choc", "choc bar", "organic peanut jar", "tin salm", "box cook 12"};
+    private static final String[] TYPOS = {"choclate", "peanut buter", "yoghurt", "granloa bar", "spinnach"};
+
+    private CatalogCache catalog;
+    private ProductSearchIndex index;
+    private int next;
+
+    @Override
+    protected void seeded(Statement stmt) throws SQLException {
+        stmt.execute("UPDATE products SET name = " +
+            "ARRAY['Organic', 'Dark', 'Milk', 'Salted', 'Roasted', 'Fresh', 'Frozen', 'Crispy', 'Spicy', 'Sweet', " +
+            "'Smoked', 'Whole', 'Greek', 'Vanilla', 'Honey', 'Lemon'][MOD(id, 16) + 1] || ' ' || " +
+            "ARRAY['Chocolate', 'Almond', 'Cashew', 'Coffee', 'Yogurt', 'Peanut Butter', 'Cheese', 'Bread', " +
+            "'Cookie', 'Cracker', 'Granola', 'Noodle', 'Olive', 'Peanut', 'Salmon', 'Tomato', 'Cereal', 'Apple', " +
+            "'Mango', 'Spinach'][MOD(id / 16, 20) + 1] || ' ' || " +
+            "ARRAY['Bar', 'Bag', 'Box', 'Pack', 'Jar', 'Bottle', 'Tin', 'Pouch'][MOD(id / 320, 8) + 1] || ' ' || " +
+            "id || 'g'");
+    }
+
+    @Override
+    protected void started() throws SQLException {
+        catalog = new CatalogCache(pool);
+        index = new ProductSearchIndex(catalog);
+    }
+
+    @Override
+    protected void stopping() {
+        catalog.removeListener(index);
+    }
+
+    @Benchmark
+    public List<Product> prefix() {
+        return index.search(PREFIXES[next++ % PREFIXES.length], LIMIT);
+    }
+
+    @Benchmark
+    public List<Product> words() {
+        return index.search(WORDS[next++ % WORDS.length], LIMIT);
+    }
+
+    @Benchmark
+    public List<Product> typo() {
+        return index.search(TYPOS[next++ % TYPOS.length], LIMIT);
+    }
+
+    @Benchmark
+    public List<Product> inStockOnly() {
+        return index.search(PREFIXES[next++ % PREFIXES.length], LIMIT, product -> product.getQuantity() > 0);
+    }
+
+    @Benchmark
+    public List<String> sqlLike() throws SQLException {
+        String query = PREFIXES[next++ % PREFIXES.length];
+        List<String> names = new ArrayList<>();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT name FROM products WHERE LOWER(name) LIKE ? ORDER BY name LIMIT " + LIMIT)) {
+            pstmt.setString(1, "%" + query + "%");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,64 @@
+package com.inventory.benchmarks;
+
+import com.inventory.PurchaseResult;
+import com.inventory.PurchaseService;
+import com.inventory.StockLedger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Sales per second through {@link PurchaseService}, with one buyer and with eight concurrent buyers. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PurchaseThroughputBenchmark extends DatabaseState {
+    @Param({"false", "true"})
+    public boolean ledger;
+
+    private StockLedger stockLedger;
+    private PurchaseService service;
+
+    @Override
+    protected void seeded(Statement stmt) throws SQLException {
+        // Never run out, or later iterations would measure refusals
+        stmt.execute("UPDATE products SET quantity = 1000000000");
+    }
+
+    @Override
+    protected void started() throws SQLException {
+        stockLedger = ledger ? new StockLedger(pool, 200) : null;
+        service = new PurchaseService(pool, stockLedger, 2, 128);
+    }
+
+    @Override
+    protected void stopping() {
+        service.close();
+        if (stockLedger != null) {
+            stockLedger.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public PurchaseResult singleBuyer() throws SQLException {
+        return purchase();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public PurchaseResult eightBuyers() throws SQLException {
+        return purchase();
+    }
+
+    private PurchaseResult purchase() throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return service.purchase(1 + random.nextInt(products), 1 + random.nextInt(3), 9.99);
+    }
+}
@@ -0,0 +1,141 @@
+package com.inventory.benchmarks;
+
+import com.inventory.CatalogCache;
+import com.inventory.DemandForecast;
+import com.inventory.LowStockMonitor;
+import com.inventory.ReportAggregates;
+import com.inventory.ReportExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each report section computed the old way, with the queries the report used to run, and from
+ * {@link ReportAggregates} and {@link LowStockMonitor}; the reorder forecast rebuilt from the
+ * history and read from memory; plus a full streaming export.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReportBenchmark extends DatabaseState {
+    private ReportAggregates aggregates;
+    private LowStockMonitor lowStock;
+    private DemandForecast forecast;
+    private Path exportFile;
+
+    @Override
+    protected void started() throws SQLException, IOException {
+        CatalogCache catalog = new CatalogCache(pool);
+        aggregates = new ReportAggregates(pool, catalog);
+        lowStock = new LowStockMonitor(pool, catalog, LowStockMonitor.DEFAULT_THRESHOLD);
+        forecast = new DemandForecast(pool, catalog, DemandForecast.DEFAULT_HISTORY_DAYS, DemandForecast.DEFAULT_ALPHA,
+            DemandForecast.DEFAULT_LEAD_TIME_DAYS, DemandForecast.DEFAULT_COVER_DAYS, Runtime.getRuntime().availableProcessors());
+        exportFile = Files.createTempFile("report-benchmark", ".out");
+    }
+
+    @Override
+    protected void stopping() throws IOException {
+        Files.deleteIfExists(exportFile);
+    }
+
+    @Benchmark
+    public void inventorySectionQuery(Blackhole blackhole) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT p.name, p.quantity, p.price, (p.quantity * p.price) as total_value " +
+                 "FROM products p ORDER BY total_value DESC");
+             ResultSet rs = pstmt.executeQuery()) {
+            consume(rs, blackhole);
+        }
+    }
+
+    @Benchmark
+    public long inventorySectionAggregate() {
+        return aggregates.getInventoryValueCents();
+    }
+
+    @Benchmark
+    public void salesSectionQuery(Blackhole blackhole) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT p.name, SUM(ph.quantity) as total_quantity, SUM(ph.total_price) as total_sales " +
+                 "FROM purchase_history ph JOIN products p ON ph.product_id = p.id " +
+                 "WHERE ph.purchase_date >= ? GROUP BY p.id ORDER BY total_sales DESC")) {
+            pstmt.setTimestamp(1, Timestamp.valueOf(LocalDate.now().minusDays(30).atStartOfDay()));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                consume(rs, blackhole);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<ReportAggregates.ProductSales> salesSectionAggregate() {
+        return aggregates.getRecentSales();
+    }
+
+    @Benchmark
+    public void lowStockSectionQuery(Blackhole blackhole) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT name, quantity FROM products WHERE quantity <= 5 ORDER BY quantity ASC");
+             ResultSet rs = pstmt.executeQuery()) {
+            consume(rs, blackhole);
+        }
+    }
+
+    @Benchmark
+    public List<LowStockMonitor.Alert> lowStockSectionAggregate() {
+        return lowStock.getAlerts();
+    }
+
+    @Benchmark
+    public LowStockMonitor.Alert lowStockMostCritical() {
+        return lowStock.getMostCritical();
+    }
+
+    @Benchmark
+    public void forecastRebuild() throws SQLException {
+        forecast.rebuild();
+    }
+
+    @Benchmark
+    public List<DemandForecast.Forecast> forecastRead() {
+        return forecast.getForecasts();
+    }
+
+    @Benchmark
+    public long exportCsv() throws SQLException, IOException {
+        try (Connection conn = pool.getConnection()) {
+            return new ReportExporter(ReportExporter.Format.CSV).export(conn, exportFile, null);
+        }
+    }
+
+    @Benchmark
+    public long exportBinary() throws SQLException, IOException {
+        try (Connection conn = pool.getConnection()) {
+            return new ReportExporter(ReportExporter.Format.BINARY).export(conn, exportFile, null);
+        }
+    }
+
+    private static void consume(ResultSet rs, Blackhole blackhole) throws SQLException {
+        int columns = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            for (int i = 1; i <= columns; i++) {
+                blackhole.consume(rs.getObject(i));
+            }
+        }
+    }
+}
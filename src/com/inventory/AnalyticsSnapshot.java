@@ -0,0 +1,496 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A columnar copy of the catalog and the purchase history for ad hoc sales analysis. Products are
+ * parallel primitive arrays (ids, category, price in cents, stock) and the history is one row per
+ * product and day, ordered by day, in int and long columns that can live off the Java heap. Names
+ * are dictionary-encoded. A date range is a binary search on the day column, and every aggregation
+ * is a loop over primitive columns split across {@code threads} workers.
+ *
+ * <p>Nothing follows live changes: {@link #refresh()} copies the catalog again and appends only the
+ * purchases committed since the last refresh. Readers always see a consistent snapshot, and
+ * queries run while a refresh is appending.
+ */
+public class AnalyticsSnapshot {
+    // Ranges with fewer rows than this are summed on the calling thread
+    private static final int PARALLEL_ROWS = 65_536;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Comparator<Total> LARGEST_FIRST =
+        Comparator.comparingLong(Total::getCents).reversed().thenComparingInt(Total::getId);
+
+    private static volatile AnalyticsSnapshot instance;
+
+    private final DataSource dataSource;
+    private final CatalogCache catalog;
+    private final boolean offHeap;
+    private final ForkJoinPool workers;
+    // Product and category names; only grows, and only under this object's lock
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+    private volatile Products products;
+    private volatile Sales sales;
+    private long historyWatermark;
+
+    public AnalyticsSnapshot(DataSource dataSource, CatalogCache catalog, boolean offHeap, int threads) throws SQLException {
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.offHeap = offHeap;
+        this.workers = new ForkJoinPool(threads);
+        refresh();
+    }
+
+    public static AnalyticsSnapshot getInstance() throws SQLException {
+        AnalyticsSnapshot snapshot = instance;
+        if (snapshot == null) {
+            synchronized (AnalyticsSnapshot.class) {
+                snapshot = instance;
+                if (snapshot == null) {
+                    snapshot = new AnalyticsSnapshot(DatabaseConnection.getReadDataSource(), CatalogCache.getInstance(),
+                        Boolean.getBoolean("inventory.analytics.offHeap"),
+                        Integer.getInteger("inventory.analytics.threads", Runtime.getRuntime().availableProcessors()));
+                    instance = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Copies the catalog again and appends the purchases committed since the last refresh. Sales
+     * are usually for today, so the new rows go on the end of the columns; a late one for an
+     * earlier day means one merge of the old and new rows.
+     */
+    public synchronized void refresh() throws SQLException {
+        Sales current = sales;
+        Sales arrived = null;
+        long watermark;
+        try (Connection conn = dataSource.getConnection()) {
+            // As in ReportAggregates: the layout first, so a day rolled up meanwhile isn't read twice
+            PurchaseHistoryStore.Layout history = PurchaseHistoryStore.layout(conn);
+            watermark = history.maxId(conn);
+            if (current == null) {
+                arrived = read(conn, "SELECT sale_day, product_id, quantity, total_price FROM " +
+                    history.dailySales(LocalDate.ofEpochDay(0), watermark) + " s ORDER BY sale_day");
+            } else if (watermark > historyWatermark) {
+                arrived = read(conn, "SELECT CAST(r.purchase_date AS DATE) AS sale_day, r.product_id, " +
+                    "SUM(r.quantity), SUM(r.total_price) FROM " + history.rows(null, null, historyWatermark, watermark) +
+                    " r GROUP BY CAST(r.purchase_date AS DATE), r.product_id ORDER BY sale_day");
+            }
+        }
+        products = copyCatalog();
+        if (arrived != null) {
+            sales = current == null ? arrived : combine(current, arrived);
+        }
+        historyWatermark = watermark;
+    }
+
+    public int getProductCount() {
+        return products.ids.length;
+    }
+
+    /** Product-day rows in the history columns. */
+    public int getSalesRowCount() {
+        return sales.count;
+    }
+
+    /** Total value of stock on hand at the last refresh, in cents. */
+    public long getInventoryValueCents() {
+        Products p = products;
+        long total = 0;
+        for (long part : split(0, p.ids.length, (lo, hi) -> {
+            long sum = 0;
+            for (int i = lo; i < hi; i++) {
+                sum += p.priceCents[i] * p.quantities[i];
+            }
+            return sum;
+        })) {
+            total += part;
+        }
+        return total;
+    }
+
+    /**
+     * Units and cents sold from {@code from} through {@code to}, both inclusive, for products
+     * currently in the catalog; {@code categoryId} 0 means every category. The id and name of the
+     * result are the category's, or 0 and null.
+     */
+    public Total getSales(LocalDate from, LocalDate to, int categoryId) {
+        Products p = products;
+        Sales s = sales;
+        int category = categoryId == 0 ? -1 : p.categoryRow(categoryId);
+        if (categoryId != 0 && category == -1) {
+            return new Total(categoryId, null, 0, 0);
+        }
+        long units = 0;
+        long cents = 0;
+        for (long[] part : split(s.lowerBound(from), s.lowerBound(to.plusDays(1)), (lo, hi) -> {
+            long partUnits = 0;
+            long partCents = 0;
+            for (int i = lo; i < hi; i++) {
+                int row = p.rowOf(s.productIds.get(i));
+                if (row != -1 && (category == -1 || p.categoryRows[row] == category)) {
+                    partUnits += s.quantities.get(i);
+                    partCents += s.cents.get(i);
+                }
+            }
+            return new long[] {partUnits, partCents};
+        })) {
+            units += part[0];
+            cents += part[1];
+        }
+        return category == -1 ? new Total(0, null, units, cents)
+            : new Total(categoryId, p.names[p.categoryNameCodes[category]], units, cents);
+    }
+
+    /**
+     * The {@code limit} products with the highest sales from {@code from} through {@code to}, both
+     * inclusive, in {@code categoryId} or in every category for 0.
+     */
+    public List<Total> getTopSellers(LocalDate from, LocalDate to, int categoryId, int limit) {
+        Products p = products;
+        int category = categoryId == 0 ? -1 : p.categoryRow(categoryId);
+        if (categoryId != 0 && category == -1) {
+            return new ArrayList<>();
+        }
+        long[] sums = sumByProduct(p, sales, from, to);
+        List<Total> sellers = new ArrayList<>();
+        for (int row = 0; row < p.ids.length; row++) {
+            if (sums[2 * row] > 0 && (category == -1 || p.categoryRows[row] == category)) {
+                sellers.add(new Total(p.ids[row], p.names[p.nameCodes[row]], sums[2 * row], sums[2 * row + 1]));
+            }
+        }
+        sellers.sort(LARGEST_FIRST);
+        return sellers.size() > limit ? new ArrayList<>(sellers.subList(0, limit)) : sellers;
+    }
+
+    /** Sales from {@code from} through {@code to}, both inclusive, per category, largest first. */
+    public List<Total> getSalesByCategory(LocalDate from, LocalDate to) {
+        Products p = products;
+        long[] sums = sumByProduct(p, sales, from, to);
+        long[] units = new long[p.categoryIds.length];
+        long[] cents = new long[p.categoryIds.length];
+        for (int row = 0; row < p.ids.length; row++) {
+            int category = p.categoryRows[row];
+            if (category != -1) {
+                units[category] += sums[2 * row];
+                cents[category] += sums[2 * row + 1];
+            }
+        }
+        List<Total> totals = new ArrayList<>();
+        for (int category = 0; category < units.length; category++) {
+            if (units[category] > 0) {
+                totals.add(new Total(p.categoryIds[category], p.names[p.categoryNameCodes[category]],
+                    units[category], cents[category]));
+            }
+        }
+        totals.sort(LARGEST_FIRST);
+        return totals;
+    }
+
+    /**
+     * Products with {@code threshold} or fewer units in stock at the last refresh, fewest first.
+     * The quantity of each result is the stock and the cents its value.
+     */
+    public List<Total> getLowStock(int threshold) {
+        Products p = products;
+        List<Total> low = new ArrayList<>();
+        for (List<Total> part : split(0, p.ids.length, (lo, hi) -> {
+            List<Total> found = new ArrayList<>();
+            for (int i = lo; i < hi; i++) {
+                if (p.quantities[i] <= threshold) {
+                    found.add(new Total(p.ids[i], p.names[p.nameCodes[i]], p.quantities[i], p.priceCents[i] * p.quantities[i]));
+                }
+            }
+            return found;
+        })) {
+            low.addAll(part);
+        }
+        low.sort(Comparator.comparingLong(Total::getQuantity).thenComparingInt(Total::getId));
+        return low;
+    }
+
+    // Units at 2 * row and cents at 2 * row + 1, for each product row; each worker fills its own
+    // array and they are added up afterwards
+    private long[] sumByProduct(Products p, Sales s, LocalDate from, LocalDate to) {
+        long[] sums = null;
+        for (long[] part : split(s.lowerBound(from), s.lowerBound(to.plusDays(1)), (lo, hi) -> {
+            long[] partSums = new long[2 * p.ids.length];
+            for (int i = lo; i < hi; i++) {
+                int row = p.rowOf(s.productIds.get(i));
+                if (row != -1) {
+                    partSums[2 * row] += s.quantities.get(i);
+                    partSums[2 * row + 1] += s.cents.get(i);
+                }
+            }
+            return partSums;
+        })) {
+            if (sums == null) {
+                sums = part;
+            } else {
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += part[i];
+                }
+            }
+        }
+        return sums;
+    }
+
+    private <T> List<T> split(int from, int to, RangeTask<T> task) {
+        int parts = Math.max(1, Math.min(workers.getParallelism(), (to - from) / PARALLEL_ROWS));
+        if (parts == 1) {
+            return List.of(task.apply(from, to));
+        }
+        List<ForkJoinTask<T>> running = new ArrayList<>();
+        for (int part = 0; part < parts; part++) {
+            int lo = from + (int) ((long) (to - from) * part / parts);
+            int hi = from + (int) ((long) (to - from) * (part + 1) / parts);
+            running.add(workers.submit(() -> task.apply(lo, hi)));
+        }
+        List<T> results = new ArrayList<>();
+        for (ForkJoinTask<T> part : running) {
+            results.add(part.join());
+        }
+        return results;
+    }
+
+    private Products copyCatalog() {
+        StockLedger ledger = StockLedger.current();
+        List<Category> categories = catalog.getCategoriesByName();
+        int[] categoryIds = new int[categories.size()];
+        int[] categoryNameCodes = new int[categories.size()];
+        Map<Integer, Integer> categoryRows = new HashMap<>();
+        int index = 0;
+        for (Category category : categories) {
+            categoryIds[index] = category.getId();
+            categoryNameCodes[index] = encode(category.getName());
+            categoryRows.put(category.getId(), index++);
+        }
+
+        List<Product> current = new ArrayList<>(catalog.getProducts());
+        int count = current.size();
+        Products p = new Products(count, categoryIds, categoryNameCodes);
+        int maxId = 0;
+        for (int row = 0; row < count; row++) {
+            Product product = current.get(row);
+            p.ids[row] = product.getId();
+            p.nameCodes[row] = encode(product.getName());
+            p.priceCents[row] = Math.round(product.getPrice() * 100);
+            p.quantities[row] = ledger == null ? product.getQuantity()
+                : ledger.availableOrDefault(product.getId(), product.getQuantity());
+            p.categoryRows[row] = categoryRows.getOrDefault(product.getCategoryId(), -1);
+            maxId = Math.max(maxId, product.getId());
+        }
+        p.rowsById = new int[maxId + 1];
+        Arrays.fill(p.rowsById, -1);
+        for (int row = 0; row < count; row++) {
+            p.rowsById[p.ids[row]] = row;
+        }
+        p.names = dictionary.toArray(new String[0]);
+        return p;
+    }
+
+    private int encode(String name) {
+        Integer code = codes.get(name);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(name);
+            codes.put(name, code);
+        }
+        return code;
+    }
+
+    private Sales read(Connection conn, String sql) throws SQLException {
+        Sales read = new Sales(allocate(INITIAL_CAPACITY), 0);
+        try (PreparedStatement pstmt = DatabaseConnection.prepareStreaming(conn, sql, 10_000)) {
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (read.count == read.capacity()) {
+                        read = read.grow(this, read.count * 2);
+                    }
+                    read.set(read.count++, (int) rs.getDate(1).toLocalDate().toEpochDay(), rs.getInt(2), rs.getInt(3),
+                        Math.round(rs.getDouble(4) * 100));
+                }
+            }
+        }
+        return read;
+    }
+
+    // Readers hold the old Sales and only look below its count, so appending in place is safe
+    private Sales combine(Sales current, Sales arrived) {
+        if (arrived.count == 0) {
+            return current;
+        }
+        int count = current.count + arrived.count;
+        if (current.count == 0 || arrived.days.get(0) >= current.days.get(current.count - 1)) {
+            Sales appended = count <= current.capacity() ? new Sales(current, current.count)
+                : current.grow(this, Math.max(count, current.count * 2));
+            for (int i = 0; i < arrived.count; i++) {
+                appended.copy(appended.count++, arrived, i);
+            }
+            return appended;
+        }
+        Sales merged = new Sales(allocate(Math.max(count, current.capacity())), 0);
+        int i = 0;
+        int j = 0;
+        while (i < current.count || j < arrived.count) {
+            if (j == arrived.count || (i < current.count && current.days.get(i) <= arrived.days.get(j))) {
+                merged.copy(merged.count++, current, i++);
+            } else {
+                merged.copy(merged.count++, arrived, j++);
+            }
+        }
+        return merged;
+    }
+
+    private ByteBuffer[] allocate(int capacity) {
+        // Days, product ids, quantities and cents
+        int[] widths = {Integer.BYTES, Integer.BYTES, Integer.BYTES, Long.BYTES};
+        ByteBuffer[] columns = new ByteBuffer[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            columns[i] = (offHeap ? ByteBuffer.allocateDirect(capacity * widths[i]) : ByteBuffer.allocate(capacity * widths[i]))
+                .order(ByteOrder.nativeOrder());
+        }
+        return columns;
+    }
+
+    @FunctionalInterface
+    private interface RangeTask<T> {
+        T apply(int lo, int hi);
+    }
+
+    /** One row per catalog product, plus the categories; rowsById maps a product id to its row. */
+    private static final class Products {
+        final int[] ids;
+        final int[] nameCodes;
+        final long[] priceCents;
+        final int[] quantities;
+        final int[] categoryRows;
+        final int[] categoryIds;
+        final int[] categoryNameCodes;
+        int[] rowsById;
+        String[] names;
+
+        Products(int count, int[] categoryIds, int[] categoryNameCodes) {
+            ids = new int[count];
+            nameCodes = new int[count];
+            priceCents = new long[count];
+            quantities = new int[count];
+            categoryRows = new int[count];
+            this.categoryIds = categoryIds;
+            this.categoryNameCodes = categoryNameCodes;
+        }
+
+        int rowOf(int productId) {
+            return productId >= 0 && productId < rowsById.length ? rowsById[productId] : -1;
+        }
+
+        int categoryRow(int categoryId) {
+            for (int i = 0; i < categoryIds.length; i++) {
+                if (categoryIds[i] == categoryId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /** Product-day sales in day order; only rows below count belong to this snapshot. */
+    private static final class Sales {
+        final ByteBuffer[] columns;
+        final IntBuffer days;
+        final IntBuffer productIds;
+        final IntBuffer quantities;
+        final LongBuffer cents;
+        int count;
+
+        Sales(ByteBuffer[] columns, int count) {
+            this.columns = columns;
+            this.days = columns[0].asIntBuffer();
+            this.productIds = columns[1].asIntBuffer();
+            this.quantities = columns[2].asIntBuffer();
+            this.cents = columns[3].asLongBuffer();
+            this.count = count;
+        }
+
+        Sales(Sales shared, int count) {
+            this(shared.columns, count);
+        }
+
+        int capacity() {
+            return days.capacity();
+        }
+
+        Sales grow(AnalyticsSnapshot owner, int capacity) {
+            Sales grown = new Sales(owner.allocate(capacity), 0);
+            for (int i = 0; i < count; i++) {
+                grown.copy(grown.count++, this, i);
+            }
+            return grown;
+        }
+
+        void set(int row, int day, int productId, int quantity, long amount) {
+            days.put(row, day);
+            productIds.put(row, productId);
+            quantities.put(row, quantity);
+            cents.put(row, amount);
+        }
+
+        void copy(int row, Sales from, int fromRow) {
+            set(row, from.days.get(fromRow), from.productIds.get(fromRow), from.quantities.get(fromRow), from.cents.get(fromRow));
+        }
+
+        /** First row dated on or after {@code day}, or count if there is none. */
+        int lowerBound(LocalDate day) {
+            long target = day.toEpochDay();
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (days.get(mid) < target) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    public static final class Total {
+        private final int id;
+        private final String name;
+        private final long quantity;
+        private final long cents;
+
+        Total(int id, String name, long quantity, long cents) {
+            this.id = id;
+            this.name = name;
+            this.quantity = quantity;
+            this.cents = cents;
+        }
+
+        public int getId() { return id; }
+        public String getName() { return name; }
+        public long getQuantity() { return quantity; }
+        public long getCents() { return cents; }
+    }
+}
@@ -0,0 +1,188 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The throwaway database a load harness seeds and hammers. Its settings are {@code bench.db.url},
+ * {@code bench.db.user}, {@code bench.db.password} and {@code bench.db.maxSize}, deliberately apart
+ * from the application's {@code inventory.db.*}, because seeding drops and recreates the
+ * application's tables. An embedded {@code jdbc:h2:mem:} database is always fine; any other URL is
+ * refused unless the command line says {@value #DESTROY_FLAG}.
+ *
+ * <p>Every harness seeds the same catalog through {@link #seed} and, once the run is over, checks
+ * stock against purchase history with {@link #checkStock}.
+ */
+public final class BenchDatabase {
+    public static final String DESTROY_FLAG = "--destroy";
+
+    static final String INITIAL_STOCK_TABLE = "bench_initial_stock";
+
+    private static final int INSERT_BATCH = 10_000;
+    private static final int MAX_EXAMPLES = 10;
+
+    private BenchDatabase() {
+    }
+
+    /**
+     * A pool on the bench database, by default a private in-memory H2 database called {@code name}.
+     * Throws if the URL could be a real one and {@code args} don't include {@value #DESTROY_FLAG}.
+     */
+    public static ConnectionPool open(String name, int defaultMaxSize, String[] args) throws SQLException {
+        String url = System.getProperty("bench.db.url", "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        if (!url.startsWith("jdbc:h2:mem:") && !List.of(args).contains(DESTROY_FLAG)) {
+            throw new IllegalStateException("Seeding drops the inventory tables at " + url +
+                "; pass " + DESTROY_FLAG + " if that database may be wiped");
+        }
+        return new ConnectionPool(new PoolConfig(url,
+            System.getProperty("bench.db.user", "sa"),
+            System.getProperty("bench.db.password", ""))
+            .setMaxSize(Integer.getInteger("bench.db.maxSize", defaultMaxSize))
+            .setMinIdle(0));
+    }
+
+    /**
+     * Drops the inventory tables, recreates them with {@link SchemaMigrations} and fills them:
+     * categories {@code Category 1..categories}, and products {@code Product 1..products} where
+     * product {@code n} is in category {@code 1 + n % categories}, costs {@code n % 500 + 0.99} and
+     * has {@code stock.applyAsInt(n)} units. The stock is also copied to {@code bench_initial_stock} for {@link #checkStock}.
+     */
+    public static void seed(DataSource dataSource, int categories, int products, IntUnaryOperator stock)
+            throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            List<String> tables = PurchaseHistoryStore.layout(conn).tables();
+            tables.addAll(List.of(PurchaseHistoryStore.LEGACY_TABLE, PurchaseHistoryStore.ARCHIVE_TABLE,
+                PurchaseHistoryStore.ROLLUP_TABLE, PurchaseHistoryStore.CHECKPOINT_TABLE, PurchaseHistoryStore.SEQUENCE_TABLE,
+                INITIAL_STOCK_TABLE, "products", "categories", "stock_ledger_checkpoint", "purchase_journal_checkpoint",
+                "purchase_journal_conflicts", "product_stock_thresholds", "category_stock_thresholds",
+                CategoryDeleter.JOB_TABLE, CategoryDeleter.TOMBSTONE_TABLE, SchemaMigrations.VERSION_TABLE));
+            for (String table : tables) {
+                stmt.execute("DROP TABLE IF EXISTS " + table);
+            }
+        }
+        // The same tables and indexes the application gets
+        SchemaMigrations.migrate(dataSource);
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE " + INITIAL_STOCK_TABLE + " (product_id INT PRIMARY KEY, " +
+                    "initial_quantity INT NOT NULL)");
+            }
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO categories (id, name) VALUES (?, ?)")) {
+                for (int i = 1; i <= categories; i++) {
+                    insert.setInt(1, i);
+                    insert.setString(2, "Category " + i);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO products (id, name, price, quantity, category_id) VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = 1; i <= products; i++) {
+                    insert.setInt(1, i);
+                    insert.setString(2, "Product " + i);
+                    insert.setDouble(3, i % 500 + 0.99);
+                    insert.setInt(4, stock.applyAsInt(i));
+                    insert.setInt(5, 1 + i % categories);
+                    insert.addBatch();
+                    if (i % INSERT_BATCH == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO " + INITIAL_STOCK_TABLE + " (product_id, initial_quantity) " +
+                    "SELECT id, quantity FROM products");
+            }
+        }
+    }
+
+    /**
+     * Compares each product's stock with what it was seeded with, less what its purchase history
+     * adds up to. Sales held in the journal or the stock ledger should be flushed first.
+     */
+    public static StockCheck checkStock(DataSource dataSource) throws SQLException {
+        StockCheck check = new StockCheck();
+        try (Connection conn = dataSource.getConnection()) {
+            PurchaseHistoryStore.Layout layout = PurchaseHistoryStore.layout(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT p.id, p.quantity, s.initial_quantity, COALESCE(h.sold, 0) " +
+                     "FROM products p JOIN " + INITIAL_STOCK_TABLE + " s ON s.product_id = p.id " +
+                     "LEFT JOIN (SELECT product_id, SUM(quantity) AS sold FROM " +
+                     layout.rows(null, null, 0, Long.MAX_VALUE) + " r GROUP BY product_id) h ON h.product_id = p.id " +
+                     "ORDER BY p.id");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int quantity = rs.getInt(2);
+                    int initial = rs.getInt(3);
+                    long sold = rs.getLong(4);
+                    check.historyUnits += sold;
+                    boolean negative = quantity < 0;
+                    boolean mismatched = initial - quantity != sold;
+                    if (negative) {
+                        check.negative++;
+                    }
+                    if (mismatched) {
+                        check.mismatched++;
+                    }
+                    if ((negative || mismatched) && check.examples.size() < MAX_EXAMPLES) {
+                        check.examples.add(String.format("product %d initial=%d remaining=%d sold=%d",
+                            rs.getInt(1), initial, quantity, sold));
+                    }
+                }
+            }
+        }
+        return check;
+    }
+
+    /** {@link #checkStock}, printing each problem found; true if there were none. */
+    public static boolean verifyStock(DataSource dataSource) throws SQLException {
+        StockCheck check = checkStock(dataSource);
+        for (String example : check.getExamples()) {
+            System.out.println("OVERSOLD " + example);
+        }
+        System.out.println(check.isConsistent() ? "  stock consistent: no oversell" : "  STOCK INCONSISTENT");
+        return check.isConsistent();
+    }
+
+    /** The arguments without {@value #DESTROY_FLAG}, so positional ones keep their places. */
+    public static String[] positional(String[] args) {
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.equals(DESTROY_FLAG)) {
+                positional.add(arg);
+            }
+        }
+        return positional.toArray(new String[0]);
+    }
+
+    /** The outcome of {@link #checkStock}. */
+    public static final class StockCheck {
+        private final List<String> examples = new ArrayList<>();
+        private long historyUnits;
+        private int negative;
+        private int mismatched;
+
+        public boolean isConsistent() {
+            return negative == 0 && mismatched == 0;
+        }
+
+        /** Units sold according to purchase history, over every product. */
+        public long getHistoryUnits() { return historyUnits; }
+        /** Products whose stock is below zero. */
+        public int getNegative() { return negative; }
+        /** Products whose stock went down by more or less than their history says. */
+        public int getMismatched() { return mismatched; }
+        /** The first few products with either problem. */
+        public List<String> getExamples() { return Collections.unmodifiableList(examples); }
+    }
+}
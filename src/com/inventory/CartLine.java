@@ -0,0 +1,15 @@
+package com.inventory;
+
+/** A product and how many of it to sell, one line of an order passed to {@link InventoryService#checkout}. */
+public final class CartLine {
+    private final int productId;
+    private final int quantity;
+
+    public CartLine(int productId, int quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public int getProductId() { return productId; }
+    public int getQuantity() { return quantity; }
+}
@@ -0,0 +1,283 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shared in-memory copy of the product and category catalog, indexed by id and by name. It is
+ * loaded once and then kept current by the code that writes the catalog: every insert, update and
+ * delete in the panels reports back here, so lookups that used to be SQL are hash-map hits.
+ *
+ * <p>Reads are lock-free. Writes are serialized so the id and name indexes never disagree.
+ */
+public class CatalogCache {
+    private static volatile CatalogCache instance;
+
+    private final DataSource dataSource;
+    private final ConcurrentHashMap<Integer, Product> productsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> productIdsByName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Category> categoriesById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> categoryIdsByName = new ConcurrentHashMap<>();
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+
+    public CatalogCache(DataSource dataSource) throws SQLException {
+        this.dataSource = dataSource;
+        reload();
+    }
+
+    /** The shared catalog, loading it from the database on first use. */
+    public static CatalogCache getInstance() throws SQLException {
+        CatalogCache catalog = instance;
+        if (catalog == null) {
+            synchronized (CatalogCache.class) {
+                catalog = instance;
+                if (catalog == null) {
+                    catalog = new CatalogCache(DatabaseConnection.getDataSource());
+                    // The panels follow the shared catalog through the bus
+                    catalog.addListener(ChangeBus.getInstance());
+                    instance = catalog;
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /** Throws the cached catalog away and reads it again, e.g. after an external bulk change. */
+    public synchronized void reload() throws SQLException {
+        productsById.clear();
+        productIdsByName.clear();
+        categoriesById.clear();
+        categoryIdsByName.clear();
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id, name FROM categories");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    putCategory(new Category(rs.getInt(1), rs.getString(2)));
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT id, name, price, quantity, category_id FROM products ORDER BY id");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    putProduct(new Product(rs.getInt(1), rs.getString(2), rs.getDouble(3), rs.getInt(4), rs.getInt(5)));
+                }
+            }
+        }
+        for (CatalogListener listener : listeners) {
+            listener.catalogReloaded();
+        }
+    }
+
+    public void addListener(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CatalogListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Tells listeners a bulk change such as an import is starting; pair each call with {@link #endBulkChange()}. */
+    public void beginBulkChange() {
+        for (CatalogListener listener : listeners) {
+            try {
+                listener.bulkChangeStarted();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void endBulkChange() {
+        for (CatalogListener listener : listeners) {
+            try {
+                listener.bulkChangeFinished();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public Product getProduct(int id) {
+        return productsById.get(id);
+    }
+
+    /** The product with this name; with duplicate names, the oldest one, as {@code WHERE name = ?} did. */
+    public Product findProductByName(String name) {
+        Integer id = productIdsByName.get(name);
+        return id == null ? null : productsById.get(id);
+    }
+
+    public Collection<Product> getProducts() {
+        return productsById.values();
+    }
+
+    public Category getCategory(int id) {
+        return categoriesById.get(id);
+    }
+
+    public Category findCategoryByName(String name) {
+        Integer id = categoryIdsByName.get(name);
+        return id == null ? null : categoriesById.get(id);
+    }
+
+    public List<Category> getCategoriesByName() {
+        List<Category> categories = new ArrayList<>(categoriesById.values());
+        categories.sort(Comparator.comparing(Category::getName));
+        return categories;
+    }
+
+    public List<String> getCategoryNames() {
+        List<String> names = new ArrayList<>(categoryIdsByName.keySet());
+        names.sort(null);
+        return names;
+    }
+
+    /** Names of products that can currently be sold, using live ledger stock when it is running. */
+    public List<String> getInStockProductNames() {
+        StockLedger ledger = StockLedger.current();
+        List<String> names = new ArrayList<>();
+        for (Product product : productsById.values()) {
+            int quantity = ledger == null ? product.getQuantity() : ledger.availableOrDefault(product.getId(), product.getQuantity());
+            if (quantity > 0 && Integer.valueOf(product.getId()).equals(productIdsByName.get(product.getName()))) {
+                names.add(product.getName());
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+
+    public synchronized void productSaved(Product product) {
+        Product previous = productsById.get(product.getId());
+        if (previous != null && !previous.getName().equals(product.getName())) {
+            unindexProductName(previous);
+        }
+        putProduct(product);
+        fireProductChanged(previous, product);
+    }
+
+    public synchronized void productRemoved(int id) {
+        Product previous = productsById.remove(id);
+        if (previous != null) {
+            unindexProductName(previous);
+            fireProductChanged(previous, null);
+        }
+    }
+
+    /** Drops many products at once, looking for other products with their names in a single pass. */
+    public synchronized void productsRemoved(Collection<Integer> ids) {
+        List<Product> removed = new ArrayList<>();
+        Set<String> unindexed = new HashSet<>();
+        for (int id : ids) {
+            Product previous = productsById.remove(id);
+            if (previous != null) {
+                removed.add(previous);
+                if (productIdsByName.remove(previous.getName(), previous.getId())) {
+                    unindexed.add(previous.getName());
+                }
+            }
+        }
+        if (!unindexed.isEmpty()) {
+            for (Product other : productsById.values()) {
+                if (unindexed.contains(other.getName())) {
+                    productIdsByName.merge(other.getName(), other.getId(), Math::min);
+                }
+            }
+        }
+        for (Product previous : removed) {
+            fireProductChanged(previous, null);
+        }
+    }
+
+    public synchronized void stockChanged(int productId, int delta) {
+        Product previous = productsById.get(productId);
+        if (previous != null) {
+            Product updated = previous.withQuantity(previous.getQuantity() + delta);
+            productsById.put(productId, updated);
+            fireProductChanged(previous, updated);
+        }
+    }
+
+    public synchronized void categorySaved(Category category) {
+        Category previous = categoriesById.put(category.getId(), category);
+        if (previous != null && !previous.getName().equals(category.getName())) {
+            categoryIdsByName.remove(previous.getName(), previous.getId());
+        }
+        categoryIdsByName.put(category.getName(), category.getId());
+        fireCategoryChanged(previous, category);
+    }
+
+    /**
+     * Drops a category together with any products it still has, mirroring {@link CategoryDeleter}.
+     * Returns the ids of the products that went with it.
+     */
+    public synchronized List<Integer> categoryRemoved(int id) {
+        Category previous = categoriesById.remove(id);
+        if (previous != null) {
+            categoryIdsByName.remove(previous.getName(), id);
+        }
+        List<Integer> orphaned = new ArrayList<>();
+        for (Product product : productsById.values()) {
+            if (product.getCategoryId() == id) {
+                orphaned.add(product.getId());
+            }
+        }
+        productsRemoved(orphaned);
+        if (previous != null) {
+            fireCategoryChanged(previous, null);
+        }
+        return orphaned;
+    }
+
+    private void fireProductChanged(Product before, Product after) {
+        for (CatalogListener listener : listeners) {
+            try {
+                listener.productChanged(before, after);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void fireCategoryChanged(Category before, Category after) {
+        for (CatalogListener listener : listeners) {
+            try {
+                listener.categoryChanged(before, after);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void putCategory(Category category) {
+        categoriesById.put(category.getId(), category);
+        categoryIdsByName.putIfAbsent(category.getName(), category.getId());
+    }
+
+    private void putProduct(Product product) {
+        productsById.put(product.getId(), product);
+        productIdsByName.merge(product.getName(), product.getId(), Math::min);
+    }
+
+    private void unindexProductName(Product product) {
+        if (!productIdsByName.remove(product.getName(), product.getId())) {
+            return;
+        }
+        // Another product may share the name; it becomes the one name lookups resolve to
+        for (Product other : productsById.values()) {
+            if (other.getName().equals(product.getName()) && other.getId() != product.getId()) {
+                productIdsByName.merge(other.getName(), other.getId(), Math::min);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.inventory;
+
+/** One change to the catalog as delivered by the {@link ChangeBus}. */
+public final class CatalogEvent {
+    public enum Type {
+        PRODUCT_ADDED, PRODUCT_UPDATED, STOCK_CHANGED, PRODUCT_DELETED,
+        CATEGORY_ADDED, CATEGORY_RENAMED, CATEGORY_DELETED,
+        /** The whole catalog was read again; anything derived from it should be too. */
+        RELOADED
+    }
+
+    private static final CatalogEvent RELOAD = new CatalogEvent(Type.RELOADED, null, null);
+
+    private final Type type;
+    private final Product product;
+    private final Category category;
+
+    private CatalogEvent(Type type, Product product, Category category) {
+        this.type = type;
+        this.product = product;
+        this.category = category;
+    }
+
+    /** The event for a {@link CatalogListener#productChanged} call. */
+    static CatalogEvent product(Product before, Product after) {
+        if (before == null) {
+            return new CatalogEvent(Type.PRODUCT_ADDED, after, null);
+        }
+        if (after == null) {
+            return new CatalogEvent(Type.PRODUCT_DELETED, before, null);
+        }
+        boolean stockOnly = before.getName().equals(after.getName()) && before.getPrice() == after.getPrice()
+            && before.getCategoryId() == after.getCategoryId();
+        return new CatalogEvent(stockOnly ? Type.STOCK_CHANGED : Type.PRODUCT_UPDATED, after, null);
+    }
+
+    /** The event for a {@link CatalogListener#categoryChanged} call, or null if nothing visible changed. */
+    static CatalogEvent category(Category before, Category after) {
+        if (before == null) {
+            return new CatalogEvent(Type.CATEGORY_ADDED, null, after);
+        }
+        if (after == null) {
+            return new CatalogEvent(Type.CATEGORY_DELETED, null, before);
+        }
+        return before.getName().equals(after.getName()) ? null : new CatalogEvent(Type.CATEGORY_RENAMED, null, after);
+    }
+
+    static CatalogEvent reloaded() {
+        return RELOAD;
+    }
+
+    public Type getType() { return type; }
+    /** The product as it is now, or as it was for {@link Type#PRODUCT_DELETED}; null for category events. */
+    public Product getProduct() { return product; }
+    /** The category as it is now, or as it was for {@link Type#CATEGORY_DELETED}; null for product events. */
+    public Category getCategory() { return category; }
+
+    boolean isProductEvent() {
+        return product != null;
+    }
+
+    /** This event followed by {@code next} for the same row, as one event, or null if they cancel out. */
+    CatalogEvent then(CatalogEvent next) {
+        if (next.type == Type.PRODUCT_DELETED || next.type == Type.CATEGORY_DELETED) {
+            return type == Type.PRODUCT_ADDED || type == Type.CATEGORY_ADDED ? null : next;
+        }
+        if (type == Type.PRODUCT_ADDED || type == Type.CATEGORY_ADDED || type == Type.PRODUCT_UPDATED) {
+            // Still new, or still more than a stock change, but with the latest values
+            return new CatalogEvent(type, next.product, next.category);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,24 @@
+package com.inventory;
+
+/** Notified by {@link CatalogCache} after each change it applies. Called on the writer's thread. */
+public interface CatalogListener {
+    /** {@code before} is null for a new product and {@code after} is null for a removed one. */
+    void productChanged(Product before, Product after);
+
+    /** {@code before} is null for a new category and {@code after} is null for a removed one. */
+    default void categoryChanged(Category before, Category after) {
+    }
+
+    default void catalogReloaded() {
+    }
+
+    /**
+     * Many changes follow, such as an import, until the matching {@link #bulkChangeFinished()}. Each
+     * is still reported as it happens; a listener that redraws can wait for the end instead.
+     */
+    default void bulkChangeStarted() {
+    }
+
+    default void bulkChangeFinished() {
+    }
+}
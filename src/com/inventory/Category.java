@@ -0,0 +1,15 @@
+package com.inventory;
+
+/** Immutable snapshot of a {@code categories} row as held by {@link CatalogCache}. */
+public final class Category {
+    private final int id;
+    private final String name;
+
+    public Category(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+}
@@ -0,0 +1,6 @@
+package com.inventory;
+
+/** Notified by {@link CategoryDeleter} on its worker thread after each chunk and when a delete ends. */
+public interface CategoryDeleteListener {
+    void progressed(CategoryDeleter.Progress progress);
+}
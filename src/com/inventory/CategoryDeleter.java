@@ -0,0 +1,426 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Deletes a category and its products in the background, a chunk of products per short
+ * transaction, so a large category never holds locks on {@code products} for longer than one chunk
+ * takes. Chunks are taken in product id order and each one records how far it got in
+ * {@code category_delete_jobs} in the same transaction, so a delete cut short by a crash carries on
+ * from there the next time the deleter starts. The category row goes last, in one transaction that
+ * only succeeds once no product refers to it.
+ *
+ * <p>Sales history is kept: it is the record of what was sold. Each deleted product's name and
+ * category are written to {@code deleted_products} in the chunk that deletes it, so its
+ * {@code purchase_history} rows stay attributable after the product row is gone. The reports join
+ * {@code products} and leave them out, as they do for any deleted product.
+ */
+public class CategoryDeleter {
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    public static final long DEFAULT_PAUSE_MILLIS = 50;
+
+    static final String JOB_TABLE = "category_delete_jobs";
+    static final String TOMBSTONE_TABLE = "deleted_products";
+
+    static final String COUNT_SQL = "SELECT COUNT(*) FROM products WHERE category_id = ?";
+    // Ordered by the whole of products_category, or the index isn't seen to give the order
+    static final String NEXT_CHUNK_SQL =
+        "SELECT id FROM products WHERE category_id = ? AND id > ? ORDER BY category_id, id LIMIT ?";
+    static final String REMOVE_SQL =
+        "DELETE FROM categories WHERE id = ? AND NOT EXISTS (SELECT 1 FROM products WHERE category_id = ?)";
+
+    private static volatile CategoryDeleter instance;
+
+    private final DataSource dataSource;
+    private final CatalogCache catalog;
+    private final StockLedger ledger;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final List<CategoryDeleteListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Integer, CompletableFuture<Boolean>> running = new HashMap<>();
+    private final Map<Integer, Progress> progress = new HashMap<>();
+    // One delete at a time, so a second large category doesn't double the load on the tills
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "inventory-category-delete");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** {@code ledger} may be null when stock lives only in {@code products.quantity}. */
+    public CategoryDeleter(DataSource dataSource, CatalogCache catalog, StockLedger ledger, int chunkSize,
+                           long pauseMillis) throws SQLException {
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.ledger = ledger;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /** The shared deleter; deletes a previous run left unfinished are resumed. */
+    public static CategoryDeleter getInstance() throws SQLException {
+        CategoryDeleter deleter = instance;
+        if (deleter == null) {
+            synchronized (CategoryDeleter.class) {
+                deleter = instance;
+                if (deleter == null) {
+                    deleter = new CategoryDeleter(DatabaseConnection.getDataSource(), CatalogCache.getInstance(),
+                        StockLedger.getInstance(),
+                        Integer.getInteger("inventory.categoryDelete.chunkSize", DEFAULT_CHUNK_SIZE),
+                        Long.getLong("inventory.categoryDelete.pauseMillis", DEFAULT_PAUSE_MILLIS));
+                    deleter.resumePending();
+                    instance = deleter;
+                }
+            }
+        }
+        return deleter;
+    }
+
+    public void addListener(CategoryDeleteListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CategoryDeleteListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts deleting the category, or returns the delete already under way. Completes with false
+     * if the category didn't exist.
+     */
+    public synchronized CompletableFuture<Boolean> delete(int categoryId) {
+        CompletableFuture<Boolean> result = running.get(categoryId);
+        if (result != null) {
+            return result;
+        }
+        CompletableFuture<Boolean> started = new CompletableFuture<>();
+        running.put(categoryId, started);
+        worker.execute(() -> {
+            try {
+                started.complete(run(categoryId));
+            } catch (Exception e) {
+                report(new Progress(progressOf(categoryId), e));
+                started.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    running.remove(categoryId);
+                    progress.remove(categoryId);
+                }
+            }
+        });
+        return started;
+    }
+
+    /** Queues every delete recorded in {@code category_delete_jobs}; they continue where they stopped. */
+    public void resumePending() throws SQLException {
+        List<Integer> pending = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT category_id FROM " + JOB_TABLE + " ORDER BY started_at");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                pending.add(rs.getInt(1));
+            }
+        }
+        for (int categoryId : pending) {
+            delete(categoryId).exceptionally(e -> {
+                System.err.println("Resumed delete of category " + categoryId + " failed: " + e);
+                return false;
+            });
+        }
+    }
+
+    /** Deletes under way, by category id. */
+    public synchronized List<Progress> getProgress() {
+        List<Progress> snapshot = new ArrayList<>(progress.values());
+        snapshot.sort((a, b) -> Integer.compare(a.categoryId, b.categoryId));
+        return Collections.unmodifiableList(snapshot);
+    }
+
+    private boolean run(int categoryId) throws SQLException, InterruptedException {
+        Progress current = start(categoryId);
+        if (current == null) {
+            return false;
+        }
+        report(current);
+        int lastProductId = current.lastProductId;
+        while (true) {
+            List<Integer> chunk = nextChunk(categoryId, lastProductId);
+            if (chunk.isEmpty()) {
+                Boolean removed = removeCategory(categoryId);
+                if (removed != null) {
+                    report(new Progress(current, true));
+                    return removed;
+                }
+                // Products were added to or moved into the category meanwhile; go round again
+                lastProductId = 0;
+                continue;
+            }
+            List<Integer> deleted = deleteChunk(current, chunk);
+            lastProductId = chunk.get(chunk.size() - 1);
+            catalog.productsRemoved(deleted);
+            if (ledger != null) {
+                for (int productId : deleted) {
+                    ledger.forget(productId);
+                }
+            }
+            current = new Progress(current, lastProductId, current.deleted + deleted.size());
+            report(current);
+            if (pauseMillis > 0) {
+                // Leaves the tills a gap between chunks to get their own writes in
+                Thread.sleep(pauseMillis);
+            }
+        }
+    }
+
+    /** Records the job, or reads back the one a previous run left; null if there is no such category. */
+    private Progress start(int categoryId) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT category_name, last_product_id, " +
+                         "products_deleted, products_total FROM " + JOB_TABLE + " WHERE category_id = ?")) {
+                    pstmt.setInt(1, categoryId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (rs.next()) {
+                            Progress resumed = new Progress(categoryId, rs.getString(1), rs.getInt(2), rs.getInt(3),
+                                rs.getInt(4), false, null);
+                            conn.commit();
+                            return resumed;
+                        }
+                    }
+                }
+                String name;
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT name FROM categories WHERE id = ? FOR UPDATE")) {
+                    pstmt.setInt(1, categoryId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.commit();
+                            return null;
+                        }
+                        name = rs.getString(1);
+                    }
+                }
+                int total;
+                try (PreparedStatement pstmt = conn.prepareStatement(COUNT_SQL)) {
+                    pstmt.setInt(1, categoryId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        rs.next();
+                        total = rs.getInt(1);
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + JOB_TABLE + " (category_id, " +
+                         "category_name, last_product_id, products_deleted, products_total, started_at) VALUES (?, ?, 0, 0, ?, ?)")) {
+                    pstmt.setInt(1, categoryId);
+                    pstmt.setString(2, name);
+                    pstmt.setInt(3, total);
+                    pstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+                return new Progress(categoryId, name, 0, 0, total, false, null);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // A plain read outside any transaction, so finding the next chunk locks nothing
+    private List<Integer> nextChunk(int categoryId, int afterProductId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(NEXT_CHUNK_SQL)) {
+            pstmt.setInt(1, categoryId);
+            pstmt.setInt(2, afterProductId);
+            pstmt.setInt(3, chunkSize);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Tombstones and deletes the chunk's products, by id so only their rows are locked, and moves the
+     * job past them in the same transaction. Products moved out of the category meanwhile are left.
+     * Returns the ids actually deleted.
+     */
+    private List<Integer> deleteChunk(Progress job, List<Integer> chunk) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Locked until commit, so none of them can move out between here and the delete
+                List<Integer> deleted = new ArrayList<>();
+                try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM products WHERE category_id = ? " +
+                         "AND id IN (" + placeholders(chunk.size()) + ") FOR UPDATE")) {
+                    pstmt.setInt(1, job.categoryId);
+                    bind(pstmt, 2, chunk);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            deleted.add(rs.getInt(1));
+                        }
+                    }
+                }
+                if (!deleted.isEmpty()) {
+                    String ids = placeholders(deleted.size());
+                    try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + TOMBSTONE_TABLE +
+                             " (product_id, name, category_id, category_name, deleted_at) SELECT id, name, category_id, ?, ? " +
+                             "FROM products WHERE id IN (" + ids + ")")) {
+                        pstmt.setString(1, job.categoryName);
+                        pstmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                        bind(pstmt, 3, deleted);
+                        pstmt.executeUpdate();
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM products WHERE id IN (" + ids + ")")) {
+                        bind(pstmt, 1, deleted);
+                        pstmt.executeUpdate();
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("UPDATE " + JOB_TABLE +
+                         " SET last_product_id = ?, products_deleted = products_deleted + ? WHERE category_id = ?")) {
+                    pstmt.setInt(1, chunk.get(chunk.size() - 1));
+                    pstmt.setInt(2, deleted.size());
+                    pstmt.setInt(3, job.categoryId);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+                return deleted;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Deletes the category and its job in one transaction if no product is left in it. Returns
+     * whether the category existed, or null if products remain.
+     */
+    private Boolean removeCategory(int categoryId) throws SQLException {
+        int removed;
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement(REMOVE_SQL)) {
+                    pstmt.setInt(1, categoryId);
+                    pstmt.setInt(2, categoryId);
+                    removed = pstmt.executeUpdate();
+                }
+                if (removed == 0) {
+                    try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM categories WHERE id = ?")) {
+                        pstmt.setInt(1, categoryId);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            if (rs.next()) {
+                                conn.rollback();
+                                return null;
+                            }
+                        }
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + JOB_TABLE + " WHERE category_id = ?")) {
+                    pstmt.setInt(1, categoryId);
+                    pstmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        // Drops whatever the catalog still holds for it and tells the panels
+        for (int productId : catalog.categoryRemoved(categoryId)) {
+            if (ledger != null) {
+                ledger.forget(productId);
+            }
+        }
+        return removed > 0;
+    }
+
+    private synchronized Progress progressOf(int categoryId) {
+        Progress current = progress.get(categoryId);
+        return current != null ? current : new Progress(categoryId, "", 0, 0, 0, false, null);
+    }
+
+    private void report(Progress current) {
+        synchronized (this) {
+            progress.put(current.categoryId, current);
+        }
+        for (CategoryDeleteListener listener : listeners) {
+            try {
+                listener.progressed(current);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void bind(PreparedStatement pstmt, int first, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            pstmt.setInt(first + i, ids.get(i));
+        }
+    }
+
+    /** How far a category delete has got. */
+    public static final class Progress {
+        private final int categoryId;
+        private final String categoryName;
+        private final int lastProductId;
+        private final int deleted;
+        private final int total;
+        private final boolean finished;
+        private final Exception failure;
+
+        Progress(int categoryId, String categoryName, int lastProductId, int deleted, int total, boolean finished,
+                 Exception failure) {
+            this.categoryId = categoryId;
+            this.categoryName = categoryName;
+            this.lastProductId = lastProductId;
+            this.deleted = deleted;
+            this.total = total;
+            this.finished = finished;
+            this.failure = failure;
+        }
+
+        Progress(Progress previous, int lastProductId, int deleted) {
+            this(previous.categoryId, previous.categoryName, lastProductId, deleted, previous.total, false, null);
+        }
+
+        Progress(Progress previous, boolean finished) {
+            this(previous.categoryId, previous.categoryName, previous.lastProductId, previous.deleted, previous.total,
+                finished, null);
+        }
+
+        Progress(Progress previous, Exception failure) {
+            this(previous.categoryId, previous.categoryName, previous.lastProductId, previous.deleted, previous.total,
+                true, failure);
+        }
+
+        public int getCategoryId() { return categoryId; }
+        public String getCategoryName() { return categoryName; }
+        public int getDeleted() { return deleted; }
+        /** Products in the category when the delete started; more may be found if some are added meanwhile. */
+        public int getTotal() { return total; }
+        public boolean isFinished() { return finished; }
+        /** Why the delete stopped, or null; it resumes from the last chunk when retried or on restart. */
+        public Exception getFailure() { return failure; }
+    }
+}
@@ -3,13 +3,15 @@ package com.inventory;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.sql.*;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class CategoryPanel extends JPanel {
     private JTextField nameField;
     private JButton addButton, updateButton, deleteButton;
     private JTable categoryTable;
     private DefaultTableModel tableModel;
+    private JLabel deleteProgressLabel;
 
     public CategoryPanel() {
         setLayout(new BorderLayout());
@@ -28,6 +30,8 @@ public class CategoryPanel extends JPanel {
         buttonPanel.add(addButton);
         buttonPanel.add(updateButton);
         buttonPanel.add(deleteButton);
+        deleteProgressLabel = new JLabel(" ");
+        buttonPanel.add(deleteProgressLabel);
 
         tableModel = new DefaultTableModel(new Object[]{"ID", "Name"}, 0);
         categoryTable = new JTable(tableModel);
@@ -39,20 +43,67 @@ public class CategoryPanel extends JPanel {
 
         loadCategories();
         setupListeners();
+        ChangeBus.getInstance().subscribe(this::applyChanges);
+        followDeletes();
+    }
+
+    // Includes deletes resumed at startup, not only the ones started here
+    private void followDeletes() {
+        DataTaskExecutor.getInstance().run("Loading category deletes", context -> CategoryDeleter.getInstance(), deleter -> {
+            deleter.addListener(progress -> SwingUtilities.invokeLater(() -> showDeleteProgress(progress)));
+            for (CategoryDeleter.Progress progress : deleter.getProgress()) {
+                showDeleteProgress(progress);
+            }
+        }, showError("Error loading category deletes: "));
+    }
+
+    private void showDeleteProgress(CategoryDeleter.Progress progress) {
+        if (progress.getFailure() != null) {
+            deleteProgressLabel.setText(String.format("Deleting '%s' stopped after %d of %d products; delete again to resume",
+                progress.getCategoryName(), progress.getDeleted(), progress.getTotal()));
+        } else if (progress.isFinished()) {
+            deleteProgressLabel.setText(" ");
+        } else {
+            deleteProgressLabel.setText(String.format("Deleting '%s': %d of %d products",
+                progress.getCategoryName(), progress.getDeleted(), progress.getTotal()));
+        }
     }
 
     private void loadCategories() {
-        tableModel.setRowCount(0);
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, name FROM categories ORDER BY name")) {
+        DataTaskExecutor.getInstance().coalesce("categories.table", "Loading categories",
+            context -> InventoryService.getInstance().getCategories(), categories -> {
+                tableModel.setRowCount(0);
+                for (Category category : categories) {
+                    tableModel.addRow(new Object[]{category.getId(), category.getName()});
+                }
+            }, showError("Error loading categories: "));
+    }
 
-            while (rs.next()) {
-                tableModel.addRow(new Object[]{rs.getInt("id"), rs.getString("name")});
+    private void applyChanges(List<CatalogEvent> events) {
+        for (CatalogEvent event : events) {
+            Category category = event.getCategory();
+            switch (event.getType()) {
+                case CATEGORY_ADDED:
+                    tableModel.addRow(new Object[]{category.getId(), category.getName()});
+                    break;
+                case CATEGORY_RENAMED:
+                    int row = findRow(category.getId());
+                    if (row != -1) {
+                        tableModel.setValueAt(category.getName(), row, 1);
+                    }
+                    break;
+                case CATEGORY_DELETED:
+                    row = findRow(category.getId());
+                    if (row != -1) {
+                        tableModel.removeRow(row);
+                    }
+                    break;
+                case RELOADED:
+                    loadCategories();
+                    break;
+                default:
+                    break;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading categories: " + e.getMessage());
         }
     }
 
@@ -78,28 +129,10 @@ public class CategoryPanel extends JPanel {
             return;
         }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO categories (name) VALUES (?)",
-                 Statement.RETURN_GENERATED_KEYS)) {
-
-            pstmt.setString(1, name);
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows > 0) {
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        int id = generatedKeys.getInt(1);
-                        tableModel.addRow(new Object[]{id, name});
-                        nameField.setText("");
-                        JOptionPane.showMessageDialog(this, "Category added successfully");
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error adding category: " + e.getMessage());
-        }
+        DataTaskExecutor.getInstance().run("Adding category", context -> InventoryService.getInstance().addCategory(name), category -> {
+            nameField.setText("");
+            JOptionPane.showMessageDialog(this, "Category added successfully");
+        }, showError("Error adding category: "));
     }
 
     private void updateCategory() {
@@ -117,23 +150,12 @@ public class CategoryPanel extends JPanel {
             return;
         }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "UPDATE categories SET name = ? WHERE id = ?")) {
-
-            pstmt.setString(1, name);
-            pstmt.setInt(2, id);
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows > 0) {
-                tableModel.setValueAt(name, selectedRow, 1);
+        DataTaskExecutor.getInstance().run("Updating category", context -> InventoryService.getInstance().renameCategory(id, name), renamed -> {
+            if (renamed) {
                 nameField.setText("");
                 JOptionPane.showMessageDialog(this, "Category updated successfully");
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error updating category: " + e.getMessage());
-        }
+        }, showError("Error updating category: "));
     }
 
     private void deleteCategory() {
@@ -148,35 +170,35 @@ public class CategoryPanel extends JPanel {
 
         int confirm = JOptionPane.showConfirmDialog(this,
             "Are you sure you want to delete the category '" + name + "'?\n" +
-            "This will also delete all products in this category.",
+            "This will also delete all products in this category, in the background.\n" +
+            "Sales history is kept.",
             "Confirm Delete",
             JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            try (Connection conn = DatabaseConnection.getConnection()) {
-                // First, delete all products in this category
-                try (PreparedStatement pstmt = conn.prepareStatement(
-                    "DELETE FROM products WHERE category_id = ?")) {
-                    pstmt.setInt(1, id);
-                    pstmt.executeUpdate();
+            DataTaskExecutor.getInstance().run("Deleting category", context -> InventoryService.getInstance().deleteCategory(id), deleted -> {
+                if (deleted) {
+                    nameField.setText("");
+                    JOptionPane.showMessageDialog(this, "Category and associated products deleted successfully");
                 }
+            }, showError("Error deleting category: "));
+        }
+    }
 
-                // Then, delete the category
-                try (PreparedStatement pstmt = conn.prepareStatement(
-                    "DELETE FROM categories WHERE id = ?")) {
-                    pstmt.setInt(1, id);
-                    int affectedRows = pstmt.executeUpdate();
-
-                    if (affectedRows > 0) {
-                        tableModel.removeRow(selectedRow);
-                        nameField.setText("");
-                        JOptionPane.showMessageDialog(this, "Category and associated products deleted successfully");
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Error deleting category: " + e.getMessage());
+    // Rows can move while a write is in flight (e.g. a reload finished), so look them up again by id
+    private int findRow(int id) {
+        for (int row = 0; row < tableModel.getRowCount(); row++) {
+            if ((int) tableModel.getValueAt(row, 0) == id) {
+                return row;
             }
         }
+        return -1;
+    }
+
+    private Consumer<Exception> showError(String message) {
+        return e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, message + e.getMessage());
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,150 @@
+package com.inventory;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers catalog changes to the panels as typed deltas, so each one can patch the rows that
+ * changed instead of reloading. The shared {@link CatalogCache} publishes here from whichever thread
+ * wrote; subscribers get everything published during one frame (~16ms) as a single list on the EDT,
+ * with repeated changes to the same product or category merged into one event.
+ *
+ * <p>During a bulk change, such as an import, nothing is delivered until it ends; subscribers then
+ * get everything it changed as one list, or a single {@link CatalogEvent.Type#RELOADED} once more
+ * than {@value #MAX_HELD_EVENTS} rows changed, and so redraw once rather than every frame.
+ */
+public final class ChangeBus implements CatalogListener {
+    private static final int FRAME_MILLIS = 16;
+    static final int MAX_HELD_EVENTS = 1000;
+
+    private static final ChangeBus INSTANCE = new ChangeBus();
+
+    private final List<Consumer<List<CatalogEvent>>> subscribers = new CopyOnWriteArrayList<>();
+    // Keyed by product or category id, in the order each row first changed this frame
+    private final Map<Object, CatalogEvent> pending = new LinkedHashMap<>();
+    private final Timer timer;
+    private boolean scheduled;
+    // Bulk changes in progress; deliveries wait until there are none
+    private int held;
+
+    private ChangeBus() {
+        timer = new Timer(FRAME_MILLIS, e -> flush());
+        timer.setRepeats(false);
+    }
+
+    public static ChangeBus getInstance() {
+        return INSTANCE;
+    }
+
+    /** {@code subscriber} is called on the EDT with each frame's changes, oldest first. */
+    public void subscribe(Consumer<List<CatalogEvent>> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<List<CatalogEvent>> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public void productChanged(Product before, Product after) {
+        publish(CatalogEvent.product(before, after));
+    }
+
+    @Override
+    public void categoryChanged(Category before, Category after) {
+        CatalogEvent event = CatalogEvent.category(before, after);
+        if (event != null) {
+            publish(event);
+        }
+    }
+
+    @Override
+    public void catalogReloaded() {
+        publish(CatalogEvent.reloaded());
+    }
+
+    @Override
+    public void bulkChangeStarted() {
+        synchronized (pending) {
+            held++;
+        }
+    }
+
+    @Override
+    public void bulkChangeFinished() {
+        synchronized (pending) {
+            held--;
+            if (held > 0 || scheduled || pending.isEmpty()) {
+                return;
+            }
+            scheduled = true;
+        }
+        SwingUtilities.invokeLater(timer::restart);
+    }
+
+    void publish(CatalogEvent event) {
+        if (subscribers.isEmpty()) {
+            // Headless, e.g. the server: nobody to tell, and no reason to start the EDT
+            return;
+        }
+        synchronized (pending) {
+            if (event.getType() == CatalogEvent.Type.RELOADED) {
+                // Subscribers re-read everything anyway, so earlier deltas are moot
+                pending.clear();
+                pending.put(CatalogEvent.Type.RELOADED, event);
+            } else if (held > 0 && pending.containsKey(CatalogEvent.Type.RELOADED)) {
+                // Delivered after the bulk change, when the reload reads this change anyway
+                return;
+            } else {
+                Object key = event.isProductEvent() ? event.getProduct().getId() : "category-" + event.getCategory().getId();
+                CatalogEvent previous = pending.get(key);
+                CatalogEvent merged = previous == null ? event : previous.then(event);
+                if (merged == null) {
+                    pending.remove(key);
+                } else {
+                    pending.put(key, merged);
+                }
+            }
+            if (held > 0) {
+                if (pending.size() > MAX_HELD_EVENTS) {
+                    pending.clear();
+                    pending.put(CatalogEvent.Type.RELOADED, CatalogEvent.reloaded());
+                }
+                return;
+            }
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        SwingUtilities.invokeLater(timer::restart);
+    }
+
+    private void flush() {
+        List<CatalogEvent> events;
+        synchronized (pending) {
+            scheduled = false;
+            if (held > 0) {
+                // The frame was scheduled before a bulk change began; bulkChangeFinished schedules the next
+                return;
+            }
+            events = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        for (Consumer<List<CatalogEvent>> subscriber : subscribers) {
+            try {
+                subscriber.accept(events);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.inventory;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Time a caller spent waiting for a pooled connection, including any physical connect. */
+@Name("com.inventory.ConnectionAcquire")
+@Label("Connection Acquire")
+@Category({"Inventory", "Database"})
+@Description("Borrowing a connection from the pool")
+final class ConnectionAcquireEvent extends jdk.jfr.Event {
+    @Label("Active Connections")
+    int active;
+
+    @Label("Idle Connections")
+    int idle;
+}
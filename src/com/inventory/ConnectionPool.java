@@ -0,0 +1,684 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A small fixed-bound JDBC connection pool. Connections handed out by {@link #getConnection()} are
+ * proxies: closing one returns the physical connection to the pool, and prepared statements are
+ * cached per physical connection so repeated queries skip the server-side prepare.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+    private final PoolConfig config;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final LongAdder borrowTimeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder connectionsEvicted = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(PoolConfig config) throws SQLException {
+        this.config = config;
+        if (config.getDriverClassName() != null) {
+            try {
+                Class.forName(config.getDriverClassName());
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("JDBC driver not found: " + config.getDriverClassName(), e);
+            }
+        }
+        this.permits = new Semaphore(config.getMaxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, config.getIdleTimeoutMillis() / 2);
+        housekeeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        housekeeper.execute(this::fillToMinIdle);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed", "08003");
+        }
+        SqlMetrics metrics = config.getMetrics();
+        ConnectionAcquireEvent event = metrics == null ? null : new ConnectionAcquireEvent();
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + config.getBorrowTimeoutMillis()
+                    + "ms waiting for a database connection (" + getStats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = openPhysical();
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        long waited = System.nanoTime() - start;
+        borrowCount.increment();
+        borrowWaitNanos.add(waited);
+        maxBorrowWaitNanos.accumulateAndGet(waited, Math::max);
+        int activeNow = active.incrementAndGet();
+        if (metrics == null) {
+            return pooled.borrow();
+        }
+        metrics.connectionAcquired(waited);
+        if (event.shouldCommit()) {
+            event.active = activeNow;
+            event.idle = idle.size();
+            event.commit();
+        }
+        return InstrumentedConnection.wrap(pooled.borrow(), metrics);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials");
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(active.get(), idle.size(), config.getMaxSize(),
+            borrowCount.sum(), borrowWaitNanos.sum(), maxBorrowWaitNanos.get(), borrowTimeouts.sum(),
+            connectionsCreated.sum(), connectionsEvicted.sum(),
+            statementCacheHits.sum(), statementCacheMisses.sum());
+    }
+
+    public PoolConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (pooled.isAlive()) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection openPhysical() throws SQLException {
+        Connection physical = DriverManager.getConnection(config.getUrl(), config.getUser(), config.getPassword());
+        PooledConnection pooled;
+        try {
+            pooled = new PooledConnection(physical);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                physical.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        total.incrementAndGet();
+        connectionsCreated.increment();
+        return pooled;
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (closed || pooled.broken || !pooled.reset()) {
+                discard(pooled);
+            } else {
+                pooled.lastUsedNanos = System.nanoTime();
+                // LIFO keeps the hot connections hot and lets the cold tail age out.
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        connectionsEvicted.increment();
+        pooled.closePhysical();
+    }
+
+    private void evictIdle() {
+        try {
+            long now = System.nanoTime();
+            long timeout = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > config.getMinIdle()) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsedNanos > timeout && idle.remove(pooled)) {
+                    discard(pooled);
+                }
+            }
+            fillToMinIdle();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void fillToMinIdle() {
+        while (!closed && idle.size() < config.getMinIdle()) {
+            if (total.get() >= config.getMaxSize()) {
+                return;
+            }
+            // Opening takes a permit as a borrower would, so a fill racing borrowers can't push
+            // the pool past maxSize; if none is free the pool is busy and needs no idle ones.
+            if (!permits.tryAcquire()) {
+                return;
+            }
+            try {
+                PooledConnection pooled = openPhysical();
+                pooled.lastUsedNanos = System.nanoTime();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                // The database may simply not be up yet; the next housekeeping cycle retries.
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private static boolean isDisconnect(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private final Map<String, CachedStatement> statementCache;
+        // The session as the driver opened it, for check-in to put back
+        private final int defaultIsolation;
+        private final String defaultCatalog;
+        private final String defaultSchema;
+        private volatile long lastUsedNanos = System.nanoTime();
+        private volatile boolean broken;
+        private boolean autoCommitChanged;
+        private boolean readOnlyChanged;
+        private boolean isolationChanged;
+        private boolean catalogChanged;
+        private boolean schemaChanged;
+
+        PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.defaultIsolation = physical.getTransactionIsolation();
+            this.defaultCatalog = physical.getCatalog();
+            this.defaultSchema = physical.getSchema();
+            this.statementCache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= config.getStatementCacheSize()) {
+                        return false;
+                    }
+                    eldest.getValue().evict();
+                    return true;
+                }
+            };
+        }
+
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(this));
+        }
+
+        boolean isAlive() {
+            // Even a connection used a moment ago may have been dropped by the server since
+            try {
+                return physical.isValid(config.getValidationTimeoutSeconds());
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /** Puts back every session setting a borrower changed; false if one can't be, and the connection must go. */
+        boolean reset() {
+            try {
+                if (autoCommitChanged && !physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (readOnlyChanged) {
+                    physical.setReadOnly(false);
+                }
+                // After the rollback: some drivers refuse to change isolation inside a transaction
+                if (isolationChanged) {
+                    physical.setTransactionIsolation(defaultIsolation);
+                }
+                if (catalogChanged || schemaChanged) {
+                    if ((catalogChanged && defaultCatalog == null) || (schemaChanged && defaultSchema == null)) {
+                        return false;
+                    }
+                    if (catalogChanged) {
+                        physical.setCatalog(defaultCatalog);
+                    }
+                    if (schemaChanged) {
+                        physical.setSchema(defaultSchema);
+                    }
+                    evictStatements();
+                }
+                autoCommitChanged = false;
+                readOnlyChanged = false;
+                isolationChanged = false;
+                catalogChanged = false;
+                schemaChanged = false;
+                physical.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        // Cached statements resolved their table names in the catalog and schema they were prepared in
+        void evictStatements() {
+            for (CachedStatement cached : statementCache.values()) {
+                cached.evict();
+            }
+            statementCache.clear();
+        }
+
+        PreparedStatement prepareCached(String key, Object[] args, Connection owner) throws SQLException {
+            CachedStatement cached = statementCache.get(key);
+            if (cached != null && cached.evicted && !cached.inUse) {
+                // Closed at checkin; prepare it afresh
+                statementCache.remove(key);
+                cached = null;
+            }
+            if (cached == null || cached.inUse) {
+                statementCacheMisses.increment();
+                PreparedStatement statement = args.length == 1
+                    ? physical.prepareStatement((String) args[0])
+                    : physical.prepareStatement((String) args[0], (Integer) args[1]);
+                if (cached != null) {
+                    // Same SQL already open on this connection: hand out a throwaway statement.
+                    return statement;
+                }
+                cached = new CachedStatement(statement);
+                statementCache.put(key, cached);
+            } else {
+                statementCacheHits.increment();
+            }
+            cached.inUse = true;
+            return cached.checkout(owner);
+        }
+
+        void closePhysical() {
+            evictStatements();
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+                // Already gone; nothing to return.
+            }
+        }
+    }
+
+    private final class CachedStatement {
+        private final PreparedStatement physical;
+        private boolean inUse;
+        private boolean evicted;
+        // A borrower's changes to the statement's settings, as the values to put back at checkin;
+        // null where it left the setting alone
+        private Integer fetchSize;
+        private Integer fetchDirection;
+        private Integer maxRows;
+        private Integer maxFieldSize;
+        private Integer queryTimeout;
+        private boolean unrestorable;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement checkout(Connection owner) {
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(this, owner));
+        }
+
+        /** Remembers what {@code setter} is about to change, so checkin can put it back. */
+        void settingChanged(String setter) throws SQLException {
+            switch (setter) {
+                case "setFetchSize":
+                    if (fetchSize == null) {
+                        fetchSize = physical.getFetchSize();
+                    }
+                    break;
+                case "setFetchDirection":
+                    if (fetchDirection == null) {
+                        fetchDirection = physical.getFetchDirection();
+                    }
+                    break;
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                    if (maxRows == null) {
+                        maxRows = physical.getMaxRows();
+                    }
+                    break;
+                case "setMaxFieldSize":
+                    if (maxFieldSize == null) {
+                        maxFieldSize = physical.getMaxFieldSize();
+                    }
+                    break;
+                case "setQueryTimeout":
+                    if (queryTimeout == null) {
+                        queryTimeout = physical.getQueryTimeout();
+                    }
+                    break;
+                case "setEscapeProcessing":
+                case "setCursorName":
+                case "setPoolable":
+                case "closeOnCompletion":
+                    // No getter to read the old value back from, so the statement isn't reused
+                    unrestorable = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void checkin() {
+            inUse = false;
+            if (evicted || unrestorable) {
+                evicted = true;
+                closeQuietly();
+                return;
+            }
+            try {
+                physical.clearParameters();
+                physical.clearBatch();
+                restoreSettings();
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        // The next borrower must get the statement as prepareStatement would have made it. Max
+        // rows goes back first: a driver may refuse a fetch size above a max rows still in force.
+        private void restoreSettings() throws SQLException {
+            if (maxRows != null) {
+                physical.setMaxRows(maxRows);
+                maxRows = null;
+            }
+            if (maxFieldSize != null) {
+                physical.setMaxFieldSize(maxFieldSize);
+                maxFieldSize = null;
+            }
+            if (queryTimeout != null) {
+                physical.setQueryTimeout(queryTimeout);
+                queryTimeout = null;
+            }
+            if (fetchDirection != null) {
+                physical.setFetchDirection(fetchDirection);
+                fetchDirection = null;
+            }
+            if (fetchSize != null) {
+                physical.setFetchSize(fetchSize);
+                fetchSize = null;
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+                // Closing a dead statement is harmless.
+            }
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection owner;
+        private final List<ResultSet> openResults = new ArrayList<>(1);
+        private boolean closed;
+
+        StatementHandler(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    logicalClose();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + cached.physical;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            if (method.getDeclaringClass() == Statement.class) {
+                cached.settingChanged(method.getName());
+            }
+            Object result = ConnectionPool.invoke(cached.physical, method, args);
+            if (result instanceof ResultSet) {
+                openResults.add((ResultSet) result);
+            }
+            return result;
+        }
+
+        void logicalClose() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (ResultSet rs : openResults) {
+                try {
+                    rs.close();
+                } catch (SQLException ignored) {
+                    // The statement itself is reset below.
+                }
+            }
+            openResults.clear();
+            cached.checkin();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final List<Statement> openStatements = new ArrayList<>();
+        private boolean closed;
+
+        ConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    logicalClose();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed", "08003");
+            }
+            try {
+                if (name.equals("prepareStatement") && isCacheable(args)) {
+                    String key = args.length == 1 ? (String) args[0] : args[1] + "|" + args[0];
+                    PreparedStatement statement = pooled.prepareCached(key, args, (Connection) proxy);
+                    openStatements.add(statement);
+                    return statement;
+                }
+                if (name.equals("setAutoCommit")) {
+                    pooled.autoCommitChanged = true;
+                } else if (name.equals("setReadOnly")) {
+                    pooled.readOnlyChanged = true;
+                } else if (name.equals("setTransactionIsolation")) {
+                    pooled.isolationChanged = true;
+                } else if (name.equals("setCatalog")) {
+                    pooled.catalogChanged = true;
+                    pooled.evictStatements();
+                } else if (name.equals("setSchema")) {
+                    pooled.schemaChanged = true;
+                    pooled.evictStatements();
+                }
+                Object result = ConnectionPool.invoke(pooled.physical, method, args);
+                if (result instanceof Statement) {
+                    openStatements.add((Statement) result);
+                }
+                return result;
+            } catch (SQLException e) {
+                if (isDisconnect(e)) {
+                    pooled.broken = true;
+                }
+                throw e;
+            }
+        }
+
+        private boolean isCacheable(Object[] args) {
+            return config.getStatementCacheSize() > 0
+                && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer));
+        }
+
+        private void logicalClose() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // Statements on a broken connection are discarded with it.
+                }
+            }
+            openStatements.clear();
+            release(pooled);
+        }
+    }
+}
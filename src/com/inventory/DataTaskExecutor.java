@@ -0,0 +1,262 @@
+package com.inventory;
+
+import javax.swing.*;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs JDBC work off the Swing event dispatch thread and hands results back on the EDT.
+ *
+ * <p>Reads are submitted under a key. A newer submission with the same key supersedes the older
+ * one: {@link #submitLatest} cancels whatever is in flight, while {@link #coalesce} simply joins a
+ * request that has not started yet. A superseded task never delivers its result to the UI.
+ *
+ * <p>Tasks run on one thread per pooled connection; any more would only queue for a connection.
+ */
+public class DataTaskExecutor {
+    private static final DataTaskExecutor INSTANCE = new DataTaskExecutor();
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    public interface Task<T> {
+        T run(Context context) throws Exception;
+    }
+
+    public interface ActivityListener {
+        /** Called on the EDT whenever the number of outstanding tasks changes. */
+        void activityChanged(int pendingTasks, String description);
+    }
+
+    /**
+     * Cancellation handle passed to a running task. Statements registered with {@link #track} are
+     * cancelled on the server when the task is superseded, so a stale report stops consuming the
+     * database instead of running to completion.
+     */
+    public static final class Context {
+        private final List<Statement> statements = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void checkCancelled() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+
+        public <S extends Statement> S track(S statement) {
+            statements.add(statement);
+            if (cancelled) {
+                cancelQuietly(statement);
+            }
+            return statement;
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (Statement statement : statements) {
+                cancelQuietly(statement);
+            }
+        }
+
+        private static void cancelQuietly(Statement statement) {
+            try {
+                statement.cancel();
+            } catch (SQLException ignored) {
+                // Already finished or closed.
+            }
+        }
+    }
+
+    private final ExecutorService executor = newExecutor("inventory-data-", connectionThreads());
+    private final ConcurrentHashMap<String, Handle<?>> latest = new ConcurrentHashMap<>();
+    private final List<ActivityListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public static DataTaskExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /** Runs a one-off task, such as an insert or update, that must never be dropped. */
+    public <T> void run(String description, Task<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        start(new Handle<>(null, description, task, onSuccess, onError));
+    }
+
+    /** Runs a task and cancels any earlier task with the same key that has not finished. */
+    public <T> void submitLatest(String key, String description, Task<T> task,
+                                 Consumer<T> onSuccess, Consumer<Exception> onError) {
+        Handle<T> handle = new Handle<>(key, description, task, onSuccess, onError);
+        Handle<?> previous = latest.put(key, handle);
+        if (previous != null) {
+            previous.cancel();
+        }
+        start(handle);
+    }
+
+    /**
+     * Like {@link #submitLatest}, but if a task with the same key is still queued the request is
+     * folded into it: that task has not read anything yet, so its result is just as fresh, and it
+     * is delivered to this caller's callbacks as well. Tasks sharing a key return the same type.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void coalesce(String key, String description, Task<T> task,
+                             Consumer<T> onSuccess, Consumer<Exception> onError) {
+        Handle<T> handle = new Handle<>(key, description, task, onSuccess, onError);
+        Handle<?> winner = latest.compute(key, (k, existing) ->
+            existing != null && ((Handle<T>) existing).join(onSuccess, onError) ? existing : handle);
+        if (winner != handle) {
+            return;
+        }
+        start(handle);
+    }
+
+    public void cancel(String key) {
+        Handle<?> handle = latest.remove(key);
+        if (handle != null) {
+            handle.cancel();
+        }
+    }
+
+    public void addActivityListener(ActivityListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeActivityListener(ActivityListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getPendingTasks() {
+        return pending.get();
+    }
+
+    private void start(Handle<?> handle) {
+        fireActivity(pending.incrementAndGet(), handle.description);
+        executor.execute(handle);
+    }
+
+    private void finished(String description) {
+        fireActivity(pending.decrementAndGet(), description);
+    }
+
+    private void fireActivity(int count, String description) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            for (ActivityListener listener : listeners) {
+                listener.activityChanged(count, description);
+            }
+        });
+    }
+
+    /**
+     * Up to {@code maxThreads} daemon threads, started as tasks arrive and stopped after a minute
+     * idle; tasks beyond that wait in line.
+     */
+    static ExecutorService newExecutor(String threadNamePrefix, int maxThreads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, threadNamePrefix + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** The connection pool's {@code inventory.db.pool.maxSize}, the most JDBC tasks that can run at once. */
+    static int connectionThreads() {
+        return PoolConfig.fromSystemProperties(null, null, null).getMaxSize();
+    }
+
+    private final class Handle<T> implements Runnable {
+        private final String key;
+        private final String description;
+        private final Task<T> task;
+        // Only added to while QUEUED, under the handle's lock
+        private final List<Consumer<T>> onSuccess = new ArrayList<>(1);
+        private final List<Consumer<Exception>> onError = new ArrayList<>(1);
+        private final Context context = new Context();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final AtomicBoolean counted = new AtomicBoolean(true);
+
+        Handle(String key, String description, Task<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+            this.key = key;
+            this.description = description;
+            this.task = task;
+            this.onSuccess.add(onSuccess);
+            this.onError.add(onError);
+        }
+
+        /** Adds another caller's callbacks, if the task has not started; false if it has. */
+        synchronized boolean join(Consumer<T> success, Consumer<Exception> error) {
+            if (state.get() != QUEUED) {
+                return false;
+            }
+            onSuccess.add(success);
+            onError.add(error);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (!state.compareAndSet(QUEUED, RUNNING)) {
+                    return;
+                }
+            }
+            try {
+                T result = task.run(context);
+                deliver(() -> onSuccess.forEach(callback -> callback.accept(result)));
+            } catch (CancellationException e) {
+                // Superseded by a newer request; nothing to report.
+            } catch (Exception e) {
+                deliver(() -> onError.forEach(callback -> callback.accept(e)));
+            } finally {
+                state.set(DONE);
+                if (key != null) {
+                    latest.remove(key, this);
+                }
+                release();
+            }
+        }
+
+        void cancel() {
+            context.cancel();
+            if (state.compareAndSet(QUEUED, DONE)) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (counted.compareAndSet(true, false)) {
+                finished(description);
+            }
+        }
+
+        private void deliver(Runnable callback) {
+            SwingUtilities.invokeLater(() -> {
+                if (!context.isCancelled()) {
+                    callback.run();
+                }
+            });
+        }
+    }
+}
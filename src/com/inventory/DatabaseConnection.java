@@ -1,34 +1,181 @@
 package com.inventory;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DatabaseConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/inventory_db?useSSL=false&serverTimezone=UTC";
+    private static final String URL = "jdbc:mysql://localhost:3306/inventory_db?useSSL=false&serverTimezone=UTC&cachePrepStmts=true&useServerPrepStmts=true&rewriteBatchedStatements=true";
     private static final String USER = "root";
     private static final String PASSWORD = "&Vishwa05&";
+    private static final String DRIVER = "com.mysql.cj.jdbc.Driver"; // Ensure this matches your MySQL Connector version
+
+    private static volatile ConnectionPool dataSource;
+    private static volatile ReplicaRouter replicaRouter;
+    private static volatile boolean replicasConfigured;
 
     public static Connection getConnection() throws SQLException {
-        try {
-            // Load MySQL JDBC Driver
-            Class.forName("com.mysql.cj.jdbc.Driver"); // Ensure this matches your MySQL Connector version
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-            throw new SQLException("MySQL Driver not found.", e);
+        // Borrow from the shared pool; closing the connection hands it back
+        return getDataSource().getConnection();
+    }
+
+    public static ConnectionPool getDataSource() throws SQLException {
+        ConnectionPool pool = dataSource;
+        if (pool == null) {
+            synchronized (DatabaseConnection.class) {
+                pool = dataSource;
+                if (pool == null) {
+                    pool = new ConnectionPool(configured(null));
+                    if (!"false".equalsIgnoreCase(System.getProperty("inventory.schema.migrate"))) {
+                        try {
+                            SchemaMigrations.migrate(pool);
+                        } catch (SQLException | RuntimeException e) {
+                            // Leave the pool unset so the next caller tries again
+                            pool.close();
+                            throw e;
+                        }
+                    }
+                    dataSource = pool;
+                }
+            }
         }
+        return pool;
+    }
+
+    /**
+     * A connection for read-only work that can lag the primary by up to
+     * {@code inventory.db.replicaMaxLagMillis}. Writes, and reads that must see them, use
+     * {@link #getConnection()}.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return getReadDataSource().getConnection();
+    }
 
-        // Establish and return the database connection
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+    /**
+     * The replica router when {@code inventory.db.replicas} lists read replicas, otherwise the
+     * shared pool.
+     */
+    public static DataSource getReadDataSource() throws SQLException {
+        ReplicaRouter router = getReplicaRouter();
+        return router != null ? router : getDataSource();
+    }
+
+    /** The replica router, or null when there are no replicas. */
+    public static ReplicaRouter getReplicaRouter() throws SQLException {
+        ReplicaRouter router = replicaRouter;
+        if (router == null && !replicasConfigured) {
+            ConnectionPool primary = getDataSource();
+            synchronized (DatabaseConnection.class) {
+                router = replicaRouter;
+                if (router == null && !replicasConfigured) {
+                    List<ConnectionPool> replicas = new ArrayList<>();
+                    try {
+                        for (String url : System.getProperty("inventory.db.replicas", "").split(",")) {
+                            if (!url.trim().isEmpty()) {
+                                replicas.add(new ConnectionPool(configured(url.trim())));
+                            }
+                        }
+                    } catch (SQLException e) {
+                        for (ConnectionPool replica : replicas) {
+                            replica.close();
+                        }
+                        throw e;
+                    }
+                    if (!replicas.isEmpty()) {
+                        router = new ReplicaRouter(primary, replicas,
+                            Long.getLong("inventory.db.replicaMaxLagMillis", ReplicaRouter.DEFAULT_MAX_LAG_MILLIS),
+                            Long.getLong("inventory.db.replicaCheckMillis", ReplicaRouter.DEFAULT_CHECK_MILLIS));
+                        replicaRouter = router;
+                    }
+                    replicasConfigured = true;
+                }
+            }
+        }
+        return router;
+    }
+
+    // The primary's settings, or a replica's when url is given; replicas share the credentials and pool sizing
+    private static PoolConfig configured(String url) {
+        PoolConfig config = PoolConfig.fromSystemProperties(URL, USER, PASSWORD);
+        if (url != null) {
+            config.setUrl(url);
+        }
+        if (config.getDriverClassName() == null && config.getUrl().startsWith("jdbc:mysql:")) {
+            config.setDriverClassName(DRIVER);
+        }
+        if (SqlMetrics.isEnabled()) {
+            config.setMetrics(SqlMetrics.getInstance());
+        }
+        return config;
+    }
+
+    /**
+     * Replaces the shared pool, closing the previous one and any replica router in front of it.
+     * Tests use this to run the panels against an embedded database instead of the configured
+     * MySQL server.
+     */
+    public static synchronized void setDataSource(ConnectionPool pool) {
+        setReplicaRouter(null);
+        replicasConfigured = false;
+        ConnectionPool previous = dataSource;
+        dataSource = pool;
+        if (previous != null && previous != pool) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Replaces the replica router, closing the previous one; null sends reads to the shared pool.
+     * Tests use this with a second embedded database standing in for a replica.
+     */
+    public static synchronized void setReplicaRouter(ReplicaRouter router) {
+        ReplicaRouter previous = replicaRouter;
+        replicaRouter = router;
+        replicasConfigured = true;
+        if (previous != null && previous != router) {
+            previous.close();
+        }
+    }
+
+    /**
+     * A forward-only, read-only statement whose rows are fetched {@code fetchSize} at a time instead of
+     * all at once. Connector/J ignores a positive fetch size and buffers the whole result unless the
+     * URL enables cursors; it only streams, row by row, with {@code Integer.MIN_VALUE}. A streaming
+     * MySQL result must be read to the end before the connection runs anything else.
+     */
+    static PreparedStatement prepareStreaming(Connection conn, String sql, int fetchSize) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        pstmt.setFetchSize(conn.getMetaData().getURL().startsWith("jdbc:mysql:") ? Integer.MIN_VALUE : fetchSize);
+        return pstmt;
+    }
+
+    public static PoolStats getPoolStats() throws SQLException {
+        return getDataSource().getStats();
+    }
+
+    public static synchronized void shutdown() {
+        setDataSource(null);
     }
 
     public static void main(String[] args) {
-        try {
-            Connection conn = getConnection();
-            System.out.println("Connection successful!");
+        try (Connection conn = getConnection()) {
+            System.out.println("Connection successful: " + conn.getMetaData().getURL());
         } catch (SQLException e) {
             System.out.println("Error connecting to database: " + e.getMessage());
             e.printStackTrace();
         }
+        try {
+            System.out.println("Pool: " + getPoolStats());
+            ReplicaRouter router = getReplicaRouter();
+            if (router != null) {
+                System.out.println("Replicas: " + router.getReplicas());
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
     }
 }
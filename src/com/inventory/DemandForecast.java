@@ -0,0 +1,419 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Per-product demand forecasts and reorder suggestions behind the report's reorder section. The
+ * last {@code historyDays} of daily sales are read once, in parallel day slices that each come from
+ * the daily rollups where they exist, and every product's series is fitted in parallel: the average
+ * and last-week sales per day, and an exponentially smoothed daily demand with the deviation of its
+ * one-day-ahead errors. After that, sales arrive through {@link PurchaseService} and only the
+ * products they touch are refitted.
+ *
+ * <p>Reorder suggestions are worked out from current stock on every read. A product should be
+ * reordered once stock falls to its reorder point, the demand over the lead time plus a safety
+ * stock for a 95% service level, and the order should bring it up to cover {@code coverDays} more.
+ */
+public class DemandForecast implements CatalogListener, PurchaseListener {
+    public static final int DEFAULT_HISTORY_DAYS = 90;
+    public static final double DEFAULT_ALPHA = 0.3;
+    public static final int DEFAULT_LEAD_TIME_DAYS = 7;
+    public static final int DEFAULT_COVER_DAYS = 14;
+
+    private static final int RECENT_DAYS = 7;
+    // One-sided z for a 95% chance of not running out during the lead time
+    private static final double SERVICE_LEVEL_Z = 1.65;
+    // Fewer stale products than this are refitted on the calling thread
+    private static final int PARALLEL_REFIT = 1024;
+
+    // Soonest reorder first, products that don't need one last; then fewest days of stock left
+    private static final Comparator<Forecast> REORDER_FIRST = (a, b) -> {
+        int byDate = a.reorderDate == null ? (b.reorderDate == null ? 0 : 1)
+            : b.reorderDate == null ? -1 : a.reorderDate.compareTo(b.reorderDate);
+        return byDate != 0 ? byDate : Double.compare(a.getDaysOfStock(), b.getDaysOfStock());
+    };
+
+    private static volatile DemandForecast instance;
+
+    private final DataSource dataSource;
+    private final CatalogCache catalog;
+    private final int historyDays;
+    private final double alpha;
+    private final int leadTimeDays;
+    private final int coverDays;
+    private final ForkJoinPool workers;
+    private final Object rebuildLock = new Object();
+
+    // Units sold per product and day; index historyDays - 1 is windowEnd
+    private Map<Integer, int[]> series = new HashMap<>();
+    private final Map<Integer, Demand> demand = new ConcurrentHashMap<>();
+    private final Set<Integer> stale = new HashSet<>();
+    private long windowEnd;
+    private long historyWatermark;
+    // Sales that arrive while rebuild() is reading, replayed onto the new series once it is in place
+    private List<PurchaseResult> arrivedDuringRebuild;
+
+    public DemandForecast(DataSource dataSource, CatalogCache catalog, int historyDays, double alpha,
+                          int leadTimeDays, int coverDays, int threads) throws SQLException {
+        if (historyDays <= RECENT_DAYS) {
+            throw new IllegalArgumentException("History must be longer than " + RECENT_DAYS + " days: " + historyDays);
+        }
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.historyDays = historyDays;
+        this.alpha = alpha;
+        this.leadTimeDays = leadTimeDays;
+        this.coverDays = coverDays;
+        this.workers = new ForkJoinPool(threads);
+        catalog.addListener(this);
+        rebuild();
+    }
+
+    public static DemandForecast getInstance() throws SQLException {
+        DemandForecast forecast = instance;
+        if (forecast == null) {
+            synchronized (DemandForecast.class) {
+                forecast = instance;
+                if (forecast == null) {
+                    forecast = configured(DatabaseConnection.getDataSource(), CatalogCache.getInstance());
+                    PurchaseService.getInstance().addListener(forecast);
+                    instance = forecast;
+                }
+            }
+        }
+        return forecast;
+    }
+
+    /** A forecast set up from the {@code inventory.forecast.*} properties. */
+    static DemandForecast configured(DataSource dataSource, CatalogCache catalog) throws SQLException {
+        return new DemandForecast(dataSource, catalog,
+            Integer.getInteger("inventory.forecast.historyDays", DEFAULT_HISTORY_DAYS),
+            Double.parseDouble(System.getProperty("inventory.forecast.alpha", String.valueOf(DEFAULT_ALPHA))),
+            Integer.getInteger("inventory.forecast.leadTimeDays", DEFAULT_LEAD_TIME_DAYS),
+            Integer.getInteger("inventory.forecast.coverDays", DEFAULT_COVER_DAYS),
+            Integer.getInteger("inventory.forecast.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public int getLeadTimeDays() {
+        return leadTimeDays;
+    }
+
+    public int getCoverDays() {
+        return coverDays;
+    }
+
+    /** Forecasts for every product that sold in the window, those to reorder soonest first. */
+    public List<Forecast> getForecasts() {
+        Map<Integer, Demand> current = refreshedDemand();
+        LocalDate today = LocalDate.now();
+        List<Forecast> forecasts = new ArrayList<>();
+        for (Map.Entry<Integer, Demand> entry : current.entrySet()) {
+            Product product = catalog.getProduct(entry.getKey());
+            if (product != null) {
+                forecasts.add(new Forecast(product, entry.getValue(), today));
+            }
+        }
+        forecasts.sort(REORDER_FIRST);
+        return forecasts;
+    }
+
+    /** The product's forecast, or null if it hasn't sold in the window. */
+    public Forecast getForecast(int productId) {
+        Demand fitted = refreshedDemand().get(productId);
+        Product product = catalog.getProduct(productId);
+        return fitted == null || product == null ? null : new Forecast(product, fitted, LocalDate.now());
+    }
+
+    /**
+     * Throws the series away and reads them again from the purchase history. Sales keep being
+     * counted while the history is read.
+     */
+    public void rebuild() throws SQLException {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                arrivedDuringRebuild = new ArrayList<>();
+            }
+            Map<Integer, int[]> loaded;
+            long end = LocalDate.now().toEpochDay();
+            long watermark;
+            try {
+                PurchaseHistoryStore.Layout history;
+                try (Connection conn = dataSource.getConnection()) {
+                    // As in ReportAggregates: the layout first, so a day rolled up meanwhile isn't read twice
+                    history = PurchaseHistoryStore.layout(conn);
+                    watermark = history.maxId(conn);
+                }
+                loaded = load(history, end, watermark);
+            } catch (SQLException | RuntimeException e) {
+                synchronized (this) {
+                    arrivedDuringRebuild = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                List<PurchaseResult> arrived = arrivedDuringRebuild;
+                arrivedDuringRebuild = null;
+                series = loaded;
+                windowEnd = end;
+                historyWatermark = watermark;
+                demand.clear();
+                stale.clear();
+                stale.addAll(loaded.keySet());
+                for (PurchaseResult result : arrived) {
+                    addSale(result);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void purchaseCompleted(PurchaseResult result) {
+        if (arrivedDuringRebuild != null) {
+            arrivedDuringRebuild.add(result);
+        }
+        addSale(result);
+    }
+
+    @Override
+    public synchronized void productChanged(Product before, Product after) {
+        if (after == null) {
+            series.remove(before.getId());
+            demand.remove(before.getId());
+            stale.remove(before.getId());
+        }
+    }
+
+    @Override
+    public void catalogReloaded() {
+        // Stock is read from the catalog on every getForecasts(); deleted products are skipped there
+    }
+
+    private void addSale(PurchaseResult result) {
+        if (result.getPurchaseId() <= historyWatermark) {
+            return;
+        }
+        long day = result.getPurchaseDate().toLocalDateTime().toLocalDate().toEpochDay();
+        if (day > windowEnd) {
+            advanceTo(day);
+        }
+        int index = (int) (day - windowEnd) + historyDays - 1;
+        if (index < 0) {
+            return;
+        }
+        series.computeIfAbsent(result.getProductId(), id -> new int[historyDays])[index] += result.getQuantity();
+        stale.add(result.getProductId());
+    }
+
+    // Slides every series so windowEnd is day; all of them are refitted, since a day without sales counts too
+    private void advanceTo(long day) {
+        int shift = (int) Math.min(day - windowEnd, historyDays);
+        series.values().removeIf(units -> {
+            System.arraycopy(units, shift, units, 0, historyDays - shift);
+            Arrays.fill(units, historyDays - shift, historyDays, 0);
+            for (int quantity : units) {
+                if (quantity != 0) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        windowEnd = day;
+        demand.clear();
+        stale.clear();
+        stale.addAll(series.keySet());
+    }
+
+    private synchronized Map<Integer, Demand> refreshedDemand() {
+        long today = LocalDate.now().toEpochDay();
+        if (today > windowEnd) {
+            advanceTo(today);
+        }
+        if (!stale.isEmpty()) {
+            List<Integer> ids = new ArrayList<>(stale);
+            stale.clear();
+            if (ids.size() < PARALLEL_REFIT) {
+                for (int id : ids) {
+                    refit(id);
+                }
+            } else {
+                // The series aren't written while this holds the lock, so the workers can read them freely
+                join(workers.submit(() -> ids.parallelStream().forEach(this::refit)));
+            }
+        }
+        return new HashMap<>(demand);
+    }
+
+    private void refit(int productId) {
+        int[] units = series.get(productId);
+        if (units == null) {
+            demand.remove(productId);
+        } else {
+            demand.put(productId, fit(units));
+        }
+    }
+
+    /** Reads the window's daily sales, a slice of days per worker, each on its own connection. */
+    private Map<Integer, int[]> load(PurchaseHistoryStore.Layout history, long end, long watermark) throws SQLException {
+        long start = end - historyDays + 1;
+        // Without partitions every slice would scan the whole unpartitioned table
+        int slices = history.partitions.isEmpty() ? 1 : Math.min(workers.getParallelism(), historyDays);
+        List<long[]> ranges = new ArrayList<>();
+        for (int i = 0; i < slices; i++) {
+            ranges.add(new long[]{start + (long) historyDays * i / slices, start + (long) historyDays * (i + 1) / slices});
+        }
+        // Each slice writes only its own days of each array, so only creating an array needs to be atomic
+        Map<Integer, int[]> loaded = new ConcurrentHashMap<>();
+        try {
+            join(workers.submit(() -> ranges.parallelStream().forEach(range -> {
+                try {
+                    loadSlice(history, LocalDate.ofEpochDay(range[0]), LocalDate.ofEpochDay(range[1]), watermark, start, loaded);
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            })));
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+        return new HashMap<>(loaded);
+    }
+
+    private void loadSlice(PurchaseHistoryStore.Layout history, LocalDate from, LocalDate until, long watermark,
+                           long start, Map<Integer, int[]> into) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = DatabaseConnection.prepareStreaming(conn,
+                 "SELECT product_id, sale_day, quantity FROM " + history.dailySales(from, until, watermark) + " s", 10_000)) {
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int index = (int) (rs.getDate(2).toLocalDate().toEpochDay() - start);
+                    into.computeIfAbsent(rs.getInt(1), id -> new int[historyDays])[index] += rs.getInt(3);
+                }
+            }
+        }
+    }
+
+    private static void join(Future<?> work) {
+        try {
+            work.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while forecasting", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Forecasting failed", e.getCause());
+        }
+    }
+
+    /**
+     * Fits one product's series from its first sale in the window. Today is still going, so it
+     * counts towards the sales rates but not towards the smoothed demand.
+     */
+    private Demand fit(int[] units) {
+        int today = historyDays - 1;
+        int first = 0;
+        while (first < today && units[first] == 0) {
+            first++;
+        }
+        long total = 0;
+        long recent = 0;
+        for (int i = first; i <= today; i++) {
+            total += units[i];
+            if (i > today - RECENT_DAYS) {
+                recent += units[i];
+            }
+        }
+        double level = units[first];
+        double squaredErrors = 0;
+        int errors = 0;
+        for (int i = first + 1; i < today; i++) {
+            double error = units[i] - level;
+            squaredErrors += error * error;
+            errors++;
+            level += alpha * error;
+        }
+        int days = today - first + 1;
+        return new Demand((double) total / days, (double) recent / Math.min(days, RECENT_DAYS),
+            errors == 0 ? total / (double) days : level, errors == 0 ? 0 : Math.sqrt(squaredErrors / errors));
+    }
+
+    /** The fitted demand of one product, independent of its stock. */
+    private static final class Demand {
+        final double averageDaily;
+        final double recentDaily;
+        final double forecastDaily;
+        final double deviation;
+
+        Demand(double averageDaily, double recentDaily, double forecastDaily, double deviation) {
+            this.averageDaily = averageDaily;
+            this.recentDaily = recentDaily;
+            this.forecastDaily = forecastDaily;
+            this.deviation = deviation;
+        }
+    }
+
+    /** A product's demand and, from its current stock, when to reorder and how much. */
+    public final class Forecast {
+        private final Product product;
+        private final Demand fitted;
+        private final int reorderPoint;
+        private final int reorderQuantity;
+        private final LocalDate reorderDate;
+
+        Forecast(Product product, Demand fitted, LocalDate today) {
+            this.product = product;
+            this.fitted = fitted;
+            double safetyStock = SERVICE_LEVEL_Z * fitted.deviation * Math.sqrt(leadTimeDays);
+            reorderPoint = (int) Math.ceil(fitted.forecastDaily * leadTimeDays + safetyStock);
+            if (fitted.forecastDaily <= 0) {
+                reorderQuantity = 0;
+                reorderDate = null;
+            } else {
+                int stock = product.getQuantity();
+                long daysUntilReorder = Math.max(0, (long) Math.floor((stock - reorderPoint) / fitted.forecastDaily));
+                reorderDate = today.plusDays(daysUntilReorder);
+                // Ordered at the reorder point, the order covers the lead time and coverDays after it
+                double target = fitted.forecastDaily * (leadTimeDays + coverDays) + safetyStock;
+                reorderQuantity = (int) Math.max(0, Math.ceil(target - Math.min(stock, reorderPoint)));
+            }
+        }
+
+        public Product getProduct() { return product; }
+        public int getProductId() { return product.getId(); }
+        /** Units sold per day since the product's first sale in the window. */
+        public double getAverageDaily() { return fitted.averageDaily; }
+        /** Units sold per day over the last week, today included. */
+        public double getRecentDaily() { return fitted.recentDaily; }
+        /** Smoothed demand per day expected from tomorrow. */
+        public double getForecastDaily() { return fitted.forecastDaily; }
+        public double getDeviation() { return fitted.deviation; }
+        public int getReorderPoint() { return reorderPoint; }
+        public int getReorderQuantity() { return reorderQuantity; }
+        /** When stock is expected to reach the reorder point; today if it already has, null if nothing sells. */
+        public LocalDate getReorderDate() { return reorderDate; }
+
+        public double getDaysOfStock() {
+            return fitted.forecastDaily <= 0 ? Double.POSITIVE_INFINITY : product.getQuantity() / fitted.forecastDaily;
+        }
+    }
+}
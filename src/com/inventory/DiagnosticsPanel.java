@@ -0,0 +1,135 @@
+package com.inventory;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.sql.SQLException;
+import java.util.List;
+
+public class DiagnosticsPanel extends JPanel {
+    private static final int REFRESH_MILLIS = 1000;
+
+    private JTextArea summaryArea;
+    private JTextArea stallArea;
+    private DefaultTableModel tableModel;
+    private JButton resetButton;
+
+    public DiagnosticsPanel() {
+        setLayout(new BorderLayout());
+
+        summaryArea = new JTextArea(5, 80);
+        summaryArea.setEditable(false);
+        summaryArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
+
+        tableModel = new DefaultTableModel(
+            new Object[]{"Statement", "Count", "Rows", "p50 ms", "p99 ms", "Max ms", "Total ms", "Errors"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 0 ? String.class : column <= 2 || column == 7 ? Long.class : Double.class;
+            }
+        };
+        JTable statementTable = new JTable(tableModel);
+        statementTable.setAutoCreateRowSorter(true);
+        statementTable.getColumnModel().getColumn(0).setPreferredWidth(400);
+
+        stallArea = new JTextArea(6, 80);
+        stallArea.setEditable(false);
+        stallArea.setFont(new Font("Monospaced", Font.PLAIN, 11));
+
+        resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            SqlMetrics.getInstance().reset();
+            refresh();
+        });
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(new JScrollPane(stallArea), BorderLayout.CENTER);
+        southPanel.add(resetButton, BorderLayout.EAST);
+
+        add(summaryArea, BorderLayout.NORTH);
+        add(new JScrollPane(statementTable), BorderLayout.CENTER);
+        add(southPanel, BorderLayout.SOUTH);
+
+        // Everything read here is in-memory counters, so refreshing on the EDT is cheap
+        new Timer(REFRESH_MILLIS, e -> {
+            if (isShowing()) {
+                refresh();
+            }
+        }).start();
+        refresh();
+    }
+
+    private void refresh() {
+        SqlMetrics metrics = SqlMetrics.getInstance();
+        StringBuilder summary = new StringBuilder();
+        if (InventoryService.isRemote()) {
+            summary.append("Terminal of ").append(System.getProperty("inventory.server.url"))
+                .append(": SQL runs on the server\n");
+        } else if (!SqlMetrics.isEnabled()) {
+            summary.append("SQL instrumentation is off (inventory.metrics.enabled=false)\n");
+        } else {
+            try {
+                summary.append("Pool: ").append(DatabaseConnection.getPoolStats()).append('\n');
+                ReplicaRouter router = DatabaseConnection.getReplicaRouter();
+                if (router != null) {
+                    summary.append(String.format("Replicas: %s; %d reads on replicas, %d fell back to the primary%n",
+                        router.getReplicas(), router.getReplicaBorrows(), router.getPrimaryFallbacks()));
+                }
+            } catch (SQLException e) {
+                summary.append("Pool: unavailable (").append(e.getMessage()).append(")\n");
+            }
+        }
+        PurchaseJournal journal = PurchaseJournal.current();
+        if (journal != null) {
+            summary.append(String.format("Purchase journal: %d sales not yet in the database, %d conflicts",
+                journal.getPendingCount(), journal.getConflictCount()));
+            String error = journal.getLastReplayError();
+            if (error != null) {
+                summary.append(" (replay failing: ").append(error).append(')');
+            }
+            summary.append('\n');
+        }
+        summary.append("Pending data tasks: ").append(DataTaskExecutor.getInstance().getPendingTasks()).append('\n');
+        summary.append("Startup: ").append(StartupTimer.summary()).append('\n');
+        appendHistogram(summary, "Connection acquire", metrics.getAcquireTimes());
+        appendHistogram(summary, "EDT stalls", metrics.getEdtStalls());
+        summaryArea.setText(summary.toString());
+
+        // Updated in place so the selection and scroll position survive each refresh
+        List<SqlMetrics.StatementStats> statements = metrics.getStatements();
+        for (int i = 0; i < statements.size(); i++) {
+            SqlMetrics.StatementStats stats = statements.get(i);
+            LatencyHistogram latency = stats.getLatency();
+            Object[] row = {stats.getSql(), stats.getCount(), stats.getRows(),
+                latency.percentileMillis(0.50), latency.percentileMillis(0.99), latency.getMaxMillis(),
+                latency.getTotalNanos() / 1_000_000.0, stats.getErrors()};
+            if (i < tableModel.getRowCount()) {
+                for (int column = 0; column < row.length; column++) {
+                    if (!row[column].equals(tableModel.getValueAt(i, column))) {
+                        tableModel.setValueAt(row[column], i, column);
+                    }
+                }
+            } else {
+                tableModel.addRow(row);
+            }
+        }
+        tableModel.setRowCount(statements.size());
+
+        String stall = metrics.getLastEdtStall();
+        String text = stall == null ? "No EDT stalls recorded" : "Last EDT stall: " + stall;
+        if (!text.equals(stallArea.getText())) {
+            stallArea.setText(text);
+            stallArea.setCaretPosition(0);
+        }
+    }
+
+    private static void appendHistogram(StringBuilder summary, String label, LatencyHistogram histogram) {
+        summary.append(String.format("%-20s count=%d p50=%.3fms p99=%.3fms max=%.3fms%n", label, histogram.getCount(),
+            histogram.percentileMillis(0.50), histogram.percentileMillis(0.99), histogram.getMaxMillis()));
+    }
+}
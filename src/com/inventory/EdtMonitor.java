@@ -0,0 +1,107 @@
+package com.inventory;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every event the Swing event dispatch thread handles. Dispatches longer than
+ * {@code inventory.metrics.edtStallMillis} (default 100) are recorded as stalls in
+ * {@link SqlMetrics} and emitted as {@link EdtStallEvent}s; a watchdog thread samples the EDT's
+ * stack while a stall is still in progress, so the culprit shows up even if it never returns.
+ */
+public final class EdtMonitor extends EventQueue {
+    private static volatile EdtMonitor installed;
+
+    private final SqlMetrics metrics;
+    private final long thresholdNanos;
+    private volatile Thread dispatchThread;
+    private volatile long dispatchStart;
+    private volatile String stallStack;
+    private boolean modal;
+
+    private EdtMonitor(SqlMetrics metrics, long thresholdNanos) {
+        this.metrics = metrics;
+        this.thresholdNanos = thresholdNanos;
+    }
+
+    /** Replaces the system event queue with a monitoring one. Safe to call more than once. */
+    public static synchronized void install(SqlMetrics metrics) {
+        if (installed != null) {
+            return;
+        }
+        long threshold = TimeUnit.MILLISECONDS.toNanos(Long.getLong("inventory.metrics.edtStallMillis", 100));
+        EdtMonitor monitor = new EdtMonitor(metrics, threshold);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(monitor);
+        Thread watchdog = new Thread(monitor::watch, "inventory-edt-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        installed = monitor;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long previousStart = dispatchStart;
+        // Inside another dispatch means that one is running a modal dialog's loop: waiting, not stalled
+        boolean previousModal = previousStart != 0 || modal;
+        EdtStallEvent jfrEvent = new EdtStallEvent();
+        jfrEvent.begin();
+        long start = System.nanoTime();
+        dispatchThread = Thread.currentThread();
+        dispatchStart = start;
+        modal = false;
+        stallStack = null;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= thresholdNanos && !modal) {
+                stalled(event, elapsed, jfrEvent);
+            }
+            dispatchStart = previousStart;
+            modal = previousModal;
+            stallStack = null;
+        }
+    }
+
+    private void stalled(AWTEvent event, long elapsed, EdtStallEvent jfrEvent) {
+        String stack = stallStack;
+        metrics.edtStalled(elapsed, String.format("%.1fms in %s%n%s", elapsed / 1e6, describe(event),
+            stack == null ? "" : stack));
+        jfrEvent.end();
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.event = describe(event);
+            jfrEvent.commit();
+        }
+    }
+
+    private void watch() {
+        long sampleMillis = Math.max(10, TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+        while (true) {
+            try {
+                Thread.sleep(sampleMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = dispatchStart;
+            Thread edt = dispatchThread;
+            if (start != 0 && edt != null && stallStack == null && System.nanoTime() - start >= thresholdNanos) {
+                stallStack = format(edt.getStackTrace());
+            }
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        String source = event.getSource() == null ? "" : " on " + event.getSource().getClass().getSimpleName();
+        return event.getClass().getSimpleName() + source;
+    }
+
+    private static String format(StackTraceElement[] stack) {
+        StringBuilder out = new StringBuilder();
+        for (StackTraceElement frame : stack) {
+            out.append("    at ").append(frame).append('\n');
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package com.inventory;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** An event dispatch that kept the Swing EDT busy for longer than the stall threshold. */
+@Name("com.inventory.EdtStall")
+@Label("EDT Stall")
+@Category({"Inventory", "Swing"})
+@Description("A single AWT event that blocked the event dispatch thread")
+final class EdtStallEvent extends jdk.jfr.Event {
+    @Label("Event")
+    String event;
+}
@@ -0,0 +1,119 @@
+package com.inventory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts an {@link InventoryServer} on an embedded H2 database and drives it from many concurrent
+ * terminals, each mixing product lookups with purchases over HTTP. Reports requests per second and
+ * latency percentiles, and fails if any product ends up oversold.
+ *
+ * <pre>
+ * java -cp h2.jar:bin com.inventory.HttpLoadTest [terminals] [requestsPerTerminal] [products] [stockPerProduct] [--destroy]
+ * </pre>
+ *
+ * Roughly one request in four is a purchase; the rest are lookups by id. The database comes from
+ * {@code bench.db.*}, see {@link BenchDatabase}.
+ */
+public class HttpLoadTest {
+    public static void main(String[] args) throws Exception {
+        String[] positional = BenchDatabase.positional(args);
+        int terminals = positional.length > 0 ? Integer.parseInt(positional[0]) : 200;
+        int requestsPerTerminal = positional.length > 1 ? Integer.parseInt(positional[1]) : 100;
+        int products = positional.length > 2 ? Integer.parseInt(positional[2]) : 50;
+        int stockPerProduct = positional.length > 3 ? Integer.parseInt(positional[3]) : 500;
+
+        InventoryServer.disableNagle();
+        String token = UUID.randomUUID().toString();
+        try (ConnectionPool pool = BenchDatabase.open("http_load", 16, args)) {
+            BenchDatabase.seed(pool, 1, products, id -> stockPerProduct);
+            boolean consistent;
+            try (PurchaseService purchases = new PurchaseService(pool, 2, 128);
+                 InventoryServer server = new InventoryServer(
+                     new LocalInventoryService(pool, new CatalogCache(pool), purchases, null), 0, token)) {
+                server.start();
+                run("http://localhost:" + server.getPort(), token, terminals, requestsPerTerminal, products);
+            }
+            consistent = BenchDatabase.verifyStock(pool);
+            System.exit(consistent ? 0 : 1);
+        }
+    }
+
+    private static void run(String baseUrl, String token, int terminals, int requestsPerTerminal, int products)
+            throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+        long[] latencies = new long[terminals * requestsPerTerminal];
+        AtomicLong sales = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(terminals);
+
+        for (int t = 0; t < terminals; t++) {
+            int offset = t * requestsPerTerminal;
+            Thread terminal = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < requestsPerTerminal; i++) {
+                        int productId = 1 + random.nextInt(products);
+                        boolean purchase = random.nextInt(4) == 0;
+                        HttpRequest request = purchase
+                            ? HttpRequest.newBuilder(URI.create(baseUrl + "/api/purchases"))
+                                .header(InventoryServer.TOKEN_HEADER, token)
+                                .POST(HttpRequest.BodyPublishers.ofString(
+                                    Json.write(Map.of("productId", productId, "quantity", 1 + random.nextInt(3)))))
+                                .build()
+                            : HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/" + productId))
+                                .header(InventoryServer.TOKEN_HEADER, token)
+                                .GET().build();
+
+                        long begin = System.nanoTime();
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        latencies[offset + i] = System.nanoTime() - begin;
+                        if (response.statusCode() != 200) {
+                            failed.incrementAndGet();
+                        } else if (purchase) {
+                            boolean completed = "COMPLETED".equals(Json.parseObject(response.body()).get("status"));
+                            (completed ? sales : refused).incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    failed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+            terminal.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%d terminals  %9.0f req/s  %d sales %d refused %d failed  p50=%.3fms p99=%.3fms max=%.3fms%n",
+            terminals, latencies.length / seconds, sales.get(), refused.get(), failed.get(),
+            percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
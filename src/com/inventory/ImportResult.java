@@ -0,0 +1,36 @@
+package com.inventory;
+
+import java.util.List;
+
+public final class ImportResult {
+    private final long imported;
+    private final long rejected;
+    private final int categoriesCreated;
+    private final long elapsedNanos;
+    private final List<String> rejectedLines;
+
+    ImportResult(long imported, long rejected, int categoriesCreated, long elapsedNanos, List<String> rejectedLines) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.categoriesCreated = categoriesCreated;
+        this.elapsedNanos = elapsedNanos;
+        this.rejectedLines = rejectedLines;
+    }
+
+    public long getImported() { return imported; }
+    public long getRejected() { return rejected; }
+    public int getCategoriesCreated() { return categoriesCreated; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    /** Why each rejected line was refused, as {@code "line N: reason"}; capped, so may be shorter than {@link #getRejected()}. */
+    public List<String> getRejectedLines() { return rejectedLines; }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : imported * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d imported, %d rejected, %d categories created in %.1fs (%.0f rows/s)",
+            imported, rejected, categoriesCreated, elapsedNanos / 1e9, getRowsPerSecond());
+    }
+}
@@ -0,0 +1,236 @@
+package com.inventory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Wraps a connection so every execute call is timed into {@link SqlMetrics} and emitted as a
+ * {@link SqlStatementEvent}. Query rows are counted as the caller reads them and added when the
+ * result set is exhausted or closed, so the latency figure is time to first row.
+ */
+final class InstrumentedConnection {
+    private InstrumentedConnection() {
+    }
+
+    static Connection wrap(Connection connection, SqlMetrics metrics) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, new ConnectionHandler(connection, metrics));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final SqlMetrics metrics;
+
+        ConnectionHandler(Connection target, SqlMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented" + target;
+                default:
+                    break;
+            }
+            Object result = InstrumentedConnection.invoke(target, method, args);
+            if (result instanceof Statement) {
+                // prepareStatement/prepareCall carry their SQL; plain statements get it per execute
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                Class<?> type = result instanceof CallableStatement ? CallableStatement.class
+                    : result instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                    new StatementHandler((Statement) result, (Connection) proxy, sql, metrics));
+            }
+            return result;
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final Connection owner;
+        private final String preparedSql;
+        private final SqlMetrics metrics;
+        private SqlMetrics.StatementStats preparedStats;
+        private ResultSetHandler openResult;
+
+        StatementHandler(Statement target, Connection owner, String preparedSql, SqlMetrics metrics) {
+            this.target = target;
+            this.owner = owner;
+            this.preparedSql = preparedSql;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    // Closing the statement closes its result set without going through our proxy
+                    if (openResult != null) {
+                        openResult.report();
+                        openResult = null;
+                    }
+                    return InstrumentedConnection.invoke(target, method, args);
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented" + target;
+                default:
+                    break;
+            }
+            if (!name.startsWith("execute")) {
+                return InstrumentedConnection.invoke(target, method, args);
+            }
+
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            if (sql == null) {
+                sql = "(statement batch)";
+            }
+            SqlMetrics.StatementStats stats = stats(sql);
+            SqlStatementEvent event = new SqlStatementEvent();
+            event.begin();
+            long start = System.nanoTime();
+            boolean failed = false;
+            Object result = null;
+            try {
+                result = InstrumentedConnection.invoke(target, method, args);
+                return result instanceof ResultSet ? countRows((ResultSet) result, (Statement) proxy, stats, event, sql) : result;
+            } catch (Throwable e) {
+                failed = true;
+                throw e;
+            } finally {
+                long rows = Boolean.FALSE.equals(result) ? Math.max(target.getUpdateCount(), 0) : rowCount(result);
+                stats.executed(System.nanoTime() - start, rows, failed);
+                event.end();
+                if (!(result instanceof ResultSet) && event.shouldCommit()) {
+                    event.sql = sql;
+                    event.rows = rows;
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+        }
+
+        private SqlMetrics.StatementStats stats(String sql) {
+            if (sql == preparedSql) {
+                if (preparedStats == null) {
+                    preparedStats = metrics.statement(sql);
+                }
+                return preparedStats;
+            }
+            return metrics.statement(sql);
+        }
+
+        private static long rowCount(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return ((Number) result).longValue();
+            }
+            long total = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    total += Math.max(count, 0);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    total += Math.max(count, 0);
+                }
+            }
+            return total;
+        }
+
+        private ResultSet countRows(ResultSet rs, Statement statement, SqlMetrics.StatementStats stats,
+                                    SqlStatementEvent event, String sql) {
+            if (openResult != null) {
+                openResult.report();
+            }
+            openResult = new ResultSetHandler(rs, statement, stats, event, sql);
+            return (ResultSet) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                openResult);
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Statement statement;
+        private final SqlMetrics.StatementStats stats;
+        private final SqlStatementEvent event;
+        private final String sql;
+        private long rows;
+        private boolean reported;
+
+        ResultSetHandler(ResultSet target, Statement statement, SqlMetrics.StatementStats stats, SqlStatementEvent event,
+                         String sql) {
+            this.target = target;
+            this.statement = statement;
+            this.stats = stats;
+            this.event = event;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next": {
+                    Object result = InstrumentedConnection.invoke(target, method, args);
+                    if ((Boolean) result) {
+                        rows++;
+                    } else {
+                        report();
+                    }
+                    return result;
+                }
+                case "close":
+                    report();
+                    return InstrumentedConnection.invoke(target, method, args);
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented" + target;
+                default:
+                    return InstrumentedConnection.invoke(target, method, args);
+            }
+        }
+
+        private void report() {
+            if (reported) {
+                return;
+            }
+            reported = true;
+            stats.rowsRead(rows);
+            if (event.shouldCommit()) {
+                event.sql = sql;
+                event.rows = rows;
+                event.commit();
+            }
+        }
+    }
+}
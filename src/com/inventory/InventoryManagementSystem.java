@@ -2,31 +2,121 @@ package com.inventory;
 
 import javax.swing.*;
 import java.awt.*;
-import java.sql.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
+/**
+ * The main window. Tabs are built the first time they are selected, so the window opens without
+ * waiting on any panel; the shared services they use are built meanwhile by {@link StartupWarmup}.
+ */
 public class InventoryManagementSystem extends JFrame {
+    private static final String LOW_STOCK_TAB = "Low Stock";
+
     private JTabbedPane tabbedPane;
-    private ProductPanel productPanel;
-    private CategoryPanel categoryPanel;
-    private PurchasePanel purchasePanel;
-    private ReportPanel reportPanel;
+    private final Map<Component, Supplier<JComponent>> unbuiltTabs = new HashMap<>();
+    private JLabel statusLabel;
+    private JProgressBar progressBar;
 
     public InventoryManagementSystem() {
-        setTitle("Inventory Management System");
+        setTitle(InventoryService.isRemote()
+            ? "Inventory Terminal - " + System.getProperty("inventory.server.url")
+            : "Inventory Management System");
         setSize(800, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         tabbedPane = new JTabbedPane();
-        productPanel = new ProductPanel();
-        categoryPanel = new CategoryPanel();
-        purchasePanel = new PurchasePanel();
-        reportPanel = new ReportPanel();
-
-        tabbedPane.addTab("Products", productPanel);
-        tabbedPane.addTab("Categories", categoryPanel);
-        tabbedPane.addTab("Purchase", purchasePanel);
-        tabbedPane.addTab("Reports", reportPanel);
+        for (Map.Entry<String, Supplier<JComponent>> tab : tabs().entrySet()) {
+            JPanel placeholder = new JPanel(new BorderLayout());
+            unbuiltTabs.put(placeholder, tab.getValue());
+            tabbedPane.addTab(tab.getKey(), placeholder);
+        }
+        tabbedPane.addChangeListener(e -> buildSelectedTab());
+        if (!InventoryService.isRemote()) {
+            showLowStockCount();
+        }
 
         add(tabbedPane);
+        add(createStatusBar(), BorderLayout.SOUTH);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                StartupTimer.mark("window opened");
+                CompletableFuture.runAsync(() -> StartupTimer.checkBudget("window opened",
+                    Long.getLong("inventory.startup.windowBudgetMillis", 2000)));
+                // After the first paint, so the frame is on screen before any panel is built
+                SwingUtilities.invokeLater(() -> buildSelectedTab());
+            }
+        });
+    }
+
+    /** Tab titles and how to build each tab, in display order. */
+    static Map<String, Supplier<JComponent>> tabs() {
+        Map<String, Supplier<JComponent>> tabs = new LinkedHashMap<>();
+        // A terminal only sells and reports; catalog maintenance stays with the back office
+        if (!InventoryService.isRemote()) {
+            tabs.put("Products", ProductPanel::new);
+            tabs.put("Categories", CategoryPanel::new);
+            tabs.put(LOW_STOCK_TAB, LowStockPanel::new);
+        }
+        tabs.put("Purchase", PurchasePanel::new);
+        tabs.put("Reports", ReportPanel::new);
+        tabs.put("Diagnostics", DiagnosticsPanel::new);
+        return tabs;
+    }
+
+    private void buildSelectedTab() {
+        int index = tabbedPane.getSelectedIndex();
+        Supplier<JComponent> factory = index == -1 ? null : unbuiltTabs.remove(tabbedPane.getComponentAt(index));
+        if (factory == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        JPanel placeholder = (JPanel) tabbedPane.getComponentAt(index);
+        placeholder.add(factory.get(), BorderLayout.CENTER);
+        placeholder.revalidate();
+        StartupTimer.record(tabbedPane.getTitleAt(index) + " tab", start);
+    }
+
+    // Keeps the alert count in the Low Stock tab's title, whether or not the tab has been built
+    private void showLowStockCount() {
+        int index = tabbedPane.indexOfTab(LOW_STOCK_TAB);
+        AtomicBoolean updatePending = new AtomicBoolean();
+        DataTaskExecutor.getInstance().run("Loading low stock alerts", context -> LowStockMonitor.getInstance(), monitor -> {
+            Runnable update = () -> {
+                updatePending.set(false);
+                int count = monitor.getAlertCount();
+                tabbedPane.setTitleAt(index, count == 0 ? LOW_STOCK_TAB : LOW_STOCK_TAB + " (" + count + ")");
+            };
+            monitor.addListener((before, after) -> {
+                if (updatePending.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(update);
+                }
+            });
+            update.run();
+        }, e -> e.printStackTrace());
+    }
+
+    private JPanel createStatusBar() {
+        JPanel statusBar = new JPanel(new BorderLayout());
+        statusLabel = new JLabel(" ");
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisible(false);
+
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        statusBar.add(progressBar, BorderLayout.EAST);
+
+        DataTaskExecutor.getInstance().addActivityListener((pendingTasks, description) -> {
+            progressBar.setVisible(pendingTasks > 0);
+            statusLabel.setText(pendingTasks > 0 ? description + "..." : " ");
+        });
+        return statusBar;
     }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.inventory;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Formats the plain-text report from {@link ReportAggregates}, {@link LowStockMonitor}, {@link DemandForecast}
+ * and the catalog. Sections show at
+ * most {@link #PREVIEW_ROWS} rows; {@link ReportExporter} writes the complete report.
+ */
+public final class InventoryReport {
+    public static final int PREVIEW_ROWS = 200;
+
+    private InventoryReport() {
+    }
+
+    public static String generate(CatalogCache catalog, ReportAggregates aggregates, LowStockMonitor lowStock,
+                                  DemandForecast forecast) {
+        StringBuilder report = new StringBuilder();
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        report.append("Inventory Management System Report\n");
+        report.append("Generated on: ").append(sdf.format(new Date())).append("\n\n");
+
+        report.append(generateInventoryReport(catalog, aggregates));
+        report.append("\n");
+        report.append(generateSalesReport(catalog, aggregates));
+        report.append("\n");
+        report.append(generateLowStockReport(catalog, lowStock));
+        report.append("\n");
+        report.append(generateReorderReport(forecast));
+        return report.toString();
+    }
+
+    private static void appendOmitted(StringBuilder report, int total) {
+        if (total > PREVIEW_ROWS) {
+            report.append("... ").append(total - PREVIEW_ROWS).append(" more rows; export for the full report\n");
+        }
+    }
+
+    private static String generateInventoryReport(CatalogCache catalog, ReportAggregates aggregates) {
+        StringBuilder inventoryReport = new StringBuilder();
+        inventoryReport.append("Inventory Summary:\n");
+        inventoryReport.append(String.format("%-30s %-10s %-10s %-15s\n", "Product", "Quantity", "Price", "Total Value"));
+        inventoryReport.append("------------------------------------------------------------\n");
+
+        List<Product> products = new ArrayList<>(catalog.getProducts());
+        products.sort((a, b) -> Double.compare(b.getQuantity() * b.getPrice(), a.getQuantity() * a.getPrice()));
+        for (Product product : products.subList(0, Math.min(products.size(), PREVIEW_ROWS))) {
+            inventoryReport.append(String.format("%-30s %-10d $%-9.2f $%-14.2f\n", product.getName(), product.getQuantity(),
+                product.getPrice(), product.getQuantity() * product.getPrice()));
+        }
+        appendOmitted(inventoryReport, products.size());
+
+        inventoryReport.append("------------------------------------------------------------\n");
+        inventoryReport.append(String.format("%-30s %-10s %-10s $%-14.2f\n", "Total Inventory Value", "", "",
+            aggregates.getInventoryValueCents() / 100.0));
+
+        return inventoryReport.toString();
+    }
+
+    private static String generateSalesReport(CatalogCache catalog, ReportAggregates aggregates) {
+        StringBuilder salesReport = new StringBuilder();
+        salesReport.append("Sales Summary (Last 30 days):\n");
+        salesReport.append(String.format("%-30s %-10s %-15s\n", "Product", "Quantity", "Total Sales"));
+        salesReport.append("------------------------------------------------------------\n");
+
+        long totalSales = 0;
+        int rows = 0;
+        for (ReportAggregates.ProductSales sales : aggregates.getRecentSales()) {
+            Product product = catalog.getProduct(sales.getProductId());
+            if (product == null) {
+                continue;
+            }
+            if (rows++ < PREVIEW_ROWS) {
+                salesReport.append(String.format("%-30s %-10d $%-14.2f\n", product.getName(), sales.getQuantity(),
+                    sales.getCents() / 100.0));
+            }
+            totalSales += sales.getCents();
+        }
+        appendOmitted(salesReport, rows);
+
+        salesReport.append("------------------------------------------------------------\n");
+        salesReport.append(String.format("%-30s %-10s $%-14.2f\n", "Total Sales", "", totalSales / 100.0));
+
+        return salesReport.toString();
+    }
+
+    private static String generateLowStockReport(CatalogCache catalog, LowStockMonitor monitor) {
+        StringBuilder lowStockReport = new StringBuilder();
+        lowStockReport.append("Low Stock Alert (Quantity <= threshold, most critical first):\n");
+        lowStockReport.append(String.format("%-30s %-10s %-10s %-20s\n", "Product", "Quantity", "Threshold", "Category"));
+        lowStockReport.append("------------------------------------------------------------\n");
+
+        List<LowStockMonitor.Alert> lowStock = monitor.getAlerts();
+        for (LowStockMonitor.Alert alert : lowStock.subList(0, Math.min(lowStock.size(), PREVIEW_ROWS))) {
+            Category category = catalog.getCategory(alert.getProduct().getCategoryId());
+            lowStockReport.append(String.format("%-30s %-10d %-10d %-20s\n", alert.getProduct().getName(),
+                alert.getQuantity(), alert.getThreshold(), category == null ? "" : category.getName()));
+        }
+        appendOmitted(lowStockReport, lowStock.size());
+
+        return lowStockReport.toString();
+    }
+
+    private static String generateReorderReport(DemandForecast forecast) {
+        StringBuilder reorderReport = new StringBuilder();
+        reorderReport.append(String.format("Reorder Forecast (%d-day lead time, %d days of cover, soonest first):\n",
+            forecast.getLeadTimeDays(), forecast.getCoverDays()));
+        reorderReport.append(String.format("%-30s %-8s %-10s %-10s %-12s %-10s\n", "Product", "Stock", "Sold/Day",
+            "Forecast", "Reorder By", "Order Qty"));
+        reorderReport.append("------------------------------------------------------------\n");
+
+        LocalDate today = LocalDate.now();
+        int due = 0;
+        List<DemandForecast.Forecast> forecasts = forecast.getForecasts();
+        for (DemandForecast.Forecast product : forecasts.subList(0, Math.min(forecasts.size(), PREVIEW_ROWS))) {
+            LocalDate reorderDate = product.getReorderDate();
+            reorderReport.append(String.format("%-30s %-8d %-10.2f %-10.2f %-12s %-10d\n", product.getProduct().getName(),
+                product.getProduct().getQuantity(), product.getRecentDaily(), product.getForecastDaily(),
+                reorderDate == null ? "-" : reorderDate.equals(today) ? "now" : reorderDate.toString(),
+                product.getReorderQuantity()));
+        }
+        appendOmitted(reorderReport, forecasts.size());
+        for (DemandForecast.Forecast product : forecasts) {
+            if (product.getReorderDate() == null || product.getReorderDate().isAfter(today)) {
+                break;
+            }
+            due++;
+        }
+
+        reorderReport.append("------------------------------------------------------------\n");
+        reorderReport.append(String.format("%-30s %d\n", "Products to reorder now", due));
+
+        return reorderReport.toString();
+    }
+}
@@ -0,0 +1,421 @@
+package com.inventory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Serves an {@link InventoryService} as JSON over HTTP so checkout terminals share one process, one
+ * connection pool and one purchase queue instead of each opening its own. Requests run on up to
+ * {@code inventory.server.threads} threads. A sale spends most of its time waiting for its group
+ * commit rather than holding a connection, so that is well above the connection pool's size and
+ * that many tills can land in the same commit.
+ *
+ * <pre>
+ * GET    /api/categories               POST /api/categories {"name"}
+ * PUT    /api/categories/{id} {"name"} DELETE /api/categories/{id}
+ * GET    /api/products/in-stock        GET  /api/products/{id}    GET /api/products?name=...
+ * GET    /api/products/search?q=...&amp;limit=20&amp;inStock=false   (limit 1 to 200)
+ * POST   /api/products {"name","price","quantity","category"}
+ * PUT    /api/products/{id} {...}      DELETE /api/products/{id}
+ * POST   /api/purchases {"productId" or "product", "quantity"}
+ * POST   /api/orders {"lines": [{"productId", "quantity"}, ...]}
+ * GET    /api/report                   GET  /health
+ * </pre>
+ *
+ * Every {@code /api} request must carry the shared secret in {@value #TOKEN_HEADER}, or it gets 401.
+ * Missing rows are 404, invalid input 400, a body over {@value #MAX_BODY_BYTES} bytes 413 and database
+ * failures 500, each with {@code {"error"}}.
+ */
+public class InventoryServer implements AutoCloseable {
+    public static final String TOKEN_HEADER = "X-Inventory-Token";
+    static final int MAX_SEARCH_LIMIT = 200;
+    // A large order is a few kilobytes
+    static final int MAX_BODY_BYTES = 1 << 20;
+
+    private final InventoryService service;
+    private final byte[] token;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /** Listens on the loopback interface only, so just this machine can connect. */
+    public InventoryServer(InventoryService service, int port, String token) throws IOException {
+        this(service, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), token);
+    }
+
+    public InventoryServer(InventoryService service, InetSocketAddress address, String token) throws IOException {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("The server needs a token for its clients to send");
+        }
+        this.service = service;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(address, 1024);
+        this.executor = DataTaskExecutor.newExecutor("inventory-http-",
+            Integer.getInteger("inventory.server.threads", 256));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Runs the server on {@code inventory.server.bind} (default loopback) and
+     * {@code inventory.server.port} (default 8080), or the port given as the first argument, with the
+     * stock ledger on unless {@code -Dinventory.stock.ledger=false}. Clients must send
+     * {@code inventory.server.token}, which has no default.
+     */
+    public static void main(String[] args) throws Exception {
+        String token = System.getProperty("inventory.server.token");
+        if (token == null || token.isEmpty()) {
+            throw new IllegalStateException("Set -Dinventory.server.token to the secret terminals will send");
+        }
+        // Terminals sell through this process, so it is the only writer of stock
+        if (System.getProperty("inventory.stock.ledger") == null) {
+            System.setProperty("inventory.stock.ledger", "true");
+        }
+        disableNagle();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("inventory.server.port", 8080);
+        String bind = System.getProperty("inventory.server.bind");
+        InetSocketAddress address = bind == null
+            ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+            : new InetSocketAddress(bind, port);
+        InventoryServer server = new InventoryServer(LocalInventoryService.getInstance(), address, token);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        MetricsReporter.start();
+        server.start();
+        System.out.println("Inventory server listening on " + server.server.getAddress());
+    }
+
+    /**
+     * The JDK server leaves Nagle on, so every small JSON reply waits out the client's delayed ACK
+     * (~40ms). Its setting is read once per JVM, so this must run before the first server is created;
+     * it leaves an explicit {@code -Dsun.net.httpserver.nodelay} alone.
+     */
+    static void disableNagle() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            if (path.length == 1 && path[0].equals("health")) {
+                send(exchange, 200, Map.of("status", "ok"));
+            } else if (path.length < 2 || !path[0].equals("api")) {
+                sendError(exchange, 404, "No such resource");
+            } else if (!authorized(exchange)) {
+                sendError(exchange, 401, "Missing or wrong " + TOKEN_HEADER);
+            } else if (path[1].equals("categories")) {
+                categories(exchange, method, path);
+            } else if (path[1].equals("products")) {
+                products(exchange, method, path);
+            } else if (path[1].equals("purchases") && path.length == 2 && method.equals("POST")) {
+                purchase(exchange);
+            } else if (path[1].equals("orders") && path.length == 2 && method.equals("POST")) {
+                checkout(exchange);
+            } else if (path[1].equals("report") && path.length == 2 && method.equals("GET")) {
+                send(exchange, 200, Map.of("report", service.getReport()));
+            } else {
+                sendError(exchange, 404, "No such resource");
+            }
+        } catch (BodyTooLargeException e) {
+            sendFailure(exchange, 413, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            sendFailure(exchange, 400, e.getMessage());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            sendFailure(exchange, 500, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            sendFailure(exchange, 500, String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String sent = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        // Constant time, so the token can't be guessed a byte at a time
+        return sent != null && MessageDigest.isEqual(token, sent.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A failure after the status line went out can't be reported; closing the exchange cuts the reply short
+    private static void sendFailure(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() == -1) {
+            sendError(exchange, status, message);
+        }
+    }
+
+    private void categories(HttpExchange exchange, String method, String[] path) throws IOException, SQLException {
+        if (path.length == 2 && method.equals("GET")) {
+            List<Object> categories = new ArrayList<>();
+            for (Category category : service.getCategories()) {
+                categories.add(categoryJson(category));
+            }
+            send(exchange, 200, categories);
+        } else if (path.length == 2 && method.equals("POST")) {
+            Map<String, Object> body = readBody(exchange);
+            send(exchange, 201, categoryJson(service.addCategory(string(body, "name"))));
+        } else if (path.length == 3 && method.equals("PUT")) {
+            Map<String, Object> body = readBody(exchange);
+            sendFound(exchange, service.renameCategory(id(path[2]), string(body, "name")));
+        } else if (path.length == 3 && method.equals("DELETE")) {
+            sendFound(exchange, service.deleteCategory(id(path[2])));
+        } else {
+            sendError(exchange, 405, "Method not allowed");
+        }
+    }
+
+    private void products(HttpExchange exchange, String method, String[] path) throws IOException, SQLException {
+        if (path.length == 3 && path[2].equals("in-stock") && method.equals("GET")) {
+            send(exchange, 200, service.getInStockProductNames());
+        } else if (path.length == 3 && path[2].equals("search") && method.equals("GET")) {
+            String query = queryParameter(exchange, "q");
+            int limit = intParameter(exchange, "limit", 20, 1, MAX_SEARCH_LIMIT);
+            List<Object> products = new ArrayList<>();
+            for (Product product : service.searchProducts(query == null ? "" : query, limit,
+                    "true".equals(queryParameter(exchange, "inStock")))) {
+                products.add(productJson(product));
+            }
+            send(exchange, 200, products);
+        } else if (path.length == 2 && method.equals("GET")) {
+            String name = queryParameter(exchange, "name");
+            if (name == null) {
+                throw new IllegalArgumentException("Query parameter 'name' is required");
+            }
+            sendProduct(exchange, 200, service.findProductByName(name));
+        } else if (path.length == 3 && method.equals("GET")) {
+            sendProduct(exchange, 200, service.getProduct(id(path[2])));
+        } else if (path.length == 2 && method.equals("POST")) {
+            Map<String, Object> body = readBody(exchange);
+            sendProduct(exchange, 201, service.addProduct(string(body, "name"), number(body, "price").doubleValue(),
+                integer(body, "quantity"), string(body, "category")));
+        } else if (path.length == 3 && method.equals("PUT")) {
+            Map<String, Object> body = readBody(exchange);
+            sendProduct(exchange, 200, service.updateProduct(id(path[2]), string(body, "name"),
+                number(body, "price").doubleValue(), integer(body, "quantity"), string(body, "category")));
+        } else if (path.length == 3 && method.equals("DELETE")) {
+            sendFound(exchange, service.deleteProduct(id(path[2])));
+        } else {
+            sendError(exchange, 405, "Method not allowed");
+        }
+    }
+
+    private void purchase(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, Object> body = readBody(exchange);
+        int quantity = integer(body, "quantity");
+        PurchaseResult result = body.get("productId") != null
+            ? service.purchase(integer(body, "productId"), quantity)
+            : service.purchaseByName(string(body, "product"), quantity);
+        send(exchange, 200, purchaseJson(result));
+    }
+
+    private void checkout(HttpExchange exchange) throws IOException, SQLException {
+        Object lines = readBody(exchange).get("lines");
+        if (!(lines instanceof List)) {
+            throw new IllegalArgumentException("Field 'lines' is required");
+        }
+        List<CartLine> cart = new ArrayList<>();
+        for (Object line : (List<?>) lines) {
+            if (!(line instanceof Map)) {
+                throw new IllegalArgumentException("Each line needs 'productId' and 'quantity'");
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) line;
+            cart.add(new CartLine(integer(fields, "productId"), integer(fields, "quantity")));
+        }
+        send(exchange, 200, orderJson(service.checkout(cart)));
+    }
+
+    static Map<String, Object> productJson(Product product) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", product.getId());
+        json.put("name", product.getName());
+        json.put("price", product.getPrice());
+        json.put("quantity", product.getQuantity());
+        json.put("categoryId", product.getCategoryId());
+        return json;
+    }
+
+    static Map<String, Object> categoryJson(Category category) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", category.getId());
+        json.put("name", category.getName());
+        return json;
+    }
+
+    static Map<String, Object> purchaseJson(PurchaseResult result) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("status", result.getStatus());
+        json.put("purchaseId", result.getPurchaseId());
+        json.put("productId", result.getProductId());
+        json.put("quantity", result.getQuantity());
+        json.put("totalPrice", result.getTotalPrice());
+        json.put("availableQuantity", result.getAvailableQuantity());
+        json.put("purchaseDate", result.getPurchaseDate() == null ? null : result.getPurchaseDate().getTime());
+        return json;
+    }
+
+    static Map<String, Object> orderJson(OrderResult result) {
+        List<Object> purchases = new ArrayList<>();
+        for (PurchaseResult purchase : result.getPurchases()) {
+            purchases.add(purchaseJson(purchase));
+        }
+        List<Object> refused = new ArrayList<>();
+        for (PurchaseResult purchase : result.getRefused()) {
+            refused.add(purchaseJson(purchase));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("completed", result.isCompleted());
+        json.put("totalPrice", result.getTotalPrice());
+        json.put("purchases", purchases);
+        json.put("refused", refused);
+        return json;
+    }
+
+    /** The request's JSON object, refused unread if it says it is too large and cut off if it turns out to be. */
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        // The server has already refused a Content-Length that isn't a number
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && Long.parseLong(length.trim()) > MAX_BODY_BYTES) {
+            throw new BodyTooLargeException();
+        }
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            throw new BodyTooLargeException();
+        }
+        return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    // Out of range is refused rather than clamped, as integer() does for the body
+    private static int intParameter(HttpExchange exchange, String name, int defaultValue, int min, int max) {
+        String value = queryParameter(exchange, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException("'" + name + "' must be from " + min + " to " + max + ": " + value);
+        }
+        return parsed;
+    }
+
+    private static int id(String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad id: " + segment);
+        }
+    }
+
+    private static String string(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("'" + field + "' must be a string");
+        }
+        return (String) value;
+    }
+
+    private static Number number(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("'" + field + "' must be a number");
+        }
+        return (Number) value;
+    }
+
+    // Only a whole number in int range: 2.9 or 4294967297 is a client mistake, not quantity 2 or 1
+    private static int integer(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (!(value instanceof Long)) {
+            throw new IllegalArgumentException("'" + field + "' must be a whole number");
+        }
+        try {
+            return Math.toIntExact((Long) value);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("'" + field + "' is out of range: " + value);
+        }
+    }
+
+    private static void sendProduct(HttpExchange exchange, int status, Product product) throws IOException {
+        if (product == null) {
+            sendError(exchange, 404, "No such product");
+        } else {
+            send(exchange, status, productJson(product));
+        }
+    }
+
+    private static void sendFound(HttpExchange exchange, boolean found) throws IOException {
+        if (found) {
+            send(exchange, 200, Map.of("ok", true));
+        } else {
+            sendError(exchange, 404, "Not found");
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, Map.of("error", message == null ? "Unknown error" : message));
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /** A request body over {@link #MAX_BODY_BYTES}, answered with 413. */
+    private static final class BodyTooLargeException extends RuntimeException {
+        BodyTooLargeException() {
+            super("Request body is over " + MAX_BODY_BYTES + " bytes");
+        }
+    }
+}
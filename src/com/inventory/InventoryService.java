@@ -0,0 +1,62 @@
+package com.inventory;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Product, category, purchase and report operations, independent of any UI. The desktop app and
+ * {@link InventoryServer} both go through this; {@link LocalInventoryService} does the work against
+ * the database and {@link RemoteInventoryService} forwards it to a server over HTTP.
+ *
+ * <p>Lookups return null, and updates and deletes false, when the row doesn't exist. Invalid
+ * arguments throw {@link IllegalArgumentException}.
+ */
+public interface InventoryService {
+    /** The service this process should use: remote when {@code inventory.server.url} is set, local otherwise. */
+    static InventoryService getInstance() throws SQLException {
+        return isRemote() ? RemoteInventoryService.getInstance() : LocalInventoryService.getInstance();
+    }
+
+    static boolean isRemote() {
+        return System.getProperty("inventory.server.url") != null;
+    }
+
+    List<Category> getCategories() throws SQLException;
+
+    Category addCategory(String name) throws SQLException;
+
+    boolean renameCategory(int id, String name) throws SQLException;
+
+    /** Deletes the category together with all of its products. */
+    boolean deleteCategory(int id) throws SQLException;
+
+    /** Names of products that can currently be sold, sorted. */
+    List<String> getInStockProductNames() throws SQLException;
+
+    Product getProduct(int id) throws SQLException;
+
+    Product findProductByName(String name) throws SQLException;
+
+    /** Up to {@code limit} products whose names best match {@code query}, for type-ahead pickers. */
+    List<Product> searchProducts(String query, int limit, boolean inStockOnly) throws SQLException;
+
+    Product addProduct(String name, double price, int quantity, String categoryName) throws SQLException;
+
+    Product updateProduct(int id, String name, double price, int quantity, String categoryName) throws SQLException;
+
+    boolean deleteProduct(int id) throws SQLException;
+
+    /** Sells {@code quantity} units at the product's current price. */
+    PurchaseResult purchase(int productId, int quantity) throws SQLException;
+
+    PurchaseResult purchaseByName(String productName, int quantity) throws SQLException;
+
+    /**
+     * Sells every line at the products' current prices in one transaction, or nothing if any line is
+     * for a missing product or more than is in stock.
+     */
+    OrderResult checkout(List<CartLine> lines) throws SQLException;
+
+    /** The plain-text report shown on the Reports tab. */
+    String getReport() throws SQLException;
+}
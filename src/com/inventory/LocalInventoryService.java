@@ -0,0 +1,537 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link InventoryService} against the database: reads come from the {@link CatalogCache}, sales go
+ * through the {@link PurchaseService}, and every write keeps the catalog and stock ledger current.
+ * With a {@link PurchaseJournal}, sales are checked against the in-memory stock and acknowledged
+ * once journaled, and reach the database when the journal is replayed. Safe to call from any number
+ * of threads.
+ */
+public class LocalInventoryService implements InventoryService {
+    private static volatile LocalInventoryService instance;
+
+    private final DataSource dataSource;
+    private final CatalogCache catalog;
+    private final PurchaseService purchases;
+    private final StockLedger ledger;
+    private final PurchaseJournal journal;
+    // Without a ledger, makes the catalog's stock check and decrement for a journaled sale atomic
+    private final Object journalLock = new Object();
+    private final boolean shared;
+    private volatile ReportAggregates aggregates;
+    private volatile ProductSearchIndex searchIndex;
+    private volatile LowStockMonitor lowStock;
+    private volatile DemandForecast forecast;
+    private volatile CategoryDeleter deleter;
+
+    /** {@code ledger} may be null when stock lives only in {@code products.quantity}. */
+    public LocalInventoryService(DataSource dataSource, CatalogCache catalog, PurchaseService purchases, StockLedger ledger) {
+        this(dataSource, catalog, purchases, ledger, null, false);
+    }
+
+    /** {@code journal} may be null to send sales straight to the database. */
+    public LocalInventoryService(DataSource dataSource, CatalogCache catalog, PurchaseService purchases, StockLedger ledger,
+                                 PurchaseJournal journal) {
+        this(dataSource, catalog, purchases, ledger, journal, false);
+    }
+
+    private LocalInventoryService(DataSource dataSource, CatalogCache catalog, PurchaseService purchases, StockLedger ledger,
+                                  PurchaseJournal journal, boolean shared) {
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.purchases = purchases;
+        this.ledger = ledger;
+        this.journal = journal;
+        this.shared = shared;
+        if (journal != null) {
+            journal.setConflictListener(this::journalConflict);
+        }
+    }
+
+    public static LocalInventoryService getInstance() throws SQLException {
+        LocalInventoryService service = instance;
+        if (service == null) {
+            synchronized (LocalInventoryService.class) {
+                service = instance;
+                if (service == null) {
+                    service = new LocalInventoryService(DatabaseConnection.getDataSource(), CatalogCache.getInstance(),
+                        PurchaseService.getInstance(), StockLedger.getInstance(), PurchaseJournal.getInstance(), true);
+                    // Carries on with any category delete a crash interrupted
+                    CategoryDeleter.getInstance();
+                    instance = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    @Override
+    public List<Category> getCategories() {
+        return catalog.getCategoriesByName();
+    }
+
+    @Override
+    public Category addCategory(String name) throws SQLException {
+        name = requireName(name, "Category name");
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO categories (name) VALUES (?)",
+                 Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("No id returned for new category " + name);
+                }
+                Category category = new Category(generatedKeys.getInt(1), name);
+                catalog.categorySaved(category);
+                return category;
+            }
+        }
+    }
+
+    @Override
+    public boolean renameCategory(int id, String name) throws SQLException {
+        name = requireName(name, "Category name");
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "UPDATE categories SET name = ? WHERE id = ?")) {
+
+            pstmt.setString(1, name);
+            pstmt.setInt(2, id);
+            if (pstmt.executeUpdate() == 0) {
+                return false;
+            }
+            catalog.categorySaved(new Category(id, name));
+            return true;
+        }
+    }
+
+    @Override
+    public boolean deleteCategory(int id) throws SQLException {
+        // Products go in chunks on the deleter's thread; this only waits for it
+        try {
+            return deleter().delete(id).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for category delete", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Category delete failed", e.getCause());
+        }
+    }
+
+    @Override
+    public List<String> getInStockProductNames() {
+        return catalog.getInStockProductNames();
+    }
+
+    @Override
+    public Product getProduct(int id) {
+        return withLiveStock(catalog.getProduct(id));
+    }
+
+    @Override
+    public Product findProductByName(String name) {
+        return withLiveStock(catalog.findProductByName(name));
+    }
+
+    @Override
+    public List<Product> searchProducts(String query, int limit, boolean inStockOnly) throws SQLException {
+        List<Product> matches = searchIndex().search(query, limit, product -> !inStockOnly || liveQuantity(product) > 0);
+        matches.replaceAll(this::withLiveStock);
+        return matches;
+    }
+
+    @Override
+    public Product addProduct(String name, double price, int quantity, String categoryName) throws SQLException {
+        name = requireName(name, "Product name");
+        requireValid(price, quantity);
+        int categoryId = categoryId(categoryName);
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO products (name, price, quantity, category_id) VALUES (?, ?, ?, ?)",
+                 Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, name);
+            pstmt.setDouble(2, price);
+            pstmt.setInt(3, quantity);
+            pstmt.setInt(4, categoryId);
+            pstmt.executeUpdate();
+
+            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("No id returned for new product " + name);
+                }
+                Product product = new Product(generatedKeys.getInt(1), name, price, quantity, categoryId);
+                catalog.productSaved(product);
+                if (ledger != null) {
+                    ledger.track(product.getId(), quantity);
+                }
+                return product;
+            }
+        }
+    }
+
+    @Override
+    public Product updateProduct(int id, String name, double price, int quantity, String categoryName) throws SQLException {
+        name = requireName(name, "Product name");
+        requireValid(price, quantity);
+        int categoryId = categoryId(categoryName);
+        Product product = new Product(id, name, price, quantity, categoryId);
+        if (ledger == null) {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(
+                     "UPDATE products SET name = ?, price = ?, quantity = ?, category_id = ? WHERE id = ?")) {
+
+                pstmt.setString(1, name);
+                pstmt.setDouble(2, price);
+                pstmt.setInt(3, quantity);
+                pstmt.setInt(4, categoryId);
+                pstmt.setInt(5, id);
+
+                if (pstmt.executeUpdate() == 0) {
+                    return null;
+                }
+                catalog.productSaved(product);
+                return product;
+            }
+        }
+
+        // Stock is owned by the ledger; it applies the edit as a delta so in-flight sales aren't lost
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            int delta = 0;
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE products SET name = ?, price = ?, category_id = ? WHERE id = ?")) {
+
+                pstmt.setString(1, name);
+                pstmt.setDouble(2, price);
+                pstmt.setInt(3, categoryId);
+                pstmt.setInt(4, id);
+
+                int affectedRows = pstmt.executeUpdate();
+                if (affectedRows > 0) {
+                    delta = ledger.adjustTo(conn, id, quantity);
+                }
+                conn.commit();
+                if (affectedRows == 0) {
+                    return null;
+                }
+                catalog.productSaved(product);
+                return product;
+            } catch (SQLException e) {
+                conn.rollback();
+                ledger.undoAdjust(id, delta);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public boolean deleteProduct(int id) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("DELETE FROM products WHERE id = ?")) {
+
+            pstmt.setInt(1, id);
+            int affectedRows = pstmt.executeUpdate();
+            catalog.productRemoved(id);
+            if (ledger != null) {
+                ledger.forget(id);
+            }
+            return affectedRows > 0;
+        }
+    }
+
+    @Override
+    public PurchaseResult purchase(int productId, int quantity) throws SQLException {
+        return purchase(catalog.getProduct(productId), productId, quantity);
+    }
+
+    @Override
+    public PurchaseResult purchaseByName(String productName, int quantity) throws SQLException {
+        return purchase(catalog.findProductByName(productName), -1, quantity);
+    }
+
+    private PurchaseResult purchase(Product product, int productId, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        if (product == null) {
+            return PurchaseResult.notFound(productId, quantity);
+        }
+        if (journal != null) {
+            OrderResult result = journalSale(new int[]{product.getId()}, new int[]{quantity},
+                new double[]{product.getPrice()});
+            return result.isCompleted() ? result.getPurchases().get(0) : result.getRefused().get(0);
+        }
+        // Stock check, decrement and history insert happen atomically in the purchase service
+        PurchaseResult result = purchases.purchase(product.getId(), quantity, product.getPrice());
+        if (result.isCompleted()) {
+            catalog.stockChanged(product.getId(), -quantity);
+        }
+        return result;
+    }
+
+    @Override
+    public OrderResult checkout(List<CartLine> lines) throws SQLException {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Order has no lines");
+        }
+        int[] productIds = new int[lines.size()];
+        int[] quantities = new int[lines.size()];
+        double[] unitPrices = new double[lines.size()];
+        List<PurchaseResult> missing = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            CartLine line = lines.get(i);
+            if (line.getQuantity() <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive: " + line.getQuantity());
+            }
+            Product product = catalog.getProduct(line.getProductId());
+            if (product == null) {
+                missing.add(PurchaseResult.notFound(line.getProductId(), line.getQuantity()));
+                continue;
+            }
+            productIds[i] = product.getId();
+            quantities[i] = line.getQuantity();
+            unitPrices[i] = product.getPrice();
+        }
+        if (!missing.isEmpty()) {
+            return OrderResult.refused(missing);
+        }
+        if (journal != null) {
+            return journalSale(productIds, quantities, unitPrices);
+        }
+        OrderResult result = purchases.checkout(productIds, quantities, unitPrices);
+        for (PurchaseResult purchase : result.getPurchases()) {
+            catalog.stockChanged(purchase.getProductId(), -purchase.getQuantity());
+        }
+        return result;
+    }
+
+    // Acknowledged once the sale is on local disk; the journal's replayer gets it into the database
+    private OrderResult journalSale(int[] productIds, int[] quantities, double[] unitPrices) throws SQLException {
+        Map<Integer, Integer> wanted = new TreeMap<>();
+        for (int i = 0; i < productIds.length; i++) {
+            wanted.merge(productIds[i], quantities[i], Integer::sum);
+        }
+        List<PurchaseResult> refused = new ArrayList<>();
+        if (ledger != null) {
+            Map<Integer, Integer> reserved = new TreeMap<>();
+            try {
+                for (Map.Entry<Integer, Integer> line : wanted.entrySet()) {
+                    if (ledger.reserve(line.getKey(), line.getValue())) {
+                        reserved.put(line.getKey(), line.getValue());
+                    } else {
+                        int available = ledger.available(line.getKey());
+                        refused.add(available < 0
+                            ? PurchaseResult.notFound(line.getKey(), line.getValue())
+                            : PurchaseResult.insufficientStock(line.getKey(), line.getValue(), available));
+                    }
+                }
+            } finally {
+                if (!refused.isEmpty() || reserved.size() < wanted.size()) {
+                    reserved.forEach(ledger::release);
+                }
+            }
+        } else {
+            synchronized (journalLock) {
+                for (Map.Entry<Integer, Integer> line : wanted.entrySet()) {
+                    Product product = catalog.getProduct(line.getKey());
+                    if (product == null) {
+                        refused.add(PurchaseResult.notFound(line.getKey(), line.getValue()));
+                    } else if (product.getQuantity() < line.getValue()) {
+                        refused.add(PurchaseResult.insufficientStock(line.getKey(), line.getValue(), product.getQuantity()));
+                    }
+                }
+                if (refused.isEmpty()) {
+                    wanted.forEach((productId, quantity) -> catalog.stockChanged(productId, -quantity));
+                }
+            }
+        }
+        if (!refused.isEmpty()) {
+            return OrderResult.refused(refused);
+        }
+
+        try {
+            journal.append(productIds, quantities, unitPrices);
+        } catch (IOException | RuntimeException e) {
+            if (ledger != null) {
+                wanted.forEach(ledger::release);
+            } else {
+                wanted.forEach((productId, quantity) -> catalog.stockChanged(productId, quantity));
+            }
+            throw new SQLException("Could not journal the sale", e);
+        }
+        if (ledger != null) {
+            wanted.forEach((productId, quantity) -> catalog.stockChanged(productId, -quantity));
+        }
+
+        // The history id is only known once the sale has been replayed
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<PurchaseResult> results = new ArrayList<>(productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            results.add(PurchaseResult.completed(-1, productIds[i], quantities[i], unitPrices[i] * quantities[i], now));
+        }
+        return OrderResult.completed(results);
+    }
+
+    // The database had less than this till thought: another till sold the same units meanwhile
+    private void journalConflict(PurchaseJournal.Conflict conflict) {
+        if (ledger != null || conflict.getReason() != PurchaseJournal.Conflict.Reason.OVERSOLD) {
+            return;
+        }
+        synchronized (journalLock) {
+            Product product = catalog.getProduct(conflict.getProductId());
+            if (product != null && product.getQuantity() != 0) {
+                catalog.stockChanged(product.getId(), -product.getQuantity());
+            }
+        }
+    }
+
+    @Override
+    public String getReport() throws SQLException {
+        return InventoryReport.generate(catalog, aggregates(), lowStock(), forecast());
+    }
+
+    private ReportAggregates aggregates() throws SQLException {
+        if (shared) {
+            // The same aggregates the Reports tab verifies and rebuilds
+            return ReportAggregates.getInstance();
+        }
+        ReportAggregates result = aggregates;
+        if (result == null) {
+            synchronized (this) {
+                result = aggregates;
+                if (result == null) {
+                    result = new ReportAggregates(dataSource, catalog, purchases);
+                    aggregates = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private ProductSearchIndex searchIndex() throws SQLException {
+        if (shared) {
+            return ProductSearchIndex.getInstance();
+        }
+        ProductSearchIndex result = searchIndex;
+        if (result == null) {
+            synchronized (this) {
+                result = searchIndex;
+                if (result == null) {
+                    result = new ProductSearchIndex(catalog);
+                    searchIndex = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private DemandForecast forecast() throws SQLException {
+        if (shared) {
+            return DemandForecast.getInstance();
+        }
+        DemandForecast result = forecast;
+        if (result == null) {
+            synchronized (this) {
+                result = forecast;
+                if (result == null) {
+                    result = DemandForecast.configured(dataSource, catalog);
+                    purchases.addListener(result);
+                    forecast = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private CategoryDeleter deleter() throws SQLException {
+        if (shared) {
+            return CategoryDeleter.getInstance();
+        }
+        CategoryDeleter result = deleter;
+        if (result == null) {
+            synchronized (this) {
+                result = deleter;
+                if (result == null) {
+                    result = new CategoryDeleter(dataSource, catalog, ledger, CategoryDeleter.DEFAULT_CHUNK_SIZE,
+                        CategoryDeleter.DEFAULT_PAUSE_MILLIS);
+                    deleter = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private LowStockMonitor lowStock() throws SQLException {
+        if (shared) {
+            return LowStockMonitor.getInstance();
+        }
+        LowStockMonitor result = lowStock;
+        if (result == null) {
+            synchronized (this) {
+                result = lowStock;
+                if (result == null) {
+                    result = new LowStockMonitor(dataSource, catalog, LowStockMonitor.defaultThreshold());
+                    lowStock = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private int liveQuantity(Product product) {
+        return ledger == null ? product.getQuantity() : ledger.availableOrDefault(product.getId(), product.getQuantity());
+    }
+
+    private Product withLiveStock(Product product) {
+        if (product == null || ledger == null) {
+            return product;
+        }
+        return product.withQuantity(liveQuantity(product));
+    }
+
+    // Resolved from the catalog rather than a (SELECT id FROM categories WHERE name = ?) per write
+    private int categoryId(String name) throws SQLException {
+        Category category = name == null ? null : catalog.findCategoryByName(name);
+        if (category == null) {
+            throw new SQLException("Unknown category: " + name);
+        }
+        return category.getId();
+    }
+
+    private static String requireName(String name, String what) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException(what + " must not be empty");
+        }
+        return name;
+    }
+
+    private static void requireValid(double price, int quantity) {
+        if (!(price >= 0) || Double.isInfinite(price)) {
+            throw new IllegalArgumentException("Price must be a non-negative number: " + price);
+        }
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity must not be negative: " + quantity);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.inventory;
+
+/**
+ * Notified by {@link LowStockMonitor} when a product starts, stops or keeps alerting with a new
+ * quantity or threshold. Called on the writer's thread with the monitor locked, so keep it short.
+ */
+public interface LowStockListener {
+    /** {@code before} is null for a new alert and {@code after} is null for a cleared one. */
+    void alertChanged(LowStockMonitor.Alert before, LowStockMonitor.Alert after);
+}
@@ -0,0 +1,459 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the set of products at or below their low-stock threshold current as stock changes, so the
+ * alert list never needs a scan of {@code products}. A product's threshold is its own override from
+ * {@code product_stock_thresholds}, else its category's from {@code category_stock_thresholds}, else
+ * the default. Every catalog change, whether from a sale, an edit or a reload, re-evaluates just that
+ * product.
+ *
+ * <p>Alerts sit in an indexed binary heap ordered by how far into its threshold each product is
+ * ({@code quantity / threshold}, out of stock first), so the most critical alert is a peek and each
+ * change is O(log alerts).
+ */
+public class LowStockMonitor implements CatalogListener {
+    public static final int DEFAULT_THRESHOLD = 5;
+
+    /** Low-stock rows by the same rules, for queries that need them from the database; bind with {@link #bindLowStock}. */
+    static final String LOW_STOCK_SQL =
+        "SELECT p.id, p.name, p.quantity, COALESCE(pt.threshold, ct.threshold, ?) AS threshold FROM products p " +
+        "LEFT JOIN product_stock_thresholds pt ON pt.product_id = p.id " +
+        "LEFT JOIN category_stock_thresholds ct ON ct.category_id = p.category_id " +
+        // No product can be low above the highest threshold, a range the quantity index can read
+        "WHERE p.quantity <= GREATEST(?, (SELECT COALESCE(MAX(threshold), 0) FROM product_stock_thresholds), " +
+        "(SELECT COALESCE(MAX(threshold), 0) FROM category_stock_thresholds)) " +
+        "AND p.quantity <= COALESCE(pt.threshold, ct.threshold, ?) " +
+        "ORDER BY p.quantity * 1.0 / GREATEST(COALESCE(pt.threshold, ct.threshold, ?), 1), p.quantity, p.id";
+
+    // Most critical first: lowest share of the threshold left, then fewest units, then by id
+    private static final Comparator<Alert> CRITICAL_FIRST = (a, b) -> {
+        int byShare = Long.compare((long) a.getQuantity() * Math.max(b.threshold, 1),
+            (long) b.getQuantity() * Math.max(a.threshold, 1));
+        if (byShare != 0) {
+            return byShare;
+        }
+        int byQuantity = Integer.compare(a.getQuantity(), b.getQuantity());
+        return byQuantity != 0 ? byQuantity : Integer.compare(a.getProductId(), b.getProductId());
+    };
+
+    private static volatile LowStockMonitor instance;
+
+    private final DataSource dataSource;
+    private final CatalogCache catalog;
+    private final int defaultThreshold;
+    private final Map<Integer, Integer> productThresholds = new HashMap<>();
+    private final Map<Integer, Integer> categoryThresholds = new HashMap<>();
+    private final AlertHeap alerts = new AlertHeap();
+    private final List<LowStockListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile int alertCount;
+
+    public LowStockMonitor(DataSource dataSource, CatalogCache catalog, int defaultThreshold) throws SQLException {
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.defaultThreshold = defaultThreshold;
+        catalog.addListener(this);
+        rebuild();
+    }
+
+    public static LowStockMonitor getInstance() throws SQLException {
+        LowStockMonitor monitor = instance;
+        if (monitor == null) {
+            synchronized (LowStockMonitor.class) {
+                monitor = instance;
+                if (monitor == null) {
+                    monitor = new LowStockMonitor(DatabaseConnection.getDataSource(), CatalogCache.getInstance(),
+                        defaultThreshold());
+                    instance = monitor;
+                }
+            }
+        }
+        return monitor;
+    }
+
+    /** The threshold for products with no override of their own or their category's. */
+    public static int defaultThreshold() {
+        return Integer.getInteger("inventory.lowStock.defaultThreshold", DEFAULT_THRESHOLD);
+    }
+
+    static void bindLowStock(PreparedStatement pstmt, int defaultThreshold) throws SQLException {
+        for (int i = 1; i <= 4; i++) {
+            pstmt.setInt(i, defaultThreshold);
+        }
+    }
+
+    public void addListener(LowStockListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LowStockListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Every current alert, most critical first. */
+    public synchronized List<Alert> getAlerts() {
+        Alert[] sorted = Arrays.copyOf(alerts.heap, alerts.size);
+        Arrays.sort(sorted, CRITICAL_FIRST);
+        return Arrays.asList(sorted);
+    }
+
+    /** The most critical alert, or null if nothing is low. */
+    public synchronized Alert getMostCritical() {
+        return alerts.size == 0 ? null : alerts.heap[0];
+    }
+
+    /** Reads without the monitor's lock, so the EDT can ask while stock is being re-evaluated. */
+    public int getAlertCount() {
+        return alertCount;
+    }
+
+    public synchronized Alert getAlert(int productId) {
+        Integer position = alerts.positions.get(productId);
+        return position == null ? null : alerts.heap[position];
+    }
+
+    /** The threshold that applies to {@code product}. */
+    public synchronized int thresholdFor(Product product) {
+        Integer threshold = productThresholds.get(product.getId());
+        if (threshold == null) {
+            threshold = categoryThresholds.get(product.getCategoryId());
+        }
+        return threshold != null ? threshold : defaultThreshold;
+    }
+
+    /** The product's own override, or null if it follows its category. */
+    public synchronized Integer getProductThreshold(int productId) {
+        return productThresholds.get(productId);
+    }
+
+    /** The category's override, or null if its products use the default. */
+    public synchronized Integer getCategoryThreshold(int categoryId) {
+        return categoryThresholds.get(categoryId);
+    }
+
+    /** Sets or, with null, clears a product's own threshold. */
+    public void setProductThreshold(int productId, Integer threshold) throws SQLException {
+        writeThreshold("product_stock_thresholds", "product_id", productId, threshold);
+        // Catalog first, as for catalog events, so no stock change slips between the write and the evaluation
+        synchronized (catalog) {
+            synchronized (this) {
+                put(productThresholds, productId, threshold);
+                Product product = catalog.getProduct(productId);
+                if (product != null) {
+                    evaluate(product);
+                }
+            }
+        }
+    }
+
+    /** Sets or, with null, clears a category's threshold; re-evaluates the products in it. */
+    public void setCategoryThreshold(int categoryId, Integer threshold) throws SQLException {
+        writeThreshold("category_stock_thresholds", "category_id", categoryId, threshold);
+        synchronized (catalog) {
+            synchronized (this) {
+                put(categoryThresholds, categoryId, threshold);
+                for (Product product : catalog.getProducts()) {
+                    if (product.getCategoryId() == categoryId) {
+                        evaluate(product);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Reloads the thresholds and re-evaluates every product in the catalog. */
+    public void rebuild() throws SQLException {
+        Map<Integer, Integer> products = new HashMap<>();
+        Map<Integer, Integer> categories = new HashMap<>();
+        try (Connection conn = dataSource.getConnection()) {
+            readThresholds(conn, "SELECT product_id, threshold FROM product_stock_thresholds", products);
+            readThresholds(conn, "SELECT category_id, threshold FROM category_stock_thresholds", categories);
+        }
+        synchronized (catalog) {
+            synchronized (this) {
+                productThresholds.clear();
+                productThresholds.putAll(products);
+                categoryThresholds.clear();
+                categoryThresholds.putAll(categories);
+                reevaluateAll();
+            }
+        }
+    }
+
+    /**
+     * Runs the low-stock query against the database and lists every product it disagrees with the
+     * alerts about. An empty list means the alerts are current.
+     */
+    public List<String> verify() throws SQLException {
+        StockLedger ledger = StockLedger.current();
+        if (ledger != null) {
+            ledger.flush();
+        }
+        Map<Integer, Alert> expected = new HashMap<>();
+        for (Alert alert : getAlerts()) {
+            expected.put(alert.getProductId(), alert);
+        }
+        List<String> problems = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(LOW_STOCK_SQL)) {
+                bindLowStock(pstmt, defaultThreshold);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int productId = rs.getInt(1);
+                        Alert alert = expected.remove(productId);
+                        if (alert == null) {
+                            problems.add(String.format("Low stock: product %d (%d of %d) has no alert", productId,
+                                rs.getInt(3), rs.getInt(4)));
+                        } else if (alert.getQuantity() != rs.getInt(3) || alert.getThreshold() != rs.getInt(4)) {
+                            problems.add(String.format("Low stock: product %d is %d of %d, alert says %d of %d", productId,
+                                rs.getInt(3), rs.getInt(4), alert.getQuantity(), alert.getThreshold()));
+                        }
+                    }
+                }
+            }
+        }
+        for (Alert alert : expected.values()) {
+            problems.add("Low stock: product " + alert.getProductId() + " alerts but is not low in the database");
+        }
+        return problems;
+    }
+
+    @Override
+    public synchronized void productChanged(Product before, Product after) {
+        if (after != null) {
+            evaluate(after);
+        } else {
+            productThresholds.remove(before.getId());
+            Alert cleared = alerts.remove(before.getId());
+            if (cleared != null) {
+                fire(cleared, null);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void categoryChanged(Category before, Category after) {
+        if (after == null) {
+            // Its products are removed one by one through productChanged
+            categoryThresholds.remove(before.getId());
+        }
+    }
+
+    @Override
+    public synchronized void catalogReloaded() {
+        reevaluateAll();
+    }
+
+    private void reevaluateAll() {
+        List<Alert> previous = Arrays.asList(Arrays.copyOf(alerts.heap, alerts.size));
+        alerts.clear();
+        for (Product product : catalog.getProducts()) {
+            int threshold = thresholdFor(product);
+            if (product.getQuantity() <= threshold) {
+                alerts.put(new Alert(product, threshold));
+            }
+        }
+        for (Alert before : previous) {
+            Alert after = getAlert(before.getProductId());
+            if (after == null || before.differsFrom(after)) {
+                fire(before, after);
+            }
+        }
+        Map<Integer, Alert> old = new HashMap<>();
+        for (Alert before : previous) {
+            old.put(before.getProductId(), before);
+        }
+        for (int i = 0; i < alerts.size; i++) {
+            if (!old.containsKey(alerts.heap[i].getProductId())) {
+                fire(null, alerts.heap[i]);
+            }
+        }
+        alertCount = alerts.size;
+    }
+
+    private void evaluate(Product product) {
+        int threshold = thresholdFor(product);
+        Alert before = getAlert(product.getId());
+        if (product.getQuantity() <= threshold) {
+            Alert after = new Alert(product, threshold);
+            alerts.put(after);
+            if (before == null || before.differsFrom(after)) {
+                fire(before, after);
+            }
+        } else if (before != null) {
+            alerts.remove(product.getId());
+            fire(before, null);
+        }
+    }
+
+    private void fire(Alert before, Alert after) {
+        alertCount = alerts.size;
+        for (LowStockListener listener : listeners) {
+            try {
+                listener.alertChanged(before, after);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void writeThreshold(String table, String idColumn, int id, Integer threshold) throws SQLException {
+        if (threshold != null && threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            if (threshold == null) {
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + table + " WHERE " + idColumn + " = ?")) {
+                    pstmt.setInt(1, id);
+                    pstmt.executeUpdate();
+                }
+                return;
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "UPDATE " + table + " SET threshold = ? WHERE " + idColumn + " = ?")) {
+                pstmt.setInt(1, threshold);
+                pstmt.setInt(2, id);
+                if (pstmt.executeUpdate() > 0) {
+                    return;
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO " + table + " (" + idColumn + ", threshold) VALUES (?, ?)")) {
+                pstmt.setInt(1, id);
+                pstmt.setInt(2, threshold);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    private static void readThresholds(Connection conn, String sql, Map<Integer, Integer> into) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                into.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+    }
+
+    private static void put(Map<Integer, Integer> thresholds, int id, Integer threshold) {
+        if (threshold == null) {
+            thresholds.remove(id);
+        } else {
+            thresholds.put(id, threshold);
+        }
+    }
+
+    /** A product at or below its threshold. */
+    public static final class Alert {
+        private final Product product;
+        private final int threshold;
+
+        Alert(Product product, int threshold) {
+            this.product = product;
+            this.threshold = threshold;
+        }
+
+        public Product getProduct() { return product; }
+        public int getProductId() { return product.getId(); }
+        public int getQuantity() { return product.getQuantity(); }
+        public int getThreshold() { return threshold; }
+
+        boolean differsFrom(Alert other) {
+            return product.getQuantity() != other.product.getQuantity() || threshold != other.threshold ||
+                !product.getName().equals(other.product.getName()) || product.getCategoryId() != other.product.getCategoryId();
+        }
+    }
+
+    /** Binary min-heap of alerts with each product's position indexed, so any alert can be moved or removed. */
+    private static final class AlertHeap {
+        Alert[] heap = new Alert[16];
+        int size;
+        final Map<Integer, Integer> positions = new HashMap<>();
+
+        /** Adds the alert, or replaces the product's current one and restores heap order. */
+        void put(Alert alert) {
+            Integer position = positions.get(alert.getProductId());
+            if (position == null) {
+                if (size == heap.length) {
+                    heap = Arrays.copyOf(heap, size * 2);
+                }
+                set(size, alert);
+                siftUp(size++);
+                return;
+            }
+            set(position, alert);
+            siftDown(siftUp(position));
+        }
+
+        Alert remove(int productId) {
+            Integer position = positions.remove(productId);
+            if (position == null) {
+                return null;
+            }
+            Alert removed = heap[position];
+            Alert last = heap[--size];
+            heap[size] = null;
+            if (position < size) {
+                set(position, last);
+                siftDown(siftUp(position));
+            }
+            return removed;
+        }
+
+        void clear() {
+            Arrays.fill(heap, 0, size, null);
+            size = 0;
+            positions.clear();
+        }
+
+        private int siftUp(int position) {
+            Alert alert = heap[position];
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (CRITICAL_FIRST.compare(alert, heap[parent]) >= 0) {
+                    break;
+                }
+                set(position, heap[parent]);
+                position = parent;
+            }
+            set(position, alert);
+            return position;
+        }
+
+        private void siftDown(int position) {
+            Alert alert = heap[position];
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && CRITICAL_FIRST.compare(heap[child + 1], heap[child]) < 0) {
+                    child++;
+                }
+                if (CRITICAL_FIRST.compare(heap[child], alert) >= 0) {
+                    break;
+                }
+                set(position, heap[child]);
+                position = child;
+            }
+            set(position, alert);
+        }
+
+        private void set(int position, Alert alert) {
+            heap[position] = alert;
+            positions.put(alert.getProductId(), position);
+        }
+    }
+}
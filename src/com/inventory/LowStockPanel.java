@@ -0,0 +1,255 @@
+package com.inventory;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Live list of the products at or below their low-stock threshold, most critical first, with
+ * controls to override the threshold for a product or a whole category. Alerts arrive from
+ * {@link LowStockMonitor}; a burst of them (a basket checkout, a category re-threshold) becomes one
+ * refresh.
+ */
+public class LowStockPanel extends JPanel {
+    private static final int REFRESH_DELAY_MILLIS = 200;
+
+    private final AlertTableModel tableModel = new AlertTableModel();
+    private final JTable alertTable = new JTable(tableModel);
+    private final JLabel summaryLabel = new JLabel("Loading low stock alerts...");
+    private final ProductSearchField productField = new ProductSearchField("lowstock.search", false);
+    private final JComboBox<String> categoryComboBox = new JComboBox<>();
+    private final JTextField thresholdField = new JTextField(5);
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private final Timer refreshTimer = new Timer(REFRESH_DELAY_MILLIS, e -> loadAlerts());
+    private LowStockMonitor monitor;
+    private CatalogCache catalog;
+
+    public LowStockPanel() {
+        setLayout(new BorderLayout());
+
+        JPanel controls = new JPanel(new GridLayout(4, 2));
+        controls.add(new JLabel("Product (or select a row):"));
+        controls.add(productField);
+        controls.add(new JLabel("Category:"));
+        controls.add(categoryComboBox);
+        controls.add(new JLabel("Threshold:"));
+        controls.add(thresholdField);
+
+        JButton productButton = new JButton("Set Product Threshold");
+        JButton categoryButton = new JButton("Set Category Threshold");
+        JButton clearProductButton = new JButton("Clear Product Threshold");
+        JButton clearCategoryButton = new JButton("Clear Category Threshold");
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(productButton);
+        buttonPanel.add(categoryButton);
+        buttonPanel.add(clearProductButton);
+        buttonPanel.add(clearCategoryButton);
+
+        JPanel south = new JPanel(new BorderLayout());
+        south.add(controls, BorderLayout.CENTER);
+        south.add(buttonPanel, BorderLayout.SOUTH);
+
+        alertTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        add(summaryLabel, BorderLayout.NORTH);
+        add(new JScrollPane(alertTable), BorderLayout.CENTER);
+        add(south, BorderLayout.SOUTH);
+
+        refreshTimer.setRepeats(false);
+        productButton.addActionListener(e -> {
+            Integer threshold = parseThreshold();
+            if (threshold != null) {
+                setProductThreshold(threshold);
+            }
+        });
+        categoryButton.addActionListener(e -> {
+            Integer threshold = parseThreshold();
+            if (threshold != null) {
+                setCategoryThreshold(threshold);
+            }
+        });
+        clearProductButton.addActionListener(e -> setProductThreshold(null));
+        clearCategoryButton.addActionListener(e -> setCategoryThreshold(null));
+        ChangeBus.getInstance().subscribe(events -> {
+            for (CatalogEvent event : events) {
+                if (event.getCategory() != null || event.getType() == CatalogEvent.Type.RELOADED) {
+                    loadCategories();
+                    return;
+                }
+            }
+        });
+
+        loadCategories();
+        DataTaskExecutor.getInstance().run("Loading low stock alerts", context -> {
+            catalog = CatalogCache.getInstance();
+            return LowStockMonitor.getInstance();
+        }, loaded -> {
+            monitor = loaded;
+            // Alerts fire under the catalog's lock, so only note that a refresh is due
+            monitor.addListener((before, after) -> scheduleRefresh());
+            loadAlerts();
+        }, showError("Error loading low stock alerts: "));
+    }
+
+    private void scheduleRefresh() {
+        if (refreshPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(refreshTimer::restart);
+        }
+    }
+
+    private void loadAlerts() {
+        refreshPending.set(false);
+        DataTaskExecutor.getInstance().coalesce("lowstock.alerts", "Loading low stock alerts",
+            context -> monitor.getAlerts(), alerts -> {
+                Product selected = selectedRowProduct();
+                tableModel.setAlerts(alerts);
+                if (selected != null) {
+                    int row = tableModel.findRow(selected.getId());
+                    if (row != -1) {
+                        alertTable.setRowSelectionInterval(row, row);
+                    }
+                }
+                if (alerts.isEmpty()) {
+                    summaryLabel.setText("No products are low on stock");
+                } else {
+                    LowStockMonitor.Alert critical = alerts.get(0);
+                    summaryLabel.setText(String.format("%d products low on stock; most critical: %s (%d of %d)",
+                        alerts.size(), critical.getProduct().getName(), critical.getQuantity(), critical.getThreshold()));
+                }
+            }, showError("Error loading low stock alerts: "));
+    }
+
+    private void loadCategories() {
+        DataTaskExecutor.getInstance().coalesce("lowstock.categories", "Loading categories",
+            context -> CatalogCache.getInstance().getCategoryNames(), names -> {
+                Object selected = categoryComboBox.getSelectedItem();
+                categoryComboBox.removeAllItems();
+                for (String name : names) {
+                    categoryComboBox.addItem(name);
+                }
+                if (selected != null) {
+                    categoryComboBox.setSelectedItem(selected);
+                }
+            }, showError("Error loading categories: "));
+    }
+
+    private void setProductThreshold(Integer threshold) {
+        if (monitor == null) {
+            return;
+        }
+        Product product = productField.getPickedProduct();
+        if (product == null) {
+            product = selectedRowProduct();
+        }
+        if (product == null) {
+            JOptionPane.showMessageDialog(this, "Please pick a product or select an alert");
+            return;
+        }
+        int productId = product.getId();
+        DataTaskExecutor.getInstance().run("Setting low stock threshold", context -> {
+            monitor.setProductThreshold(productId, threshold);
+            return null;
+        }, done -> productField.clear(), showError("Error setting threshold: "));
+    }
+
+    private void setCategoryThreshold(Integer threshold) {
+        if (monitor == null) {
+            return;
+        }
+        String name = (String) categoryComboBox.getSelectedItem();
+        if (name == null) {
+            JOptionPane.showMessageDialog(this, "Please select a category");
+            return;
+        }
+        DataTaskExecutor.getInstance().run("Setting low stock threshold", context -> {
+            Category category = CatalogCache.getInstance().findCategoryByName(name);
+            if (category == null) {
+                throw new IllegalStateException("Category '" + name + "' no longer exists");
+            }
+            monitor.setCategoryThreshold(category.getId(), threshold);
+            return null;
+        }, done -> { }, showError("Error setting threshold: "));
+    }
+
+    // Null when the field doesn't hold a usable threshold, after telling the user why
+    private Integer parseThreshold() {
+        try {
+            int threshold = Integer.parseInt(thresholdField.getText().trim());
+            if (threshold >= 0) {
+                return threshold;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the message below
+        }
+        JOptionPane.showMessageDialog(this, "Please enter a threshold of 0 or more");
+        return null;
+    }
+
+    private Product selectedRowProduct() {
+        int row = alertTable.getSelectedRow();
+        return row == -1 ? null : tableModel.alerts.get(alertTable.convertRowIndexToModel(row)).getProduct();
+    }
+
+    private Consumer<Exception> showError(String message) {
+        return e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, message + e.getMessage());
+        };
+    }
+
+    private final class AlertTableModel extends AbstractTableModel {
+        private final String[] columns = {"ID", "Product", "Quantity", "Threshold", "Category"};
+
+        private List<LowStockMonitor.Alert> alerts = Collections.emptyList();
+
+        void setAlerts(List<LowStockMonitor.Alert> alerts) {
+            this.alerts = alerts;
+            fireTableDataChanged();
+        }
+
+        int findRow(int productId) {
+            for (int row = 0; row < alerts.size(); row++) {
+                if (alerts.get(row).getProductId() == productId) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getRowCount() {
+            return alerts.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            LowStockMonitor.Alert alert = alerts.get(row);
+            switch (column) {
+                case 0:
+                    return alert.getProductId();
+                case 1:
+                    return alert.getProduct().getName();
+                case 2:
+                    return alert.getQuantity();
+                case 3:
+                    return alert.getThreshold();
+                default:
+                    Category category = catalog.getCategory(alert.getProduct().getCategoryId());
+                    return category != null ? category.getName() : "";
+            }
+        }
+    }
+}
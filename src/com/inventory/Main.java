@@ -1,12 +1,48 @@
 package com.inventory;
 
 import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
     public static void main(String[] args) {
+        StartupTimer.mark("main");
+        if (SqlMetrics.isEnabled()) {
+            EdtMonitor.install(SqlMetrics.getInstance());
+            MetricsReporter.start();
+        }
+        CompletableFuture<Void> warmup = StartupWarmup.start();
+        if (Boolean.getBoolean("inventory.startup.training")) {
+            train(warmup);
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             InventoryManagementSystem ims = new InventoryManagementSystem();
             ims.setVisible(true);
         });
     }
+
+    /**
+     * The AppCDS training run ({@code -Dinventory.startup.training=true}, headless): warms up, builds
+     * every tab once so their classes are loaded, waits for their first loads and exits. Run with
+     * {@code -XX:ArchiveClassesAtExit} to write the class archive.
+     */
+    private static void train(CompletableFuture<Void> warmup) {
+        try {
+            warmup.get(60, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("Training run without a full warm-up: " + e);
+        }
+        try {
+            SwingUtilities.invokeAndWait(() -> InventoryManagementSystem.tabs().values().forEach(tab -> tab.get()));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (DataTaskExecutor.getInstance().getPendingTasks() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.out.print(StartupTimer.format());
+        System.exit(0);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package com.inventory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewrites a plain-text metrics file every {@code inventory.metrics.intervalSeconds} (default 10)
+ * with pool, SQL and EDT figures, so a slow till can be diagnosed from the file alone. The file is
+ * {@code inventory.metrics.file} (default {@code inventory-metrics.txt}); an empty value turns it off.
+ */
+public final class MetricsReporter {
+    private static ScheduledExecutorService scheduler;
+
+    private MetricsReporter() {
+    }
+
+    public static synchronized void start() {
+        String file = System.getProperty("inventory.metrics.file", "inventory-metrics.txt");
+        if (scheduler != null || file.isEmpty() || !SqlMetrics.isEnabled()) {
+            return;
+        }
+        Path path = Paths.get(file);
+        long interval = Math.max(1, Long.getLong("inventory.metrics.intervalSeconds", 10));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-metrics-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> write(path), interval, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> write(path)));
+    }
+
+    /** Everything the metrics file holds, as of now. */
+    public static String snapshot() {
+        StringBuilder out = new StringBuilder();
+        out.append("Inventory metrics at ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()))
+            .append("\n\n");
+        if (!InventoryService.isRemote()) {
+            try {
+                out.append("Pool: ").append(DatabaseConnection.getPoolStats()).append('\n');
+            } catch (SQLException e) {
+                out.append("Pool: unavailable (").append(e.getMessage()).append(")\n");
+            }
+        }
+        out.append("Pending data tasks: ").append(DataTaskExecutor.getInstance().getPendingTasks()).append("\n\n");
+        out.append(SqlMetrics.getInstance().format());
+        out.append('\n').append(StartupTimer.format());
+        return out.toString();
+    }
+
+    private static void write(Path path) {
+        try {
+            Path absolute = path.toAbsolutePath();
+            Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+            Files.write(temp, snapshot().getBytes(StandardCharsets.UTF_8));
+            // Readers tailing the file never see it half written
+            try {
+                Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.inventory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes integers and cent amounts as ASCII straight into a {@link ByteBuffer}, so exporting a row
+ * doesn't go through {@code String.format} and leave a trail of temporary strings behind.
+ */
+public final class MoneyFormat {
+    private MoneyFormat() {
+    }
+
+    /** Largest number of bytes {@link #putLong} or {@link #putCents} can write. */
+    public static final int MAX_LENGTH = 21;
+
+    public static void putLong(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                // Has no positive counterpart; write its digits less the last one, then that
+                putLong(buffer, -(value / 10));
+                buffer.put((byte) ('0' - value % 10));
+                return;
+            }
+            value = -value;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value != 0);
+        reverse(buffer, start, buffer.position() - 1);
+    }
+
+    /** Writes {@code cents} as a decimal amount with two places, e.g. {@code 1234} as {@code 12.34}. */
+    public static void putCents(ByteBuffer buffer, long cents) {
+        if (cents < 0) {
+            buffer.put((byte) '-');
+            cents = -cents;
+        }
+        putLong(buffer, cents / 100);
+        int fraction = (int) (cents % 100);
+        buffer.put((byte) '.');
+        buffer.put((byte) ('0' + fraction / 10));
+        buffer.put((byte) ('0' + fraction % 10));
+    }
+
+    /**
+     * {@code amount} in whole cents, rounded half up; null, as SUM gives over no rows, is 0. Sums of
+     * {@code DECIMAL(n, 2)} columns are exact, so only amounts with more than two places are rounded.
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount == null ? 0 : amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static void reverse(ByteBuffer buffer, int from, int to) {
+        while (from < to) {
+            byte b = buffer.get(from);
+            buffer.put(from++, buffer.get(to));
+            buffer.put(to--, b);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.inventory;
+
+import java.util.List;
+
+/** Outcome of a checkout: either every line was sold in one transaction, or none was. */
+public final class OrderResult {
+    private final List<PurchaseResult> purchases;
+    private final List<PurchaseResult> refused;
+
+    private OrderResult(List<PurchaseResult> purchases, List<PurchaseResult> refused) {
+        this.purchases = purchases;
+        this.refused = refused;
+    }
+
+    static OrderResult completed(List<PurchaseResult> purchases) {
+        return new OrderResult(List.copyOf(purchases), List.of());
+    }
+
+    static OrderResult refused(List<PurchaseResult> refused) {
+        return new OrderResult(List.of(), List.copyOf(refused));
+    }
+
+    public boolean isCompleted() { return refused.isEmpty(); }
+    /** One completed purchase per product, or empty when the order was refused. */
+    public List<PurchaseResult> getPurchases() { return purchases; }
+    /** The lines that stopped the order, each not found or short of stock; empty when it went through. */
+    public List<PurchaseResult> getRefused() { return refused; }
+
+    public double getTotalPrice() {
+        double total = 0;
+        for (PurchaseResult purchase : purchases) {
+            total += purchase.getTotalPrice();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,37 @@
+package com.inventory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Supplies rows to a {@link PagedTableModel} using keyset pagination. A page is fetched relative to
+ * the last row of an earlier page (the anchor), so the database seeks straight to it through the
+ * sort index instead of counting past every preceding row with a large OFFSET.
+ */
+public interface PageSource {
+    String[] getColumnNames();
+
+    Class<?>[] getColumnClasses();
+
+    boolean isSortable(int column);
+
+    int count(Connection conn) throws SQLException;
+
+    /**
+     * Fetches up to {@code limit} rows in the given order, starting {@code skip} rows after the
+     * anchor row, or from the beginning when {@code anchor} is null.
+     */
+    RowPage fetch(Connection conn, int sortColumn, boolean ascending, Object[] anchor, int skip, int limit)
+        throws SQLException;
+
+    /** Returns the keyset values of the page's last row, used as the anchor for the next page. */
+    Object[] anchorOf(RowPage page, int sortColumn);
+
+    /**
+     * Whether pages may come from a read replica, which can be behind the user's own latest
+     * writes. False by default.
+     */
+    default boolean readsReplica() {
+        return false;
+    }
+}
@@ -0,0 +1,207 @@
+package com.inventory;
+
+import javax.swing.table.AbstractTableModel;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * A virtual table model that only holds the pages the table has actually looked at. Missing pages
+ * are loaded in the background when a cell is first requested, the next page in the scroll
+ * direction is prefetched, and a bounded LRU keeps memory flat no matter how large the table is.
+ * All methods must be called on the EDT.
+ */
+public class PagedTableModel extends AbstractTableModel {
+    public static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 64;
+
+    private final String name;
+    private final PageSource source;
+    private final Map<Integer, RowPage> pages = new LinkedHashMap<Integer, RowPage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, RowPage> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // Keyset of the last row of every page seen so far, so a jump can seek from the nearest one
+    private final TreeMap<Integer, Object[]> anchors = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private Consumer<Exception> errorHandler = Exception::printStackTrace;
+
+    private int rowCount;
+    private int generation;
+    private int lastPage = -1;
+    private int sortColumn;
+    private boolean ascending = true;
+
+    public PagedTableModel(String name, PageSource source) {
+        this.name = name;
+        this.source = source;
+    }
+
+    public void setErrorHandler(Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /** Drops every cached page and re-counts the rows; only the visible window is reloaded. */
+    public void refresh() {
+        int refreshGeneration = ++generation;
+        pages.clear();
+        anchors.clear();
+        loading.clear();
+        DataTaskExecutor.getInstance().submitLatest(name + ".count", "Counting rows", context -> {
+            try (Connection conn = connect()) {
+                return source.count(conn);
+            }
+        }, count -> {
+            if (refreshGeneration == generation) {
+                rowCount = count;
+                fireTableDataChanged();
+            }
+        }, errorHandler);
+    }
+
+    /** Sorts by the given column on the server, toggling the direction when it is already sorted. */
+    public void sortBy(int column) {
+        if (!source.isSortable(column)) {
+            return;
+        }
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        refresh();
+    }
+
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /** Returns the model row holding the given id if its page is cached, otherwise -1. */
+    public int findRowById(int id) {
+        for (Map.Entry<Integer, RowPage> entry : pages.entrySet()) {
+            int index = entry.getValue().indexOfId(id);
+            if (index != -1) {
+                return entry.getKey() * PAGE_SIZE + index;
+            }
+        }
+        return -1;
+    }
+
+    /** Patches a cached row in place after a write, without reloading the page. */
+    public void updateRow(int row, Object[] values) {
+        RowPage page = pages.get(row / PAGE_SIZE);
+        if (page == null || row % PAGE_SIZE >= page.size()) {
+            return;
+        }
+        for (int column = 0; column < values.length; column++) {
+            page.setValueAt(values[column], row % PAGE_SIZE, column);
+        }
+        fireTableRowsUpdated(row, row);
+    }
+
+    /** Replaces {@code from} with {@code to} in one column of every cached row, e.g. after a rename. */
+    public void replaceValues(int column, Object from, Object to) {
+        for (Map.Entry<Integer, RowPage> entry : pages.entrySet()) {
+            RowPage page = entry.getValue();
+            for (int offset = 0; offset < page.size(); offset++) {
+                if (from.equals(page.getValueAt(offset, column))) {
+                    page.setValueAt(to, offset, column);
+                    int row = entry.getKey() * PAGE_SIZE + offset;
+                    fireTableRowsUpdated(row, row);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return source.getColumnNames().length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return source.getColumnNames()[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return source.getColumnClasses()[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int pageIndex = row / PAGE_SIZE;
+        RowPage page = pages.get(pageIndex);
+        if (pageIndex != lastPage) {
+            int direction = lastPage == -1 || pageIndex > lastPage ? 1 : -1;
+            lastPage = pageIndex;
+            prefetch(pageIndex + direction);
+        }
+        if (page == null) {
+            requestPage(pageIndex);
+            return null;
+        }
+        int offset = row % PAGE_SIZE;
+        return offset < page.size() ? page.getValueAt(offset, column) : null;
+    }
+
+    private void prefetch(int pageIndex) {
+        if (pageIndex >= 0 && pageIndex * PAGE_SIZE < rowCount && !pages.containsKey(pageIndex)) {
+            requestPage(pageIndex);
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return source.readsReplica() ? DatabaseConnection.getReadConnection() : DatabaseConnection.getConnection();
+    }
+
+    private void requestPage(int pageIndex) {
+        if (!loading.add(pageIndex)) {
+            return;
+        }
+        int requestGeneration = generation;
+        int column = sortColumn;
+        boolean asc = ascending;
+        Map.Entry<Integer, Object[]> floor = anchors.floorEntry(pageIndex - 1);
+        Object[] anchor = floor == null ? null : floor.getValue();
+        int skip = floor == null ? pageIndex * PAGE_SIZE : (pageIndex - 1 - floor.getKey()) * PAGE_SIZE;
+
+        DataTaskExecutor.getInstance().run("Loading rows", context -> {
+            try (Connection conn = connect()) {
+                return source.fetch(conn, column, asc, anchor, skip, PAGE_SIZE);
+            }
+        }, page -> {
+            if (requestGeneration != generation) {
+                return;
+            }
+            loading.remove(pageIndex);
+            pages.put(pageIndex, page);
+            if (page.size() > 0) {
+                anchors.put(pageIndex, source.anchorOf(page, column));
+            }
+            int first = pageIndex * PAGE_SIZE;
+            int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+            if (last >= first) {
+                fireTableRowsUpdated(first, last);
+            }
+        }, e -> {
+            // The page stays marked as loading so repaints don't retry it until the next refresh
+            if (requestGeneration == generation) {
+                errorHandler.accept(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,99 @@
+package com.inventory;
+
+public class PoolConfig {
+    private String url;
+    private String user;
+    private String password;
+    private String driverClassName;
+    private int minIdle = 2;
+    private int maxSize = 10;
+    private long idleTimeoutMillis = 5 * 60 * 1000L;
+    private long borrowTimeoutMillis = 10 * 1000L;
+    private int validationTimeoutSeconds = 2;
+    private int statementCacheSize = 64;
+    private SqlMetrics metrics;
+
+    public PoolConfig(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Reads overrides from system properties named {@code inventory.db.*}, falling back to the
+     * supplied values. This is how tests point the application at an embedded H2 database, e.g.
+     * {@code -Dinventory.db.url=jdbc:h2:mem:inventory;MODE=MySQL;DB_CLOSE_DELAY=-1}.
+     */
+    public static PoolConfig fromSystemProperties(String url, String user, String password) {
+        PoolConfig config = new PoolConfig(
+            System.getProperty("inventory.db.url", url),
+            System.getProperty("inventory.db.user", user),
+            System.getProperty("inventory.db.password", password));
+        config.driverClassName = System.getProperty("inventory.db.driver");
+        config.minIdle = Integer.getInteger("inventory.db.pool.minIdle", config.minIdle);
+        config.maxSize = Integer.getInteger("inventory.db.pool.maxSize", config.maxSize);
+        config.idleTimeoutMillis = Long.getLong("inventory.db.pool.idleTimeoutMillis", config.idleTimeoutMillis);
+        config.borrowTimeoutMillis = Long.getLong("inventory.db.pool.borrowTimeoutMillis", config.borrowTimeoutMillis);
+        config.validationTimeoutSeconds = Integer.getInteger("inventory.db.pool.validationTimeoutSeconds", config.validationTimeoutSeconds);
+        config.statementCacheSize = Integer.getInteger("inventory.db.pool.statementCacheSize", config.statementCacheSize);
+        return config;
+    }
+
+    public String getUrl() { return url; }
+    public String getUser() { return user; }
+    public String getPassword() { return password; }
+    public String getDriverClassName() { return driverClassName; }
+    public int getMinIdle() { return minIdle; }
+    public int getMaxSize() { return maxSize; }
+    public long getIdleTimeoutMillis() { return idleTimeoutMillis; }
+    public long getBorrowTimeoutMillis() { return borrowTimeoutMillis; }
+    public int getValidationTimeoutSeconds() { return validationTimeoutSeconds; }
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public SqlMetrics getMetrics() { return metrics; }
+
+    public PoolConfig setUrl(String url) {
+        this.url = url;
+        return this;
+    }
+
+    public PoolConfig setDriverClassName(String driverClassName) {
+        this.driverClassName = driverClassName;
+        return this;
+    }
+
+    public PoolConfig setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+        return this;
+    }
+
+    public PoolConfig setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    public PoolConfig setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    public PoolConfig setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        return this;
+    }
+
+    public PoolConfig setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        return this;
+    }
+
+    public PoolConfig setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    /** Times every borrow and statement into {@code metrics}; null (the default) leaves connections bare. */
+    public PoolConfig setMetrics(SqlMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+}
@@ -0,0 +1,62 @@
+package com.inventory;
+
+public final class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int maxSize;
+    private final long borrowCount;
+    private final long totalBorrowWaitNanos;
+    private final long maxBorrowWaitNanos;
+    private final long borrowTimeouts;
+    private final long connectionsCreated;
+    private final long connectionsEvicted;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+
+    PoolStats(int active, int idle, int maxSize, long borrowCount, long totalBorrowWaitNanos,
+              long maxBorrowWaitNanos, long borrowTimeouts, long connectionsCreated,
+              long connectionsEvicted, long statementCacheHits, long statementCacheMisses) {
+        this.active = active;
+        this.idle = idle;
+        this.maxSize = maxSize;
+        this.borrowCount = borrowCount;
+        this.totalBorrowWaitNanos = totalBorrowWaitNanos;
+        this.maxBorrowWaitNanos = maxBorrowWaitNanos;
+        this.borrowTimeouts = borrowTimeouts;
+        this.connectionsCreated = connectionsCreated;
+        this.connectionsEvicted = connectionsEvicted;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    public int getActive() { return active; }
+    public int getIdle() { return idle; }
+    public int getMaxSize() { return maxSize; }
+    public long getBorrowCount() { return borrowCount; }
+    public long getBorrowTimeouts() { return borrowTimeouts; }
+    public long getConnectionsCreated() { return connectionsCreated; }
+    public long getConnectionsEvicted() { return connectionsEvicted; }
+    public long getStatementCacheHits() { return statementCacheHits; }
+    public long getStatementCacheMisses() { return statementCacheMisses; }
+
+    public double getAverageBorrowWaitMillis() {
+        return borrowCount == 0 ? 0 : totalBorrowWaitNanos / (double) borrowCount / 1_000_000.0;
+    }
+
+    public double getMaxBorrowWaitMillis() {
+        return maxBorrowWaitNanos / 1_000_000.0;
+    }
+
+    public double getStatementCacheHitRatio() {
+        long lookups = statementCacheHits + statementCacheMisses;
+        return lookups == 0 ? 0 : statementCacheHits / (double) lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "active=%d idle=%d max=%d borrows=%d avgWait=%.3fms maxWait=%.3fms timeouts=%d created=%d evicted=%d stmtCacheHitRatio=%.2f",
+            active, idle, maxSize, borrowCount, getAverageBorrowWaitMillis(), getMaxBorrowWaitMillis(),
+            borrowTimeouts, connectionsCreated, connectionsEvicted, getStatementCacheHitRatio());
+    }
+}
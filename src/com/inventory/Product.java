@@ -0,0 +1,28 @@
+package com.inventory;
+
+/** Immutable snapshot of a {@code products} row as held by {@link CatalogCache}. */
+public final class Product {
+    private final int id;
+    private final String name;
+    private final double price;
+    private final int quantity;
+    private final int categoryId;
+
+    public Product(int id, String name, double price, int quantity, int categoryId) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.quantity = quantity;
+        this.categoryId = categoryId;
+    }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public double getPrice() { return price; }
+    public int getQuantity() { return quantity; }
+    public int getCategoryId() { return categoryId; }
+
+    public Product withQuantity(int quantity) {
+        return new Product(id, name, price, quantity, categoryId);
+    }
+}
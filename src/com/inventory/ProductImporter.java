@@ -0,0 +1,341 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk-loads products from a CSV file of {@code name,price,quantity,category} lines, with an
+ * optional header. Lines are parsed in parallel in chunks, categories are resolved through the
+ * {@link CatalogCache} (missing ones are created), and each chunk is written with multi-row
+ * {@code INSERT}s in its own transaction. A chunk that fails is retried row by row, so one bad row
+ * only rejects itself.
+ *
+ * <p>Fields may be quoted with {@code "}, with {@code ""} for a literal quote; a quoted field can't
+ * span lines.
+ */
+public class ProductImporter {
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+    private static final int MAX_REJECTED_DETAILS = 1000;
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private final DataSource dataSource;
+    private final CatalogCache catalog;
+    private final int chunkSize;
+    private final int parserThreads;
+
+    private final List<String> rejectedLines = new ArrayList<>();
+    private long imported;
+    private long rejected;
+    private int categoriesCreated;
+
+    public ProductImporter(DataSource dataSource, CatalogCache catalog, int chunkSize, int parserThreads) {
+        if (chunkSize <= 0 || parserThreads <= 0) {
+            throw new IllegalArgumentException("chunkSize and parserThreads must be positive");
+        }
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.chunkSize = chunkSize;
+        this.parserThreads = parserThreads;
+    }
+
+    /** An importer for the shared pool and catalog, sized from {@code inventory.import.*} properties. */
+    public static ProductImporter create() throws SQLException {
+        return new ProductImporter(DatabaseConnection.getDataSource(), CatalogCache.getInstance(),
+            Integer.getInteger("inventory.import.chunkSize", 1000),
+            Integer.getInteger("inventory.import.parserThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Imports {@code file}. {@code context} may be null; when given, cancelling it stops after the current chunk. */
+    public synchronized ImportResult importFile(Path file, DataTaskExecutor.Context context) throws IOException, SQLException {
+        rejectedLines.clear();
+        imported = 0;
+        rejected = 0;
+        categoriesCreated = 0;
+        long start = System.nanoTime();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, runnable -> {
+            Thread thread = new Thread(runnable, "inventory-import-parser-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Parsed chunks are written in file order; the bound keeps memory flat for any file size
+        ArrayDeque<Future<ParsedChunk>> pending = new ArrayDeque<>();
+        // The panels redraw once at the end rather than for every chunk
+        catalog.beginBulkChange();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            List<String> lines = new ArrayList<>(chunkSize);
+            int firstLine = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.toLowerCase().startsWith("name,")) {
+                    firstLine = 2;
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    List<String> chunk = lines;
+                    int chunkStart = firstLine;
+                    pending.add(parsers.submit(() -> parse(chunk, chunkStart)));
+                    lines = new ArrayList<>(chunkSize);
+                    firstLine = lineNumber + 1;
+                    while (pending.size() > parserThreads * 2) {
+                        write(await(pending.poll()), context);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                List<String> chunk = lines;
+                int chunkStart = firstLine;
+                pending.add(parsers.submit(() -> parse(chunk, chunkStart)));
+            }
+            while (!pending.isEmpty()) {
+                write(await(pending.poll()), context);
+            }
+        } finally {
+            for (Future<ParsedChunk> future : pending) {
+                future.cancel(true);
+            }
+            parsers.shutdownNow();
+            catalog.endBulkChange();
+        }
+        return new ImportResult(imported, rejected, categoriesCreated, System.nanoTime() - start,
+            new ArrayList<>(rejectedLines));
+    }
+
+    private static ParsedChunk await(Future<ParsedChunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Parsing failed", e.getCause());
+        }
+    }
+
+    private void write(ParsedChunk chunk, DataTaskExecutor.Context context) throws SQLException {
+        if (context != null) {
+            context.checkCancelled();
+        }
+        for (String problem : chunk.problems) {
+            reject(problem);
+        }
+        if (chunk.size == 0) {
+            return;
+        }
+        int[] categoryIds = new int[chunk.size];
+        for (int i = 0; i < chunk.size; i++) {
+            categoryIds[i] = resolveCategory(chunk.categories[i]);
+        }
+        try {
+            insert(chunk, categoryIds, 0, chunk.size);
+        } catch (SQLException e) {
+            for (int i = 0; i < chunk.size; i++) {
+                try {
+                    insert(chunk, categoryIds, i, 1);
+                } catch (SQLException rowError) {
+                    reject("line " + chunk.lineNumbers[i] + ": " + rowError.getMessage());
+                }
+            }
+        }
+    }
+
+    private void insert(ParsedChunk chunk, int[] categoryIds, int from, int count) throws SQLException {
+        List<Product> saved = new ArrayList<>(count);
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int offset = from; offset < from + count; offset += MAX_ROWS_PER_INSERT) {
+                    int rows = Math.min(MAX_ROWS_PER_INSERT, from + count - offset);
+                    try (PreparedStatement pstmt = conn.prepareStatement(insertSql(rows), Statement.RETURN_GENERATED_KEYS)) {
+                        int parameter = 1;
+                        for (int i = offset; i < offset + rows; i++) {
+                            pstmt.setString(parameter++, chunk.names[i]);
+                            pstmt.setDouble(parameter++, chunk.prices[i]);
+                            pstmt.setInt(parameter++, chunk.quantities[i]);
+                            pstmt.setInt(parameter++, categoryIds[i]);
+                        }
+                        pstmt.executeUpdate();
+                        try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                            for (int i = offset; i < offset + rows && keys.next(); i++) {
+                                saved.add(new Product(keys.getInt(1), chunk.names[i], chunk.prices[i], chunk.quantities[i],
+                                    categoryIds[i]));
+                            }
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        if (saved.size() != count) {
+            // The driver didn't hand back one key per row; read the catalog again instead
+            catalog.reload();
+        } else {
+            for (Product product : saved) {
+                catalog.productSaved(product);
+            }
+        }
+        imported += count;
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO products (name, price, quantity, category_id) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    private int resolveCategory(String name) throws SQLException {
+        Category category = catalog.findCategoryByName(name);
+        if (category != null) {
+            return category.getId();
+        }
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO categories (name) VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("No id returned for new category " + name);
+                }
+                catalog.categorySaved(new Category(keys.getInt(1), name));
+                categoriesCreated++;
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private void reject(String problem) {
+        rejected++;
+        if (rejectedLines.size() < MAX_REJECTED_DETAILS) {
+            rejectedLines.add(problem);
+        }
+    }
+
+    /** Runs on a parser thread; touches nothing shared. */
+    private static ParsedChunk parse(List<String> lines, int firstLine) {
+        ParsedChunk chunk = new ParsedChunk(lines.size());
+        List<String> fields = new ArrayList<>(4);
+        for (int i = 0; i < lines.size(); i++) {
+            int lineNumber = firstLine + i;
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                continue;
+            }
+            String problem = split(line, fields);
+            if (problem == null) {
+                problem = chunk.add(lineNumber, fields);
+            }
+            if (problem != null) {
+                chunk.problems.add("line " + lineNumber + ": " + problem);
+            }
+        }
+        return chunk;
+    }
+
+    private static String split(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return "unterminated quote";
+        }
+        fields.add(field.toString().trim());
+        return fields.size() == 4 ? null : "expected 4 fields (name,price,quantity,category), found " + fields.size();
+    }
+
+    private static final class ParsedChunk {
+        final int[] lineNumbers;
+        final String[] names;
+        final double[] prices;
+        final int[] quantities;
+        final String[] categories;
+        final List<String> problems = new ArrayList<>();
+        int size;
+
+        ParsedChunk(int capacity) {
+            lineNumbers = new int[capacity];
+            names = new String[capacity];
+            prices = new double[capacity];
+            quantities = new int[capacity];
+            categories = new String[capacity];
+        }
+
+        String add(int lineNumber, List<String> fields) {
+            String name = fields.get(0);
+            String category = fields.get(3);
+            if (name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+                return "name must be 1 to " + MAX_NAME_LENGTH + " characters";
+            }
+            if (category.isEmpty() || category.length() > MAX_NAME_LENGTH) {
+                return "category must be 1 to " + MAX_NAME_LENGTH + " characters";
+            }
+            double price;
+            int quantity;
+            try {
+                price = Double.parseDouble(fields.get(1));
+                quantity = Integer.parseInt(fields.get(2));
+            } catch (NumberFormatException e) {
+                return "bad number: " + e.getMessage();
+            }
+            if (!(price >= 0) || Double.isInfinite(price)) {
+                return "price must be a non-negative number";
+            }
+            if (quantity < 0) {
+                return "quantity must not be negative";
+            }
+            lineNumbers[size] = lineNumber;
+            names[size] = name;
+            prices[size] = price;
+            quantities[size] = quantity;
+            categories[size] = category;
+            size++;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.inventory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages over {@code products} with their category's name, sortable by any column. A page is cut from
+ * {@code products} alone through the sort column's index and only its rows are joined to
+ * {@code categories}; joined first, the optimizer would rather walk every category's products and sort
+ * them. No index orders products by category name, so that order walks the categories by name instead
+ * and reads each one's products through {@code products_category}.
+ */
+public class ProductPageSource implements PageSource {
+    static final int CATEGORY_COLUMN = 4;
+
+    private static final String[] COLUMNS = {"ID", "Name", "Price", "Quantity", "Category"};
+    private static final Class<?>[] CLASSES = {Integer.class, String.class, Double.class, Integer.class, String.class};
+    private static final String[] SORT_EXPRESSIONS = {"p.id", "p.name", "p.price", "p.quantity"};
+    // A product whose category is gone isn't listed, just as the count's join leaves it out
+    private static final String HAS_CATEGORY = "EXISTS (SELECT 1 FROM categories c WHERE c.id = p.category_id)";
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS;
+    }
+
+    @Override
+    public Class<?>[] getColumnClasses() {
+        return CLASSES;
+    }
+
+    @Override
+    public boolean isSortable(int column) {
+        return column >= 0 && column < COLUMNS.length;
+    }
+
+    @Override
+    public int count(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT COUNT(*) FROM products p JOIN categories c ON p.category_id = c.id");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Override
+    public RowPage fetch(Connection conn, int sortColumn, boolean ascending, Object[] anchor, int skip, int limit)
+            throws SQLException {
+        // products.quantity lags the ledger by up to one flush cycle, so prefer the live counter
+        StockLedger ledger = StockLedger.current();
+        ProductPage page = new ProductPage(limit);
+        if (sortColumn == CATEGORY_COLUMN) {
+            fetchByCategory(conn, ascending, anchor, skip, limit, ledger, page);
+            return page;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(pageSql(sortColumn, ascending, anchor != null))) {
+            int index = bindAnchor(stmt, sortColumn, anchor);
+            stmt.setInt(index++, limit);
+            stmt.setInt(index, skip);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    add(page, rs, rs.getString(6), rs.getInt(5), ledger);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * A page in the given order of any column but the category, after an anchor of {@code (sort value, id)}
+     * when {@code anchored}; bind with {@link #bindAnchor}, then the limit and offset.
+     */
+    static String pageSql(int sortColumn, boolean ascending, boolean anchored) {
+        String sortExpression = SORT_EXPRESSIONS[sortColumn];
+        String direction = ascending ? "ASC" : "DESC";
+        String after = ascending ? ">" : "<";
+
+        StringBuilder sql = new StringBuilder("SELECT p.id, p.name, p.price, p.quantity, p.category_id FROM products p WHERE ");
+        if (anchored) {
+            if (sortColumn == 0) {
+                sql.append("p.id ").append(after).append(" ? AND ");
+            } else {
+                // The leading bound is what lets the sort column's index seek to the anchor; the OR alone can't
+                sql.append(sortExpression).append(' ').append(after).append("= ? AND (")
+                    .append(sortExpression).append(' ').append(after).append(" ? OR (")
+                    .append(sortExpression).append(" = ? AND p.id ").append(after).append(" ?)) AND ");
+            }
+        }
+        sql.append(HAS_CATEGORY);
+        StringBuilder order = new StringBuilder(" ORDER BY ");
+        if (sortColumn != 0) {
+            order.append(sortExpression).append(' ').append(direction).append(", ");
+        }
+        order.append("p.id ").append(direction);
+        sql.append(order).append(" LIMIT ? OFFSET ?");
+        return "SELECT p.id, p.name, p.price, p.quantity, p.category_id, c.name AS category FROM (" + sql +
+            ") p JOIN categories c ON c.id = p.category_id" + order;
+    }
+
+    /** Binds the anchor, if any, from the first parameter and returns the index of the next one. */
+    static int bindAnchor(PreparedStatement stmt, int sortColumn, Object[] anchor) throws SQLException {
+        int index = 1;
+        if (anchor != null) {
+            if (sortColumn != 0) {
+                stmt.setObject(index++, anchor[0]);
+                stmt.setObject(index++, anchor[0]);
+                stmt.setObject(index++, anchor[0]);
+            }
+            stmt.setInt(index++, (Integer) anchor[1]);
+        }
+        return index;
+    }
+
+    /**
+     * The categories in name order from the anchor's, inclusive, when {@code anchored}; bind the anchor's
+     * category name three times and then its id.
+     */
+    static String categoriesSql(boolean ascending, boolean anchored) {
+        String direction = ascending ? "ASC" : "DESC";
+        String after = ascending ? ">" : "<";
+        return "SELECT id, name FROM categories" + (anchored
+            ? " WHERE name " + after + "= ? AND (name " + after + " ? OR (name = ? AND id " + after + "= ?))"
+            : "") + " ORDER BY name " + direction + ", id " + direction;
+    }
+
+    /**
+     * A category's products in id order after a bound, read through {@code products_category}; bind
+     * the category, the bound, then the limit and offset.
+     */
+    static String categoryPageSql(boolean ascending) {
+        String direction = ascending ? "ASC" : "DESC";
+        return "SELECT p.id, p.name, p.price, p.quantity FROM products p WHERE p.category_id = ? AND p.id " +
+            (ascending ? ">" : "<") + " ? ORDER BY p.category_id " + direction + ", p.id " + direction +
+            " LIMIT ? OFFSET ?";
+    }
+
+    private void fetchByCategory(Connection conn, boolean ascending, Object[] anchor, int skip, int limit,
+                                 StockLedger ledger, ProductPage page) throws SQLException {
+        List<Category> categories = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(categoriesSql(ascending, anchor != null))) {
+            if (anchor != null) {
+                stmt.setString(1, (String) anchor[0]);
+                stmt.setString(2, (String) anchor[0]);
+                stmt.setString(3, (String) anchor[0]);
+                stmt.setInt(4, (Integer) anchor[2]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    categories.add(new Category(rs.getInt(1), rs.getString(2)));
+                }
+            }
+        }
+        for (Category category : categories) {
+            if (page.size() == limit) {
+                break;
+            }
+            // Only the anchor's own category is partly on earlier pages
+            int after = anchor != null && category.getId() == (Integer) anchor[2]
+                ? (Integer) anchor[1]
+                : ascending ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            int read = readCategory(conn, category, ascending, after, skip, limit - page.size(), ledger, page);
+            if (read > 0) {
+                skip = 0;
+            } else if (skip > 0) {
+                // The category ended before the rows to skip did; carry the rest into the next one
+                skip = Math.max(0, skip - countAfter(conn, category, ascending, after));
+            }
+        }
+    }
+
+    private int readCategory(Connection conn, Category category, boolean ascending, int after, int skip, int limit,
+                             StockLedger ledger, ProductPage page) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(categoryPageSql(ascending))) {
+            stmt.setInt(1, category.getId());
+            stmt.setInt(2, after);
+            stmt.setInt(3, limit);
+            stmt.setInt(4, skip);
+            int read = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    add(page, rs, category.getName(), category.getId(), ledger);
+                    read++;
+                }
+            }
+            return read;
+        }
+    }
+
+    private int countAfter(Connection conn, Category category, boolean ascending, int after) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT COUNT(*) FROM products p WHERE p.category_id = ? AND p.id " + (ascending ? ">" : "<") + " ?")) {
+            stmt.setInt(1, category.getId());
+            stmt.setInt(2, after);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /** Adds the row's id, name, price and quantity, the first four columns, with its category. */
+    private static void add(ProductPage page, ResultSet rs, String category, int categoryId, StockLedger ledger)
+            throws SQLException {
+        int id = rs.getInt(1);
+        int quantity = ledger == null ? rs.getInt(4) : ledger.availableOrDefault(id, rs.getInt(4));
+        page.add(id, rs.getString(2), rs.getDouble(3), quantity, category, categoryId);
+    }
+
+    /**
+     * The page's last row as {@code (sort value, id)}; sorted by category, also the category's id, as
+     * two categories can share a name.
+     */
+    @Override
+    public Object[] anchorOf(RowPage page, int sortColumn) {
+        int last = page.size() - 1;
+        ProductPage products = (ProductPage) page;
+        if (sortColumn == CATEGORY_COLUMN) {
+            return new Object[]{products.categories[last], products.ids[last], products.categoryIds[last]};
+        }
+        return new Object[]{page.getValueAt(last, sortColumn), page.getValueAt(last, 0)};
+    }
+
+    static final class ProductPage extends RowPage {
+        private final int[] ids;
+        private final String[] names;
+        private final double[] prices;
+        private final int[] quantities;
+        private final String[] categories;
+        private final int[] categoryIds;
+
+        ProductPage(int capacity) {
+            ids = new int[capacity];
+            names = new String[capacity];
+            prices = new double[capacity];
+            quantities = new int[capacity];
+            categories = new String[capacity];
+            categoryIds = new int[capacity];
+        }
+
+        void add(int id, String name, double price, int quantity, String category, int categoryId) {
+            ids[size] = id;
+            names[size] = name;
+            prices[size] = price;
+            quantities[size] = quantity;
+            categories[size] = category;
+            categoryIds[size] = categoryId;
+            size++;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0: return ids[row];
+                case 1: return names[row];
+                case 2: return prices[row];
+                case 3: return quantities[row];
+                case 4: return categories[row];
+                default: throw new IndexOutOfBoundsException("column " + column);
+            }
+        }
+
+        @Override
+        public void setValueAt(Object value, int row, int column) {
+            switch (column) {
+                case 0: ids[row] = (Integer) value; break;
+                case 1: names[row] = (String) value; break;
+                case 2: prices[row] = (Double) value; break;
+                case 3: quantities[row] = (Integer) value; break;
+                case 4: categories[row] = (String) value; break;
+                default: throw new IndexOutOfBoundsException("column " + column);
+            }
+        }
+
+        @Override
+        public int indexOfId(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
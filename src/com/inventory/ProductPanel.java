@@ -1,26 +1,38 @@
 package com.inventory;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.sql.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class ProductPanel extends JPanel {
+    private ProductSearchField searchField;
     private JTextField nameField, priceField, quantityField;
     private JComboBox<String> categoryComboBox;
-    private JButton addButton, updateButton, deleteButton;
+    private JButton addButton, updateButton, deleteButton, importButton;
     private JTable productTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel tableModel;
+    // Product picked from the search field when it isn't on a loaded page of the table
+    private Integer pickedId;
+    private final Map<Integer, String> categoryNames = new HashMap<>();
 
     public ProductPanel() {
         setLayout(new BorderLayout());
 
-        JPanel inputPanel = new JPanel(new GridLayout(4, 2));
+        JPanel inputPanel = new JPanel(new GridLayout(5, 2));
+        searchField = new ProductSearchField("products.search", false);
         nameField = new JTextField();
         priceField = new JTextField();
         quantityField = new JTextField();
         categoryComboBox = new JComboBox<>();
 
+        inputPanel.add(new JLabel("Find:"));
+        inputPanel.add(searchField);
         inputPanel.add(new JLabel("Name:"));
         inputPanel.add(nameField);
         inputPanel.add(new JLabel("Price:"));
@@ -34,12 +46,15 @@ public class ProductPanel extends JPanel {
         addButton = new JButton("Add");
         updateButton = new JButton("Update");
         deleteButton = new JButton("Delete");
+        importButton = new JButton("Import CSV...");
 
         buttonPanel.add(addButton);
         buttonPanel.add(updateButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(importButton);
 
-        tableModel = new DefaultTableModel(new Object[]{"ID", "Name", "Price", "Quantity", "Category"}, 0);
+        tableModel = new PagedTableModel("products.table", new ProductPageSource());
+        tableModel.setErrorHandler(showError("Error loading products: "));
         productTable = new JTable(tableModel);
         JScrollPane scrollPane = new JScrollPane(productTable);
 
@@ -50,53 +65,116 @@ public class ProductPanel extends JPanel {
         loadCategories();
         loadProducts();
         setupListeners();
+        // Writes from any panel, sales included, arrive here as deltas instead of reloads
+        ChangeBus.getInstance().subscribe(this::applyChanges);
     }
 
     private void loadCategories() {
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT name FROM categories")) {
+        DataTaskExecutor.getInstance().coalesce("products.categories", "Loading categories",
+            context -> InventoryService.getInstance().getCategories(), categories -> {
+                categoryComboBox.removeAllItems();
+                categoryNames.clear();
+                for (Category category : categories) {
+                    categoryNames.put(category.getId(), category.getName());
+                    categoryComboBox.addItem(category.getName());
+                }
+            }, showError("Error loading categories: "));
+    }
+
+    private void loadProducts() {
+        // Only the row count and the visible pages are read; the rest streams in as the user scrolls
+        tableModel.refresh();
+    }
 
-            categoryComboBox.removeAllItems();
-            while (rs.next()) {
-                categoryComboBox.addItem(rs.getString("name"));
+    private void applyChanges(List<CatalogEvent> events) {
+        boolean rowsAddedOrRemoved = false;
+        for (CatalogEvent event : events) {
+            Product product = event.getProduct();
+            Category category = event.getCategory();
+            switch (event.getType()) {
+                case PRODUCT_UPDATED:
+                case STOCK_CHANGED:
+                    int row = tableModel.findRowById(product.getId());
+                    if (row != -1) {
+                        tableModel.updateRow(row, new Object[]{product.getId(), product.getName(), product.getPrice(),
+                            liveQuantity(product), categoryNames.get(product.getCategoryId())});
+                    }
+                    break;
+                case PRODUCT_ADDED:
+                case PRODUCT_DELETED:
+                    // Rows shift, so the visible window is read again, once for however many there were
+                    rowsAddedOrRemoved = true;
+                    break;
+                case CATEGORY_ADDED:
+                    categoryNames.put(category.getId(), category.getName());
+                    categoryComboBox.insertItemAt(category.getName(), categoryIndex(category.getName()));
+                    break;
+                case CATEGORY_RENAMED:
+                    String oldName = categoryNames.put(category.getId(), category.getName());
+                    if (oldName != null) {
+                        boolean selected = oldName.equals(categoryComboBox.getSelectedItem());
+                        categoryComboBox.removeItem(oldName);
+                        categoryComboBox.insertItemAt(category.getName(), categoryIndex(category.getName()));
+                        if (selected) {
+                            categoryComboBox.setSelectedItem(category.getName());
+                        }
+                        tableModel.replaceValues(4, oldName, category.getName());
+                    }
+                    break;
+                case CATEGORY_DELETED:
+                    categoryNames.remove(category.getId());
+                    categoryComboBox.removeItem(category.getName());
+                    break;
+                case RELOADED:
+                    rowsAddedOrRemoved = true;
+                    loadCategories();
+                    break;
+                default:
+                    break;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading categories: " + e.getMessage());
+        }
+        if (rowsAddedOrRemoved) {
+            tableModel.refresh();
         }
     }
 
-    private void loadProducts() {
-        tableModel.setRowCount(0);
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT p.id, p.name, p.price, p.quantity, c.name as category FROM products p JOIN categories c ON p.category_id = c.id")) {
-
-            while (rs.next()) {
-                tableModel.addRow(new Object[]{
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getDouble("price"),
-                    rs.getInt("quantity"),
-                    rs.getString("category")
-                });
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading products: " + e.getMessage());
+    // Same source as the table's pages: products.quantity lags the ledger by a flush cycle
+    private static int liveQuantity(Product product) {
+        StockLedger ledger = StockLedger.current();
+        return ledger == null ? product.getQuantity() : ledger.availableOrDefault(product.getId(), product.getQuantity());
+    }
+
+    /** Where a category name goes in the combo box, which lists categories sorted by name. */
+    private int categoryIndex(String name) {
+        int index = 0;
+        while (index < categoryComboBox.getItemCount() && categoryComboBox.getItemAt(index).compareTo(name) < 0) {
+            index++;
         }
+        return index;
     }
 
     private void setupListeners() {
         addButton.addActionListener(e -> addProduct());
         updateButton.addActionListener(e -> updateProduct());
         deleteButton.addActionListener(e -> deleteProduct());
+        importButton.addActionListener(e -> importProducts());
+        searchField.setPickListener(this::showProduct);
+
+        productTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = productTable.columnAtPoint(e.getPoint());
+                if (column != -1) {
+                    tableModel.sortBy(productTable.convertColumnIndexToModel(column));
+                }
+            }
+        });
 
         productTable.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
                 int selectedRow = productTable.getSelectedRow();
-                if (selectedRow != -1) {
+                if (selectedRow != -1 && tableModel.getValueAt(selectedRow, 0) != null) {
+                    pickedId = null;
                     nameField.setText((String) tableModel.getValueAt(selectedRow, 1));
                     priceField.setText(String.valueOf(tableModel.getValueAt(selectedRow, 2)));
                     quantityField.setText(String.valueOf(tableModel.getValueAt(selectedRow, 3)));
@@ -106,6 +184,30 @@ public class ProductPanel extends JPanel {
         });
     }
 
+    private void showProduct(Product product) {
+        int row = tableModel.findRowById(product.getId());
+        if (row != -1) {
+            productTable.setRowSelectionInterval(row, row);
+            productTable.scrollRectToVisible(productTable.getCellRect(row, 0, true));
+        } else {
+            productTable.clearSelection();
+        }
+        pickedId = product.getId();
+        nameField.setText(product.getName());
+        priceField.setText(String.valueOf(product.getPrice()));
+        quantityField.setText(String.valueOf(product.getQuantity()));
+        categoryComboBox.setSelectedItem(categoryNames.get(product.getCategoryId()));
+    }
+
+    /** Id of the selected table row, else of the product picked in the search field, else null. */
+    private Integer selectedProductId() {
+        int selectedRow = productTable.getSelectedRow();
+        if (selectedRow != -1) {
+            return (Integer) tableModel.getValueAt(selectedRow, 0);
+        }
+        return pickedId;
+    }
+
     private void addProduct() {
         String name = nameField.getText();
         String price = priceField.getText();
@@ -117,47 +219,29 @@ public class ProductPanel extends JPanel {
             return;
         }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "INSERT INTO products (name, price, quantity, category_id) VALUES (?, ?, ?, (SELECT id FROM categories WHERE name = ?))",
-                 Statement.RETURN_GENERATED_KEYS)) {
-
-            pstmt.setString(1, name);
-            pstmt.setDouble(2, Double.parseDouble(price));
-            pstmt.setInt(3, Integer.parseInt(quantity));
-            pstmt.setString(4, category);
-
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows > 0) {
-                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        tableModel.addRow(new Object[]{
-                            generatedKeys.getInt(1),
-                            name,
-                            Double.parseDouble(price),
-                            Integer.parseInt(quantity),
-                            category
-                        });
-                    }
-                }
-                clearFields();
-                JOptionPane.showMessageDialog(this, "Product added successfully");
-            }
-        } catch (SQLException | NumberFormatException e) {
-            e.printStackTrace();
+        double priceValue;
+        int quantityValue;
+        try {
+            priceValue = Double.parseDouble(price);
+            quantityValue = Integer.parseInt(quantity);
+        } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Error adding product: " + e.getMessage());
+            return;
         }
+
+        DataTaskExecutor.getInstance().run("Adding product",
+            context -> InventoryService.getInstance().addProduct(name, priceValue, quantityValue, category), product -> {
+                clearFields();
+                JOptionPane.showMessageDialog(this, "Product added successfully");
+            }, showError("Error adding product: "));
     }
 
     private void updateProduct() {
-        int selectedRow = productTable.getSelectedRow();
-        if (selectedRow == -1) {
+        Integer id = selectedProductId();
+        if (id == null) {
             JOptionPane.showMessageDialog(this, "Please select a product to update");
             return;
         }
-
-        int id = (int) tableModel.getValueAt(selectedRow, 0);
         String name = nameField.getText();
         String price = priceField.getText();
         String quantity = quantityField.getText();
@@ -168,66 +252,83 @@ public class ProductPanel extends JPanel {
             return;
         }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "UPDATE products SET name = ?, price = ?, quantity = ?, category_id = (SELECT id FROM categories WHERE name = ?) WHERE id = ?")) {
-
-            pstmt.setString(1, name);
-            pstmt.setDouble(2, Double.parseDouble(price));
-            pstmt.setInt(3, Integer.parseInt(quantity));
-            pstmt.setString(4, category);
-            pstmt.setInt(5, id);
-
-            int affectedRows = pstmt.executeUpdate();
-
-            if (affectedRows > 0) {
-                tableModel.setValueAt(name, selectedRow, 1);
-                tableModel.setValueAt(Double.parseDouble(price), selectedRow, 2);
-                tableModel.setValueAt(Integer.parseInt(quantity), selectedRow, 3);
-                tableModel.setValueAt(category, selectedRow, 4);
-                clearFields();
-                JOptionPane.showMessageDialog(this, "Product updated successfully");
-            }
-        } catch (SQLException | NumberFormatException e) {
-            e.printStackTrace();
+        double priceValue;
+        int quantityValue;
+        try {
+            priceValue = Double.parseDouble(price);
+            quantityValue = Integer.parseInt(quantity);
+        } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Error updating product: " + e.getMessage());
+            return;
         }
+
+        DataTaskExecutor.getInstance().run("Updating product",
+            context -> InventoryService.getInstance().updateProduct(id, name, priceValue, quantityValue, category), product -> {
+                if (product != null) {
+                    clearFields();
+                    JOptionPane.showMessageDialog(this, "Product updated successfully");
+                }
+            }, showError("Error updating product: "));
     }
 
     private void deleteProduct() {
-        int selectedRow = productTable.getSelectedRow();
-        if (selectedRow == -1) {
+        Integer id = selectedProductId();
+        if (id == null) {
             JOptionPane.showMessageDialog(this, "Please select a product to delete");
             return;
         }
 
-        int id = (int) tableModel.getValueAt(selectedRow, 0);
-
         int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to delete this product?", "Confirm Delete", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            try (Connection conn = DatabaseConnection.getConnection();
-                 PreparedStatement pstmt = conn.prepareStatement("DELETE FROM products WHERE id = ?")) {
-
-                pstmt.setInt(1, id);
-
-                int affectedRows = pstmt.executeUpdate();
+            DataTaskExecutor.getInstance().run("Deleting product", context -> InventoryService.getInstance().deleteProduct(id),
+                deleted -> {
+                    if (deleted) {
+                        clearFields();
+                        JOptionPane.showMessageDialog(this, "Product deleted successfully");
+                    }
+                }, showError("Error deleting product: "));
+        }
+    }
 
-                if (affectedRows > 0) {
-                    tableModel.removeRow(selectedRow);
-                    clearFields();
-                    JOptionPane.showMessageDialog(this, "Product deleted successfully");
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Error deleting product: " + e.getMessage());
-            }
+    private void importProducts() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Products (name,price,quantity,category)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+        Path file = chooser.getSelectedFile().toPath();
+        importButton.setEnabled(false);
+        DataTaskExecutor.getInstance().run("Importing products", context -> ProductImporter.create().importFile(file, context),
+            result -> {
+                importButton.setEnabled(true);
+                StringBuilder message = new StringBuilder("Import finished: ").append(result);
+                List<String> rejected = result.getRejectedLines();
+                for (int i = 0; i < Math.min(rejected.size(), 20); i++) {
+                    message.append('\n').append(rejected.get(i));
+                }
+                if (result.getRejected() > 20) {
+                    message.append("\n...");
+                }
+                JOptionPane.showMessageDialog(this, message.toString());
+            }, e -> {
+                importButton.setEnabled(true);
+                showError("Error importing products: ").accept(e);
+            });
+    }
+
+    private Consumer<Exception> showError(String message) {
+        return e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, message + e.getMessage());
+        };
     }
 
     private void clearFields() {
+        pickedId = null;
+        searchField.clear();
         nameField.setText("");
         priceField.setText("");
         quantityField.setText("");
         categoryComboBox.setSelectedIndex(0);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,203 @@
+package com.inventory;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Text field with a type-ahead popup of matching products. Every keystroke asks
+ * {@link InventoryService#searchProducts} for the top matches, superseding the previous query;
+ * Up/Down move through the list, Enter or a click picks a product and Escape closes the popup.
+ */
+public class ProductSearchField extends JTextField {
+    private static final int MATCHES = 15;
+
+    private final String taskKey;
+    private final boolean inStockOnly;
+    private final JPopupMenu popup = new JPopupMenu();
+    private final DefaultListModel<Product> matches = new DefaultListModel<>();
+    private final JList<Product> matchList = new JList<>(matches);
+    private Consumer<Product> pickListener = product -> { };
+    private Product picked;
+    private boolean picking;
+
+    /** {@code taskKey} names this field's searches in the {@link DataTaskExecutor}. */
+    public ProductSearchField(String taskKey, boolean inStockOnly) {
+        this.taskKey = taskKey;
+        this.inStockOnly = inStockOnly;
+
+        matchList.setFocusable(false);
+        matchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        matchList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Product product = (Product) value;
+                String text = String.format("%s  ($%.2f, %d in stock)", product.getName(), product.getPrice(),
+                    product.getQuantity());
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        JScrollPane scrollPane = new JScrollPane(matchList);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        popup.setFocusable(false);
+        popup.add(scrollPane);
+
+        setupListeners();
+    }
+
+    public void setPickListener(Consumer<Product> pickListener) {
+        this.pickListener = pickListener;
+    }
+
+    /** The product last picked from the popup, or null if the text has been edited since. */
+    public Product getPickedProduct() {
+        return picked;
+    }
+
+    public void clear() {
+        picking = true;
+        try {
+            setText("");
+        } finally {
+            picking = false;
+        }
+        picked = null;
+        hidePopup();
+    }
+
+    private void setupListeners() {
+        getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                textChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    return;
+                }
+                int selected = matchList.getSelectedIndex();
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        select(Math.min(selected + 1, matches.size() - 1));
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        select(Math.max(selected - 1, 0));
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        pick(matches.get(Math.max(selected, 0)));
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        hidePopup();
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        matchList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = matchList.locationToIndex(e.getPoint());
+                if (index != -1) {
+                    pick(matches.get(index));
+                }
+            }
+        });
+
+        addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                hidePopup();
+            }
+        });
+    }
+
+    private void textChanged() {
+        if (picking) {
+            return;
+        }
+        picked = null;
+        String query = getText();
+        if (query.trim().isEmpty()) {
+            DataTaskExecutor.getInstance().cancel(taskKey);
+            hidePopup();
+            return;
+        }
+        // Each keystroke supersedes the last, so a slow lookup never shows stale matches
+        DataTaskExecutor.getInstance().submitLatest(taskKey, "Searching products",
+            context -> InventoryService.getInstance().searchProducts(query, MATCHES, inStockOnly), this::showMatches, e -> {
+                e.printStackTrace();
+                hidePopup();
+            });
+    }
+
+    private void showMatches(List<Product> products) {
+        matches.clear();
+        for (Product product : products) {
+            matches.addElement(product);
+        }
+        if (products.isEmpty() || !isShowing() || !hasFocus()) {
+            hidePopup();
+            return;
+        }
+        matchList.setVisibleRowCount(Math.min(products.size(), 10));
+        select(0);
+        popup.setPopupSize(Math.max(getWidth(), 300), popup.getPreferredSize().height);
+        if (popup.isVisible()) {
+            popup.pack();
+        } else {
+            popup.show(this, 0, getHeight());
+        }
+    }
+
+    private void select(int index) {
+        if (index >= 0) {
+            matchList.setSelectedIndex(index);
+            matchList.ensureIndexIsVisible(index);
+        }
+    }
+
+    private void pick(Product product) {
+        picking = true;
+        try {
+            setText(product.getName());
+        } finally {
+            picking = false;
+        }
+        picked = product;
+        hidePopup();
+        pickListener.accept(product);
+    }
+
+    private void hidePopup() {
+        popup.setVisible(false);
+    }
+}
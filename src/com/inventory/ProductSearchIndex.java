@@ -0,0 +1,552 @@
+package com.inventory;
+
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Type-ahead search over product names, kept current from {@link CatalogListener} events. Matches
+ * are ranked in three tiers: names starting with the query, names where every query word starts a
+ * word of the name ("cola di" finds "Diet Cola"), and names matching after correcting misspelt
+ * words against the vocabulary by trigram similarity ("choclate" finds "Chocolate").
+ *
+ * <p>Names are case- and accent-folded. Each tier stops as soon as it has enough matches and scans
+ * a bounded number of candidates, so a query costs microseconds even over a million products.
+ * Building the index reads the whole catalog; do it off the EDT.
+ */
+public final class ProductSearchIndex implements CatalogListener {
+    private static final int MAX_SCANNED = 20_000;
+    private static final int MAX_CORRECTIONS = 5;
+    private static final double MIN_SIMILARITY = 0.5;
+
+    private static volatile ProductSearchIndex instance;
+
+    private final CatalogCache catalog;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Index index;
+
+    public ProductSearchIndex(CatalogCache catalog) {
+        this.catalog = catalog;
+        // Listen before reading the snapshot so no change is missed; events that arrive meanwhile
+        // wait for the write lock and then re-apply on top of the snapshot, which is idempotent
+        lock.writeLock().lock();
+        try {
+            catalog.addListener(this);
+            index = Index.build(catalog.getProducts());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** The index over the shared catalog, built on first use. */
+    public static ProductSearchIndex getInstance() throws SQLException {
+        ProductSearchIndex result = instance;
+        if (result == null) {
+            synchronized (ProductSearchIndex.class) {
+                result = instance;
+                if (result == null) {
+                    result = new ProductSearchIndex(CatalogCache.getInstance());
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<Product> search(String query, int limit) {
+        return search(query, limit, product -> true);
+    }
+
+    /** Up to {@code limit} catalog products matching {@code query} and {@code filter}, best first. */
+    public List<Product> search(String query, int limit, Predicate<Product> filter) {
+        String key = normalize(query);
+        List<Product> results = new ArrayList<>(Math.min(limit, 64));
+        if (key.isEmpty() || limit <= 0) {
+            return results;
+        }
+        lock.readLock().lock();
+        try {
+            new Search(index, key, limit, filter).run(results);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void productChanged(Product before, Product after) {
+        // Stock and price changes are by far the most common events and don't touch the name
+        if (before != null && after != null && before.getName().equals(after.getName())) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (after == null) {
+                index.remove(before.getId());
+            } else {
+                index.put(after.getId(), normalize(after.getName()));
+            }
+            if (index.stale > 10_000 && index.stale > index.slotsById.size()) {
+                index = index.compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void catalogReloaded() {
+        Index rebuilt = Index.build(catalog.getProducts());
+        lock.writeLock().lock();
+        try {
+            index = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Lower-cased, accents stripped, and every run of non-alphanumerics collapsed to one space. */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 128) {
+                text = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && out.length() > 0) {
+                    out.append(' ');
+                }
+                pendingSpace = false;
+                out.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return out.toString();
+    }
+
+    private static boolean hasLetter(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetter(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether some word of {@code key} starts with {@code prefix}. */
+    static boolean hasWordStartingWith(String key, String prefix) {
+        int from = 0;
+        while (true) {
+            int at = key.indexOf(prefix, from);
+            if (at < 0) {
+                return false;
+            }
+            if (at == 0 || key.charAt(at - 1) == ' ') {
+                return true;
+            }
+            from = at + 1;
+        }
+    }
+
+    /** Distinct trigrams of a word padded with a leading space, and a trailing one when it is complete. */
+    private static long[] trigrams(String word, boolean complete) {
+        String padded = complete ? " " + word + " " : " " + word;
+        long[] result = new long[Math.max(0, padded.length() - 2)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    /** A word of the vocabulary and the slots of the names containing it. */
+    private static final class Token {
+        final String word;
+        final IntList slots = new IntList();
+
+        Token(String word) {
+            this.word = word;
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[2];
+        int size;
+
+        void add(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * The index proper. Every product name gets a slot; postings refer to slots and are never edited
+     * in place, so a rename (which takes a fresh slot) or delete just leaves stale slots that are
+     * skipped at query time until {@link #compact} rebuilds the index.
+     */
+    private static final class Index {
+        int[] ids = new int[1024];
+        String[] keys = new String[1024];
+        int slots;
+        int stale;
+        final Map<Integer, Integer> slotsById = new HashMap<>();
+        // Slots in name order as of the last build, plus a tree of the slots added since; sorting
+        // once is far cheaper than inserting a million names into a tree one at a time
+        int[] sorted = new int[0];
+        String[] sortedKeys = new String[0];
+        final TreeSet<Object> recent = new TreeSet<>(this::compare);
+        final Map<String, Token> tokens = new HashMap<>();
+        final TreeMap<String, Token> vocabulary = new TreeMap<>();
+        final Map<Long, List<Token>> tokensByTrigram = new HashMap<>();
+
+        static Index build(Collection<Product> products) {
+            Index index = new Index();
+            List<Product> ordered = new ArrayList<>(products);
+            ordered.sort(Comparator.comparingInt(Product::getId));
+            for (Product product : ordered) {
+                index.add(product.getId(), normalize(product.getName()));
+            }
+            index.sortNames();
+            return index;
+        }
+
+        Index compact() {
+            Index index = new Index();
+            for (int slot = 0; slot < slots; slot++) {
+                if (keys[slot] != null) {
+                    index.add(ids[slot], keys[slot]);
+                }
+            }
+            index.sortNames();
+            return index;
+        }
+
+        private void sortNames() {
+            Integer[] order = new Integer[slots];
+            for (int slot = 0; slot < slots; slot++) {
+                order[slot] = slot;
+            }
+            Arrays.parallelSort(order, (a, b) -> keys[a].compareTo(keys[b]));
+            sorted = new int[slots];
+            sortedKeys = new String[slots];
+            for (int i = 0; i < slots; i++) {
+                sorted[i] = order[i];
+                sortedKeys[i] = keys[order[i]];
+            }
+        }
+
+        /** First position in {@link #sorted} whose name is not below {@code key}. */
+        int lowerBound(String key) {
+            int low = 0;
+            int high = sortedKeys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sortedKeys[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int compare(Object a, Object b) {
+            String keyA = a instanceof String ? (String) a : keys[(Integer) a];
+            String keyB = b instanceof String ? (String) b : keys[(Integer) b];
+            int byKey = keyA.compareTo(keyB);
+            if (byKey != 0) {
+                return byKey;
+            }
+            // A probe sorts before every slot with the same name
+            int slotA = a instanceof String ? -1 : (Integer) a;
+            int slotB = b instanceof String ? -1 : (Integer) b;
+            return Integer.compare(slotA, slotB);
+        }
+
+        void put(int id, String key) {
+            Integer existing = slotsById.get(id);
+            if (existing != null) {
+                if (key.equals(keys[existing])) {
+                    return;
+                }
+                remove(id);
+            }
+            recent.add(add(id, key));
+        }
+
+        private int add(int id, String key) {
+            if (slots == ids.length) {
+                ids = Arrays.copyOf(ids, slots * 2);
+                keys = Arrays.copyOf(keys, slots * 2);
+            }
+            int slot = slots++;
+            slotsById.put(id, slot);
+            ids[slot] = id;
+            keys[slot] = key;
+            if (key.isEmpty()) {
+                return slot;
+            }
+            for (String word : key.split(" ")) {
+                Token token = tokens.get(word);
+                if (token == null) {
+                    token = new Token(word);
+                    tokens.put(word, token);
+                    vocabulary.put(word, token);
+                    // Typos in numbers and codes aren't worth correcting, and there are a lot of them
+                    if (hasLetter(word)) {
+                        for (long trigram : trigrams(word, true)) {
+                            tokensByTrigram.computeIfAbsent(trigram, t -> new ArrayList<>(2)).add(token);
+                        }
+                    }
+                }
+                token.slots.add(slot);
+            }
+            return slot;
+        }
+
+        void remove(int id) {
+            Integer slot = slotsById.remove(id);
+            if (slot != null) {
+                recent.remove(slot);
+                keys[slot] = null;
+                stale++;
+            }
+        }
+    }
+
+    /** One query against an {@link Index}, run under the read lock. */
+    private final class Search {
+        private final Index index;
+        private final String key;
+        private final String[] words;
+        private final int limit;
+        private final Predicate<Product> filter;
+        private final Set<Integer> seen = new HashSet<>();
+        private int scanned;
+
+        Search(Index index, String key, int limit, Predicate<Product> filter) {
+            this.index = index;
+            this.key = key;
+            this.words = key.split(" ");
+            this.limit = limit;
+            this.filter = filter;
+        }
+
+        void run(List<Product> results) {
+            namePrefix(results);
+            if (results.size() < limit) {
+                String[][] alternatives = new String[words.length][];
+                for (int i = 0; i < words.length; i++) {
+                    alternatives[i] = new String[]{words[i]};
+                }
+                wordPrefixes(alternatives, results);
+            }
+            if (results.size() < limit) {
+                String[][] alternatives = new String[words.length][];
+                boolean corrected = false;
+                for (int i = 0; i < words.length; i++) {
+                    List<String> options = new ArrayList<>();
+                    options.add(words[i]);
+                    options.addAll(corrections(words[i], i == words.length - 1));
+                    corrected |= options.size() > 1;
+                    alternatives[i] = options.toArray(new String[0]);
+                }
+                if (corrected) {
+                    wordPrefixes(alternatives, results);
+                }
+            }
+        }
+
+        private void namePrefix(List<Product> results) {
+            // Merge the sorted names with the ones added since, both from the first name >= key
+            int next = index.lowerBound(key);
+            Iterator<Object> recent = index.recent.tailSet(key, true).iterator();
+            int pending = recent.hasNext() ? (Integer) recent.next() : -1;
+            while (++scanned <= MAX_SCANNED) {
+                int slot;
+                String name;
+                if (next < index.sorted.length
+                        && (pending < 0 || index.sortedKeys[next].compareTo(index.keys[pending]) <= 0)) {
+                    slot = index.sorted[next];
+                    name = index.sortedKeys[next++];
+                } else if (pending >= 0) {
+                    slot = pending;
+                    name = index.keys[slot];
+                    pending = recent.hasNext() ? (Integer) recent.next() : -1;
+                } else {
+                    return;
+                }
+                if (!name.startsWith(key)) {
+                    return;
+                }
+                if (index.keys[slot] != null && !accept(slot, results)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Names where, for every query word, one of its alternatives starts a word of the name. The
+         * candidates come from whichever query word has the fewest postings.
+         */
+        private void wordPrefixes(String[][] alternatives, List<Product> results) {
+            int driver = 0;
+            long fewest = Long.MAX_VALUE;
+            for (int i = 0; i < alternatives.length; i++) {
+                long postings = postings(alternatives[i], fewest);
+                if (postings < fewest) {
+                    fewest = postings;
+                    driver = i;
+                }
+            }
+            for (String prefix : alternatives[driver]) {
+                for (Token token : prefixed(prefix).values()) {
+                    IntList slots = token.slots;
+                    for (int i = 0; i < slots.size; i++) {
+                        if (++scanned > MAX_SCANNED) {
+                            return;
+                        }
+                        int slot = slots.values[i];
+                        String name = index.keys[slot];
+                        if (name == null || !matchesAll(name, alternatives, driver)) {
+                            continue;
+                        }
+                        if (!accept(slot, results)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        private long postings(String[] prefixes, long enough) {
+            long total = 0;
+            for (String prefix : prefixes) {
+                for (Token token : prefixed(prefix).values()) {
+                    total += token.slots.size;
+                    if (total >= enough) {
+                        return total;
+                    }
+                }
+            }
+            return total;
+        }
+
+        private NavigableMap<String, Token> prefixed(String prefix) {
+            return index.vocabulary.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        private boolean matchesAll(String name, String[][] alternatives, int driver) {
+            for (int i = 0; i < alternatives.length; i++) {
+                if (i == driver) {
+                    continue; // the candidate came from its postings
+                }
+                boolean matched = false;
+                for (String option : alternatives[i]) {
+                    if (hasWordStartingWith(name, option)) {
+                        matched = true;
+                        break;
+                    }
+                }
+                if (!matched) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Vocabulary words most similar to {@code word}; a partial last word is compared as a prefix. */
+        private List<String> corrections(String word, boolean last) {
+            if (word.length() < 3 || !hasLetter(word)) {
+                return List.of();
+            }
+            long[] query = trigrams(word, !last);
+            Map<Token, Integer> shared = new HashMap<>();
+            for (long trigram : query) {
+                List<Token> tokens = index.tokensByTrigram.get(trigram);
+                if (tokens != null) {
+                    for (Token token : tokens) {
+                        shared.merge(token, 1, Integer::sum);
+                    }
+                }
+            }
+            List<Map.Entry<Token, Double>> scored = new ArrayList<>();
+            for (Map.Entry<Token, Integer> entry : shared.entrySet()) {
+                Token token = entry.getKey();
+                if (token.word.startsWith(word)) {
+                    continue; // already a prefix match
+                }
+                // How much of the query the word covers; a typed prefix shouldn't be penalized for
+                // the rest of a long word, so the word's length only breaks ties
+                double similarity = entry.getValue() / (double) query.length;
+                if (similarity >= MIN_SIMILARITY) {
+                    scored.add(Map.entry(token, similarity - token.word.length() / 1000.0));
+                }
+            }
+            scored.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < scored.size() && result.size() < MAX_CORRECTIONS; i++) {
+                result.add(scored.get(i).getKey().word);
+            }
+            return result;
+        }
+
+        /** Adds the slot's product if it passes the filter; false once the search should stop. */
+        private boolean accept(int slot, List<Product> results) {
+            if (!seen.add(slot)) {
+                return true;
+            }
+            Product product = catalog.getProduct(index.ids[slot]);
+            if (product != null && filter.test(product)) {
+                results.add(product);
+            }
+            return results.size() < limit;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.inventory;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers {@link PurchaseService} from many concurrent buyers against an embedded H2 database and
+ * reports sales per second and latency percentiles. Stock is deliberately scarcer than demand, and
+ * the run fails if any product ends up oversold.
+ *
+ * <pre>
+ * java -cp h2.jar:bin com.inventory.PurchaseBenchmark [buyers] [purchasesPerBuyer] [products] [stockPerProduct] [--destroy]
+ * </pre>
+ *
+ * Add {@code -Dbench.ledger=true} to reserve stock through the in-memory {@link StockLedger}. The
+ * database comes from {@code bench.db.*}, see {@link BenchDatabase}.
+ */
+public class PurchaseBenchmark {
+    public static void main(String[] args) throws Exception {
+        String[] positional = BenchDatabase.positional(args);
+        int buyers = positional.length > 0 ? Integer.parseInt(positional[0]) : 32;
+        int purchasesPerBuyer = positional.length > 1 ? Integer.parseInt(positional[1]) : 500;
+        int products = positional.length > 2 ? Integer.parseInt(positional[2]) : 20;
+        int stockPerProduct = positional.length > 3 ? Integer.parseInt(positional[3]) : 400;
+
+        try (ConnectionPool pool = BenchDatabase.open("purchase_bench", 8, args)) {
+            BenchDatabase.seed(pool, 1, products, id -> stockPerProduct);
+            run(pool, 1, purchasesPerBuyer * 4, products, "single buyer");
+            BenchDatabase.seed(pool, 1, products, id -> stockPerProduct);
+            boolean consistent = run(pool, buyers, purchasesPerBuyer, products, buyers + " buyers");
+            System.exit(consistent ? 0 : 1);
+        }
+    }
+
+    private static boolean run(ConnectionPool pool, int buyers, int purchasesPerBuyer, int products, String label)
+            throws Exception {
+        long[] latencies = new long[buyers * purchasesPerBuyer];
+        AtomicLong completed = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(buyers);
+
+        StockLedger ledger = Boolean.getBoolean("bench.ledger") ? new StockLedger(pool, 200) : null;
+        try (PurchaseService service = new PurchaseService(pool, ledger, 2, 128)) {
+            for (int b = 0; b < buyers; b++) {
+                int offset = b * purchasesPerBuyer;
+                Thread buyer = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        start.await();
+                        for (int i = 0; i < purchasesPerBuyer; i++) {
+                            long begin = System.nanoTime();
+                            PurchaseResult result = service.purchase(1 + random.nextInt(products), 1 + random.nextInt(3), 9.99);
+                            latencies[offset + i] = System.nanoTime() - begin;
+                            (result.isCompleted() ? completed : refused).incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+                buyer.start();
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            done.await();
+            double seconds = (System.nanoTime() - begin) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.printf("%-12s %8d sales %7d refused  %9.0f ops/s  p50=%.3fms p99=%.3fms max=%.3fms  avgBatch=%.1f%n",
+                label, completed.get(), refused.get(), latencies.length / seconds,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6,
+                service.getAverageBatchSize());
+        }
+        if (ledger != null) {
+            ledger.close();
+        }
+        return BenchDatabase.verifyStock(pool);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
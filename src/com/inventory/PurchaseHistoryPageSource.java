@@ -0,0 +1,276 @@
+package com.inventory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages over the purchase history, newest first, in {@code purchase_date DESC, id} order. The history
+ * is read one {@link PurchaseHistoryStore.Range} at a time, newest first, so a page of recent sales
+ * touches only the newest partition.
+ */
+public class PurchaseHistoryPageSource implements PageSource {
+    private static final String[] COLUMNS = {"ID", "Product", "Quantity", "Total Price", "Date"};
+    private static final Class<?>[] CLASSES = {Integer.class, String.class, Integer.class, Double.class, Timestamp.class};
+    static final String SELECT = "ph.id, p.name, ph.quantity, ph.total_price, ph.purchase_date";
+    // The leading bound is what lets the date index seek to the anchor; the OR alone can't
+    private static final String KEYSET =
+        "ph.purchase_date <= ? AND (ph.purchase_date < ? OR (ph.purchase_date = ? AND ph.id > ?))";
+    private static final String ORDER = " ORDER BY ph.purchase_date DESC, ph.id";
+    private static final String MERGED_ORDER = " ORDER BY purchase_date DESC, id";
+
+    // Read by count, which every refresh calls first, and reused by the fetches that follow
+    private volatile PurchaseHistoryStore.Layout layout;
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS;
+    }
+
+    @Override
+    public Class<?>[] getColumnClasses() {
+        return CLASSES;
+    }
+
+    @Override
+    public boolean isSortable(int column) {
+        // History is browsed newest first only; any other order would need its own index
+        return false;
+    }
+
+    @Override
+    public int count(Connection conn) throws SQLException {
+        layout = PurchaseHistoryStore.layout(conn);
+        List<String> counts = new ArrayList<>();
+        for (PurchaseHistoryStore.Range range : layout.ranges()) {
+            for (String branch : branches(range, "COUNT(*)", null)) {
+                counts.add("(" + branch + ")");
+            }
+        }
+        if (counts.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT " + String.join(" + ", counts));
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Override
+    public RowPage fetch(Connection conn, int sortColumn, boolean ascending, Object[] anchor, int skip, int limit)
+            throws SQLException {
+        PurchaseHistoryStore.Layout current = layout;
+        if (current == null) {
+            current = PurchaseHistoryStore.layout(conn);
+            layout = current;
+        }
+        Timestamp after = anchor == null ? null : (Timestamp) anchor[0];
+        HistoryPage page = new HistoryPage(limit);
+        for (PurchaseHistoryStore.Range range : current.ranges()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (after != null && range.start != null && Timestamp.valueOf(range.start.atStartOfDay()).after(after)) {
+                // Every row here is newer than the anchor, so on an earlier page
+                continue;
+            }
+            List<String> branches = branches(range, SELECT, anchor);
+            if (branches.isEmpty()) {
+                continue;
+            }
+            int wanted = limit - page.size();
+            int read = read(conn, branches, anchor, skip, wanted, page);
+            if (read > 0) {
+                skip = 0;
+            } else if (skip > 0) {
+                // The range ended before the rows to skip did; carry the rest into the next range
+                skip = Math.max(0, skip - countAfter(conn, range, anchor));
+            }
+        }
+        return page;
+    }
+
+    private int read(Connection conn, List<String> branches, Object[] anchor, int skip, int limit, HistoryPage page)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(pageSql(branches, skip, limit))) {
+            int index = bindAnchor(stmt, branches.size(), anchor);
+            stmt.setInt(index++, limit);
+            stmt.setInt(index, skip);
+            int read = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp date = rs.getTimestamp(5);
+                    page.add(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getDouble(4),
+                        date == null ? Long.MIN_VALUE : date.getTime(), date == null ? 0 : date.getNanos());
+                    read++;
+                }
+            }
+            return read;
+        }
+    }
+
+    /**
+     * A page read from {@link #branches}; bind with {@link #bindAnchor}, then the limit and offset.
+     */
+    static String pageSql(List<String> branches, int skip, int limit) {
+        if (branches.size() == 1) {
+            return branches.get(0) + ORDER + " LIMIT ? OFFSET ?";
+        }
+        // Each table sorts and cuts its own rows through its date index before they are merged
+        List<String> limited = new ArrayList<>();
+        for (String branch : branches) {
+            limited.add("(" + branch + ORDER + " LIMIT " + (skip + limit) + ")");
+        }
+        return String.join(" UNION ALL ", limited) + MERGED_ORDER + " LIMIT ? OFFSET ?";
+    }
+
+    private int countAfter(Connection conn, PurchaseHistoryStore.Range range, Object[] anchor) throws SQLException {
+        List<String> counts = new ArrayList<>();
+        for (String branch : branches(range, "COUNT(*)", anchor)) {
+            counts.add("(" + branch + ")");
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT " + String.join(" + ", counts))) {
+            bindAnchor(stmt, counts.size(), anchor);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /** One SELECT per table in the range, each with the keyset condition when there is an anchor. */
+    static List<String> branches(PurchaseHistoryStore.Range range, String select, Object[] anchor) {
+        List<String> branches = new ArrayList<>();
+        for (String table : range.tables) {
+            branches.add(branch(table, select, anchor, null));
+        }
+        if (range.legacy) {
+            List<String> slice = new ArrayList<>();
+            if (range.start != null) {
+                slice.add("ph.purchase_date >= " + PurchaseHistoryStore.Layout.literal(range.start.atStartOfDay()));
+            }
+            if (range.end != null) {
+                slice.add("ph.purchase_date < " + PurchaseHistoryStore.Layout.literal(range.end.atStartOfDay()));
+            }
+            branches.add(branch(PurchaseHistoryStore.LEGACY_TABLE, select, anchor, slice));
+        }
+        return branches;
+    }
+
+    private static String branch(String table, String select, Object[] anchor, List<String> conditions) {
+        List<String> where = new ArrayList<>();
+        if (conditions != null) {
+            where.addAll(conditions);
+        }
+        if (anchor != null) {
+            where.add(KEYSET);
+        }
+        return "SELECT " + select + " FROM " + table + " ph JOIN products p ON ph.product_id = p.id" +
+            (where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where));
+    }
+
+    /** Binds the anchor, if any, into every branch and returns the index of the next parameter. */
+    static int bindAnchor(PreparedStatement stmt, int branches, Object[] anchor) throws SQLException {
+        int index = 1;
+        if (anchor != null) {
+            for (int i = 0; i < branches; i++) {
+                stmt.setTimestamp(index++, (Timestamp) anchor[0]);
+                stmt.setTimestamp(index++, (Timestamp) anchor[0]);
+                stmt.setTimestamp(index++, (Timestamp) anchor[0]);
+                stmt.setInt(index++, (Integer) anchor[1]);
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public Object[] anchorOf(RowPage page, int sortColumn) {
+        int last = page.size() - 1;
+        return new Object[]{page.getValueAt(last, 4), page.getValueAt(last, 0)};
+    }
+
+    // Browsing history is the load a replica is for; a sale shows up once the replica has it
+    @Override
+    public boolean readsReplica() {
+        return true;
+    }
+
+    static final class HistoryPage extends RowPage {
+        private final int[] ids;
+        private final String[] products;
+        private final int[] quantities;
+        private final double[] totals;
+        private final long[] dates;
+        private final int[] dateNanos;
+
+        HistoryPage(int capacity) {
+            ids = new int[capacity];
+            products = new String[capacity];
+            quantities = new int[capacity];
+            totals = new double[capacity];
+            dates = new long[capacity];
+            dateNanos = new int[capacity];
+        }
+
+        void add(int id, String product, int quantity, double total, long date, int nanos) {
+            ids[size] = id;
+            products[size] = product;
+            quantities[size] = quantity;
+            totals[size] = total;
+            dates[size] = date;
+            dateNanos[size] = nanos;
+            size++;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0: return ids[row];
+                case 1: return products[row];
+                case 2: return quantities[row];
+                case 3: return totals[row];
+                case 4: return timestamp(row);
+                default: throw new IndexOutOfBoundsException("column " + column);
+            }
+        }
+
+        @Override
+        public void setValueAt(Object value, int row, int column) {
+            switch (column) {
+                case 0: ids[row] = (Integer) value; break;
+                case 1: products[row] = (String) value; break;
+                case 2: quantities[row] = (Integer) value; break;
+                case 3: totals[row] = (Double) value; break;
+                case 4:
+                    Timestamp date = (Timestamp) value;
+                    dates[row] = date == null ? Long.MIN_VALUE : date.getTime();
+                    dateNanos[row] = date == null ? 0 : date.getNanos();
+                    break;
+                default: throw new IndexOutOfBoundsException("column " + column);
+            }
+        }
+
+        @Override
+        public int indexOfId(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Timestamp timestamp(int row) {
+            if (dates[row] == Long.MIN_VALUE) {
+                return null;
+            }
+            // Keep sub-millisecond precision so the keyset anchor matches the stored value exactly
+            Timestamp date = new Timestamp(dates[row]);
+            date.setNanos(dateNanos[row]);
+            return date;
+        }
+    }
+}
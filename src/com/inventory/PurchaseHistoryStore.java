@@ -0,0 +1,652 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Purchase history split into one table per month ({@code purchase_history_2024_05}) or per day
+ * ({@code purchase_history_2024_05_17}). Sales are written to the partition for their date, with ids
+ * drawn from {@code purchase_history_sequence} inside the sale's transaction, so ids stay unique
+ * across partitions and increase in commit order as the stock ledger's checkpoint expects.
+ *
+ * <p>A background pass, every {@code inventory.history.maintenanceMinutes} (default 60):
+ * <ul>
+ *   <li>creates today's and tomorrow's partitions ahead of the first sale;</li>
+ *   <li>moves rows left in the old single {@code purchase_history} table into partitions;</li>
+ *   <li>sums every finished day into {@code purchase_daily_rollup}, one row per product and day;</li>
+ *   <li>moves partitions older than {@code inventory.history.retentionDays} (default 365, 0 keeps
+ *       everything) into {@code purchase_history_archive}, a whole partition at a time and only
+ *       once its days are rolled up.</li>
+ * </ul>
+ *
+ * <p>Readers go through {@link #layout(Connection)}, which lists the partitions that exist and
+ * builds SQL touching only those that overlap the dates asked for, with rollups standing in for
+ * whole days.
+ */
+public class PurchaseHistoryStore implements AutoCloseable {
+    public enum Granularity { MONTH, DAY }
+
+    static final String LEGACY_TABLE = "purchase_history";
+    static final String ARCHIVE_TABLE = "purchase_history_archive";
+    static final String ROLLUP_TABLE = "purchase_daily_rollup";
+    static final String SEQUENCE_TABLE = "purchase_history_sequence";
+    static final String CHECKPOINT_TABLE = "purchase_rollup_checkpoint";
+    private static final String COLUMNS = "id, product_id, quantity, total_price, purchase_date";
+    private static final Pattern PARTITION = Pattern.compile("purchase_history_(\\d{4})_(\\d{2})(?:_(\\d{2}))?");
+
+    private static final int MIGRATE_CHUNK = 5000;
+    private static final int ROLLUP_CHUNK_DAYS = 31;
+    // A day is rolled up only once every sale stamped on it has certainly committed
+    private static final long ROLLUP_GRACE_MINUTES = 10;
+
+    private static volatile PurchaseHistoryStore instance;
+
+    private final DataSource dataSource;
+    private final Granularity granularity;
+    private final int retentionDays;
+    private final Set<String> createdTables = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService maintenance;
+
+    public PurchaseHistoryStore(DataSource dataSource, Granularity granularity, int retentionDays) throws SQLException {
+        this.dataSource = dataSource;
+        this.granularity = granularity;
+        this.retentionDays = retentionDays;
+        initSequence();
+    }
+
+    /** The shared store, configured from system properties, with background maintenance running. */
+    public static PurchaseHistoryStore getInstance() throws SQLException {
+        PurchaseHistoryStore store = instance;
+        if (store == null) {
+            synchronized (PurchaseHistoryStore.class) {
+                store = instance;
+                if (store == null) {
+                    Granularity granularity = Granularity.valueOf(
+                        System.getProperty("inventory.history.partition", "month").toUpperCase(Locale.ROOT));
+                    store = new PurchaseHistoryStore(DatabaseConnection.getDataSource(), granularity,
+                        Integer.getInteger("inventory.history.retentionDays", 365));
+                    store.startMaintenance(Math.max(1, Long.getLong("inventory.history.maintenanceMinutes", 60)));
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    public synchronized void startMaintenance(long intervalMinutes) {
+        if (maintenance != null) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-history-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        // The first pass waits a minute so it doesn't compete with startup for the database
+        maintenance.scheduleWithFixedDelay(this::maintainQuietly, 1, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * The partition that sales made on {@code day} go into, created if this process hasn't seen it
+     * yet. DDL commits implicitly on MySQL, so call this before opening the sale's transaction.
+     */
+    public String tableFor(LocalDate day) throws SQLException {
+        String table = tableName(day);
+        if (!createdTables.contains(table)) {
+            try (Connection conn = dataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute(historyTableSql(table));
+            }
+            createdTables.add(table);
+        }
+        return table;
+    }
+
+    /** Reserves {@code count} consecutive history ids in the caller's transaction and returns the first. */
+    static long allocateIds(Connection conn, int count) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE " + SEQUENCE_TABLE + " SET next_id = next_id + ? WHERE id = 1")) {
+            pstmt.setInt(1, count);
+            if (pstmt.executeUpdate() == 0) {
+                throw new SQLException(SEQUENCE_TABLE + " has no row");
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT next_id FROM " + SEQUENCE_TABLE + " WHERE id = 1");
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1) - count;
+        }
+    }
+
+    /** Runs one maintenance pass now: partitions ahead, legacy rows, rollups, then the archive. */
+    public synchronized void maintain() throws SQLException {
+        LocalDate today = LocalDate.now();
+        tableFor(today);
+        tableFor(today.plusDays(1));
+        migrateLegacy();
+        rollUp();
+        archive(today);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+    }
+
+    private void maintainQuietly() {
+        try {
+            maintain();
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private String tableName(LocalDate day) {
+        return granularity == Granularity.MONTH
+            ? String.format("%s_%04d_%02d", LEGACY_TABLE, day.getYear(), day.getMonthValue())
+            : String.format("%s_%04d_%02d_%02d", LEGACY_TABLE, day.getYear(), day.getMonthValue(), day.getDayOfMonth());
+    }
+
+    static String historyTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (id INT NOT NULL PRIMARY KEY, product_id INT NOT NULL, " +
+            "quantity INT NOT NULL, total_price DECIMAL(12, 2) NOT NULL, purchase_date DATETIME(3) NOT NULL, " +
+            "INDEX " + table + "_date (purchase_date, id), INDEX " + table + "_recent (purchase_date DESC, id), " +
+            "INDEX " + table + "_product (product_id, purchase_date))";
+    }
+
+    /** Starts the id sequence the first time the store is used; its table comes from {@link SchemaMigrations}. */
+    private void initSequence() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + SEQUENCE_TABLE)) {
+                rs.next();
+                if (rs.getInt(1) > 0) {
+                    return;
+                }
+            }
+            // First start: continue from the highest id in the old table, so no id is used twice
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + SEQUENCE_TABLE + " (id, next_id) VALUES (1, ?)")) {
+                pstmt.setLong(1, layout(conn).maxId(conn) + 1);
+                pstmt.executeUpdate();
+            } catch (SQLException e) {
+                // Another till got there first
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + SEQUENCE_TABLE)) {
+                    if (!rs.next() || rs.getInt(1) == 0) {
+                        throw e;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Moves what is left in the unpartitioned table into partitions, a chunk of ids per transaction. */
+    private void migrateLegacy() throws SQLException {
+        while (true) {
+            List<Object[]> rows = new ArrayList<>();
+            try (Connection conn = dataSource.getConnection()) {
+                if (!layout(conn).legacy) {
+                    return;
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                         "SELECT " + COLUMNS + " FROM " + LEGACY_TABLE + " ORDER BY id LIMIT " + MIGRATE_CHUNK);
+                     ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new Object[]{rs.getLong(1), rs.getInt(2), rs.getInt(3), rs.getBigDecimal(4), rs.getTimestamp(5)});
+                    }
+                }
+            }
+            if (rows.isEmpty()) {
+                return;
+            }
+            Map<String, List<Object[]>> byTable = new TreeMap<>();
+            for (Object[] row : rows) {
+                String table = tableFor(((Timestamp) row[4]).toLocalDateTime().toLocalDate());
+                byTable.computeIfAbsent(table, t -> new ArrayList<>()).add(row);
+            }
+
+            long low = (Long) rows.get(0)[0];
+            long high = (Long) rows.get(rows.size() - 1)[0];
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    for (Map.Entry<String, List<Object[]>> entry : byTable.entrySet()) {
+                        try (PreparedStatement pstmt = conn.prepareStatement(
+                                 "INSERT INTO " + entry.getKey() + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?)")) {
+                            for (Object[] row : entry.getValue()) {
+                                for (int i = 0; i < row.length; i++) {
+                                    pstmt.setObject(i + 1, row[i]);
+                                }
+                                pstmt.addBatch();
+                            }
+                            pstmt.executeBatch();
+                        }
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM " + LEGACY_TABLE + " WHERE id BETWEEN ? AND ?")) {
+                        pstmt.setLong(1, low);
+                        pstmt.setLong(2, high);
+                        if (pstmt.executeUpdate() != rows.size()) {
+                            throw new SQLException(LEGACY_TABLE + " ids " + low + "-" + high + " changed while being moved");
+                        }
+                    }
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rolls up every finished day after the checkpoint, a month of days per transaction. Each
+     * transaction holds the checkpoint row locked, so a replayed sale dated on a day being rolled up
+     * either commits before the day is summed or sees the new checkpoint and adds itself.
+     */
+    private void rollUp() throws SQLException {
+        LocalDate through = LocalDateTime.now().minusMinutes(ROLLUP_GRACE_MINUTES).toLocalDate().minusDays(1);
+        try (Connection conn = dataSource.getConnection()) {
+            Layout layout = layout(conn);
+            conn.setAutoCommit(false);
+            try {
+                while (true) {
+                    LocalDate rolledThrough = lockRolledThrough(conn);
+                    LocalDate from;
+                    if (rolledThrough != null) {
+                        from = rolledThrough.plusDays(1);
+                    } else {
+                        LocalDateTime earliest = layout.earliest(conn);
+                        from = earliest == null ? through.plusDays(1) : earliest.toLocalDate();
+                    }
+                    if (from.isAfter(through)) {
+                        if (rolledThrough == null) {
+                            // Nothing sold before today; start the checkpoint so archiving can begin
+                            writeCheckpoint(conn, through);
+                        }
+                        conn.commit();
+                        return;
+                    }
+                    LocalDate to = from.plusDays(ROLLUP_CHUNK_DAYS - 1);
+                    if (to.isAfter(through)) {
+                        to = through;
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                             "DELETE FROM " + ROLLUP_TABLE + " WHERE sale_day >= ? AND sale_day <= ?")) {
+                        pstmt.setDate(1, java.sql.Date.valueOf(from));
+                        pstmt.setDate(2, java.sql.Date.valueOf(to));
+                        pstmt.executeUpdate();
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                             "INSERT INTO " + ROLLUP_TABLE + " (sale_day, product_id, quantity, total_price) " +
+                             "SELECT CAST(r.purchase_date AS DATE), r.product_id, SUM(r.quantity), SUM(r.total_price) " +
+                             "FROM " + layout(conn).rows(from.atStartOfDay(), to.plusDays(1).atStartOfDay(), 0, Long.MAX_VALUE) +
+                             " r GROUP BY CAST(r.purchase_date AS DATE), r.product_id")) {
+                        pstmt.executeUpdate();
+                    }
+                    writeCheckpoint(conn, to);
+                    conn.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Locks the rollup checkpoint until the caller's transaction ends and returns the last day rolled
+     * up, or null before the first rollup. A sale written into a day on or before it, such as one
+     * replayed from a journal, must go into the rollup too through {@link #addToRollup}, or every
+     * report reading that day from the rollup misses it.
+     */
+    static LocalDate lockRolledThrough(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT rolled_up_through FROM " + CHECKPOINT_TABLE + " WHERE id = 1 FOR UPDATE");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getDate(1).toLocalDate() : null;
+        }
+    }
+
+    /** Adds a sale to the rollup of its day, in the caller's transaction. */
+    static void addToRollup(Connection conn, LocalDate day, int productId, int quantity, BigDecimal totalPrice)
+            throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE " + ROLLUP_TABLE +
+                 " SET quantity = quantity + ?, total_price = total_price + ? WHERE sale_day = ? AND product_id = ?")) {
+            pstmt.setInt(1, quantity);
+            pstmt.setBigDecimal(2, totalPrice);
+            pstmt.setDate(3, java.sql.Date.valueOf(day));
+            pstmt.setInt(4, productId);
+            if (pstmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + ROLLUP_TABLE +
+                 " (sale_day, product_id, quantity, total_price) VALUES (?, ?, ?, ?)")) {
+            pstmt.setDate(1, java.sql.Date.valueOf(day));
+            pstmt.setInt(2, productId);
+            pstmt.setInt(3, quantity);
+            pstmt.setBigDecimal(4, totalPrice);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** Moves whole partitions past retention, and already rolled up, into the archive. */
+    private void archive(LocalDate today) throws SQLException {
+        if (retentionDays <= 0) {
+            return;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            Layout layout = layout(conn);
+            if (layout.rolledThrough == null) {
+                return;
+            }
+            LocalDate expired = today.minusDays(retentionDays);
+            LocalDate rolledUp = layout.rolledThrough.plusDays(1);
+            LocalDate limit = expired.isBefore(rolledUp) ? expired : rolledUp;
+            for (Partition partition : layout.partitions) {
+                if (partition.end.isAfter(limit)) {
+                    continue;
+                }
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + ARCHIVE_TABLE + " (" + COLUMNS + ") " +
+                         "SELECT ph.id, ph.product_id, ph.quantity, ph.total_price, ph.purchase_date FROM " +
+                         partition.table + " ph LEFT JOIN " + ARCHIVE_TABLE + " a ON a.id = ph.id WHERE a.id IS NULL")) {
+                    // Rows already there were copied by a pass that stopped before the drop
+                    pstmt.executeUpdate();
+                    conn.commit();
+                } catch (SQLException | RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP TABLE " + partition.table);
+                }
+                createdTables.remove(partition.table);
+            }
+        }
+    }
+
+    private static void writeCheckpoint(Connection conn, LocalDate day) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE " + CHECKPOINT_TABLE + " SET rolled_up_through = ? WHERE id = 1")) {
+            pstmt.setDate(1, java.sql.Date.valueOf(day));
+            if (pstmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + CHECKPOINT_TABLE + " (id, rolled_up_through) VALUES (1, ?)")) {
+            pstmt.setDate(1, java.sql.Date.valueOf(day));
+            pstmt.executeUpdate();
+        }
+    }
+
+    /** Which history tables exist right now, and how far the rollups go. */
+    static Layout layout(Connection conn) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        boolean legacy = false;
+        boolean archive = false;
+        boolean rollups = false;
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getTables(conn.getCatalog(), conn.getSchema(), "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                String table = rs.getString("TABLE_NAME").toLowerCase(Locale.ROOT);
+                if (table.equals(LEGACY_TABLE)) {
+                    legacy = true;
+                } else if (table.equals(ARCHIVE_TABLE)) {
+                    archive = true;
+                } else if (table.equals(CHECKPOINT_TABLE)) {
+                    rollups = true;
+                } else if (PARTITION.matcher(table).matches()) {
+                    partitions.add(Partition.parse(table));
+                }
+            }
+        }
+        partitions.sort((a, b) -> b.start.compareTo(a.start));
+        LocalDate rolledThrough = null;
+        if (rollups) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT rolled_up_through FROM " + CHECKPOINT_TABLE + " WHERE id = 1");
+                 ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    rolledThrough = rs.getDate(1).toLocalDate();
+                }
+            }
+        }
+        return new Layout(partitions, legacy, archive, rolledThrough);
+    }
+
+    /** A dated partition covering {@code [start, end)}. */
+    static final class Partition {
+        final String table;
+        final LocalDate start;
+        final LocalDate end;
+
+        private Partition(String table, LocalDate start, LocalDate end) {
+            this.table = table;
+            this.start = start;
+            this.end = end;
+        }
+
+        static Partition parse(String table) {
+            Matcher matcher = PARTITION.matcher(table);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Not a history partition: " + table);
+            }
+            int year = Integer.parseInt(matcher.group(1));
+            int month = Integer.parseInt(matcher.group(2));
+            if (matcher.group(3) == null) {
+                LocalDate start = LocalDate.of(year, month, 1);
+                return new Partition(table, start, start.plusMonths(1));
+            }
+            LocalDate start = LocalDate.of(year, month, Integer.parseInt(matcher.group(3)));
+            return new Partition(table, start, start.plusDays(1));
+        }
+    }
+
+    /**
+     * History tables grouped for reading newest first: each range is a span of overlapping partitions
+     * plus, when {@link #legacy}, the slice of the unpartitioned table that falls in it. A null bound
+     * is open.
+     */
+    static final class Range {
+        final List<String> tables = new ArrayList<>();
+        final boolean legacy;
+        LocalDate start;
+        LocalDate end;
+
+        Range(boolean legacy) {
+            this.legacy = legacy;
+        }
+    }
+
+    /** A snapshot of the history tables, and the SQL to read them. Dates are inlined as literals. */
+    static final class Layout {
+        final List<Partition> partitions;
+        final boolean legacy;
+        final boolean archive;
+        final LocalDate rolledThrough;
+
+        Layout(List<Partition> partitions, boolean legacy, boolean archive, LocalDate rolledThrough) {
+            this.partitions = partitions;
+            this.legacy = legacy;
+            this.archive = archive;
+            this.rolledThrough = rolledThrough;
+        }
+
+        /**
+         * A parenthesized derived table of raw history rows dated in {@code [from, until)} with ids in
+         * {@code (afterId, throughId]}; null dates are open. Only overlapping partitions are read.
+         */
+        String rows(LocalDateTime from, LocalDateTime until, long afterId, long throughId) {
+            List<String> branches = new ArrayList<>();
+            for (Partition partition : partitions) {
+                LocalDateTime start = partition.start.atStartOfDay();
+                LocalDateTime end = partition.end.atStartOfDay();
+                if ((from != null && !end.isAfter(from)) || (until != null && !start.isBefore(until))) {
+                    continue;
+                }
+                branches.add(branch(partition.table, from != null && from.isAfter(start) ? from : null,
+                    until != null && until.isBefore(end) ? until : null, afterId, throughId));
+            }
+            if (legacy) {
+                branches.add(branch(LEGACY_TABLE, from, until, afterId, throughId));
+            }
+            if (branches.isEmpty()) {
+                branches.add("SELECT " + COLUMNS + " FROM " + (archive ? ARCHIVE_TABLE : LEGACY_TABLE) + " WHERE 1 = 0");
+            }
+            return "(" + String.join(" UNION ALL ", branches) + ")";
+        }
+
+        private static String branch(String table, LocalDateTime from, LocalDateTime until, long afterId, long throughId) {
+            List<String> conditions = new ArrayList<>();
+            if (from != null) {
+                conditions.add("purchase_date >= " + literal(from));
+            }
+            if (until != null) {
+                conditions.add("purchase_date < " + literal(until));
+            }
+            if (afterId > 0) {
+                conditions.add("id > " + afterId);
+            }
+            if (throughId < Long.MAX_VALUE) {
+                conditions.add("id <= " + throughId);
+            }
+            return "SELECT " + COLUMNS + " FROM " + table + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions));
+        }
+
+        /**
+         * A parenthesized derived table of {@code (sale_day, product_id, quantity, total_price)}, one row
+         * per product and day from {@code from} on: rollups for rolled-up days, raw rows with ids up to
+         * {@code throughId} for the rest.
+         */
+        String dailySales(LocalDate from, long throughId) {
+            return dailySales(from, null, throughId);
+        }
+
+        /** As {@link #dailySales(LocalDate, long)}, for days before {@code until} only; null is open. */
+        String dailySales(LocalDate from, LocalDate until, long throughId) {
+            StringBuilder sql = new StringBuilder("(");
+            LocalDate rawFrom = from;
+            if (rolledThrough != null && !rolledThrough.isBefore(from)) {
+                sql.append("SELECT sale_day, product_id, quantity, total_price FROM ").append(ROLLUP_TABLE)
+                    .append(" WHERE sale_day >= ").append(literal(from))
+                    .append(" AND sale_day <= ").append(literal(rolledThrough));
+                if (until != null) {
+                    sql.append(" AND sale_day < ").append(literal(until));
+                }
+                sql.append(" UNION ALL ");
+                rawFrom = rolledThrough.plusDays(1);
+            }
+            sql.append("SELECT CAST(r.purchase_date AS DATE) AS sale_day, r.product_id, SUM(r.quantity) AS quantity, ")
+                .append("SUM(r.total_price) AS total_price FROM ")
+                .append(rows(rawFrom.atStartOfDay(), until == null ? null : until.atStartOfDay(), 0, throughId))
+                .append(" r GROUP BY CAST(r.purchase_date AS DATE), r.product_id)");
+            return sql.toString();
+        }
+
+        /** Highest history id in any table, archive included; each is a primary key lookup. */
+        long maxId(Connection conn) throws SQLException {
+            List<String> tables = tables();
+            if (archive) {
+                tables.add(ARCHIVE_TABLE);
+            }
+            if (tables.isEmpty()) {
+                return 0;
+            }
+            List<String> branches = new ArrayList<>();
+            for (String table : tables) {
+                branches.add("SELECT MAX(id) AS max_id FROM " + table);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT COALESCE(MAX(max_id), 0) FROM (" + String.join(" UNION ALL ", branches) + ") t");
+                 ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+
+        /** Date of the oldest raw row, or null if there is none. */
+        LocalDateTime earliest(Connection conn) throws SQLException {
+            List<String> tables = tables();
+            if (tables.isEmpty()) {
+                return null;
+            }
+            List<String> branches = new ArrayList<>();
+            for (String table : tables) {
+                branches.add("SELECT MIN(purchase_date) AS first_sale FROM " + table);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT MIN(first_sale) FROM (" + String.join(" UNION ALL ", branches) + ") t");
+                 ResultSet rs = pstmt.executeQuery()) {
+                Timestamp earliest = rs.next() ? rs.getTimestamp(1) : null;
+                return earliest == null ? null : earliest.toLocalDateTime();
+            }
+        }
+
+        /** Every raw history table: the partitions, newest first, then the unpartitioned table. */
+        List<String> tables() {
+            List<String> tables = new ArrayList<>();
+            for (Partition partition : partitions) {
+                tables.add(partition.table);
+            }
+            if (legacy) {
+                tables.add(LEGACY_TABLE);
+            }
+            return tables;
+        }
+
+        /** Non-overlapping ranges, newest first, that together cover every raw row. */
+        List<Range> ranges() {
+            List<Range> ranges = new ArrayList<>();
+            Range current = null;
+            for (Partition partition : partitions) {
+                if (current != null && partition.end.isAfter(current.start)) {
+                    if (partition.start.isBefore(current.start)) {
+                        current.start = partition.start;
+                    }
+                } else {
+                    current = new Range(legacy);
+                    current.start = partition.start;
+                    current.end = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1).start;
+                    ranges.add(current);
+                }
+                current.tables.add(partition.table);
+            }
+            if (ranges.isEmpty() || legacy) {
+                // Unpartitioned rows older than every partition
+                Range oldest = new Range(legacy);
+                oldest.end = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1).start;
+                ranges.add(oldest);
+            }
+            return ranges;
+        }
+
+        static String literal(LocalDateTime time) {
+            return "TIMESTAMP '" + Timestamp.valueOf(time) + "'";
+        }
+
+        static String literal(LocalDate day) {
+            return "DATE '" + day + "'";
+        }
+    }
+}
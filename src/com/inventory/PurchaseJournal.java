@@ -0,0 +1,674 @@
+package com.inventory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Local write-ahead log of sales, so a till keeps selling while the database is slow or down. Each
+ * sale is appended to a memory-mapped segment file as a checksummed record and forced to disk before
+ * the cashier is told it went through; concurrent sales share one force. A background replayer then
+ * applies the journal to the database in batches through {@link PurchaseService#replay}, reading
+ * only records that are already on disk. If a force fails, every sale it covered is refused and
+ * cleared from the segment, and later sales go to a new one.
+ *
+ * <p>Replay is idempotent: the highest sequence applied is stored per journal in
+ * {@code purchase_journal_checkpoint}, in the same transaction as the sales, and anything at or below
+ * it is skipped. Segments whose sales are all applied are deleted. A journal directory that is wiped
+ * starts a new journal id, so its sequence numbers never collide with the old one's checkpoint.
+ *
+ * <p>Sales are acknowledged against this process's view of stock, so another till may have sold the
+ * same units in the meantime. Those sales are still recorded, since the goods have left the shop, with
+ * stock floored at zero; each shortfall, and each sale of a product deleted before replay, is written
+ * to {@code purchase_journal_conflicts}.
+ */
+public class PurchaseJournal implements AutoCloseable {
+    private static final int MAGIC = 0x494a524e;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int ENTRY_BYTES = 20;
+    private static final int LINE_BYTES = 16;
+    private static final String SUFFIX = ".journal";
+
+    private static volatile PurchaseJournal instance;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final PurchaseService purchases;
+    private final int maxReplayBatch;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final Object forceLock = new Object();
+    private final Object replayLock = new Object();
+    private ScheduledExecutorService replayer;
+    private final AtomicLong conflicts = new AtomicLong();
+    private volatile Consumer<Conflict> conflictListener = conflict -> { };
+    private String journalId;
+    private long nextSequence = 1;
+    private volatile long appliedSequence;
+    // Guarded by replayLock
+    private boolean checkpointRead;
+    private volatile String lastReplayError;
+    // Replay cursor: the segment and offset of the first record not yet applied
+    private Segment readSegment;
+    private int readOffset = HEADER_BYTES;
+    private boolean closed;
+
+    /**
+     * Opens the journal in {@code directory}; nothing is replayed until {@link #startReplay}. The
+     * database isn't needed until then, so a till can open its journal and sell while it is down.
+     */
+    public PurchaseJournal(Path directory, int segmentBytes, PurchaseService purchases, int maxReplayBatch)
+            throws IOException, SQLException {
+        if (segmentBytes < 64 * 1024) {
+            throw new IllegalArgumentException("Journal segments must be at least 64 KB: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.purchases = purchases;
+        this.maxReplayBatch = maxReplayBatch;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    public static boolean isEnabled() {
+        return System.getProperty("inventory.journal.dir") != null;
+    }
+
+    /** The shared journal, or null when {@code inventory.journal.dir} is unset and sales go straight to the database. */
+    public static PurchaseJournal getInstance() throws SQLException {
+        if (!isEnabled()) {
+            return null;
+        }
+        PurchaseJournal journal = instance;
+        if (journal == null) {
+            synchronized (PurchaseJournal.class) {
+                journal = instance;
+                if (journal == null) {
+                    try {
+                        journal = new PurchaseJournal(Paths.get(System.getProperty("inventory.journal.dir")),
+                            Integer.getInteger("inventory.journal.segmentMB", 16) * 1024 * 1024,
+                            PurchaseService.getInstance(), Integer.getInteger("inventory.journal.replayBatchSize", 256));
+                    } catch (IOException e) {
+                        throw new SQLException("Could not open the purchase journal", e);
+                    }
+                    try {
+                        journal.holdPendingStock(StockLedger.getInstance(), CatalogCache.getInstance());
+                    } catch (SQLException | RuntimeException e) {
+                        // Unmap the segments; the next caller opens them again
+                        journal.close();
+                        throw e;
+                    }
+                    journal.startReplay(Long.getLong("inventory.journal.replayMillis", 200));
+                    instance = journal;
+                }
+            }
+        }
+        return journal;
+    }
+
+    /** The shared journal if it has been opened, without opening it. */
+    public static PurchaseJournal current() {
+        return instance;
+    }
+
+    public synchronized void startReplay(long intervalMillis) {
+        if (replayer != null) {
+            return;
+        }
+        replayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-journal-replayer");
+            t.setDaemon(true);
+            return t;
+        });
+        replayer.scheduleWithFixedDelay(this::replayQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the stock of sales journaled by an earlier run but not yet replayed out of the in-memory
+     * views, which were loaded from a database that doesn't include them. Call before replay starts.
+     * Either argument may be null.
+     */
+    void holdPendingStock(StockLedger ledger, CatalogCache catalog) throws SQLException {
+        synchronized (replayLock) {
+            skipApplied();
+        }
+        for (Entry entry : pending()) {
+            for (int i = 0; i < entry.getLineCount(); i++) {
+                if (ledger != null) {
+                    ledger.take(entry.productIds[i], entry.quantities[i]);
+                }
+                Product product = catalog == null ? null : catalog.getProduct(entry.productIds[i]);
+                if (product != null) {
+                    catalog.stockChanged(product.getId(), -Math.min(entry.quantities[i], product.getQuantity()));
+                }
+            }
+        }
+    }
+
+    /** Sales on disk that have not been applied to the database yet, oldest first. */
+    public List<Entry> pending() {
+        return readBatch(Integer.MAX_VALUE);
+    }
+
+    /** Called on the replayer thread for every conflict found while applying the journal. */
+    public void setConflictListener(Consumer<Conflict> conflictListener) {
+        this.conflictListener = conflictListener;
+    }
+
+    /**
+     * Appends one sale of parallel {@code productIds}, {@code quantities} and {@code unitPrices},
+     * returning its sequence number once it is on disk. Throws if it could not be forced, in which
+     * case the sale is not in the journal and will never be replayed.
+     */
+    public long append(int[] productIds, int[] quantities, double[] unitPrices) throws IOException {
+        int payloadBytes = ENTRY_BYTES + productIds.length * LINE_BYTES;
+        if (HEADER_BYTES + RECORD_HEADER_BYTES + payloadBytes > segmentBytes) {
+            throw new IllegalArgumentException("Sale of " + productIds.length + " lines does not fit in a journal segment");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+        Segment segment;
+        int end;
+        long sequence;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Purchase journal is closed");
+            }
+            segment = segments.peekLast();
+            if (segment.dead || segment.end + RECORD_HEADER_BYTES + payloadBytes > segment.capacity()) {
+                segment = rotate(segment);
+            }
+            sequence = nextSequence++;
+            payload.putLong(sequence).putLong(System.currentTimeMillis()).putInt(productIds.length);
+            for (int i = 0; i < productIds.length; i++) {
+                payload.putInt(productIds[i]).putInt(quantities[i]).putDouble(unitPrices[i]);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(payload.array());
+            int position = segment.end;
+            segment.buffer.putInt(position, payloadBytes);
+            segment.buffer.putInt(position + 4, (int) crc.getValue());
+            segment.buffer.put(position + RECORD_HEADER_BYTES, payload.array());
+            end = position + RECORD_HEADER_BYTES + payloadBytes;
+            segment.end = end;
+        }
+        force(segment, end);
+        return sequence;
+    }
+
+    /** Applies everything journaled so far to the database, returning once it is committed. */
+    public void replay() throws SQLException {
+        synchronized (replayLock) {
+            skipApplied();
+            List<Entry> batch;
+            while (!(batch = readBatch(maxReplayBatch)).isEmpty()) {
+                List<Conflict> found;
+                try {
+                    found = purchases.replay(journalId, batch).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while replaying the purchase journal", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof SQLException) {
+                        throw (SQLException) e.getCause();
+                    }
+                    throw new SQLException("Purchase journal replay failed", e.getCause());
+                }
+                advance(batch);
+                for (Conflict conflict : found) {
+                    conflicts.incrementAndGet();
+                    System.err.println("Purchase journal conflict: " + conflict);
+                    try {
+                        conflictListener.accept(conflict);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sales on disk that have not been applied to the database yet. Until the first replay this also
+     * counts any the last run applied without deleting their segment.
+     */
+    public synchronized long getPendingCount() {
+        return nextSequence - 1 - appliedSequence;
+    }
+
+    public long getConflictCount() {
+        return conflicts.get();
+    }
+
+    /** Why the last replay attempt failed, or null if it succeeded. */
+    public String getLastReplayError() {
+        return lastReplayError;
+    }
+
+    public String getJournalId() {
+        return journalId;
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = replayer;
+        }
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (replayLock) {
+            synchronized (this) {
+                closed = true;
+                for (Segment segment : segments) {
+                    segment.close();
+                }
+                segments.clear();
+            }
+        }
+    }
+
+    private void replayQuietly() {
+        try {
+            replay();
+            lastReplayError = null;
+        } catch (SQLException | RuntimeException e) {
+            // Left on disk; the next cycle retries from the same record
+            if (lastReplayError == null) {
+                e.printStackTrace();
+            }
+            lastReplayError = String.valueOf(e.getMessage());
+        }
+    }
+
+    // Sales below the checkpoint were applied before the last run ended but their segment survived
+    private void skipApplied() throws SQLException {
+        if (checkpointRead) {
+            return;
+        }
+        long checkpoint = purchases.journalCheckpoint(journalId);
+        List<Entry> applied = new ArrayList<>();
+        for (Entry entry : pending()) {
+            if (entry.sequence > checkpoint) {
+                break;
+            }
+            applied.add(entry);
+        }
+        if (!applied.isEmpty()) {
+            advance(applied);
+        }
+        synchronized (this) {
+            appliedSequence = Math.max(appliedSequence, checkpoint);
+        }
+        checkpointRead = true;
+    }
+
+    private List<Entry> readBatch(int limit) {
+        List<Entry> batch = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return batch;
+            }
+            Segment segment = readSegment;
+            int offset = readOffset;
+            while (batch.size() < limit) {
+                // Only what is on disk: a record whose force is still running may yet be taken back
+                if (offset >= segment.forced) {
+                    if (segment.forced < segment.end) {
+                        break;
+                    }
+                    Segment next = nextSegment(segment);
+                    if (next == null) {
+                        break;
+                    }
+                    segment = next;
+                    offset = HEADER_BYTES;
+                    continue;
+                }
+                Entry entry = decode(segment.buffer, offset);
+                batch.add(entry);
+                offset += RECORD_HEADER_BYTES + entry.payloadBytes();
+            }
+        }
+        return batch;
+    }
+
+    // Moves the cursor past a committed batch and drops the segments it finished
+    private synchronized void advance(List<Entry> batch) {
+        int remaining = batch.size();
+        while (remaining > 0) {
+            if (readOffset >= readSegment.end) {
+                readSegment = nextSegment(readSegment);
+                readOffset = HEADER_BYTES;
+                continue;
+            }
+            int payloadBytes = readSegment.buffer.getInt(readOffset);
+            readOffset += RECORD_HEADER_BYTES + payloadBytes;
+            remaining--;
+        }
+        appliedSequence = batch.get(batch.size() - 1).sequence;
+        while (segments.peekFirst() != readSegment) {
+            Segment applied = segments.pollFirst();
+            applied.close();
+            try {
+                Files.deleteIfExists(applied.path);
+            } catch (IOException e) {
+                // Harmless if it survives: its sales are below the checkpoint and are skipped next time
+                System.err.println("Purchase journal: could not delete " + applied.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Segment nextSegment(Segment segment) {
+        boolean found = false;
+        for (Segment candidate : segments) {
+            if (found) {
+                return candidate;
+            }
+            found = candidate == segment;
+        }
+        return null;
+    }
+
+    private void force(Segment segment, int upTo) throws IOException {
+        IOException failure;
+        synchronized (forceLock) {
+            if (segment.dead) {
+                // An earlier force of this record failed and took it back
+                throw new IOException("Could not force journal segment " + segment.path);
+            }
+            // Another sale's force may already have covered this record
+            if (segment.forced >= upTo) {
+                return;
+            }
+            int to = segment.end;
+            try {
+                forceRange(segment.buffer, segment.forced, to - segment.forced);
+                segment.forced = to;
+                return;
+            } catch (RuntimeException e) {
+                // Every record past forced is in doubt; none of their sales may be acknowledged or replayed
+                segment.dead = true;
+                failure = new IOException("Could not force journal segment " + segment.path, e);
+            }
+        }
+        discardUnforced(segment);
+        throw failure;
+    }
+
+    /** Forces {@code length} bytes of a segment from {@code offset}; a seam for failure tests. */
+    void forceRange(MappedByteBuffer buffer, int offset, int length) {
+        buffer.force(offset, length);
+    }
+
+    // Clears the records of a failed force so a restart can't recover them either, and hands their
+    // sequence numbers out again if no later segment has used the ones after them
+    private synchronized void discardUnforced(Segment segment) {
+        int from = segment.forced;
+        if (segment.end <= from) {
+            return;
+        }
+        long firstLost = segment.buffer.getLong(from + RECORD_HEADER_BYTES);
+        segment.buffer.put(from, new byte[segment.end - from]);
+        segment.end = from;
+        if (segments.peekLast() == segment) {
+            nextSequence = firstLost;
+        }
+        try {
+            forceRange(segment.buffer, from, segment.capacity() - from);
+        } catch (RuntimeException e) {
+            System.err.println("Purchase journal: could not clear the failed records in " + segment.path + ": " + e);
+        }
+    }
+
+    // Called with the journal locked
+    private Segment rotate(Segment full) throws IOException {
+        if (!full.dead) {
+            force(full, full.end);
+        }
+        Segment next = Segment.create(directory.resolve(fileName(nextSequence)), segmentBytes, journalId, nextSequence);
+        segments.addLast(next);
+        return next;
+    }
+
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "purchases-*" + SUFFIX)) {
+            files.forEach(paths::add);
+        }
+        Collections.sort(paths);
+        for (Path path : paths) {
+            Segment segment = Segment.open(path);
+            if (journalId == null) {
+                journalId = segment.journalId;
+            } else if (!journalId.equals(segment.journalId)) {
+                segment.close();
+                throw new IOException("Journal segment " + path + " belongs to journal " + segment.journalId +
+                    ", not " + journalId);
+            }
+            long sequence = segment.firstSequence;
+            int offset = HEADER_BYTES;
+            Entry entry;
+            while ((entry = readValid(segment, offset)) != null && entry.sequence == sequence) {
+                offset += RECORD_HEADER_BYTES + entry.payloadBytes();
+                sequence++;
+            }
+            if (offset + 4 <= segment.capacity() && segment.buffer.getInt(offset) != 0) {
+                // A torn write from a crash: never acknowledged, so it is dropped and cleared
+                System.err.println("Purchase journal: discarding a partial record at " + path + ":" + offset);
+                byte[] zeros = new byte[segment.capacity() - offset];
+                segment.buffer.put(offset, zeros);
+                segment.buffer.force();
+            }
+            segment.end = offset;
+            segment.forced = offset;
+            nextSequence = sequence;
+            segments.addLast(segment);
+        }
+        if (journalId == null) {
+            journalId = UUID.randomUUID().toString();
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(Segment.create(directory.resolve(fileName(nextSequence)), segmentBytes, journalId, nextSequence));
+        }
+        readSegment = segments.peekFirst();
+        readOffset = HEADER_BYTES;
+        appliedSequence = segments.peekFirst().firstSequence - 1;
+    }
+
+    private static Entry readValid(Segment segment, int offset) {
+        if (offset + RECORD_HEADER_BYTES + ENTRY_BYTES > segment.capacity()) {
+            return null;
+        }
+        int payloadBytes = segment.buffer.getInt(offset);
+        if (payloadBytes < ENTRY_BYTES || (payloadBytes - ENTRY_BYTES) % LINE_BYTES != 0 ||
+            offset + RECORD_HEADER_BYTES + payloadBytes > segment.capacity()) {
+            return null;
+        }
+        byte[] payload = new byte[payloadBytes];
+        segment.buffer.get(offset + RECORD_HEADER_BYTES, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != segment.buffer.getInt(offset + 4)) {
+            return null;
+        }
+        return decode(segment.buffer, offset);
+    }
+
+    private static Entry decode(MappedByteBuffer buffer, int offset) {
+        int position = offset + RECORD_HEADER_BYTES;
+        long sequence = buffer.getLong(position);
+        long timeMillis = buffer.getLong(position + 8);
+        int lines = buffer.getInt(position + 16);
+        int[] productIds = new int[lines];
+        int[] quantities = new int[lines];
+        double[] unitPrices = new double[lines];
+        position += ENTRY_BYTES;
+        for (int i = 0; i < lines; i++, position += LINE_BYTES) {
+            productIds[i] = buffer.getInt(position);
+            quantities[i] = buffer.getInt(position + 4);
+            unitPrices[i] = buffer.getDouble(position + 8);
+        }
+        return new Entry(sequence, timeMillis, productIds, quantities, unitPrices);
+    }
+
+    private static String fileName(long firstSequence) {
+        return String.format("purchases-%020d%s", firstSequence, SUFFIX);
+    }
+
+    /** One journaled sale: a single purchase or a whole order. */
+    public static final class Entry {
+        private final long sequence;
+        private final long timeMillis;
+        private final int[] productIds;
+        private final int[] quantities;
+        private final double[] unitPrices;
+
+        Entry(long sequence, long timeMillis, int[] productIds, int[] quantities, double[] unitPrices) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.productIds = productIds;
+            this.quantities = quantities;
+            this.unitPrices = unitPrices;
+        }
+
+        public long getSequence() { return sequence; }
+        public long getTimeMillis() { return timeMillis; }
+        public int getLineCount() { return productIds.length; }
+        public int getProductId(int line) { return productIds[line]; }
+        public int getQuantity(int line) { return quantities[line]; }
+        public double getUnitPrice(int line) { return unitPrices[line]; }
+
+        int payloadBytes() {
+            return ENTRY_BYTES + productIds.length * LINE_BYTES;
+        }
+    }
+
+    /** A journaled line the database could not take as it was sold. */
+    public static final class Conflict {
+        public enum Reason { OVERSOLD, PRODUCT_DELETED }
+
+        private final long sequence;
+        private final int productId;
+        private final int quantity;
+        private final int availableQuantity;
+        private final Reason reason;
+
+        Conflict(long sequence, int productId, int quantity, int availableQuantity, Reason reason) {
+            this.sequence = sequence;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.availableQuantity = availableQuantity;
+            this.reason = reason;
+        }
+
+        public long getSequence() { return sequence; }
+        public int getProductId() { return productId; }
+        public int getQuantity() { return quantity; }
+        /** Stock in the database when the sale was replayed, or -1 if the product was gone. */
+        public int getAvailableQuantity() { return availableQuantity; }
+        public Reason getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return reason == Reason.OVERSOLD
+                ? String.format("sale %d sold %d of product %d with only %d in stock", sequence, quantity, productId,
+                    availableQuantity)
+                : String.format("sale %d sold %d of product %d, which has been deleted", sequence, quantity, productId);
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final String journalId;
+        final long firstSequence;
+        // Written under the journal's lock, read by the forcer
+        volatile int end = HEADER_BYTES;
+        // Written under the force lock, read by the replayer
+        volatile int forced = HEADER_BYTES;
+        // Set when a force failed; nothing more is appended to the segment
+        volatile boolean dead;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, String journalId, long firstSequence) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.journalId = journalId;
+            this.firstSequence = firstSequence;
+        }
+
+        static Segment create(Path path, int bytes, String journalId, long firstSequence) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                UUID id = UUID.fromString(journalId);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(8, firstSequence);
+                buffer.putLong(16, id.getMostSignificantBits());
+                buffer.putLong(24, id.getLeastSignificantBits());
+                buffer.force();
+                channel.force(true);
+                return new Segment(path, channel, buffer, journalId, firstSequence);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException("Not a purchase journal segment: " + path);
+                }
+                String journalId = new UUID(buffer.getLong(16), buffer.getLong(24)).toString();
+                return new Segment(path, channel, buffer, journalId, buffer.getLong(8));
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.inventory;
+
+/** Notified by {@link PurchaseService} on the committer thread once a sale is durably committed. */
+public interface PurchaseListener {
+    void purchaseCompleted(PurchaseResult result);
+}
@@ -3,172 +3,292 @@ package com.inventory;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.sql.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class PurchasePanel extends JPanel {
-    private JComboBox<String> productComboBox;
+    private ProductSearchField productField;
     private JTextField quantityField;
     private JButton purchaseButton;
+    private JButton addToCartButton;
+    private JButton removeLineButton;
+    private JButton checkoutButton;
+    private JTable cartTable;
+    private DefaultTableModel cartModel;
+    private final List<Product> cartProducts = new ArrayList<>();
+    private JLabel cartTotalLabel;
     private JTable purchaseHistoryTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel tableModel;
 
     public PurchasePanel() {
         setLayout(new BorderLayout());
 
         JPanel inputPanel = new JPanel(new GridLayout(2, 2));
-        productComboBox = new JComboBox<>();
+        // Type-ahead over the in-memory index instead of a combo box holding every product name
+        productField = new ProductSearchField("purchase.search", true);
         quantityField = new JTextField();
 
         inputPanel.add(new JLabel("Product:"));
-        inputPanel.add(productComboBox);
+        inputPanel.add(productField);
         inputPanel.add(new JLabel("Quantity:"));
         inputPanel.add(quantityField);
 
         purchaseButton = new JButton("Purchase");
+        addToCartButton = new JButton("Add to Cart");
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 2));
+        buttonPanel.add(purchaseButton);
+        buttonPanel.add(addToCartButton);
 
-        tableModel = new DefaultTableModel(new Object[]{"ID", "Product", "Quantity", "Total Price", "Date"}, 0);
-        purchaseHistoryTable = new JTable(tableModel);
-        JScrollPane scrollPane = new JScrollPane(purchaseHistoryTable);
+        JPanel northPanel = new JPanel(new BorderLayout());
+        northPanel.add(inputPanel, BorderLayout.CENTER);
+        northPanel.add(buttonPanel, BorderLayout.SOUTH);
 
-        add(inputPanel, BorderLayout.NORTH);
-        add(purchaseButton, BorderLayout.CENTER);
-        add(scrollPane, BorderLayout.SOUTH);
-
-        loadProducts();
-        loadPurchaseHistory();
-        setupListeners();
-    }
+        // A basket is built up here and sold in one transaction at checkout
+        cartModel = new DefaultTableModel(new Object[]{"Product", "Quantity", "Unit Price", "Line Total"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        cartTable = new JTable(cartModel);
+        cartTable.setPreferredScrollableViewportSize(new Dimension(450, 120));
+        removeLineButton = new JButton("Remove Line");
+        checkoutButton = new JButton("Checkout");
+        cartTotalLabel = new JLabel();
+        JPanel cartButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        cartButtons.add(cartTotalLabel);
+        cartButtons.add(removeLineButton);
+        cartButtons.add(checkoutButton);
+        JPanel cartPanel = new JPanel(new BorderLayout());
+        cartPanel.setBorder(BorderFactory.createTitledBorder("Cart"));
+        cartPanel.add(new JScrollPane(cartTable), BorderLayout.CENTER);
+        cartPanel.add(cartButtons, BorderLayout.SOUTH);
 
-    private void loadProducts() {
-        productComboBox.removeAllItems();
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT name FROM products WHERE quantity > 0")) {
+        add(northPanel, BorderLayout.NORTH);
+        add(cartPanel, BorderLayout.CENTER);
 
-            while (rs.next()) {
-                productComboBox.addItem(rs.getString("name"));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading products: " + e.getMessage());
+        // History pages straight from the database, which a terminal talking to a server can't reach
+        if (!InventoryService.isRemote()) {
+            tableModel = new PagedTableModel("purchase.history", new PurchaseHistoryPageSource());
+            tableModel.setErrorHandler(showError("Error loading purchase history: "));
+            purchaseHistoryTable = new JTable(tableModel);
+            add(new JScrollPane(purchaseHistoryTable), BorderLayout.SOUTH);
         }
+
+        loadPurchaseHistory();
+        updateCartTotal();
+        setupListeners();
+        ChangeBus.getInstance().subscribe(this::applyChanges);
     }
 
     private void loadPurchaseHistory() {
-        tableModel.setRowCount(0);
-        try (Connection conn = DatabaseConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                 "SELECT ph.id, p.name, ph.quantity, ph.total_price, ph.purchase_date " +
-                 "FROM purchase_history ph " +
-                 "JOIN products p ON ph.product_id = p.id " +
-                 "ORDER BY ph.purchase_date DESC")) {
-
-            while (rs.next()) {
-                tableModel.addRow(new Object[]{
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getInt("quantity"),
-                    rs.getDouble("total_price"),
-                    rs.getTimestamp("purchase_date")
-                });
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading purchase history: " + e.getMessage());
+        if (tableModel != null) {
+            tableModel.refresh();
         }
     }
 
     private void setupListeners() {
         purchaseButton.addActionListener(e -> makePurchase());
+        addToCartButton.addActionListener(e -> addToCart());
+        removeLineButton.addActionListener(e -> removeCartLine());
+        checkoutButton.addActionListener(e -> checkout());
+        productField.setPickListener(product -> quantityField.requestFocusInWindow());
     }
 
     private void makePurchase() {
-        String productName = (String) productComboBox.getSelectedItem();
-        String quantityStr = quantityField.getText();
-
-        if (productName == null || quantityStr.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please select a product and enter a quantity");
+        Product picked = productField.getPickedProduct();
+        String productName = picked != null ? picked.getName() : productField.getText().trim();
+        int quantity = readQuantity(productName);
+        if (quantity <= 0) {
             return;
         }
 
-        int quantity;
-        try {
-            quantity = Integer.parseInt(quantityStr);
-            if (quantity <= 0) {
-                throw new NumberFormatException();
+        // One sale at a time per till; re-enabled once the result is on screen
+        purchaseButton.setEnabled(false);
+        DataTaskExecutor.getInstance().run("Recording purchase",
+            // A name can belong to several products; the one picked is the one sold
+            context -> picked != null
+                ? InventoryService.getInstance().purchase(picked.getId(), quantity)
+                : InventoryService.getInstance().purchaseByName(productName, quantity), result -> {
+            purchaseButton.setEnabled(true);
+            if (result.getStatus() == PurchaseResult.Status.NOT_FOUND) {
+                JOptionPane.showMessageDialog(this, "Product not found");
+                return;
             }
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(this, "Please enter a valid positive integer for quantity");
+            if (result.getStatus() == PurchaseResult.Status.INSUFFICIENT_STOCK) {
+                JOptionPane.showMessageDialog(this, "Not enough stock. Available: " + result.getAvailableQuantity());
+                return;
+            }
+
+            // The new sale sorts to the top, so this only re-reads the first page
+            loadPurchaseHistory();
+            JOptionPane.showMessageDialog(this, "Purchase successful. Total price: $" + result.getTotalPrice());
+            quantityField.setText("");
+            productField.clear();
+        }, e -> {
+            purchaseButton.setEnabled(true);
+            showError("Error making purchase: ").accept(e);
+        });
+    }
+
+    private void addToCart() {
+        Product picked = productField.getPickedProduct();
+        String productName = picked != null ? picked.getName() : productField.getText().trim();
+        int quantity = readQuantity(productName);
+        if (quantity <= 0) {
             return;
         }
+        if (picked != null) {
+            addCartLine(picked, quantity);
+            return;
+        }
+        DataTaskExecutor.getInstance().run("Finding product",
+            context -> InventoryService.getInstance().findProductByName(productName), product -> {
+            if (product == null) {
+                JOptionPane.showMessageDialog(this, "Product not found");
+                return;
+            }
+            addCartLine(product, quantity);
+        }, showError("Error finding product: "));
+    }
 
-        try (Connection conn = DatabaseConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(
-                 "SELECT id, price, quantity FROM products WHERE name = ?")) {
+    private void addCartLine(Product product, int quantity) {
+        int row = cartRow(product.getId());
+        if (row == -1) {
+            cartProducts.add(product);
+            cartModel.addRow(new Object[]{product.getName(), quantity, product.getPrice(), product.getPrice() * quantity});
+        } else {
+            int total = (Integer) cartModel.getValueAt(row, 1) + quantity;
+            cartModel.setValueAt(total, row, 1);
+            cartModel.setValueAt(product.getPrice() * total, row, 3);
+        }
+        updateCartTotal();
+        quantityField.setText("");
+        productField.clear();
+        productField.requestFocusInWindow();
+    }
 
-            pstmt.setString(1, productName);
-            ResultSet rs = pstmt.executeQuery();
+    private void removeCartLine() {
+        int row = cartTable.getSelectedRow();
+        if (row == -1) {
+            JOptionPane.showMessageDialog(this, "Please select a cart line to remove");
+            return;
+        }
+        cartProducts.remove(row);
+        cartModel.removeRow(row);
+        updateCartTotal();
+    }
 
-            if (rs.next()) {
-                int productId = rs.getInt("id");
-                double price = rs.getDouble("price");
-                int availableQuantity = rs.getInt("quantity");
+    private void checkout() {
+        if (cartProducts.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "The cart is empty");
+            return;
+        }
+        List<CartLine> lines = new ArrayList<>();
+        for (int row = 0; row < cartProducts.size(); row++) {
+            lines.add(new CartLine(cartProducts.get(row).getId(), (Integer) cartModel.getValueAt(row, 1)));
+        }
 
-                if (quantity > availableQuantity) {
-                    JOptionPane.showMessageDialog(this, "Not enough stock. Available: " + availableQuantity);
-                    return;
+        setCartEnabled(false);
+        DataTaskExecutor.getInstance().run("Checking out " + lines.size() + " lines",
+            context -> InventoryService.getInstance().checkout(lines), result -> {
+            setCartEnabled(true);
+            if (!result.isCompleted()) {
+                // Nothing was sold; the cart stays as it was so the short lines can be fixed
+                StringBuilder message = new StringBuilder("Nothing was sold:");
+                for (PurchaseResult refused : result.getRefused()) {
+                    int row = cartRow(refused.getProductId());
+                    String name = row == -1 ? "Product " + refused.getProductId() : cartProducts.get(row).getName();
+                    message.append('\n').append(name).append(refused.getStatus() == PurchaseResult.Status.NOT_FOUND
+                        ? ": no longer exists"
+                        : ": only " + refused.getAvailableQuantity() + " in stock");
                 }
+                JOptionPane.showMessageDialog(this, message.toString());
+                return;
+            }
 
-                double totalPrice = price * quantity;
+            cartProducts.clear();
+            cartModel.setRowCount(0);
+            updateCartTotal();
+            loadPurchaseHistory();
+            JOptionPane.showMessageDialog(this, String.format("Order complete: %d lines, total $%.2f",
+                result.getPurchases().size(), result.getTotalPrice()));
+        }, e -> {
+            setCartEnabled(true);
+            showError("Error checking out: ").accept(e);
+        });
+    }
 
-                // Update product quantity
-                try (PreparedStatement updatePstmt = conn.prepareStatement(
-                    "UPDATE products SET quantity = quantity - ? WHERE id = ?")) {
-                    updatePstmt.setInt(1, quantity);
-                    updatePstmt.setInt(2, productId);
-                    updatePstmt.executeUpdate();
-                }
+    // Keeps cart lines at the current name and price, which is what checkout will charge
+    private void applyChanges(List<CatalogEvent> events) {
+        boolean changed = false;
+        for (CatalogEvent event : events) {
+            if (event.getType() != CatalogEvent.Type.PRODUCT_UPDATED) {
+                continue;
+            }
+            Product product = event.getProduct();
+            int row = cartRow(product.getId());
+            if (row != -1) {
+                int quantity = (Integer) cartModel.getValueAt(row, 1);
+                cartProducts.set(row, product);
+                cartModel.setValueAt(product.getName(), row, 0);
+                cartModel.setValueAt(product.getPrice(), row, 2);
+                cartModel.setValueAt(product.getPrice() * quantity, row, 3);
+                changed = true;
+            }
+        }
+        if (changed) {
+            updateCartTotal();
+        }
+    }
 
-                // Record purchase
-                try (PreparedStatement insertPstmt = conn.prepareStatement(
-                    "INSERT INTO purchase_history (product_id, quantity, total_price, purchase_date) VALUES (?, ?, ?, ?)",
-                    Statement.RETURN_GENERATED_KEYS)) {
-                    insertPstmt.setInt(1, productId);
-                    insertPstmt.setInt(2, quantity);
-                    insertPstmt.setDouble(3, totalPrice);
-                    insertPstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
-
-                    int affectedRows = insertPstmt.executeUpdate();
-
-                    if (affectedRows > 0) {
-                        try (ResultSet generatedKeys = insertPstmt.getGeneratedKeys()) {
-                            if (generatedKeys.next()) {
-                                int purchaseId = generatedKeys.getInt(1);
-                                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                                tableModel.insertRow(0, new Object[]{
-                                    purchaseId,
-                                    productName,
-                                    quantity,
-                                    totalPrice,
-                                    sdf.format(new Date())
-                                });
-                            }
-                        }
-                    }
-                }
+    private int cartRow(int productId) {
+        for (int row = 0; row < cartProducts.size(); row++) {
+            if (cartProducts.get(row).getId() == productId) {
+                return row;
+            }
+        }
+        return -1;
+    }
 
-                JOptionPane.showMessageDialog(this, "Purchase successful. Total price: $" + totalPrice);
-                quantityField.setText("");
-                loadProducts(); // Refresh product list
-            } else {
-                JOptionPane.showMessageDialog(this, "Product not found");
+    private void updateCartTotal() {
+        double total = 0;
+        for (int row = 0; row < cartModel.getRowCount(); row++) {
+            total += (Double) cartModel.getValueAt(row, 3);
+        }
+        cartTotalLabel.setText(String.format("Total: $%.2f", total));
+    }
+
+    private void setCartEnabled(boolean enabled) {
+        addToCartButton.setEnabled(enabled);
+        removeLineButton.setEnabled(enabled);
+        checkoutButton.setEnabled(enabled);
+    }
+
+    /** The quantity entered, or 0 after telling the user what's wrong. */
+    private int readQuantity(String productName) {
+        String quantityStr = quantityField.getText();
+        if (productName.isEmpty() || quantityStr.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please select a product and enter a quantity");
+            return 0;
+        }
+        try {
+            int quantity = Integer.parseInt(quantityStr);
+            if (quantity <= 0) {
+                throw new NumberFormatException();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error making purchase: " + e.getMessage());
+            return quantity;
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a valid positive integer for quantity");
+            return 0;
         }
     }
-}
\ No newline at end of file
+
+    private Consumer<Exception> showError(String message) {
+        return e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, message + e.getMessage());
+        };
+    }
+}
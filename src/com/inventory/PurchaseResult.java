@@ -0,0 +1,48 @@
+package com.inventory;
+
+import java.sql.Timestamp;
+
+public final class PurchaseResult {
+    public enum Status { COMPLETED, INSUFFICIENT_STOCK, NOT_FOUND }
+
+    private final Status status;
+    private final int purchaseId;
+    private final int productId;
+    private final int quantity;
+    private final double totalPrice;
+    private final int availableQuantity;
+    private final Timestamp purchaseDate;
+
+    private PurchaseResult(Status status, int purchaseId, int productId, int quantity, double totalPrice,
+                           int availableQuantity, Timestamp purchaseDate) {
+        this.status = status;
+        this.purchaseId = purchaseId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.totalPrice = totalPrice;
+        this.availableQuantity = availableQuantity;
+        this.purchaseDate = purchaseDate;
+    }
+
+    static PurchaseResult completed(int purchaseId, int productId, int quantity, double totalPrice, Timestamp purchaseDate) {
+        return new PurchaseResult(Status.COMPLETED, purchaseId, productId, quantity, totalPrice, -1, purchaseDate);
+    }
+
+    static PurchaseResult insufficientStock(int productId, int quantity, int availableQuantity) {
+        return new PurchaseResult(Status.INSUFFICIENT_STOCK, -1, productId, quantity, 0, availableQuantity, null);
+    }
+
+    static PurchaseResult notFound(int productId, int quantity) {
+        return new PurchaseResult(Status.NOT_FOUND, -1, productId, quantity, 0, -1, null);
+    }
+
+    public Status getStatus() { return status; }
+    public boolean isCompleted() { return status == Status.COMPLETED; }
+    public int getPurchaseId() { return purchaseId; }
+    public int getProductId() { return productId; }
+    public int getQuantity() { return quantity; }
+    public double getTotalPrice() { return totalPrice; }
+    /** Stock left when the purchase was refused, or -1 when it went through. */
+    public int getAvailableQuantity() { return availableQuantity; }
+    public Timestamp getPurchaseDate() { return purchaseDate; }
+}
@@ -0,0 +1,940 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Records sales without the read-check-write race of the old panel code. Stock is taken with a
+ * conditional decrement ({@code WHERE quantity >= ?}) in the same transaction as the history insert,
+ * so two tills can never sell the same last unit.
+ *
+ * <p>Purchases are group-committed: callers enqueue a request and committer threads drain whatever
+ * has queued up into one transaction with batched statements. Under load this turns many small
+ * transactions into a few large ones, while a lone purchase still goes straight through.
+ *
+ * <p>When a {@link StockLedger} is supplied, stock is reserved in memory before the request is even
+ * queued and the transaction only inserts history; the ledger writes the stock change behind.
+ *
+ * <p>When a {@link PurchaseHistoryStore} is supplied, history goes into the partition for the sale's
+ * date instead of the single {@code purchase_history} table.
+ *
+ * <p>Orders from {@link #checkout} go through the same queue and committers, but each one commits in
+ * a transaction of its own: either every line is sold or, if any line is short, none is.
+ *
+ * <p>Sales from a {@link PurchaseJournal} are replayed through the same committers too, so history
+ * ids stay in commit order for the ledger's checkpoint.
+ */
+public class PurchaseService implements AutoCloseable {
+    static final String DECREMENT_SQL =
+        "UPDATE products SET quantity = quantity - ? WHERE id = ? AND quantity >= ?";
+    private static final String INSERT_HISTORY_SQL =
+        "INSERT INTO purchase_history (product_id, quantity, total_price, purchase_date) VALUES (?, ?, ?, ?)";
+
+    private static volatile PurchaseService instance;
+
+    private final DataSource dataSource;
+    private final StockLedger ledger;
+    private final PurchaseHistoryStore history;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> committers = new ArrayList<>();
+    private final List<PurchaseListener> listeners = new CopyOnWriteArrayList<>();
+    // Committers hold it for reading from the first insert until the listeners have been told
+    private final ReentrantReadWriteLock inFlight = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder purchases = new LongAdder();
+
+    public PurchaseService(DataSource dataSource, int committerThreads, int maxBatchSize) {
+        this(dataSource, null, committerThreads, maxBatchSize);
+    }
+
+    public PurchaseService(DataSource dataSource, StockLedger ledger, int committerThreads, int maxBatchSize) {
+        this(dataSource, ledger, null, committerThreads, maxBatchSize);
+    }
+
+    public PurchaseService(DataSource dataSource, StockLedger ledger, PurchaseHistoryStore history,
+                           int committerThreads, int maxBatchSize) {
+        this.dataSource = dataSource;
+        this.ledger = ledger;
+        this.history = history;
+        if (ledger != null) {
+            // The ledger's history order lock serializes the inserts, so a second committer would only wait on it
+            committerThreads = 1;
+        }
+        this.maxBatchSize = maxBatchSize;
+        for (int i = 0; i < committerThreads; i++) {
+            Thread committer = new Thread(this::commitLoop, "inventory-purchase-committer-" + i);
+            committer.setDaemon(true);
+            committer.start();
+            committers.add(committer);
+        }
+    }
+
+    public static PurchaseService getInstance() throws SQLException {
+        PurchaseService service = instance;
+        if (service == null) {
+            synchronized (PurchaseService.class) {
+                service = instance;
+                if (service == null) {
+                    service = new PurchaseService(DatabaseConnection.getDataSource(), StockLedger.getInstance(),
+                        PurchaseHistoryStore.getInstance(), Integer.getInteger("inventory.purchase.committers", 2),
+                        Integer.getInteger("inventory.purchase.maxBatchSize", 128));
+                    instance = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /** Sells {@code quantity} units at {@code unitPrice}, blocking until the sale is committed or refused. */
+    public PurchaseResult purchase(int productId, int quantity, double unitPrice) throws SQLException {
+        try {
+            return submit(productId, quantity, unitPrice).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for purchase to commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Purchase failed", e.getCause());
+        }
+    }
+
+    public CompletableFuture<PurchaseResult> submit(int productId, int quantity, double unitPrice) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + quantity);
+        }
+        Request request = new Request(productId, quantity, unitPrice);
+        if (closed) {
+            request.result.completeExceptionally(new SQLException("Purchase service is closed"));
+            return request.result;
+        }
+        if (ledger != null) {
+            try {
+                if (!ledger.reserve(productId, quantity)) {
+                    int available = ledger.available(productId);
+                    request.result.complete(available < 0
+                        ? PurchaseResult.notFound(productId, quantity)
+                        : PurchaseResult.insufficientStock(productId, quantity, available));
+                    return request.result;
+                }
+            } catch (SQLException e) {
+                request.result.completeExceptionally(e);
+                return request.result;
+            }
+        }
+        enqueue(request);
+        return request.result;
+    }
+
+    /** Sells every line in one transaction, or none of them, blocking until the order is committed or refused. */
+    public OrderResult checkout(int[] productIds, int[] quantities, double[] unitPrices) throws SQLException {
+        try {
+            return submitOrder(productIds, quantities, unitPrices).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for order to commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Order failed", e.getCause());
+        }
+    }
+
+    /**
+     * Lines for the same product are merged into one, and must have the same unit price: the merged
+     * line is recorded as one purchase at one price.
+     */
+    public CompletableFuture<OrderResult> submitOrder(int[] productIds, int[] quantities, double[] unitPrices) {
+        if (productIds.length == 0) {
+            throw new IllegalArgumentException("Order has no lines");
+        }
+        Map<Integer, Request> lines = new TreeMap<>();
+        for (int i = 0; i < productIds.length; i++) {
+            if (quantities[i] <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive: " + quantities[i]);
+            }
+            Request line = lines.get(productIds[i]);
+            if (line != null && Double.compare(line.unitPrice, unitPrices[i]) != 0) {
+                throw new IllegalArgumentException("Product " + productIds[i] + " has lines at different prices: " +
+                    line.unitPrice + " and " + unitPrices[i]);
+            }
+            lines.put(productIds[i], new Request(productIds[i], quantities[i] + (line == null ? 0 : line.quantity),
+                unitPrices[i]));
+        }
+        // Sorted by product id, the order its rows are locked in
+        Order order = new Order(new ArrayList<>(lines.values()));
+        if (closed) {
+            order.result.completeExceptionally(new SQLException("Purchase service is closed"));
+            return order.result;
+        }
+        if (ledger != null) {
+            List<Request> reserved = new ArrayList<>();
+            List<PurchaseResult> refused = new ArrayList<>();
+            try {
+                for (Request line : order.lines) {
+                    if (ledger.reserve(line.productId, line.quantity)) {
+                        reserved.add(line);
+                    } else {
+                        int available = ledger.available(line.productId);
+                        refused.add(available < 0
+                            ? PurchaseResult.notFound(line.productId, line.quantity)
+                            : PurchaseResult.insufficientStock(line.productId, line.quantity, available));
+                    }
+                }
+            } catch (SQLException e) {
+                reserved.forEach(this::releaseReservation);
+                order.result.completeExceptionally(e);
+                return order.result;
+            }
+            if (!refused.isEmpty()) {
+                reserved.forEach(this::releaseReservation);
+                order.result.complete(OrderResult.refused(refused));
+                return order.result;
+            }
+        }
+        enqueue(order);
+        return order.result;
+    }
+
+    /**
+     * Applies journaled sales in one transaction, skipping any at or below the journal's checkpoint
+     * and moving the checkpoint past the last of them. The sales have already happened, so no line is
+     * refused: a shortfall sells the product down to zero stock, a deleted product's line is dropped,
+     * and both come back as conflicts, which are also written to {@code purchase_journal_conflicts}.
+     * With a ledger the stock was reserved when the sale was journaled, and only deleted products
+     * can conflict.
+     */
+    public CompletableFuture<List<PurchaseJournal.Conflict>> replay(String journalId, List<PurchaseJournal.Entry> entries) {
+        Replay replay = new Replay(journalId, entries);
+        if (closed) {
+            replay.result.completeExceptionally(new SQLException("Purchase service is closed"));
+            return replay.result;
+        }
+        enqueue(replay);
+        return replay.result;
+    }
+
+    /** The highest sequence of {@code journalId} already applied, 0 for a new journal. */
+    public long journalCheckpoint(String journalId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT applied_sequence FROM purchase_journal_checkpoint WHERE journal_id = ?")) {
+            pstmt.setString(1, journalId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    public void addListener(PurchaseListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PurchaseListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Waits until every purchase a committer was working on when this was called has either been
+     * committed and passed to the listeners or rolled back. History ids are handed out in insert order
+     * but committed in any order, so this is how a listener reading history knows that nothing below
+     * the highest id it saw is still on its way. Must not be called from a listener.
+     */
+    public void awaitInFlight() {
+        inFlight.writeLock().lock();
+        inFlight.writeLock().unlock();
+    }
+
+    /** A sale's total as {@code purchase_history.total_price} stores it, rounded half up to the cent. */
+    static BigDecimal toMoney(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /** Average number of purchases committed per transaction so far. */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : purchases.sum() / (double) count;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread committer : committers) {
+            committer.interrupt();
+        }
+        failQueued();
+    }
+
+    private void enqueue(Pending<?> pending) {
+        queue.add(pending);
+        if (closed) {
+            // close() may have drained the queue just before this was added, and no committer polls now
+            failQueued();
+        }
+    }
+
+    private void failQueued() {
+        Pending<?> pending;
+        while ((pending = queue.poll()) != null) {
+            fail(pending, new SQLException("Purchase service is closed"));
+        }
+    }
+
+    private void commitLoop() {
+        List<Pending<?>> drained = new ArrayList<>(maxBatchSize);
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        while (!closed) {
+            try {
+                Pending<?> first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+                queue.drainTo(drained, maxBatchSize - 1);
+                List<Order> orders = new ArrayList<>();
+                List<Replay> replays = new ArrayList<>();
+                for (Pending<?> pending : drained) {
+                    if (pending instanceof Order) {
+                        orders.add((Order) pending);
+                    } else if (pending instanceof Replay) {
+                        replays.add((Replay) pending);
+                    } else {
+                        batch.add((Request) pending);
+                    }
+                }
+                inFlight.readLock().lock();
+                try {
+                    if (!batch.isEmpty()) {
+                        commitBatch(batch);
+                    }
+                    for (Order order : orders) {
+                        commitOrder(order);
+                    }
+                    for (Replay replay : replays) {
+                        commitReplay(replay);
+                    }
+                } finally {
+                    inFlight.readLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                for (Pending<?> pending : drained) {
+                    if (!pending.result.isDone()) {
+                        fail(pending, e);
+                    }
+                }
+            } finally {
+                drained.clear();
+                batch.clear();
+            }
+        }
+    }
+
+    private void commitOrder(Order order) {
+        try {
+            OrderResult result = executeOrder(order.lines);
+            if (result.isCompleted()) {
+                batches.increment();
+                purchases.add(order.lines.size());
+                result.getPurchases().forEach(this::notifyListeners);
+            }
+            order.result.complete(result);
+        } catch (SQLException e) {
+            fail(order, e);
+        }
+    }
+
+    private void commitReplay(Replay replay) {
+        try {
+            replay.result.complete(executeReplay(replay));
+        } catch (SQLException e) {
+            fail(replay, e);
+        }
+    }
+
+    private void commitBatch(List<Request> batch) {
+        // Lock rows in id order so concurrent committers can't deadlock; the sort is stable, so
+        // purchases of the same product still win stock in arrival order.
+        batch.sort(Comparator.comparingInt(r -> r.productId));
+        try {
+            List<PurchaseResult> results = executeInTransaction(batch);
+            batches.increment();
+            purchases.add(batch.size());
+            // Listeners run before the buyer is released, so a report read afterwards includes the sale
+            for (PurchaseResult result : results) {
+                if (result.isCompleted()) {
+                    notifyListeners(result);
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(results.get(i));
+            }
+        } catch (SQLException e) {
+            // One bad request (e.g. a deleted product) must not fail the whole group
+            if (batch.size() == 1) {
+                releaseReservation(batch.get(0));
+                batch.get(0).result.completeExceptionally(e);
+                return;
+            }
+            for (Request request : batch) {
+                commitBatch(new ArrayList<>(List.of(request)));
+            }
+        }
+    }
+
+    private List<PurchaseResult> executeInTransaction(List<Request> batch) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        // Creating a partition is DDL, which would commit the transaction early on MySQL
+        String historyTable = history == null ? null : history.tableFor(now.toLocalDateTime().toLocalDate());
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            lockHistoryOrder();
+            try {
+                boolean[] sold;
+                if (ledger != null) {
+                    // Already reserved in memory; the ledger writes the decrement behind
+                    sold = new boolean[batch.size()];
+                    Arrays.fill(sold, true);
+                } else {
+                    sold = decrementStock(conn, batch);
+                }
+                int[] purchaseIds = history == null
+                    ? insertHistory(conn, batch, sold, now)
+                    : insertPartitioned(conn, historyTable, batch, sold, now);
+                Map<Integer, Integer> remaining = readRefusedStock(conn, batch, sold);
+                conn.commit();
+                if (ledger != null) {
+                    commitToLedger(batch, purchaseIds);
+                }
+
+                List<PurchaseResult> results = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    Request request = batch.get(i);
+                    if (sold[i]) {
+                        results.add(PurchaseResult.completed(purchaseIds[i], request.productId, request.quantity,
+                            request.unitPrice * request.quantity, now));
+                    } else if (remaining.containsKey(request.productId)) {
+                        results.add(PurchaseResult.insufficientStock(request.productId, request.quantity,
+                            remaining.get(request.productId)));
+                    } else {
+                        results.add(PurchaseResult.notFound(request.productId, request.quantity));
+                    }
+                }
+                return results;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                unlockHistoryOrder();
+            }
+        }
+    }
+
+    private OrderResult executeOrder(List<Request> lines) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        String historyTable = history == null ? null : history.tableFor(now.toLocalDateTime().toLocalDate());
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            lockHistoryOrder();
+            try {
+                boolean[] sold;
+                if (ledger != null) {
+                    sold = new boolean[lines.size()];
+                    Arrays.fill(sold, true);
+                } else {
+                    sold = decrementStock(conn, lines);
+                    List<PurchaseResult> refused = new ArrayList<>();
+                    Map<Integer, Integer> remaining = readRefusedStock(conn, lines, sold);
+                    for (int i = 0; i < lines.size(); i++) {
+                        Request line = lines.get(i);
+                        if (!sold[i]) {
+                            refused.add(remaining.containsKey(line.productId)
+                                ? PurchaseResult.insufficientStock(line.productId, line.quantity, remaining.get(line.productId))
+                                : PurchaseResult.notFound(line.productId, line.quantity));
+                        }
+                    }
+                    if (!refused.isEmpty()) {
+                        conn.rollback();
+                        return OrderResult.refused(refused);
+                    }
+                }
+                int[] purchaseIds = history == null
+                    ? insertHistory(conn, lines, sold, now)
+                    : insertPartitioned(conn, historyTable, lines, sold, now);
+                conn.commit();
+                if (ledger != null) {
+                    commitToLedger(lines, purchaseIds);
+                }
+
+                List<PurchaseResult> results = new ArrayList<>(lines.size());
+                for (int i = 0; i < lines.size(); i++) {
+                    Request line = lines.get(i);
+                    results.add(PurchaseResult.completed(purchaseIds[i], line.productId, line.quantity,
+                        line.unitPrice * line.quantity, now));
+                }
+                return OrderResult.completed(results);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                unlockHistoryOrder();
+            }
+        }
+    }
+
+    private List<PurchaseJournal.Conflict> executeReplay(Replay replay) throws SQLException {
+        List<ReplayLine> replayLines = new ArrayList<>();
+        Map<LocalDate, String> tables = new HashMap<>();
+        for (PurchaseJournal.Entry entry : replay.entries) {
+            Timestamp date = new Timestamp(entry.getTimeMillis());
+            String table = null;
+            if (history != null) {
+                LocalDate day = date.toLocalDateTime().toLocalDate();
+                table = tables.get(day);
+                if (table == null) {
+                    table = history.tableFor(day);
+                    tables.put(day, table);
+                }
+            }
+            for (int i = 0; i < entry.getLineCount(); i++) {
+                replayLines.add(new ReplayLine(new Request(entry.getProductId(i), entry.getQuantity(i),
+                    entry.getUnitPrice(i), date), entry.getSequence(), table));
+            }
+        }
+        long lastSequence = replay.entries.get(replay.entries.size() - 1).getSequence();
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            lockHistoryOrder();
+            try {
+                long checkpoint = lockJournalCheckpoint(conn, replay.journalId);
+                replayLines.removeIf(line -> line.sequence <= checkpoint);
+                replayLines.sort(Comparator.comparingInt(line -> line.request.productId));
+                List<Request> lines = new ArrayList<>(replayLines.size());
+                for (ReplayLine line : replayLines) {
+                    lines.add(line.request);
+                }
+
+                List<PurchaseJournal.Conflict> conflicts = new ArrayList<>();
+                boolean[] sold = new boolean[lines.size()];
+                if (ledger != null) {
+                    for (int i = 0; i < lines.size(); i++) {
+                        Request line = lines.get(i);
+                        sold[i] = ledger.availableOrDefault(line.productId, -1) >= 0;
+                        if (!sold[i]) {
+                            conflicts.add(new PurchaseJournal.Conflict(replayLines.get(i).sequence, line.productId,
+                                line.quantity, -1, PurchaseJournal.Conflict.Reason.PRODUCT_DELETED));
+                        }
+                    }
+                } else if (!lines.isEmpty()) {
+                    sold = decrementStock(conn, lines);
+                    Map<Integer, Integer> remaining = readRefusedStock(conn, lines, sold);
+                    for (int i = 0; i < lines.size(); i++) {
+                        Request line = lines.get(i);
+                        if (sold[i]) {
+                            continue;
+                        }
+                        Integer available = remaining.get(line.productId);
+                        if (available == null) {
+                            conflicts.add(new PurchaseJournal.Conflict(replayLines.get(i).sequence, line.productId,
+                                line.quantity, -1, PurchaseJournal.Conflict.Reason.PRODUCT_DELETED));
+                            continue;
+                        }
+                        zeroStock(conn, line.productId);
+                        remaining.put(line.productId, 0);
+                        sold[i] = true;
+                        conflicts.add(new PurchaseJournal.Conflict(replayLines.get(i).sequence, line.productId,
+                            line.quantity, available, PurchaseJournal.Conflict.Reason.OVERSOLD));
+                    }
+                }
+
+                int[] purchaseIds;
+                if (history == null) {
+                    purchaseIds = insertHistory(conn, lines, sold, null);
+                } else {
+                    purchaseIds = new int[lines.size()];
+                    for (String table : new TreeSet<>(tables.values())) {
+                        List<Integer> indexes = new ArrayList<>();
+                        for (int i = 0; i < replayLines.size(); i++) {
+                            if (table.equals(replayLines.get(i).table)) {
+                                indexes.add(i);
+                            }
+                        }
+                        List<Request> tableLines = new ArrayList<>(indexes.size());
+                        boolean[] tableSold = new boolean[indexes.size()];
+                        for (int i = 0; i < indexes.size(); i++) {
+                            tableLines.add(lines.get(indexes.get(i)));
+                            tableSold[i] = sold[indexes.get(i)];
+                        }
+                        int[] tableIds = insertPartitioned(conn, table, tableLines, tableSold, null);
+                        for (int i = 0; i < indexes.size(); i++) {
+                            purchaseIds[indexes.get(i)] = tableIds[i];
+                        }
+                    }
+                }
+                insertConflicts(conn, replay.journalId, conflicts);
+                writeJournalCheckpoint(conn, replay.journalId, Math.max(checkpoint, lastSequence));
+                conn.commit();
+
+                List<Request> soldLines = new ArrayList<>(lines.size());
+                List<PurchaseResult> results = new ArrayList<>(lines.size());
+                for (int i = 0; i < lines.size(); i++) {
+                    if (sold[i]) {
+                        Request line = lines.get(i);
+                        soldLines.add(line);
+                        results.add(PurchaseResult.completed(purchaseIds[i], line.productId, line.quantity,
+                            line.unitPrice * line.quantity, line.date));
+                    }
+                }
+                if (ledger != null && !soldLines.isEmpty()) {
+                    int[] soldIds = new int[soldLines.size()];
+                    for (int i = 0; i < results.size(); i++) {
+                        soldIds[i] = results.get(i).getPurchaseId();
+                    }
+                    commitToLedger(soldLines, soldIds);
+                }
+                batches.increment();
+                purchases.add(results.size());
+                results.forEach(this::notifyListeners);
+                return conflicts;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                unlockHistoryOrder();
+            }
+        }
+    }
+
+    private static long lockJournalCheckpoint(Connection conn, String journalId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+            "SELECT applied_sequence FROM purchase_journal_checkpoint WHERE journal_id = ? FOR UPDATE")) {
+            pstmt.setString(1, journalId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+            "INSERT INTO purchase_journal_checkpoint (journal_id, applied_sequence) VALUES (?, 0)")) {
+            pstmt.setString(1, journalId);
+            pstmt.executeUpdate();
+        }
+        return 0;
+    }
+
+    private static void writeJournalCheckpoint(Connection conn, String journalId, long sequence) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+            "UPDATE purchase_journal_checkpoint SET applied_sequence = ? WHERE journal_id = ?")) {
+            pstmt.setLong(1, sequence);
+            pstmt.setString(2, journalId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void insertConflicts(Connection conn, String journalId, List<PurchaseJournal.Conflict> conflicts)
+            throws SQLException {
+        if (conflicts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO purchase_journal_conflicts " +
+                 "(journal_id, journal_sequence, product_id, quantity, available_quantity, reason, recorded_at) " +
+                 "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            for (PurchaseJournal.Conflict conflict : conflicts) {
+                pstmt.setString(1, journalId);
+                pstmt.setLong(2, conflict.getSequence());
+                pstmt.setInt(3, conflict.getProductId());
+                pstmt.setInt(4, conflict.getQuantity());
+                pstmt.setInt(5, conflict.getAvailableQuantity());
+                pstmt.setString(6, conflict.getReason().name());
+                pstmt.setTimestamp(7, now);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static void zeroStock(Connection conn, int productId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE products SET quantity = 0 WHERE id = ?")) {
+            pstmt.setInt(1, productId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void fail(Pending<?> pending, Throwable e) {
+        for (Request request : pending.requests()) {
+            releaseReservation(request);
+        }
+        pending.result.completeExceptionally(e);
+    }
+
+    private void notifyListeners(PurchaseResult result) {
+        for (PurchaseListener listener : listeners) {
+            try {
+                listener.purchaseCompleted(result);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Taken before any history insert, ahead of every database lock, and held until commitToLedger
+    private void lockHistoryOrder() {
+        if (ledger != null) {
+            ledger.lockHistoryOrder();
+        }
+    }
+
+    private void unlockHistoryOrder() {
+        if (ledger != null) {
+            ledger.unlockHistoryOrder();
+        }
+    }
+
+    private void commitToLedger(List<Request> batch, int[] purchaseIds) {
+        int[] productIds = new int[batch.size()];
+        int[] quantities = new int[batch.size()];
+        long maxPurchaseId = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            productIds[i] = batch.get(i).productId;
+            quantities[i] = batch.get(i).quantity;
+            maxPurchaseId = Math.max(maxPurchaseId, purchaseIds[i]);
+        }
+        ledger.commitSales(productIds, quantities, maxPurchaseId);
+    }
+
+    private void releaseReservation(Request request) {
+        if (ledger != null) {
+            ledger.release(request.productId, request.quantity);
+        }
+    }
+
+    private boolean[] decrementStock(Connection conn, List<Request> batch) throws SQLException {
+        boolean[] sold = new boolean[batch.size()];
+        try (PreparedStatement pstmt = conn.prepareStatement(DECREMENT_SQL)) {
+            if (batch.size() == 1) {
+                Request request = batch.get(0);
+                bindDecrement(pstmt, request);
+                sold[0] = pstmt.executeUpdate() > 0;
+                return sold;
+            }
+            for (Request request : batch) {
+                bindDecrement(pstmt, request);
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == Statement.SUCCESS_NO_INFO) {
+                    // The driver rewrote the batch and can't say which rows matched; undo and go row by row
+                    throw new SQLException("Batched stock update returned no per-row counts");
+                }
+                sold[i] = counts[i] > 0;
+            }
+        }
+        return sold;
+    }
+
+    private static void bindDecrement(PreparedStatement pstmt, Request request) throws SQLException {
+        pstmt.setInt(1, request.quantity);
+        pstmt.setInt(2, request.productId);
+        pstmt.setInt(3, request.quantity);
+    }
+
+    private int[] insertHistory(Connection conn, List<Request> batch, boolean[] sold, Timestamp now) throws SQLException {
+        int[] purchaseIds = new int[batch.size()];
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_HISTORY_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            int added = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (sold[i]) {
+                    Request request = batch.get(i);
+                    pstmt.setInt(1, request.productId);
+                    pstmt.setInt(2, request.quantity);
+                    pstmt.setBigDecimal(3, toMoney(request.unitPrice * request.quantity));
+                    pstmt.setTimestamp(4, request.date != null ? request.date : now);
+                    pstmt.addBatch();
+                    added++;
+                }
+            }
+            if (added == 0) {
+                return purchaseIds;
+            }
+            pstmt.executeBatch();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (sold[i]) {
+                        purchaseIds[i] = keys.next() ? keys.getInt(1) : -1;
+                    }
+                }
+            }
+        }
+        return purchaseIds;
+    }
+
+    private int[] insertPartitioned(Connection conn, String table, List<Request> batch, boolean[] sold, Timestamp now)
+            throws SQLException {
+        int[] purchaseIds = new int[batch.size()];
+        int added = 0;
+        for (boolean isSold : sold) {
+            if (isSold) {
+                added++;
+            }
+        }
+        if (added == 0) {
+            return purchaseIds;
+        }
+        long nextId = PurchaseHistoryStore.allocateIds(conn, added);
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO " + table +
+                 " (id, product_id, quantity, total_price, purchase_date) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (sold[i]) {
+                    Request request = batch.get(i);
+                    purchaseIds[i] = (int) nextId++;
+                    pstmt.setInt(1, purchaseIds[i]);
+                    pstmt.setInt(2, request.productId);
+                    pstmt.setInt(3, request.quantity);
+                    pstmt.setBigDecimal(4, toMoney(request.unitPrice * request.quantity));
+                    pstmt.setTimestamp(5, request.date != null ? request.date : now);
+                    pstmt.addBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+        if (batch.get(0).date != null) {
+            // Journaled sales keep the date they were made, which may be a day already rolled up
+            LocalDate rolledThrough = PurchaseHistoryStore.lockRolledThrough(conn);
+            for (int i = 0; i < batch.size() && rolledThrough != null; i++) {
+                Request request = batch.get(i);
+                LocalDate day = request.date.toLocalDateTime().toLocalDate();
+                if (sold[i] && !day.isAfter(rolledThrough)) {
+                    PurchaseHistoryStore.addToRollup(conn, day, request.productId, request.quantity,
+                        toMoney(request.unitPrice * request.quantity));
+                }
+            }
+        }
+        return purchaseIds;
+    }
+
+    // Only refused purchases pay for this read, to tell the cashier how much is actually left
+    private Map<Integer, Integer> readRefusedStock(Connection conn, List<Request> batch, boolean[] sold) throws SQLException {
+        Map<Integer, Integer> remaining = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+            for (int i = 0; i < batch.size(); i++) {
+                int productId = batch.get(i).productId;
+                if (sold[i] || remaining.containsKey(productId)) {
+                    continue;
+                }
+                pstmt.setInt(1, productId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        remaining.put(productId, rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return remaining;
+    }
+
+    /** A queued purchase or order, holding stock reservations when there is a ledger. */
+    private abstract static class Pending<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        abstract List<Request> requests();
+    }
+
+    private static final class Request extends Pending<PurchaseResult> {
+        final int productId;
+        final int quantity;
+        final double unitPrice;
+        // When the sale happened, for journaled sales; null means the commit time
+        final Timestamp date;
+
+        Request(int productId, int quantity, double unitPrice) {
+            this(productId, quantity, unitPrice, null);
+        }
+
+        Request(int productId, int quantity, double unitPrice, Timestamp date) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+            this.date = date;
+        }
+
+        @Override
+        List<Request> requests() {
+            return List.of(this);
+        }
+    }
+
+    private static final class Order extends Pending<OrderResult> {
+        final List<Request> lines;
+
+        Order(List<Request> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        List<Request> requests() {
+            return lines;
+        }
+    }
+
+    /** Journaled sales to apply; their stock reservations outlive a failed attempt, which is retried. */
+    private static final class Replay extends Pending<List<PurchaseJournal.Conflict>> {
+        final String journalId;
+        final List<PurchaseJournal.Entry> entries;
+
+        Replay(String journalId, List<PurchaseJournal.Entry> entries) {
+            this.journalId = journalId;
+            this.entries = entries;
+        }
+
+        @Override
+        List<Request> requests() {
+            return List.of();
+        }
+    }
+
+    private static final class ReplayLine {
+        final Request request;
+        final long sequence;
+        final String table;
+
+        ReplayLine(Request request, long sequence, String table) {
+            this.request = request;
+            this.sequence = sequence;
+            this.table = table;
+        }
+    }
+}
\ No newline at end of file
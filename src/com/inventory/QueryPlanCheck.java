@@ -0,0 +1,296 @@
+package com.inventory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs {@code EXPLAIN} on the statements the tabs issue as they are used, with sample parameters,
+ * and fails any whose plan reads a whole table of more than {@code maxScanRows} rows. A statement that
+ * fetches a page must also read its rows in index order, and read no more than {@code maxScanRows}
+ * rows of any table to do so; joining or filtering the wrong way round can cost that even when every
+ * table is read through an index. Pointed at a copy of the production database it shows which screens
+ * would slow down as the data grows, and at a freshly migrated one that {@link SchemaMigrations}
+ * created the indexes they need.
+ *
+ * <pre>
+ * java -cp mysql-connector-j.jar:bin com.inventory.QueryPlanCheck [maxScanRows]
+ * </pre>
+ *
+ * The database is the one the application uses ({@code -Dinventory.db.url} and friends), migrated
+ * first. The check covers:
+ * <ul>
+ *   <li>the Products tab's next page in each sort order, both directions;</li>
+ *   <li>the History tab's next page in each history range;</li>
+ *   <li>the low stock list, and the report's sales over the last 30 days;</li>
+ *   <li>a sale's stock decrement;</li>
+ *   <li>a category delete: counting, chunking and removing the category.</li>
+ * </ul>
+ * Loads that read a whole table on purpose (the catalog, the report's inventory section, row counts
+ * for the scroll bars) are left out. Both H2's plan text and MySQL's tabular {@code EXPLAIN} are
+ * understood. On H2 the pages are run with {@code EXPLAIN ANALYZE} to count the rows they read;
+ * MySQL's row figures are the optimizer's estimates. Exits 1 if any plan fails.
+ */
+public final class QueryPlanCheck {
+    public static final long DEFAULT_MAX_SCAN_ROWS = 10_000;
+
+    // H2 notes each table it reads without an index as /* PUBLIC.PRODUCTS.tableScan */
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\* ([\\w.]+)\\.tableScan");
+    // EXPLAIN ANALYZE follows each table or index read, /* PUBLIC.PRODUCTS_NAME: NAME >= ?1 */, with its /* scanCount: 201 */
+    private static final Pattern H2_READ = Pattern.compile("/\\* (\\w+\\.\\w+)(?:\\.tableScan)?(?::| \\*/)");
+    private static final Pattern H2_SCAN_COUNT = Pattern.compile("/\\* scanCount: (\\d+) \\*/");
+    // An anchor value for each of the Products tab's columns
+    private static final Object[] SAMPLE_SORT_VALUES = {1, "Product 1", 1.0, 1, "Category 1"};
+
+    private QueryPlanCheck() {
+    }
+
+    public static void main(String[] args) throws SQLException {
+        long maxScanRows = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_MAX_SCAN_ROWS;
+        List<String> problems;
+        try (Connection conn = DatabaseConnection.getConnection()) {
+            problems = verify(conn, maxScanRows);
+        } finally {
+            DatabaseConnection.shutdown();
+        }
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        System.out.println(problems.isEmpty()
+            ? "No statement scans a table of more than " + maxScanRows + " rows, and every page is read in index order"
+            : problems.size() + " statements scan more than " + maxScanRows + " rows or sort a page");
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Explains every statement and lists each whole-table read over {@code maxScanRows} rows, and each
+     * page that is sorted or reads more than that. An empty list means every plan passed.
+     */
+    public static List<String> verify(Connection conn, long maxScanRows) throws SQLException {
+        return verify(conn, checks(conn), maxScanRows);
+    }
+
+    static List<String> verify(Connection conn, List<Check> checks, long maxScanRows) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        Map<String, Long> rowCounts = new HashMap<>();
+        boolean h2 = "H2".equals(conn.getMetaData().getDatabaseProductName());
+        for (Check check : checks) {
+            if (check.paged) {
+                String problem = pagingProblem(conn, check, h2, maxScanRows);
+                if (problem != null) {
+                    problems.add(problem);
+                }
+                continue;
+            }
+            for (Map.Entry<String, Long> scan : scans(conn, check, rowCounts).entrySet()) {
+                if (scan.getValue() > maxScanRows) {
+                    problems.add(String.format("%s: reads all of %s (%d rows)%n  %s", check.name, scan.getKey(),
+                        scan.getValue(), check.sql));
+                }
+            }
+        }
+        return problems;
+    }
+
+    static List<Check> checks(Connection conn) throws SQLException {
+        List<Check> checks = new ArrayList<>();
+        String[] sortNames = new ProductPageSource().getColumnNames();
+        for (int column = 0; column < sortNames.length; column++) {
+            for (boolean ascending : new boolean[]{true, false}) {
+                String name = "Products page by " + sortNames[column] + (ascending ? "" : " descending");
+                if (column == ProductPageSource.CATEGORY_COLUMN) {
+                    Object category = SAMPLE_SORT_VALUES[column];
+                    checks.add(new Check(name + ": categories", ProductPageSource.categoriesSql(ascending, true),
+                        category, category, category, 1));
+                    checks.add(Check.paged(name + ": a category's products", ProductPageSource.categoryPageSql(ascending),
+                        1, 1, PagedTableModel.PAGE_SIZE, 0));
+                    continue;
+                }
+                List<Object> parameters = new ArrayList<>();
+                if (column != 0) {
+                    for (int i = 0; i < 3; i++) {
+                        parameters.add(SAMPLE_SORT_VALUES[column]);
+                    }
+                }
+                parameters.add(1);
+                parameters.add(PagedTableModel.PAGE_SIZE);
+                parameters.add(0);
+                checks.add(Check.paged(name, ProductPageSource.pageSql(column, ascending, true), parameters.toArray()));
+            }
+        }
+
+        PurchaseHistoryStore.Layout history = PurchaseHistoryStore.layout(conn);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (PurchaseHistoryStore.Range range : history.ranges()) {
+            Object[] anchor = {now, 0};
+            List<String> branches = PurchaseHistoryPageSource.branches(range, PurchaseHistoryPageSource.SELECT, anchor);
+            if (branches.isEmpty()) {
+                continue;
+            }
+            List<Object> parameters = new ArrayList<>();
+            for (int i = 0; i < branches.size(); i++) {
+                parameters.add(now);
+                parameters.add(now);
+                parameters.add(now);
+                parameters.add(0);
+            }
+            parameters.add(PagedTableModel.PAGE_SIZE);
+            parameters.add(0);
+            checks.add(Check.paged("History page from " + (range.start == null ? "the start" : range.start),
+                PurchaseHistoryPageSource.pageSql(branches, 0, PagedTableModel.PAGE_SIZE), parameters.toArray()));
+        }
+
+        int threshold = LowStockMonitor.defaultThreshold();
+        checks.add(new Check("Low stock list", LowStockMonitor.LOW_STOCK_SQL, threshold, threshold, threshold, threshold));
+        checks.add(new Check("Report sales", String.format(ReportExporter.SALES_SQL,
+            history.dailySales(ReportAggregates.windowStartDay(), Long.MAX_VALUE))));
+        checks.add(new Check("Purchase stock decrement", PurchaseService.DECREMENT_SQL, 1, 1, 1));
+        checks.add(new Check("Category delete count", CategoryDeleter.COUNT_SQL, 1));
+        checks.add(Check.paged("Category delete chunk", CategoryDeleter.NEXT_CHUNK_SQL, 1, 0,
+            CategoryDeleter.DEFAULT_CHUNK_SIZE));
+        checks.add(new Check("Category delete removal", CategoryDeleter.REMOVE_SQL, 1, 1));
+        return checks;
+    }
+
+    /** Each table the check's plan reads whole, with its size. */
+    private static Map<String, Long> scans(Connection conn, Check check, Map<String, Long> rowCounts) throws SQLException {
+        Map<String, Long> scans = new LinkedHashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + check.sql)) {
+            for (int i = 0; i < check.parameters.length; i++) {
+                pstmt.setObject(i + 1, check.parameters[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int typeColumn = findColumn(metaData, "type");
+                while (rs.next()) {
+                    if (typeColumn > 0) {
+                        // MySQL: a row per table read, ALL being a full scan; <derived2> and the like
+                        // are intermediate results, already counted where they were read from
+                        String table = rs.getString("table");
+                        if ("ALL".equals(rs.getString(typeColumn)) && table != null && !table.startsWith("<")) {
+                            scans.put(table, rs.getLong("rows"));
+                        }
+                    } else {
+                        Matcher matcher = H2_TABLE_SCAN.matcher(rs.getString(1));
+                        while (matcher.find()) {
+                            String table = matcher.group(1);
+                            scans.put(table, rowCount(conn, table, rowCounts));
+                        }
+                    }
+                }
+            }
+        }
+        return scans;
+    }
+
+    /**
+     * What is wrong with how a page is read, or null: the most rows it reads of any one table or index,
+     * if over {@code maxScanRows}, and whether it sorts them rather than reading them in index order.
+     */
+    private static String pagingProblem(Connection conn, Check check, boolean h2, long maxScanRows) throws SQLException {
+        boolean sorted = true;
+        String busiest = null;
+        long most = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement((h2 ? "EXPLAIN ANALYZE " : "EXPLAIN ") + check.sql)) {
+            for (int i = 0; i < check.parameters.length; i++) {
+                pstmt.setObject(i + 1, check.parameters[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (h2) {
+                    // A derived table or a union sorts what its index-sorted parts return, a page at most
+                    rs.next();
+                    String plan = rs.getString(1);
+                    sorted = plan.contains("/* index sorted */");
+                    String source = null;
+                    for (String line : plan.split("\n")) {
+                        Matcher read = H2_READ.matcher(line);
+                        if (read.find()) {
+                            source = read.group(1);
+                        }
+                        Matcher count = H2_SCAN_COUNT.matcher(line);
+                        if (count.find() && Long.parseLong(count.group(1)) > most) {
+                            most = Long.parseLong(count.group(1));
+                            busiest = source;
+                        }
+                    }
+                } else {
+                    while (rs.next()) {
+                        String table = rs.getString("table");
+                        String extra = rs.getString("Extra");
+                        // Sorting a derived table's rows is sorting the page it was cut to
+                        if (table != null && !table.startsWith("<") && extra != null && extra.contains("Using filesort")) {
+                            sorted = false;
+                        }
+                        if (rs.getLong("rows") > most) {
+                            most = rs.getLong("rows");
+                            busiest = table;
+                        }
+                    }
+                }
+            }
+        }
+        if (sorted && most <= maxScanRows) {
+            return null;
+        }
+        return String.format("%s: reads %d rows of %s%s%n  %s", check.name, most, busiest,
+            sorted ? "" : ", then sorts them", check.sql);
+    }
+
+    private static int findColumn(ResultSetMetaData metaData, String name) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (name.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static long rowCount(Connection conn, String table, Map<String, Long> rowCounts) throws SQLException {
+        Long count = rowCounts.get(table);
+        if (count == null) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM " + table);
+                 ResultSet rs = pstmt.executeQuery()) {
+                count = rs.next() ? rs.getLong(1) : 0;
+            }
+            rowCounts.put(table, count);
+        }
+        return count;
+    }
+
+    /**
+     * A statement as a tab issues it, with parameters that make a representative plan. A paged one
+     * fetches a page in the order of an index.
+     */
+    static final class Check {
+        final String name;
+        final String sql;
+        final boolean paged;
+        final Object[] parameters;
+
+        Check(String name, String sql, Object... parameters) {
+            this(name, sql, false, parameters);
+        }
+
+        private Check(String name, String sql, boolean paged, Object[] parameters) {
+            this.name = name;
+            this.sql = sql;
+            this.paged = paged;
+            this.parameters = parameters;
+        }
+
+        static Check paged(String name, String sql, Object... parameters) {
+            return new Check(name, sql, true, parameters);
+        }
+    }
+}
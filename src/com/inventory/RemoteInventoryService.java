@@ -0,0 +1,241 @@
+package com.inventory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link InventoryService} that forwards every call to an {@link InventoryServer}. Connection
+ * failures surface as {@link SQLException} with SQL state {@code 08S01}, the JDBC code for a lost
+ * link, so callers handle them like any other database error.
+ */
+public class RemoteInventoryService implements InventoryService {
+    private static final String COMMUNICATION_FAILURE = "08S01";
+
+    private static volatile RemoteInventoryService instance;
+
+    private final String baseUrl;
+    private final String token;
+    private final HttpClient client;
+
+    /** A client of the server at {@code baseUrl}, sending it {@code token} with every call. */
+    public RemoteInventoryService(String baseUrl, String token) {
+        this.baseUrl = baseUrl.replaceAll("/+$", "");
+        this.token = token;
+        this.client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+
+    /** The client for {@code inventory.server.url}, authenticating with {@code inventory.server.token}. */
+    public static RemoteInventoryService getInstance() {
+        RemoteInventoryService service = instance;
+        if (service == null) {
+            synchronized (RemoteInventoryService.class) {
+                service = instance;
+                if (service == null) {
+                    String url = System.getProperty("inventory.server.url");
+                    if (url == null) {
+                        throw new IllegalStateException("inventory.server.url is not set");
+                    }
+                    String token = System.getProperty("inventory.server.token");
+                    if (token == null) {
+                        throw new IllegalStateException("inventory.server.token is not set");
+                    }
+                    service = new RemoteInventoryService(url, token);
+                    instance = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    @Override
+    public List<Category> getCategories() throws SQLException {
+        List<Category> categories = new ArrayList<>();
+        for (Object category : (List<?>) send("GET", "/api/categories", null)) {
+            categories.add(toCategory((Map<?, ?>) category));
+        }
+        return categories;
+    }
+
+    @Override
+    public Category addCategory(String name) throws SQLException {
+        return toCategory((Map<?, ?>) send("POST", "/api/categories", Map.of("name", name)));
+    }
+
+    @Override
+    public boolean renameCategory(int id, String name) throws SQLException {
+        return send("PUT", "/api/categories/" + id, Map.of("name", name)) != null;
+    }
+
+    @Override
+    public boolean deleteCategory(int id) throws SQLException {
+        return send("DELETE", "/api/categories/" + id, null) != null;
+    }
+
+    @Override
+    public List<String> getInStockProductNames() throws SQLException {
+        List<String> names = new ArrayList<>();
+        for (Object name : (List<?>) send("GET", "/api/products/in-stock", null)) {
+            names.add((String) name);
+        }
+        return names;
+    }
+
+    @Override
+    public Product getProduct(int id) throws SQLException {
+        return toProduct((Map<?, ?>) send("GET", "/api/products/" + id, null));
+    }
+
+    @Override
+    public Product findProductByName(String name) throws SQLException {
+        return toProduct((Map<?, ?>) send("GET", "/api/products?name=" + URLEncoder.encode(name, StandardCharsets.UTF_8), null));
+    }
+
+    @Override
+    public List<Product> searchProducts(String query, int limit, boolean inStockOnly) throws SQLException {
+        List<Product> products = new ArrayList<>();
+        for (Object product : (List<?>) send("GET", "/api/products/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)
+                + "&limit=" + limit + "&inStock=" + inStockOnly, null)) {
+            products.add(toProduct((Map<?, ?>) product));
+        }
+        return products;
+    }
+
+    @Override
+    public Product addProduct(String name, double price, int quantity, String categoryName) throws SQLException {
+        return toProduct((Map<?, ?>) send("POST", "/api/products", productBody(name, price, quantity, categoryName)));
+    }
+
+    @Override
+    public Product updateProduct(int id, String name, double price, int quantity, String categoryName) throws SQLException {
+        return toProduct((Map<?, ?>) send("PUT", "/api/products/" + id, productBody(name, price, quantity, categoryName)));
+    }
+
+    @Override
+    public boolean deleteProduct(int id) throws SQLException {
+        return send("DELETE", "/api/products/" + id, null) != null;
+    }
+
+    @Override
+    public PurchaseResult purchase(int productId, int quantity) throws SQLException {
+        return toPurchaseResult((Map<?, ?>) send("POST", "/api/purchases", Map.of("productId", productId, "quantity", quantity)));
+    }
+
+    @Override
+    public PurchaseResult purchaseByName(String productName, int quantity) throws SQLException {
+        return toPurchaseResult((Map<?, ?>) send("POST", "/api/purchases", Map.of("product", productName, "quantity", quantity)));
+    }
+
+    @Override
+    public OrderResult checkout(List<CartLine> lines) throws SQLException {
+        List<Object> body = new ArrayList<>();
+        for (CartLine line : lines) {
+            body.add(Map.of("productId", line.getProductId(), "quantity", line.getQuantity()));
+        }
+        Map<?, ?> json = (Map<?, ?>) send("POST", "/api/orders", Map.of("lines", body));
+        List<PurchaseResult> purchases = new ArrayList<>();
+        for (Object purchase : (List<?>) json.get("purchases")) {
+            purchases.add(toPurchaseResult((Map<?, ?>) purchase));
+        }
+        List<PurchaseResult> refused = new ArrayList<>();
+        for (Object purchase : (List<?>) json.get("refused")) {
+            refused.add(toPurchaseResult((Map<?, ?>) purchase));
+        }
+        return refused.isEmpty() ? OrderResult.completed(purchases) : OrderResult.refused(refused);
+    }
+
+    @Override
+    public String getReport() throws SQLException {
+        return (String) ((Map<?, ?>) send("GET", "/api/report", null)).get("report");
+    }
+
+    private static Map<String, Object> productBody(String name, double price, int quantity, String categoryName) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", name);
+        body.put("price", price);
+        body.put("quantity", quantity);
+        body.put("category", categoryName);
+        return body;
+    }
+
+    /** Returns the parsed response body, or null for a 404. */
+    private Object send(String method, String path, Object body) throws SQLException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(Duration.ofSeconds(30))
+            .header("Content-Type", "application/json")
+            .header(InventoryServer.TOKEN_HEADER, token)
+            .method(method, body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(Json.write(body), StandardCharsets.UTF_8))
+            .build();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new SQLException("Can't reach inventory server at " + baseUrl + ": " + e, COMMUNICATION_FAILURE, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while calling inventory server", COMMUNICATION_FAILURE, e);
+        }
+
+        int status = response.statusCode();
+        if (status == 404) {
+            return null;
+        }
+        Object parsed;
+        try {
+            parsed = Json.parse(response.body());
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Bad response from inventory server (HTTP " + status + "): " + e.getMessage());
+        }
+        if (status >= 200 && status < 300) {
+            return parsed;
+        }
+        Object error = parsed instanceof Map ? ((Map<?, ?>) parsed).get("error") : null;
+        String message = error == null ? "HTTP " + status : String.valueOf(error);
+        if (status == 400) {
+            throw new IllegalArgumentException(message);
+        }
+        throw new SQLException(message);
+    }
+
+    private static Category toCategory(Map<?, ?> json) {
+        return new Category(((Number) json.get("id")).intValue(), (String) json.get("name"));
+    }
+
+    private static Product toProduct(Map<?, ?> json) {
+        if (json == null) {
+            return null;
+        }
+        return new Product(((Number) json.get("id")).intValue(), (String) json.get("name"),
+            ((Number) json.get("price")).doubleValue(), ((Number) json.get("quantity")).intValue(),
+            ((Number) json.get("categoryId")).intValue());
+    }
+
+    private static PurchaseResult toPurchaseResult(Map<?, ?> json) {
+        int productId = ((Number) json.get("productId")).intValue();
+        int quantity = ((Number) json.get("quantity")).intValue();
+        switch (PurchaseResult.Status.valueOf((String) json.get("status"))) {
+            case COMPLETED:
+                return PurchaseResult.completed(((Number) json.get("purchaseId")).intValue(), productId, quantity,
+                    ((Number) json.get("totalPrice")).doubleValue(), new Timestamp(((Number) json.get("purchaseDate")).longValue()));
+            case INSUFFICIENT_STOCK:
+                return PurchaseResult.insufficientStock(productId, quantity, ((Number) json.get("availableQuantity")).intValue());
+            default:
+                return PurchaseResult.notFound(productId, quantity);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Hands out connections to read replicas for work that can tolerate reading slightly behind the
+ * primary: reports and history browsing. Replicas are taken in turn, skipping any that is down or
+ * further behind than {@code maxLagMillis}; with none usable the connection comes from the primary
+ * instead, so callers never see the difference except in freshness.
+ *
+ * <p>Lag is measured with a heartbeat. Every {@code checkMillis} the router reads the heartbeat row
+ * on each replica, compares it with the one it last wrote to the primary, and writes a new one.
+ * A replica that has the last beat counts as current; one that doesn't is as far behind as the
+ * newest beat it has. A replica that can't be read, or fails a borrow, is skipped until the next
+ * check reaches it again.
+ */
+public class ReplicaRouter implements DataSource, AutoCloseable {
+    public static final long DEFAULT_MAX_LAG_MILLIS = 5000;
+    public static final long DEFAULT_CHECK_MILLIS = 1000;
+
+    static final String HEARTBEAT_TABLE = "replication_heartbeat";
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder replicaBorrows = new LongAdder();
+    private final LongAdder primaryFallbacks = new LongAdder();
+    private final ScheduledExecutorService checker;
+    // Beat most recently written to the primary; 0 until the first write succeeds
+    private volatile long lastBeat;
+
+    public ReplicaRouter(ConnectionPool primary, List<ConnectionPool> replicaPools, long maxLagMillis, long checkMillis) {
+        this.primary = primary;
+        for (ConnectionPool pool : replicaPools) {
+            replicas.add(new Replica(pool));
+        }
+        this.maxLagMillis = maxLagMillis;
+        this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-replica-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(() -> {
+            try {
+                check();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** A connection to the next usable replica, or to the primary when no replica is usable. */
+    @Override
+    public Connection getConnection() throws SQLException {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.isUsable(maxLagMillis)) {
+                continue;
+            }
+            try {
+                Connection conn = replica.pool.getConnection();
+                replicaBorrows.increment();
+                return conn;
+            } catch (SQLException e) {
+                replica.failed(e);
+            }
+        }
+        primaryFallbacks.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials");
+    }
+
+    /**
+     * Re-measures every replica against the last beat and writes the next one. Runs on the
+     * checker thread; exposed so tests can step it.
+     */
+    public synchronized void check() {
+        long beat = lastBeat;
+        for (Replica replica : replicas) {
+            try (Connection conn = replica.pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT beat_at FROM " + HEARTBEAT_TABLE + " WHERE id = 1");
+                 ResultSet rs = pstmt.executeQuery()) {
+                long seen = rs.next() ? rs.getLong(1) : 0;
+                if (beat == 0) {
+                    // Nothing to compare with until a beat has reached the primary
+                    continue;
+                }
+                replica.measured(seen >= beat ? 0 : seen == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - seen);
+            } catch (SQLException e) {
+                replica.failed(e);
+            }
+        }
+        try {
+            lastBeat = writeBeat();
+        } catch (SQLException e) {
+            // Replicas keep their last measurement and age on the next check
+            e.printStackTrace();
+        }
+    }
+
+    private long writeBeat() throws SQLException {
+        long now = System.currentTimeMillis();
+        try (Connection conn = primary.getConnection();
+             PreparedStatement update = conn.prepareStatement("UPDATE " + HEARTBEAT_TABLE + " SET beat_at = ? WHERE id = 1")) {
+            update.setLong(1, now);
+            if (update.executeUpdate() == 0) {
+                try (PreparedStatement insert = conn.prepareStatement("INSERT INTO " + HEARTBEAT_TABLE + " (id, beat_at) VALUES (1, ?)")) {
+                    insert.setLong(1, now);
+                    insert.executeUpdate();
+                }
+            }
+        }
+        return now;
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    public long getReplicaBorrows() {
+        return replicaBorrows.sum();
+    }
+
+    /** Reads that went to the primary because no replica was usable. */
+    public long getPrimaryFallbacks() {
+        return primaryFallbacks.sum();
+    }
+
+    /** Stops checking and closes the replica pools; the primary belongs to the caller. */
+    @Override
+    public void close() {
+        checker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    public static final class Replica {
+        private final ConnectionPool pool;
+        private volatile boolean healthy;
+        private volatile long lagMillis = Long.MAX_VALUE;
+        private volatile String lastError;
+
+        Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        boolean isUsable(long maxLagMillis) {
+            return healthy && lagMillis <= maxLagMillis;
+        }
+
+        void measured(long lag) {
+            lagMillis = lag;
+            lastError = null;
+            healthy = true;
+        }
+
+        void failed(SQLException e) {
+            healthy = false;
+            lastError = e.getMessage();
+        }
+
+        public String getUrl() { return pool.getConfig().getUrl(); }
+        public boolean isHealthy() { return healthy; }
+        /** Long.MAX_VALUE until the replica has been measured, or while it has no heartbeat at all. */
+        public long getLagMillis() { return lagMillis; }
+        public String getLastError() { return lastError; }
+        public PoolStats getStats() { return pool.getStats(); }
+
+        @Override
+        public String toString() {
+            if (!healthy) {
+                return getUrl() + " down" + (lastError == null ? "" : " (" + lastError + ")");
+            }
+            return getUrl() + (lagMillis == Long.MAX_VALUE ? " no heartbeat" : " lag " + lagMillis + " ms");
+        }
+    }
+}
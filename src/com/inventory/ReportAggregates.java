@@ -0,0 +1,292 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running totals behind the report, so generating it costs O(products) instead of a scan of
+ * the purchase history. Inventory value follows {@link CatalogCache} changes, and each product
+ * keeps a small ring of daily sales buckets fed by {@link PurchaseService}; the 30-day summary is a
+ * sum over at most 31 buckets per product.
+ *
+ * <p>{@link #rebuild()} recomputes everything from the database and {@link #verify()} compares the
+ * running totals with the queries the report used to run. Both paths count a sale's total as the
+ * history table stores it, to the cent, so they agree exactly.
+ */
+public class ReportAggregates implements CatalogListener, PurchaseListener {
+    public static final int SALES_WINDOW_DAYS = 30;
+
+    // Today plus the 30 days before it, as in purchase_date >= DATE_SUB(CURDATE(), INTERVAL 30 DAY)
+    private static final int BUCKETS = 32;
+
+    private static volatile ReportAggregates instance;
+
+    private final DataSource dataSource;
+    private final CatalogCache catalog;
+    private final PurchaseService purchases;
+    private final Object rebuildLock = new Object();
+    private final Map<Integer, DailySales> salesByProduct = new HashMap<>();
+    private long inventoryValueCents;
+    // While a rebuild is reading history, the sales that arrive meanwhile; those after the ids it
+    // reads are counted again once the buckets are reset
+    private List<PurchaseResult> arrivedDuringRebuild;
+
+    /** Totals that only follow the catalog; sales are read at {@link #rebuild()} and nowhere else. */
+    public ReportAggregates(DataSource dataSource, CatalogCache catalog) throws SQLException {
+        this(dataSource, catalog, null);
+    }
+
+    /** Totals that also follow every sale {@code purchases} commits; null is as the two-argument form. */
+    public ReportAggregates(DataSource dataSource, CatalogCache catalog, PurchaseService purchases) throws SQLException {
+        this.dataSource = dataSource;
+        this.catalog = catalog;
+        this.purchases = purchases;
+        catalog.addListener(this);
+        if (purchases != null) {
+            purchases.addListener(this);
+        }
+        rebuild();
+    }
+
+    public static ReportAggregates getInstance() throws SQLException {
+        ReportAggregates aggregates = instance;
+        if (aggregates == null) {
+            synchronized (ReportAggregates.class) {
+                aggregates = instance;
+                if (aggregates == null) {
+                    aggregates = new ReportAggregates(DatabaseConnection.getDataSource(), CatalogCache.getInstance(),
+                        PurchaseService.getInstance());
+                    instance = aggregates;
+                }
+            }
+        }
+        return aggregates;
+    }
+
+    /** Total value of stock on hand, in cents. */
+    public synchronized long getInventoryValueCents() {
+        return inventoryValueCents;
+    }
+
+    /** Per-product sales over the last {@link #SALES_WINDOW_DAYS} days, ordered by total sales descending. */
+    public synchronized List<ProductSales> getRecentSales() {
+        long today = LocalDate.now().toEpochDay();
+        List<ProductSales> sales = new ArrayList<>();
+        for (Map.Entry<Integer, DailySales> entry : salesByProduct.entrySet()) {
+            DailySales daily = entry.getValue();
+            int quantity = 0;
+            long cents = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (daily.days[i] >= today - SALES_WINDOW_DAYS && daily.days[i] <= today) {
+                    quantity += daily.quantities[i];
+                    cents += daily.cents[i];
+                }
+            }
+            if (quantity > 0) {
+                sales.add(new ProductSales(entry.getKey(), quantity, cents));
+            }
+        }
+        sales.sort((a, b) -> Long.compare(b.getCents(), a.getCents()));
+        return sales;
+    }
+
+    /** Throws the running totals away and recomputes them from the catalog and purchase history. */
+    public void rebuild() throws SQLException {
+        recomputeInventoryValue();
+        synchronized (rebuildLock) {
+            try (Connection conn = dataSource.getConnection()) {
+                // The layout fixes how far the rollups go before the watermark is read, so a day
+                // rolled up in between can't be counted twice
+                PurchaseHistoryStore.Layout history = PurchaseHistoryStore.layout(conn);
+                synchronized (this) {
+                    arrivedDuringRebuild = new ArrayList<>();
+                }
+                try {
+                    // Anything that arrived before is committed, so at or below this id; purchases
+                    // after it are counted as they arrive through purchaseCompleted
+                    long watermark = history.maxId(conn);
+                    if (purchases != null) {
+                        // A purchase below the watermark may still be committing; once this returns
+                        // it has committed, so the read below has it, or rolled back
+                        purchases.awaitInFlight();
+                    }
+                    synchronized (this) {
+                        salesByProduct.clear();
+                        try (PreparedStatement pstmt = conn.prepareStatement(
+                                 "SELECT product_id, sale_day, quantity, total_price FROM " +
+                                 history.dailySales(windowStartDay(), watermark) + " s");
+                             ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                int productId = rs.getInt(1);
+                                if (catalog.getProduct(productId) != null) {
+                                    addSale(productId, rs.getDate(2).toLocalDate().toEpochDay(), rs.getInt(3),
+                                        MoneyFormat.toCents(rs.getBigDecimal(4)));
+                                }
+                            }
+                        }
+                        for (PurchaseResult result : arrivedDuringRebuild) {
+                            if (result.getPurchaseId() > watermark) {
+                                addSale(result);
+                            }
+                        }
+                    }
+                } finally {
+                    synchronized (this) {
+                        arrivedDuringRebuild = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the report's original queries and lists every place they disagree with the running
+     * totals. An empty list means the aggregates are consistent with the database.
+     */
+    public List<String> verify() throws SQLException {
+        StockLedger ledger = StockLedger.current();
+        if (ledger != null) {
+            ledger.flush();
+        }
+        List<String> problems = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(SUM(quantity * price), 0) FROM products");
+                 ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                long expected = MoneyFormat.toCents(rs.getBigDecimal(1));
+                long actual = getInventoryValueCents();
+                if (expected != actual) {
+                    problems.add(String.format("Inventory value: database $%.2f, aggregate $%.2f", expected / 100.0, actual / 100.0));
+                }
+            }
+
+            Map<Integer, ProductSales> recent = new HashMap<>();
+            for (ProductSales sales : getRecentSales()) {
+                recent.put(sales.getProductId(), sales);
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT p.id, SUM(s.quantity), SUM(s.total_price) FROM " +
+                     PurchaseHistoryStore.layout(conn).dailySales(windowStartDay(), Long.MAX_VALUE) + " s " +
+                     "JOIN products p ON s.product_id = p.id GROUP BY p.id")) {
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int productId = rs.getInt(1);
+                        ProductSales sales = recent.remove(productId);
+                        int quantity = rs.getInt(2);
+                        long cents = MoneyFormat.toCents(rs.getBigDecimal(3));
+                        if (sales == null || sales.getQuantity() != quantity || sales.getCents() != cents) {
+                            problems.add(String.format("Sales of product %d: database %d units/$%.2f, aggregate %s",
+                                productId, quantity, cents / 100.0,
+                                sales == null ? "none" : String.format("%d units/$%.2f", sales.getQuantity(), sales.getCents() / 100.0)));
+                        }
+                    }
+                }
+            }
+            for (ProductSales sales : recent.values()) {
+                problems.add(String.format("Sales of product %d: database none, aggregate %d units/$%.2f",
+                    sales.getProductId(), sales.getQuantity(), sales.getCents() / 100.0));
+            }
+        }
+        return problems;
+    }
+
+    @Override
+    public synchronized void productChanged(Product before, Product after) {
+        inventoryValueCents += valueCents(after) - valueCents(before);
+        if (after == null) {
+            salesByProduct.remove(before.getId());
+        }
+    }
+
+    @Override
+    public void catalogReloaded() {
+        recomputeInventoryValue();
+    }
+
+    @Override
+    public synchronized void purchaseCompleted(PurchaseResult result) {
+        if (arrivedDuringRebuild != null) {
+            arrivedDuringRebuild.add(result);
+        }
+        addSale(result);
+    }
+
+    private void recomputeInventoryValue() {
+        // Catalog listeners are called under the catalog's lock, so holding it here means no
+        // change can be counted both in the sum and again as an event
+        synchronized (catalog) {
+            synchronized (this) {
+                long total = 0;
+                for (Product product : catalog.getProducts()) {
+                    total += valueCents(product);
+                }
+                inventoryValueCents = total;
+            }
+        }
+    }
+
+    /** The first day of the sales window, i.e. {@code DATE_SUB(CURDATE(), INTERVAL 30 DAY)}. */
+    static LocalDate windowStartDay() {
+        return LocalDate.now().minusDays(SALES_WINDOW_DAYS);
+    }
+
+    private void addSale(PurchaseResult result) {
+        long day = result.getPurchaseDate().toLocalDateTime().toLocalDate().toEpochDay();
+        addSale(result.getProductId(), day, result.getQuantity(), MoneyFormat.toCents(PurchaseService.toMoney(result.getTotalPrice())));
+    }
+
+    private void addSale(int productId, long day, int quantity, long cents) {
+        DailySales daily = salesByProduct.computeIfAbsent(productId, id -> new DailySales());
+        int slot = (int) (day & (BUCKETS - 1));
+        if (daily.days[slot] != day) {
+            if (daily.days[slot] > day) {
+                // Older than anything the ring still holds, so outside the window
+                return;
+            }
+            daily.days[slot] = day;
+            daily.quantities[slot] = 0;
+            daily.cents[slot] = 0;
+        }
+        daily.quantities[slot] += quantity;
+        daily.cents[slot] += cents;
+    }
+
+    private static long valueCents(Product product) {
+        return product == null ? 0 : Math.round(product.getPrice() * 100) * product.getQuantity();
+    }
+
+    public static final class ProductSales {
+        private final int productId;
+        private final int quantity;
+        private final long cents;
+
+        ProductSales(int productId, int quantity, long cents) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.cents = cents;
+        }
+
+        public int getProductId() { return productId; }
+        public int getQuantity() { return quantity; }
+        public long getCents() { return cents; }
+    }
+
+    private static final class DailySales {
+        final long[] days = new long[BUCKETS];
+        final int[] quantities = new int[BUCKETS];
+        final long[] cents = new long[BUCKETS];
+
+        DailySales() {
+            Arrays.fill(days, Long.MIN_VALUE);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.inventory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Streams the full report from the database to a file. Rows go from the {@link ResultSet} into a
+ * fixed direct buffer and out through a {@link FileChannel}, so memory stays flat however large the
+ * catalog and purchase history are.
+ *
+ * <p>CSV has one row per line with columns {@code section,product,quantity,price,total}. The binary
+ * format is the magic {@code INVR} and a version byte, followed by sections. A section is a tag byte
+ * ({@link #INVENTORY}, {@link #SALES}, {@link #LOW_STOCK}) and rows each prefixed by {@code 1}, then
+ * {@code 0}. A {@code 0} tag ends the file. Rows are big-endian: a product name (unsigned short
+ * length, UTF-8 bytes), an int quantity and, for inventory, price and value in cents as longs, or
+ * for sales, the total in cents.
+ */
+public class ReportExporter {
+    public enum Format { CSV, BINARY }
+
+    public static final byte INVENTORY = 1;
+    public static final byte SALES = 2;
+    public static final byte LOW_STOCK = 3;
+
+    private static final byte[] MAGIC = {'I', 'N', 'V', 'R'};
+    private static final byte VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+    private static final String INVENTORY_SQL =
+        "SELECT name, quantity, price, (quantity * price) AS total_value FROM products ORDER BY total_value DESC";
+    // Completed with the history partitions and rollups that cover the sales window
+    static final String SALES_SQL =
+        "SELECT p.name, SUM(s.quantity) AS total_quantity, SUM(s.total_price) AS total_sales " +
+        "FROM %s s JOIN products p ON s.product_id = p.id GROUP BY p.id, p.name ORDER BY total_sales DESC";
+    private final Format format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private long rows;
+
+    public ReportExporter(Format format) {
+        this.format = format;
+    }
+
+    /** Picks the format from the file name: {@code .csv} for CSV, anything else binary. */
+    public static Format formatFor(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv") ? Format.CSV : Format.BINARY;
+    }
+
+    /**
+     * Writes the report to {@code file}, replacing it, and returns the number of rows written.
+     * {@code context} may be null; when given, the export stops and throws if it is cancelled.
+     */
+    public long export(Connection conn, Path file, DataTaskExecutor.Context context) throws SQLException, IOException {
+        StockLedger ledger = StockLedger.current();
+        if (ledger != null) {
+            ledger.flush();
+        }
+        rows = 0;
+        buffer.clear();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = out;
+            if (format == Format.CSV) {
+                putAscii("section,product,quantity,price,total\n");
+            } else {
+                buffer.put(MAGIC).put(VERSION);
+            }
+
+            try (PreparedStatement pstmt = prepareStreaming(conn, INVENTORY_SQL, context);
+                 ResultSet rs = pstmt.executeQuery()) {
+                beginSection(INVENTORY);
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    int quantity = rs.getInt(2);
+                    long price = MoneyFormat.toCents(rs.getBigDecimal(3));
+                    writeRow(INVENTORY, name, quantity, price, MoneyFormat.toCents(rs.getBigDecimal(4)), context);
+                }
+                endSection();
+            }
+            String sales = PurchaseHistoryStore.layout(conn).dailySales(ReportAggregates.windowStartDay(), Long.MAX_VALUE);
+            try (PreparedStatement pstmt = prepareStreaming(conn, String.format(SALES_SQL, sales), context)) {
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    beginSection(SALES);
+                    while (rs.next()) {
+                        String name = rs.getString(1);
+                        int quantity = rs.getInt(2);
+                        writeRow(SALES, name, quantity, 0, MoneyFormat.toCents(rs.getBigDecimal(3)), context);
+                    }
+                    endSection();
+                }
+            }
+            try (PreparedStatement pstmt = prepareStreaming(conn, LowStockMonitor.LOW_STOCK_SQL, context)) {
+                LowStockMonitor.bindLowStock(pstmt, LowStockMonitor.defaultThreshold());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    beginSection(LOW_STOCK);
+                    while (rs.next()) {
+                        writeRow(LOW_STOCK, rs.getString(2), rs.getInt(3), 0, 0, context);
+                    }
+                    endSection();
+                }
+            }
+
+            if (format == Format.BINARY) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+            drain();
+        } finally {
+            channel = null;
+        }
+        return rows;
+    }
+
+    private static PreparedStatement prepareStreaming(Connection conn, String sql, DataTaskExecutor.Context context)
+            throws SQLException {
+        PreparedStatement pstmt = DatabaseConnection.prepareStreaming(conn, sql, 1000);
+        return context == null ? pstmt : context.track(pstmt);
+    }
+
+    private void beginSection(byte section) throws IOException {
+        if (format == Format.BINARY) {
+            ensure(1);
+            buffer.put(section);
+        }
+    }
+
+    private void endSection() throws IOException {
+        if (format == Format.BINARY) {
+            ensure(1);
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void writeRow(byte section, String name, int quantity, long priceCents, long totalCents,
+                          DataTaskExecutor.Context context) throws IOException {
+        if (++rows % CANCEL_CHECK_INTERVAL == 0 && context != null) {
+            context.checkCancelled();
+        }
+        // Worst case: every char takes 3 bytes in UTF-8 and doubles again for CSV quoting
+        ensure(name.length() * 6 + 4 * MoneyFormat.MAX_LENGTH + 32);
+        if (format == Format.BINARY) {
+            buffer.put((byte) 1);
+            int lengthAt = buffer.position();
+            buffer.putShort((short) 0);
+            putUtf8(name, false);
+            buffer.putShort(lengthAt, (short) (buffer.position() - lengthAt - 2));
+            buffer.putInt(quantity);
+            if (section == INVENTORY) {
+                buffer.putLong(priceCents);
+            }
+            if (section != LOW_STOCK) {
+                buffer.putLong(totalCents);
+            }
+            return;
+        }
+
+        putAscii(section == INVENTORY ? "inventory," : section == SALES ? "sales," : "low_stock,");
+        boolean quote = needsQuoting(name);
+        if (quote) {
+            buffer.put((byte) '"');
+        }
+        putUtf8(name, quote);
+        if (quote) {
+            buffer.put((byte) '"');
+        }
+        buffer.put((byte) ',');
+        MoneyFormat.putLong(buffer, quantity);
+        buffer.put((byte) ',');
+        if (section == INVENTORY) {
+            MoneyFormat.putCents(buffer, priceCents);
+        }
+        buffer.put((byte) ',');
+        if (section != LOW_STOCK) {
+            MoneyFormat.putCents(buffer, totalCents);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    private static boolean needsQuoting(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Encodes UTF-8 by hand; going through a CharsetEncoder would wrap every name in a CharBuffer. */
+    private void putUtf8(String value, boolean escapeQuotes) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '"' && escapeQuotes) {
+                    buffer.put((byte) '"');
+                }
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                       && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | cp >> 18));
+                buffer.put((byte) (0x80 | cp >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | cp >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | cp & 0x3F));
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private void putAscii(String value) throws IOException {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+            if (buffer.remaining() < bytes) {
+                throw new IOException("Row too large to export: " + bytes + " bytes");
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -2,13 +2,26 @@ package com.inventory;
 
 import javax.swing.*;
 import java.awt.*;
-import java.sql.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ReportPanel extends JPanel {
+    private static final String ALL_CATEGORIES = "All categories";
+    private static final int TOP_SELLERS = 20;
+
     private JTextArea reportArea;
     private JButton generateReportButton;
+    private JButton verifyButton;
+    private JButton exportButton;
+    private JTextField fromField;
+    private JTextField toField;
+    private JComboBox<String> categoryComboBox;
+    private JButton analyzeButton;
 
     public ReportPanel() {
         setLayout(new BorderLayout());
@@ -19,8 +32,37 @@ public class ReportPanel extends JPanel {
         JScrollPane scrollPane = new JScrollPane(reportArea);
 
         generateReportButton = new JButton("Generate Report");
-
-        add(generateReportButton, BorderLayout.NORTH);
+        verifyButton = new JButton("Verify Aggregates");
+        exportButton = new JButton("Export...");
+
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(generateReportButton);
+        buttonPanel.add(verifyButton);
+        buttonPanel.add(exportButton);
+        // Both read the database directly, which a terminal talking to a server can't
+        verifyButton.setEnabled(!InventoryService.isRemote());
+        exportButton.setEnabled(!InventoryService.isRemote());
+
+        fromField = new JTextField(LocalDate.now().minusDays(ReportAggregates.SALES_WINDOW_DAYS).toString(), 8);
+        toField = new JTextField(LocalDate.now().toString(), 8);
+        categoryComboBox = new JComboBox<>();
+        categoryComboBox.addItem(ALL_CATEGORIES);
+        analyzeButton = new JButton("Analyze Sales");
+        JPanel analysisPanel = new JPanel();
+        analysisPanel.add(new JLabel("From:"));
+        analysisPanel.add(fromField);
+        analysisPanel.add(new JLabel("To:"));
+        analysisPanel.add(toField);
+        analysisPanel.add(new JLabel("Category:"));
+        analysisPanel.add(categoryComboBox);
+        analysisPanel.add(analyzeButton);
+        // The snapshot is a copy of the database held in this process
+        analyzeButton.setEnabled(!InventoryService.isRemote());
+
+        JPanel north = new JPanel(new BorderLayout());
+        north.add(buttonPanel, BorderLayout.NORTH);
+        north.add(analysisPanel, BorderLayout.SOUTH);
+        add(north, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
 
         setupListeners();
@@ -28,109 +70,142 @@ public class ReportPanel extends JPanel {
 
     private void setupListeners() {
         generateReportButton.addActionListener(e -> generateReport());
-    }
-
-    private void generateReport() {
-        StringBuilder report = new StringBuilder();
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        report.append("Inventory Management System Report\n");
-        report.append("Generated on: ").append(sdf.format(new Date())).append("\n\n");
-
-        try (Connection conn = DatabaseConnection.getConnection()) {
-            report.append(generateInventoryReport(conn));
-            report.append("\n");
-            report.append(generateSalesReport(conn));
-            report.append("\n");
-            report.append(generateLowStockReport(conn));
-
-            reportArea.setText(report.toString());
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error generating report: " + e.getMessage());
+        verifyButton.addActionListener(e -> verifyAggregates());
+        exportButton.addActionListener(e -> exportReport());
+        analyzeButton.addActionListener(e -> analyzeSales());
+        if (!InventoryService.isRemote()) {
+            ChangeBus.getInstance().subscribe(events -> {
+                for (CatalogEvent event : events) {
+                    if (event.getCategory() != null || event.getType() == CatalogEvent.Type.RELOADED) {
+                        loadCategories();
+                        return;
+                    }
+                }
+            });
+            loadCategories();
         }
     }
 
-    private String generateInventoryReport(Connection conn) throws SQLException {
-        StringBuilder inventoryReport = new StringBuilder();
-        inventoryReport.append("Inventory Summary:\n");
-        inventoryReport.append(String.format("%-30s %-10s %-10s %-15s\n", "Product", "Quantity", "Price", "Total Value"));
-        inventoryReport.append("------------------------------------------------------------\n");
-
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                 "SELECT p.name, p.quantity, p.price, (p.quantity * p.price) as total_value " +
-                 "FROM products p ORDER BY total_value DESC")) {
-
-            double totalInventoryValue = 0;
-
-            while (rs.next()) {
-                String name = rs.getString("name");
-                int quantity = rs.getInt("quantity");
-                double price = rs.getDouble("price");
-                double totalValue = rs.getDouble("total_value");
+    private void loadCategories() {
+        DataTaskExecutor.getInstance().coalesce("report.categories", "Loading categories",
+            context -> CatalogCache.getInstance().getCategoryNames(), names -> {
+                Object selected = categoryComboBox.getSelectedItem();
+                categoryComboBox.removeAllItems();
+                categoryComboBox.addItem(ALL_CATEGORIES);
+                for (String name : names) {
+                    categoryComboBox.addItem(name);
+                }
+                categoryComboBox.setSelectedItem(selected);
+            }, e -> e.printStackTrace());
+    }
 
-                inventoryReport.append(String.format("%-30s %-10d $%-9.2f $%-14.2f\n", name, quantity, price, totalValue));
-                totalInventoryValue += totalValue;
+    private void analyzeSales() {
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = LocalDate.parse(fromField.getText().trim());
+            to = LocalDate.parse(toField.getText().trim());
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Please enter dates as yyyy-mm-dd");
+            return;
+        }
+        String categoryName = (String) categoryComboBox.getSelectedItem();
+        DataTaskExecutor.getInstance().submitLatest("report.analyze", "Analyzing sales", context -> {
+            AnalyticsSnapshot snapshot = AnalyticsSnapshot.getInstance();
+            snapshot.refresh();
+            int categoryId = 0;
+            if (categoryName != null && !ALL_CATEGORIES.equals(categoryName)) {
+                Category category = CatalogCache.getInstance().findCategoryByName(categoryName);
+                if (category == null) {
+                    throw new IllegalStateException("Category '" + categoryName + "' no longer exists");
+                }
+                categoryId = category.getId();
             }
+            return formatAnalysis(snapshot, from, to, categoryId);
+        }, analysis -> reportArea.setText(analysis), e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error analyzing sales: " + e.getMessage());
+        });
+    }
 
-            inventoryReport.append("------------------------------------------------------------\n");
-            inventoryReport.append(String.format("%-30s %-10s %-10s $%-14.2f\n", "Total Inventory Value", "", "", totalInventoryValue));
+    private static String formatAnalysis(AnalyticsSnapshot snapshot, LocalDate from, LocalDate to, int categoryId) {
+        StringBuilder analysis = new StringBuilder();
+        AnalyticsSnapshot.Total total = snapshot.getSales(from, to, categoryId);
+        analysis.append("Sales from ").append(from).append(" to ").append(to)
+            .append(categoryId == 0 ? "" : " in " + total.getName()).append(":\n");
+        analysis.append(String.format("%-30s %-10d $%-14.2f\n", "Total", total.getQuantity(), total.getCents() / 100.0));
+        analysis.append(String.format("%-30s %-10s $%-14.2f\n", "Inventory Value (all products)", "",
+            snapshot.getInventoryValueCents() / 100.0));
+
+        analysis.append("\nTop Sellers:\n");
+        analysis.append(String.format("%-30s %-10s %-15s\n", "Product", "Quantity", "Total Sales"));
+        analysis.append("------------------------------------------------------------\n");
+        for (AnalyticsSnapshot.Total seller : snapshot.getTopSellers(from, to, categoryId, TOP_SELLERS)) {
+            analysis.append(String.format("%-30s %-10d $%-14.2f\n", seller.getName(), seller.getQuantity(),
+                seller.getCents() / 100.0));
         }
 
-        return inventoryReport.toString();
-    }
-
-    private String generateSalesReport(Connection conn) throws SQLException {
-        StringBuilder salesReport = new StringBuilder();
-        salesReport.append("Sales Summary (Last 30 days):\n");
-        salesReport.append(String.format("%-30s %-10s %-15s\n", "Product", "Quantity", "Total Sales"));
-        salesReport.append("------------------------------------------------------------\n");
-
-        try (PreparedStatement pstmt = conn.prepareStatement(
-            "SELECT p.name, SUM(ph.quantity) as total_quantity, SUM(ph.total_price) as total_sales " +
-            "FROM purchase_history ph " +
-            "JOIN products p ON ph.product_id = p.id " +
-            "WHERE ph.purchase_date >= DATE_SUB(CURDATE(), INTERVAL 30 DAY) " +
-            "GROUP BY p.id " +
-            "ORDER BY total_sales DESC")) {
-
-            ResultSet rs = pstmt.executeQuery();
-            double totalSales = 0;
-
-            while (rs.next()) {
-                String name = rs.getString("name");
-                int totalQuantity = rs.getInt("total_quantity");
-                double totalSalesProduct = rs.getDouble("total_sales");
-
-                salesReport.append(String.format("%-30s %-10d $%-14.2f\n", name, totalQuantity, totalSalesProduct));
-                totalSales += totalSalesProduct;
+        if (categoryId == 0) {
+            analysis.append("\nBy Category:\n");
+            analysis.append(String.format("%-30s %-10s %-15s\n", "Category", "Quantity", "Total Sales"));
+            analysis.append("------------------------------------------------------------\n");
+            for (AnalyticsSnapshot.Total category : snapshot.getSalesByCategory(from, to)) {
+                analysis.append(String.format("%-30s %-10d $%-14.2f\n", category.getName(), category.getQuantity(),
+                    category.getCents() / 100.0));
             }
-
-            salesReport.append("------------------------------------------------------------\n");
-            salesReport.append(String.format("%-30s %-10s $%-14.2f\n", "Total Sales", "", totalSales));
         }
-
-        return salesReport.toString();
+        return analysis.toString();
     }
 
-    private String generateLowStockReport(Connection conn) throws SQLException {
-        StringBuilder lowStockReport = new StringBuilder();
-        lowStockReport.append("Low Stock Alert (Quantity <= 5):\n");
-        lowStockReport.append(String.format("%-30s %-10s\n", "Product", "Quantity"));
-        lowStockReport.append("------------------------------------------------------------\n");
-
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                 "SELECT name, quantity FROM products WHERE quantity <= 5 ORDER BY quantity ASC")) {
-
-            while (rs.next()) {
-                String name = rs.getString("name");
-                int quantity = rs.getInt("quantity");
+    private void generateReport() {
+        // Clicking again while a report is running drops the stale one
+        DataTaskExecutor.getInstance().submitLatest("report.generate", "Generating report",
+            context -> InventoryService.getInstance().getReport(), report -> reportArea.setText(report), e -> {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(this, "Error generating report: " + e.getMessage());
+            });
+    }
 
-                lowStockReport.append(String.format("%-30s %-10d\n", name, quantity));
+    private void verifyAggregates() {
+        DataTaskExecutor.getInstance().run("Verifying report aggregates", context -> {
+            ReportAggregates aggregates = ReportAggregates.getInstance();
+            LowStockMonitor lowStock = LowStockMonitor.getInstance();
+            List<String> problems = new ArrayList<>(aggregates.verify());
+            problems.addAll(lowStock.verify());
+            if (!problems.isEmpty()) {
+                CatalogCache.getInstance().reload();
+                aggregates.rebuild();
+                lowStock.rebuild();
             }
-        }
+            return problems;
+        }, problems -> {
+            if (problems.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Report aggregates match the database.");
+            } else {
+                JOptionPane.showMessageDialog(this, "Report aggregates were out of date and have been rebuilt:\n"
+                    + String.join("\n", problems.subList(0, Math.min(problems.size(), 20))));
+            }
+        }, e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error verifying report aggregates: " + e.getMessage());
+        });
+    }
 
-        return lowStockReport.toString();
+    private void exportReport() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Report (.csv for CSV, anything else binary)");
+        chooser.setSelectedFile(new File("inventory-report.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        DataTaskExecutor.getInstance().submitLatest("report.export", "Exporting report", context -> {
+            try (Connection conn = DatabaseConnection.getReadConnection()) {
+                return new ReportExporter(ReportExporter.formatFor(file)).export(conn, file, context);
+            }
+        }, rows -> JOptionPane.showMessageDialog(this, "Exported " + rows + " rows to " + file), e -> {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error exporting report: " + e.getMessage());
+        });
     }
 }
\ No newline at end of file
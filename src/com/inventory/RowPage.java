@@ -0,0 +1,20 @@
+package com.inventory;
+
+/**
+ * One window of rows held by a {@link PagedTableModel}. Implementations keep each column in a
+ * primitive array and only box a value when the table asks for a single cell.
+ */
+public abstract class RowPage {
+    protected int size;
+
+    public int size() {
+        return size;
+    }
+
+    public abstract Object getValueAt(int row, int column);
+
+    public abstract void setValueAt(Object value, int row, int column);
+
+    /** Position of the row with the given id in this page, or -1. */
+    public abstract int indexOfId(int id);
+}
@@ -0,0 +1,280 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Creates the catalog and purchase history tables and the indexes the tabs' queries rely on, and
+ * brings an older database up to date. Migrations are numbered; {@code schema_version} has a row for
+ * each one applied, and only the ones after the highest run. {@link DatabaseConnection} runs them when
+ * it opens the shared pool, unless {@code -Dinventory.schema.migrate=false}.
+ *
+ * <p>Every migration can run again over a schema it has already partly changed: tables are created
+ * if missing and an index only if the table has none of that name. MySQL commits each DDL statement
+ * on its own, so a migration cut short is finished by the next start, and a database set up by hand
+ * before migrations existed is simply taken from version 0. Two tills starting together both run
+ * the steps; whichever records the version second finds it there and carries on.
+ *
+ * <p>The tables each feature keeps its state in are created here too, so nothing issues DDL on a
+ * hot path. Only the history partitions, one per month or day, are still created by
+ * {@link PurchaseHistoryStore} as sales reach them.
+ */
+public final class SchemaMigrations {
+    static final String VERSION_TABLE = "schema_version";
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "catalog and purchase history tables", SchemaMigrations::createTables),
+        new Migration(2, "indexes for product, category and history lookups", SchemaMigrations::createIndexes),
+        new Migration(3, "stock ledger checkpoint", SchemaMigrations::createStockLedgerTables),
+        new Migration(4, "history archive, daily rollups and id sequence", SchemaMigrations::createHistoryStoreTables),
+        new Migration(5, "purchase journal checkpoints and conflicts", SchemaMigrations::createJournalTables),
+        new Migration(6, "low stock thresholds", SchemaMigrations::createThresholdTables),
+        new Migration(7, "category delete jobs and tombstones", SchemaMigrations::createCategoryDeleteTables),
+        new Migration(8, "replication heartbeat", SchemaMigrations::createHeartbeatTable),
+        new Migration(9, "indexes for every sort order of the Products and History tabs", SchemaMigrations::createSortIndexes));
+
+    private SchemaMigrations() {
+    }
+
+    /** Applies every migration newer than the database's version and returns the version reached. */
+    public static int migrate(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " (version INT PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, applied_at TIMESTAMP NOT NULL)");
+            }
+            int version = currentVersion(conn);
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= version) {
+                    continue;
+                }
+                migration.step.apply(conn);
+                record(conn, migration);
+                version = migration.version;
+            }
+            return version;
+        }
+    }
+
+    /** The highest migration recorded, or 0 for a database that has none. */
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM " + VERSION_TABLE);
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static void record(Connection conn, Migration migration) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "INSERT INTO " + VERSION_TABLE + " (version, description, applied_at) VALUES (?, ?, ?)")) {
+            pstmt.setInt(1, migration.version);
+            pstmt.setString(2, migration.description);
+            pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            // Another till applied it at the same time
+            if (currentVersion(conn) < migration.version) {
+                throw e;
+            }
+        }
+    }
+
+    private static void createTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS categories (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS products (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, price DECIMAL(10, 2) NOT NULL, quantity INT NOT NULL, category_id INT)");
+            // A partitioned database writes sales to PurchaseHistoryStore's tables instead
+            if (PurchaseHistoryStore.layout(conn).partitions.isEmpty()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + PurchaseHistoryStore.LEGACY_TABLE + " (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "product_id INT NOT NULL, quantity INT NOT NULL, total_price DECIMAL(12, 2) NOT NULL, " +
+                    "purchase_date DATETIME(3) NOT NULL)");
+            }
+        }
+    }
+
+    /**
+     * Name lookups and sorting on the Products tab, the low stock range on {@code quantity}, a
+     * category's products for deletes and the category join, and on every history table the
+     * date order the History tab and reports read by plus a product's sales by date.
+     */
+    private static void createIndexes(Connection conn) throws SQLException {
+        createIndex(conn, "products", "products_name", "name, id");
+        createIndex(conn, "products", "products_quantity", "quantity, id");
+        createIndex(conn, "products", "products_category", "category_id, id");
+        createIndex(conn, "categories", "categories_name", "name");
+        PurchaseHistoryStore.Layout history = PurchaseHistoryStore.layout(conn);
+        List<String> tables = history.tables();
+        if (history.archive) {
+            tables.add(PurchaseHistoryStore.ARCHIVE_TABLE);
+        }
+        for (String table : tables) {
+            // Partitions already have this one, from PurchaseHistoryStore
+            createIndex(conn, table, table + "_date", "purchase_date, id");
+            createIndex(conn, table, table + "_product", "product_id, purchase_date");
+        }
+    }
+
+    /** The last history id {@link StockLedger} has written the stock for. */
+    private static void createStockLedgerTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS stock_ledger_checkpoint " +
+                "(id INT PRIMARY KEY, last_history_id BIGINT NOT NULL)");
+        }
+    }
+
+    /**
+     * What {@link PurchaseHistoryStore} keeps beside the partitions: the archive, the daily rollups
+     * and how far they go, and the id sequence shared by every partition.
+     */
+    private static void createHistoryStoreTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(PurchaseHistoryStore.historyTableSql(PurchaseHistoryStore.ARCHIVE_TABLE));
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + PurchaseHistoryStore.ROLLUP_TABLE + " (sale_day DATE NOT NULL, " +
+                "product_id INT NOT NULL, quantity BIGINT NOT NULL, total_price DECIMAL(14, 2) NOT NULL, " +
+                "PRIMARY KEY (sale_day, product_id))");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + PurchaseHistoryStore.CHECKPOINT_TABLE +
+                " (id INT PRIMARY KEY, rolled_up_through DATE NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + PurchaseHistoryStore.SEQUENCE_TABLE +
+                " (id INT PRIMARY KEY, next_id BIGINT NOT NULL)");
+        }
+    }
+
+    /** The last sale applied from each {@link PurchaseJournal}, and the replayed sales that conflicted. */
+    private static void createJournalTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS purchase_journal_checkpoint " +
+                "(journal_id VARCHAR(36) PRIMARY KEY, applied_sequence BIGINT NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS purchase_journal_conflicts (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "journal_id VARCHAR(36) NOT NULL, journal_sequence BIGINT NOT NULL, product_id INT NOT NULL, " +
+                "quantity INT NOT NULL, available_quantity INT NOT NULL, reason VARCHAR(20) NOT NULL, " +
+                "recorded_at TIMESTAMP NOT NULL)");
+        }
+    }
+
+    /** Low stock threshold overrides per product and per category. */
+    private static void createThresholdTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS product_stock_thresholds " +
+                "(product_id INT PRIMARY KEY, threshold INT NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS category_stock_thresholds " +
+                "(category_id INT PRIMARY KEY, threshold INT NOT NULL)");
+        }
+    }
+
+    /** {@link CategoryDeleter}'s progress through each category, and the products it has removed. */
+    private static void createCategoryDeleteTables(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + CategoryDeleter.JOB_TABLE + " (category_id INT PRIMARY KEY, " +
+                "category_name VARCHAR(255) NOT NULL, last_product_id INT NOT NULL, products_deleted INT NOT NULL, " +
+                "products_total INT NOT NULL, started_at TIMESTAMP NOT NULL)");
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + CategoryDeleter.TOMBSTONE_TABLE + " (product_id INT PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, category_id INT NOT NULL, category_name VARCHAR(255) NOT NULL, " +
+                "deleted_at TIMESTAMP NOT NULL)");
+        }
+    }
+
+    /** The row {@link ReplicaRouter} beats on the primary and reads back from each replica. */
+    private static void createHeartbeatTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + ReplicaRouter.HEARTBEAT_TABLE +
+                " (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+        }
+    }
+
+    /**
+     * The Products tab's price order, and on every history table the History tab's newest-first order,
+     * whose mixed directions no ascending index gives. H2 only reads an index forwards, so there the
+     * Products tab's descending orders get indexes of their own; MySQL reads the ascending ones backwards.
+     */
+    private static void createSortIndexes(Connection conn) throws SQLException {
+        createIndex(conn, "products", "products_price", "price, id");
+        if (!readsIndexesBackwards(conn)) {
+            createIndex(conn, "products", "products_id_desc", "id DESC");
+            createIndex(conn, "products", "products_name_desc", "name DESC, id DESC");
+            createIndex(conn, "products", "products_price_desc", "price DESC, id DESC");
+            createIndex(conn, "products", "products_quantity_desc", "quantity DESC, id DESC");
+            createIndex(conn, "products", "products_category_desc", "category_id DESC, id DESC");
+        }
+        PurchaseHistoryStore.Layout history = PurchaseHistoryStore.layout(conn);
+        List<String> tables = history.tables();
+        if (history.archive) {
+            tables.add(PurchaseHistoryStore.ARCHIVE_TABLE);
+        }
+        for (String table : tables) {
+            // Partitions created from now on have this one, from PurchaseHistoryStore
+            createIndex(conn, table, table + "_recent", "purchase_date DESC, id");
+        }
+    }
+
+    static boolean readsIndexesBackwards(Connection conn) throws SQLException {
+        return !"H2".equals(conn.getMetaData().getDatabaseProductName());
+    }
+
+    /** Creates the index unless the table already has one by that name. */
+    static void createIndex(Connection conn, String table, String index, String columns) throws SQLException {
+        if (hasIndex(conn, table, index)) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+        } catch (SQLException e) {
+            // Another till created it first
+            if (!hasIndex(conn, table, index)) {
+                throw e;
+            }
+        }
+    }
+
+    static boolean hasIndex(Connection conn, String table, String index) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        String stored = storedName(metaData, table);
+        try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), conn.getSchema(), stored, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Metadata lookups match names exactly, and H2 keeps unquoted names in upper case
+    private static String storedName(DatabaseMetaData metaData, String name) throws SQLException {
+        if (metaData.storesUpperCaseIdentifiers()) {
+            return name.toUpperCase(Locale.ROOT);
+        }
+        return metaData.storesLowerCaseIdentifiers() ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.inventory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Saturday rush in one process. Seeds an embedded H2 database, opens the application's own
+ * services on it the way the desktop app does, and runs {@code terminals} concurrent tills for
+ * {@code seconds}. Each till draws its next operation from a weighted mix: a single purchase by
+ * name as the Purchase tab makes it, a basket checkout, a type-ahead product lookup, a page of the
+ * purchase history, or the report. Throughput and p50/p95/p99/max latency are recorded per
+ * operation.
+ *
+ * <p>Afterwards the run checks that no product's stock was ever seen below zero, that each
+ * product's stock went down by exactly what its purchase history adds up to, and that the history
+ * holds exactly the units the tills were told they sold. The results go to stdout and to
+ * {@code soak-<timestamp>.txt}, laid out the same way on every run so two runs can be diffed.
+ *
+ * <pre>
+ * java -cp h2.jar:bin com.inventory.SoakTest [terminals] [seconds] [products] [stockPerProduct] [--destroy]
+ * </pre>
+ *
+ * {@code -Dsoak.mix=purchase=45,checkout=10,lookup=30,history=10,report=5} sets the mix and
+ * {@code -Dsoak.dir} where the report is written. The database comes from {@code bench.db.*}, see
+ * {@link BenchDatabase}. The other {@code inventory.*} properties apply, so e.g.
+ * {@code -Dinventory.stock.ledger=true} soaks the stock ledger's purchase path.
+ */
+public class SoakTest {
+    private static final String DEFAULT_MIX = "purchase=45,checkout=10,lookup=30,history=10,report=5";
+    private static final String[] OPERATIONS = {"purchase", "checkout", "lookup", "history", "report"};
+    private static final long SAMPLE_MILLIS = 250;
+
+    public static void main(String[] args) throws Exception {
+        String[] positional = BenchDatabase.positional(args);
+        int terminals = positional.length > 0 ? Integer.parseInt(positional[0]) : 50;
+        int seconds = positional.length > 1 ? Integer.parseInt(positional[1]) : 60;
+        int products = positional.length > 2 ? Integer.parseInt(positional[2]) : 1000;
+        int stockPerProduct = positional.length > 3 ? Integer.parseInt(positional[3]) : 10_000;
+        String mixSpec = System.getProperty("soak.mix", DEFAULT_MIX);
+        int[] mix = parseMix(mixSpec);
+
+        ConnectionPool pool = BenchDatabase.open("soak", 16, args);
+        DatabaseConnection.setDataSource(pool);
+        BenchDatabase.seed(pool, 20, products, id -> stockPerProduct);
+
+        LocalDateTime started = LocalDateTime.now();
+        LocalInventoryService service = LocalInventoryService.getInstance();
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        for (String operation : OPERATIONS) {
+            stats.put(operation, new Stats());
+        }
+        AtomicLong unitsSold = new AtomicLong();
+        StockSampler sampler = new StockSampler(pool);
+        double elapsed = run(service, terminals, seconds, products, mix, stats, unitsSold, sampler);
+
+        List<String> invariants = verify(pool, sampler, unitsSold.get());
+        boolean passed = invariants.stream().allMatch(line -> line.contains("=PASS"));
+        String report = report(started, terminals, seconds, products, stockPerProduct, mixSpec, elapsed, stats,
+            invariants, passed);
+        System.out.print(report);
+        Path file = Paths.get(System.getProperty("soak.dir", "."))
+            .resolve("soak-" + started.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".txt");
+        Files.write(file, report.getBytes(StandardCharsets.UTF_8));
+        System.out.println("Report written to " + file.toAbsolutePath());
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static int[] parseMix(String spec) {
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            int index = List.of(OPERATIONS).indexOf(pair[0].trim());
+            if (pair.length != 2 || index == -1) {
+                throw new IllegalArgumentException("Bad soak.mix entry '" + part + "'; operations are " + List.of(OPERATIONS));
+            }
+            weights[index] = Integer.parseInt(pair[1].trim());
+        }
+        if (Arrays.stream(weights).sum() <= 0) {
+            throw new IllegalArgumentException("soak.mix gives every operation a weight of 0");
+        }
+        return weights;
+    }
+
+    private static double run(LocalInventoryService service, int terminals, int seconds, int products, int[] mix,
+                              Map<String, Stats> stats, AtomicLong unitsSold, StockSampler sampler) throws Exception {
+        int totalWeight = Arrays.stream(mix).sum();
+        PurchaseHistoryPageSource history = new PurchaseHistoryPageSource();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(terminals);
+        long[] deadline = new long[1];
+
+        for (int t = 0; t < terminals; t++) {
+            Thread terminal = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline[0]) {
+                        int pick = random.nextInt(totalWeight);
+                        int operation = 0;
+                        while (pick >= mix[operation]) {
+                            pick -= mix[operation++];
+                        }
+                        Stats stat = stats.get(OPERATIONS[operation]);
+                        long begin = System.nanoTime();
+                        try {
+                            boolean refused = perform(OPERATIONS[operation], service, history, products, random, unitsSold);
+                            stat.latency.record(System.nanoTime() - begin);
+                            if (refused) {
+                                stat.refused.incrementAndGet();
+                            }
+                        } catch (SQLException | RuntimeException e) {
+                            stat.latency.record(System.nanoTime() - begin);
+                            if (stat.errors.getAndIncrement() == 0) {
+                                e.printStackTrace();
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "soak-terminal-" + t);
+            terminal.start();
+        }
+
+        sampler.start();
+        long begin = System.nanoTime();
+        deadline[0] = begin + seconds * 1_000_000_000L;
+        start.countDown();
+        done.await();
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        sampler.stop();
+        return elapsed;
+    }
+
+    // True when the till was turned away for lack of stock
+    private static boolean perform(String operation, LocalInventoryService service, PurchaseHistoryPageSource history,
+                                   int products, ThreadLocalRandom random, AtomicLong unitsSold) throws SQLException {
+        switch (operation) {
+            case "purchase": {
+                PurchaseResult result = service.purchaseByName("Product " + (1 + random.nextInt(products)), 1 + random.nextInt(3));
+                if (result.isCompleted()) {
+                    unitsSold.addAndGet(result.getQuantity());
+                }
+                return !result.isCompleted();
+            }
+            case "checkout": {
+                List<CartLine> lines = new ArrayList<>();
+                int size = 2 + random.nextInt(4);
+                for (int i = 0; i < size; i++) {
+                    lines.add(new CartLine(1 + random.nextInt(products), 1 + random.nextInt(3)));
+                }
+                OrderResult order = service.checkout(lines);
+                for (PurchaseResult line : order.getPurchases()) {
+                    unitsSold.addAndGet(line.getQuantity());
+                }
+                return !order.isCompleted();
+            }
+            case "lookup": {
+                // A cashier typing the start of a name and picking the first match
+                List<Product> matches = service.searchProducts("Product " + (1 + random.nextInt(products)), 20, true);
+                if (!matches.isEmpty()) {
+                    service.getProduct(matches.get(0).getId());
+                }
+                return false;
+            }
+            case "history":
+                // What the purchase history table does on a refresh: count, then the first page
+                try (Connection conn = DatabaseConnection.getReadConnection()) {
+                    history.count(conn);
+                    history.fetch(conn, 0, true, null, 0, PagedTableModel.PAGE_SIZE);
+                }
+                return false;
+            default:
+                service.getReport();
+                return false;
+        }
+    }
+
+    /**
+     * Waits for journaled and ledger-held sales to reach the database, then checks the invariants.
+     * Each line is {@code invariant.<name>=PASS|FAIL (detail)}.
+     */
+    private static List<String> verify(ConnectionPool pool, StockSampler sampler, long unitsSold) throws SQLException {
+        PurchaseJournal journal = PurchaseJournal.current();
+        if (journal != null) {
+            journal.replay();
+        }
+        StockLedger ledger = StockLedger.current();
+        if (ledger != null) {
+            ledger.flush();
+        }
+
+        List<String> invariants = new ArrayList<>();
+        invariants.add(String.format("invariant.stockNeverNegative=%s (lowest stock seen %d in %d samples)",
+            sampler.lowest.get() >= 0 ? "PASS" : "FAIL", sampler.lowest.get(), sampler.samples.get()));
+
+        BenchDatabase.StockCheck check = BenchDatabase.checkStock(pool);
+        invariants.add(String.format("invariant.stockNotNegativeAtEnd=%s (%d products below zero)",
+            check.getNegative() == 0 ? "PASS" : "FAIL", check.getNegative()));
+        StringBuilder examples = new StringBuilder();
+        for (String example : check.getExamples()) {
+            examples.append("; ").append(example);
+        }
+        invariants.add(String.format("invariant.historyMatchesStockDecrease=%s (%d products differ%s)",
+            check.getMismatched() == 0 ? "PASS" : "FAIL", check.getMismatched(), examples));
+        invariants.add(String.format("invariant.historyMatchesCompletedSales=%s (history %d units, tills sold %d)",
+            check.getHistoryUnits() == unitsSold ? "PASS" : "FAIL", check.getHistoryUnits(), unitsSold));
+        return invariants;
+    }
+
+    private static String report(LocalDateTime started, int terminals, int seconds, int products, int stockPerProduct,
+                                 String mix, double elapsed, Map<String, Stats> stats, List<String> invariants,
+                                 boolean passed) {
+        StringBuilder report = new StringBuilder();
+        report.append("# Inventory soak test\n");
+        report.append("started=").append(started.withNano(0).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append('\n');
+        report.append("terminals=").append(terminals).append('\n');
+        report.append("seconds=").append(seconds).append('\n');
+        report.append("products=").append(products).append('\n');
+        report.append("stockPerProduct=").append(stockPerProduct).append('\n');
+        report.append("mix=").append(mix).append('\n');
+        report.append("stockLedger=").append(StockLedger.current() != null).append('\n');
+        report.append("purchaseJournal=").append(PurchaseJournal.current() != null).append('\n');
+        report.append("historyPartition=").append(System.getProperty("inventory.history.partition", "month")).append('\n');
+        report.append("java=").append(System.getProperty("java.version")).append('\n');
+        report.append("cpus=").append(Runtime.getRuntime().availableProcessors()).append('\n');
+        report.append(String.format("elapsedSeconds=%.1f%n%n", elapsed));
+
+        report.append(String.format("%-10s %9s %9s %8s %8s %9s %9s %9s %9s%n",
+            "operation", "count", "ops/s", "refused", "errors", "p50ms", "p95ms", "p99ms", "maxms"));
+        LatencyHistogram all = new LatencyHistogram();
+        long refused = 0;
+        long errors = 0;
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats stat = entry.getValue();
+            appendRow(report, entry.getKey(), stat.latency, stat.refused.get(), stat.errors.get(), elapsed);
+            all.add(stat.latency);
+            refused += stat.refused.get();
+            errors += stat.errors.get();
+        }
+        appendRow(report, "total", all, refused, errors, elapsed);
+        report.append('\n');
+
+        for (String invariant : invariants) {
+            report.append(invariant).append('\n');
+        }
+        report.append("result=").append(passed ? "PASS" : "FAIL").append('\n');
+        return report.toString();
+    }
+
+    private static void appendRow(StringBuilder report, String name, LatencyHistogram latency, long refused, long errors,
+                                  double elapsed) {
+        report.append(String.format("%-10s %9d %9.1f %8d %8d %9.3f %9.3f %9.3f %9.3f%n", name, latency.getCount(),
+            latency.getCount() / elapsed, refused, errors, latency.percentileMillis(0.50), latency.percentileMillis(0.95),
+            latency.percentileMillis(0.99), latency.getMaxMillis()));
+    }
+
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong refused = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    /**
+     * Watches for negative stock while the tills run: the database every {@link #SAMPLE_MILLIS},
+     * and the ledger's in-memory stock too when it holds stock ahead of the database.
+     */
+    private static final class StockSampler {
+        private final ConnectionPool pool;
+        private final AtomicInteger lowest = new AtomicInteger(Integer.MAX_VALUE);
+        private final AtomicLong samples = new AtomicLong();
+        private volatile boolean running;
+        private Thread thread;
+
+        StockSampler(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        void start() {
+            running = true;
+            thread = new Thread(() -> {
+                while (running) {
+                    try {
+                        sample();
+                        Thread.sleep(SAMPLE_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, "soak-stock-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException, SQLException {
+            running = false;
+            thread.interrupt();
+            thread.join();
+            sample();
+        }
+
+        private void sample() throws SQLException {
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT id, quantity FROM products");
+                 ResultSet rs = pstmt.executeQuery()) {
+                StockLedger ledger = StockLedger.current();
+                int low = Integer.MAX_VALUE;
+                while (rs.next()) {
+                    low = Math.min(low, rs.getInt(2));
+                    if (ledger != null) {
+                        low = Math.min(low, ledger.availableOrDefault(rs.getInt(1), 0));
+                    }
+                }
+                lowest.accumulateAndGet(low, Math::min);
+                samples.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide counters behind the Diagnostics tab and the metrics file: a latency histogram per
+ * distinct SQL statement, connection acquire times, and EDT stalls. Connections from a pool
+ * configured with {@link PoolConfig#setMetrics} report here through {@link InstrumentedConnection}.
+ */
+public final class SqlMetrics {
+    private static final int MAX_SQL_LENGTH = 160;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // Multi-row inserts differ only in how many value groups they carry
+    private static final Pattern REPEATED_VALUES = Pattern.compile("(\\([?, ]+\\))(\\s*,\\s*\\([?, ]+\\))+");
+
+    private static final SqlMetrics INSTANCE = new SqlMetrics();
+
+    private final ConcurrentHashMap<String, StatementStats> statements = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> normalized = new ConcurrentHashMap<>();
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    private final LatencyHistogram edtStalls = new LatencyHistogram();
+    private volatile String lastEdtStall;
+
+    public static SqlMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /** Whether the shared pool should be instrumented; {@code -Dinventory.metrics.enabled=false} turns it off. */
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("inventory.metrics.enabled"));
+    }
+
+    StatementStats statement(String sql) {
+        String key = normalized.get(sql);
+        if (key == null) {
+            key = normalize(sql);
+            if (normalized.size() < 10_000) {
+                normalized.put(sql, key);
+            }
+        }
+        StatementStats stats = statements.get(key);
+        return stats != null ? stats : statements.computeIfAbsent(key, StatementStats::new);
+    }
+
+    void connectionAcquired(long nanos) {
+        acquire.record(nanos);
+    }
+
+    void edtStalled(long nanos, String stack) {
+        edtStalls.record(nanos);
+        lastEdtStall = stack;
+    }
+
+    /** All statements seen so far, slowest total time first. */
+    public List<StatementStats> getStatements() {
+        List<StatementStats> result = new ArrayList<>(statements.values());
+        result.sort((a, b) -> Long.compare(b.latency.getTotalNanos(), a.latency.getTotalNanos()));
+        return result;
+    }
+
+    public LatencyHistogram getAcquireTimes() {
+        return acquire;
+    }
+
+    public LatencyHistogram getEdtStalls() {
+        return edtStalls;
+    }
+
+    /** Stack of the EDT during the most recent stall, or null if there hasn't been one. */
+    public String getLastEdtStall() {
+        return lastEdtStall;
+    }
+
+    public void reset() {
+        statements.clear();
+        acquire.reset();
+        edtStalls.reset();
+        lastEdtStall = null;
+    }
+
+    /** Plain-text snapshot, as written to the metrics file. */
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-28s %10s %10s %10s %10s%n", "", "count", "p50 ms", "p99 ms", "max ms"));
+        appendHistogram(out, "connection acquire", acquire);
+        appendHistogram(out, "EDT stalls", edtStalls);
+        out.append('\n');
+        out.append(String.format("%10s %10s %10s %10s %10s %12s %7s  %s%n",
+            "count", "rows", "p50 ms", "p99 ms", "max ms", "total ms", "errors", "statement"));
+        for (StatementStats stats : getStatements()) {
+            out.append(String.format("%10d %10d %10.3f %10.3f %10.3f %12.1f %7d  %s%n",
+                stats.getCount(), stats.getRows(), stats.latency.percentileMillis(0.50),
+                stats.latency.percentileMillis(0.99), stats.latency.getMaxMillis(),
+                stats.latency.getTotalNanos() / 1_000_000.0, stats.getErrors(), stats.getSql()));
+        }
+        String stall = lastEdtStall;
+        if (stall != null) {
+            out.append("\nLast EDT stall:\n").append(stall);
+        }
+        return out.toString();
+    }
+
+    private static void appendHistogram(StringBuilder out, String label, LatencyHistogram histogram) {
+        out.append(String.format("%-28s %10d %10.3f %10.3f %10.3f%n", label, histogram.getCount(),
+            histogram.percentileMillis(0.50), histogram.percentileMillis(0.99), histogram.getMaxMillis()));
+    }
+
+    static String normalize(String sql) {
+        String result = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        result = REPEATED_VALUES.matcher(result).replaceAll("$1, ...");
+        return result.length() <= MAX_SQL_LENGTH ? result : result.substring(0, MAX_SQL_LENGTH - 3) + "...";
+    }
+
+    /** Counters for one normalized statement. */
+    public static final class StatementStats {
+        private final String sql;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        void executed(long nanos, long rowCount, boolean failed) {
+            latency.record(nanos);
+            if (rowCount > 0) {
+                rows.addAndGet(rowCount);
+            }
+            if (failed) {
+                errors.incrementAndGet();
+            }
+        }
+
+        void rowsRead(long rowCount) {
+            rows.addAndGet(rowCount);
+        }
+
+        public String getSql() { return sql; }
+        public long getCount() { return latency.getCount(); }
+        public long getRows() { return rows.get(); }
+        public long getErrors() { return errors.get(); }
+        public LatencyHistogram getLatency() { return latency; }
+    }
+}
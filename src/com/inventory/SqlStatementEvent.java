@@ -0,0 +1,25 @@
+package com.inventory;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One JDBC execute call, with the rows it returned or changed. */
+@Name("com.inventory.SqlStatement")
+@Label("SQL Statement")
+@Category({"Inventory", "Database"})
+@Description("Execution of a statement on a pooled connection")
+@StackTrace(true)
+final class SqlStatementEvent extends jdk.jfr.Event {
+    @Label("SQL")
+    String sql;
+
+    @Label("Rows")
+    @Description("Rows read for queries, rows changed for updates and batches")
+    long rows;
+
+    @Label("Failed")
+    boolean failed;
+}
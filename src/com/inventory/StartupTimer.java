@@ -0,0 +1,103 @@
+package com.inventory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Milestones of application startup, measured from JVM launch: main, the window opening, each
+ * warm-up step and each tab being built. Shown on the Diagnostics tab and written to the metrics
+ * file; {@code -Dinventory.startup.log=true} also prints them once warm-up is done.
+ */
+public final class StartupTimer {
+    private static final List<Phase> phases = new ArrayList<>();
+
+    private StartupTimer() {
+    }
+
+    /** Records an instant, such as the window opening. */
+    public static void mark(String name) {
+        long now = System.currentTimeMillis();
+        add(new Phase(name, now, now));
+    }
+
+    /** Records a step that began at {@code startMillis} (wall clock) and has just finished. */
+    public static void record(String name, long startMillis) {
+        add(new Phase(name, startMillis, System.currentTimeMillis()));
+    }
+
+    /** Milliseconds from JVM launch until the named phase ended, or -1 if it hasn't happened. */
+    public static long endOf(String name) {
+        synchronized (phases) {
+            for (Phase phase : phases) {
+                if (phase.name.equals(name)) {
+                    return phase.end - launchMillis();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Warns on stderr, with every phase so far, if {@code name} ended more than {@code budgetMillis} after launch. */
+    public static void checkBudget(String name, long budgetMillis) {
+        long end = endOf(name);
+        if (end > budgetMillis) {
+            System.err.print("Startup: " + name + " " + end + " ms after launch, over the " + budgetMillis
+                + " ms budget\n" + format());
+        }
+    }
+
+    /** One line per phase: when it started and ended relative to launch, and how long it took. */
+    public static String format() {
+        long launch = launchMillis();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-28s %10s %10s %10s%n", "startup phase", "start ms", "end ms", "took ms"));
+        for (Phase phase : snapshot()) {
+            out.append(String.format("%-28s %10d %10d %10d%n", phase.name, phase.start - launch, phase.end - launch,
+                phase.end - phase.start));
+        }
+        return out.toString();
+    }
+
+    /** Compact form for the Diagnostics summary, e.g. {@code window 420ms, Products tab 510ms}. */
+    public static String summary() {
+        long launch = launchMillis();
+        StringBuilder out = new StringBuilder();
+        for (Phase phase : snapshot()) {
+            if (out.length() > 0) {
+                out.append(", ");
+            }
+            out.append(phase.name).append(' ').append(phase.end - launch).append("ms");
+        }
+        return out.toString();
+    }
+
+    private static void add(Phase phase) {
+        synchronized (phases) {
+            phases.add(phase);
+        }
+    }
+
+    private static List<Phase> snapshot() {
+        synchronized (phases) {
+            return new ArrayList<>(phases);
+        }
+    }
+
+    // Looked up only when reporting, so that loading the management classes isn't on the startup path
+    private static long launchMillis() {
+        return ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    private static final class Phase {
+        final String name;
+        final long start;
+        final long end;
+
+        Phase(String name, long start, long end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
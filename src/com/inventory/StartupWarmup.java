@@ -0,0 +1,60 @@
+package com.inventory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Builds the shared services in the background at launch, in parallel where they don't depend on
+ * each other, so the first tab finds them ready instead of building them on first use. Each step
+ * is recorded in {@link StartupTimer}; a failed step is logged and the steps that need it are
+ * skipped, leaving the panels to report the problem when they retry.
+ */
+public final class StartupWarmup {
+    private StartupWarmup() {
+    }
+
+    public static CompletableFuture<Void> start() {
+        ExecutorService executor = DataTaskExecutor.newExecutor("inventory-warmup-",
+            DataTaskExecutor.connectionThreads());
+        CompletableFuture<Void> done;
+        if (InventoryService.isRemote()) {
+            done = step(executor, "server client", RemoteInventoryService::getInstance);
+        } else {
+            CompletableFuture<Void> pool = step(executor, "connection pool", () -> {
+                // Opens the first connection, loading the driver on the way
+                DatabaseConnection.getConnection().close();
+                return null;
+            });
+            CompletableFuture<Void> catalog = pool.thenCompose(v -> step(executor, "catalog", CatalogCache::getInstance));
+            CompletableFuture<Void> search = catalog.thenCompose(v -> step(executor, "search index", ProductSearchIndex::getInstance));
+            CompletableFuture<Void> report = catalog.thenCompose(v -> step(executor, "report aggregates", ReportAggregates::getInstance));
+            CompletableFuture<Void> lowStock = catalog.thenCompose(v -> step(executor, "low stock alerts", LowStockMonitor::getInstance));
+            CompletableFuture<Void> forecast = catalog.thenCompose(v -> step(executor, "demand forecast", DemandForecast::getInstance));
+            CompletableFuture<Void> purchases = pool.thenCompose(v -> step(executor, "purchase service", PurchaseService::getInstance));
+            CompletableFuture<Void> service = catalog.thenCombine(purchases, (a, b) -> null)
+                .thenCompose(v -> step(executor, "inventory service", LocalInventoryService::getInstance));
+            done = CompletableFuture.allOf(search, report, lowStock, forecast, service);
+        }
+        return done.whenComplete((v, e) -> {
+            StartupTimer.mark("warm-up done");
+            executor.shutdown();
+            if (Boolean.getBoolean("inventory.startup.log")) {
+                System.out.print(StartupTimer.format());
+            }
+        });
+    }
+
+    private static CompletableFuture<Void> step(ExecutorService executor, String name, Callable<?> task) {
+        return CompletableFuture.runAsync(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                task.call();
+            } catch (Exception e) {
+                System.err.println("Startup warm-up step '" + name + "' failed: " + e);
+                throw new IllegalStateException(name + " failed", e);
+            }
+            StartupTimer.record(name, start);
+        }, executor);
+    }
+}
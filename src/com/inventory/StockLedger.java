@@ -0,0 +1,408 @@
+package com.inventory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process stock counters for every product. Sales reserve stock with a CAS on the product's
+ * counter, so the hot path never touches the {@code products} row; committed sales are flushed to
+ * {@code products.quantity} as batched deltas, in product id order, by a background write-behind
+ * cycle.
+ *
+ * <p>Crash safety comes from the purchase history: each flush records, in the same transaction,
+ * the highest history id whose stock change it contains. On startup any sales recorded after that
+ * checkpoint are re-applied to {@code products} before the counters are loaded. For that to be
+ * safe every history id below the checkpoint must already have reached the ledger, so committers
+ * hold {@link #lockHistoryOrder} from their history insert until {@link #commitSales}.
+ *
+ * <p>The ledger assumes this process is the only writer of stock, so it is off unless
+ * {@code -Dinventory.stock.ledger=true}: desktop tills commonly share one database, and each would
+ * overwrite the others' sales. {@link InventoryServer} turns it on, since its terminals all sell
+ * through the server.
+ */
+public class StockLedger implements AutoCloseable {
+    private static volatile StockLedger instance;
+
+    private final DataSource dataSource;
+    private final ConcurrentHashMap<Integer, Cell> cells = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Cell> dirty = new ConcurrentLinkedQueue<>();
+    // Guards the dirty cells' unflushed counts against committedHistoryId
+    private final Object salesLock = new Object();
+    // Held by a committer from its history insert until commitSales, so sales arrive in history id order
+    private final ReentrantLock historyOrder = new ReentrantLock();
+    // Held for a whole flush, from draining the deltas to the commit, so checkpoints are written in order
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+    private long committedHistoryId;
+    // Guarded by flushLock
+    private long persistedHistoryId;
+
+    public StockLedger(DataSource dataSource, long flushIntervalMillis) throws SQLException {
+        this.dataSource = dataSource;
+        reconcile();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-stock-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("inventory.stock.ledger", "false"));
+    }
+
+    /** The shared ledger, or null when it is disabled and stock lives only in the database. */
+    public static StockLedger getInstance() throws SQLException {
+        if (!isEnabled()) {
+            return null;
+        }
+        StockLedger ledger = instance;
+        if (ledger == null) {
+            synchronized (StockLedger.class) {
+                ledger = instance;
+                if (ledger == null) {
+                    ledger = new StockLedger(DatabaseConnection.getDataSource(),
+                        Long.getLong("inventory.stock.flushIntervalMillis", 200));
+                    instance = ledger;
+                }
+            }
+        }
+        return ledger;
+    }
+
+    /** The shared ledger if it has been started, without starting it. */
+    public static StockLedger current() {
+        return instance;
+    }
+
+    /** Current stock for a product, loading it on first use, or -1 if the product doesn't exist. */
+    public int available(int productId) throws SQLException {
+        Cell cell = cellFor(productId);
+        return cell == null ? -1 : cell.available.get();
+    }
+
+    /** Current stock if the product is already tracked, otherwise {@code fallback}. Never blocks. */
+    public int availableOrDefault(int productId, int fallback) {
+        Cell cell = cells.get(productId);
+        return cell == null ? fallback : cell.available.get();
+    }
+
+    /** Takes {@code quantity} units if that many are available; lock-free. */
+    public boolean reserve(int productId, int quantity) throws SQLException {
+        Cell cell = cellFor(productId);
+        if (cell == null) {
+            return false;
+        }
+        while (true) {
+            int current = cell.available.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (cell.available.compareAndSet(current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    /** Gives back a reservation whose sale never committed. */
+    public void release(int productId, int quantity) {
+        Cell cell = cells.get(productId);
+        if (cell != null) {
+            cell.available.addAndGet(quantity);
+        }
+    }
+
+    /** Takes up to {@code quantity} units for a sale that has already happened, however few are left. */
+    public void take(int productId, int quantity) {
+        Cell cell = cells.get(productId);
+        if (cell != null) {
+            cell.available.getAndUpdate(current -> Math.max(current - quantity, 0));
+        }
+    }
+
+    /**
+     * Taken by a committer before it inserts history and released after {@link #commitSales} or the
+     * rollback. Without it a committer could hand over higher ids while another's lower ids, already
+     * committed, were still on their way, and a checkpoint written in between would skip them.
+     */
+    public void lockHistoryOrder() {
+        historyOrder.lock();
+    }
+
+    public void unlockHistoryOrder() {
+        historyOrder.unlock();
+    }
+
+    /**
+     * Marks reserved stock as sold once the matching history rows are committed. {@code productIds}
+     * and {@code quantities} are parallel; {@code maxHistoryId} is the highest history id written.
+     * The caller must hold {@link #lockHistoryOrder}.
+     */
+    public void commitSales(int[] productIds, int[] quantities, long maxHistoryId) {
+        if (!historyOrder.isHeldByCurrentThread()) {
+            throw new IllegalStateException("Sales must be committed under the history order lock");
+        }
+        synchronized (salesLock) {
+            for (int i = 0; i < productIds.length; i++) {
+                Cell cell = cells.get(productIds[i]);
+                if (cell != null) {
+                    cell.unflushed.addAndGet(-quantities[i]);
+                    markDirty(cell);
+                }
+            }
+            committedHistoryId = Math.max(committedHistoryId, maxHistoryId);
+        }
+    }
+
+    /** Starts tracking a product that was just inserted with the given stock. */
+    public void track(int productId, int quantity) {
+        cells.putIfAbsent(productId, new Cell(productId, quantity));
+    }
+
+    public void forget(int productId) {
+        cells.remove(productId);
+    }
+
+    /**
+     * Sets a product's stock from a manual edit. Unlike sales this is written through immediately,
+     * on the caller's connection and transaction, as a delta so that unflushed sales are preserved.
+     * Returns the delta applied; pass it to {@link #undoAdjust} if the transaction is rolled back.
+     */
+    public int adjustTo(Connection conn, int productId, int quantity) throws SQLException {
+        Cell cell = cellFor(conn, productId);
+        if (cell == null) {
+            return 0;
+        }
+        // The delta is taken against the exact value replaced, so reservations racing with the edit still count
+        int previous;
+        do {
+            previous = cell.available.get();
+        } while (!cell.available.compareAndSet(previous, quantity));
+        int delta = quantity - previous;
+        if (delta == 0) {
+            return 0;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE products SET quantity = quantity + ? WHERE id = ?")) {
+            pstmt.setInt(1, delta);
+            pstmt.setInt(2, productId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            cell.available.addAndGet(-delta);
+            throw e;
+        }
+        return delta;
+    }
+
+    public void undoAdjust(int productId, int delta) {
+        Cell cell = cells.get(productId);
+        if (cell != null) {
+            cell.available.addAndGet(-delta);
+        }
+    }
+
+    /**
+     * Writes all committed sales to {@code products} now. The ledger writes stock behind, so call this
+     * before reading {@code products.quantity} directly. If another flush is under way this waits for
+     * it, so every sale committed before the call is written when it returns.
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            flushLocked();
+        }
+    }
+
+    private void flushLocked() throws SQLException {
+        List<int[]> deltas = new ArrayList<>();
+        long historyId;
+        synchronized (salesLock) {
+            Cell cell;
+            while ((cell = dirty.poll()) != null) {
+                cell.dirty.set(false);
+                int delta = cell.unflushed.getAndSet(0);
+                if (delta != 0) {
+                    deltas.add(new int[]{cell.productId, delta});
+                }
+            }
+            historyId = committedHistoryId;
+        }
+        if (deltas.isEmpty() && historyId == persistedHistoryId) {
+            return;
+        }
+        // Ordered by id so the flush takes row locks in the same order as the purchase committers
+        deltas.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement pstmt = conn.prepareStatement("UPDATE products SET quantity = quantity + ? WHERE id = ?")) {
+                    for (int[] delta : deltas) {
+                        pstmt.setInt(1, delta[1]);
+                        pstmt.setInt(2, delta[0]);
+                        pstmt.addBatch();
+                    }
+                    if (!deltas.isEmpty()) {
+                        pstmt.executeBatch();
+                    }
+                }
+                writeCheckpoint(conn, historyId);
+                conn.commit();
+                persistedHistoryId = historyId;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Put the deltas back so the next cycle retries them
+            synchronized (salesLock) {
+                for (int[] delta : deltas) {
+                    Cell cell = cells.get(delta[0]);
+                    if (cell != null) {
+                        cell.unflushed.addAndGet(delta[1]);
+                        markDirty(cell);
+                    }
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void markDirty(Cell cell) {
+        if (cell.dirty.compareAndSet(false, true)) {
+            dirty.add(cell);
+        }
+    }
+
+    private Cell cellFor(int productId) throws SQLException {
+        Cell cell = cells.get(productId);
+        if (cell != null) {
+            return cell;
+        }
+        try (Connection conn = dataSource.getConnection()) {
+            return cellFor(conn, productId);
+        }
+    }
+
+    private Cell cellFor(Connection conn, int productId) throws SQLException {
+        Cell cell = cells.get(productId);
+        if (cell != null) {
+            return cell;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+            pstmt.setInt(1, productId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Cell loaded = new Cell(productId, rs.getInt(1));
+                Cell existing = cells.putIfAbsent(productId, loaded);
+                return existing != null ? existing : loaded;
+            }
+        }
+    }
+
+    /** Re-applies sales that were committed after the last checkpoint, then loads every counter. */
+    private void reconcile() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Long checkpoint = readCheckpoint(conn);
+                PurchaseHistoryStore.Layout history = PurchaseHistoryStore.layout(conn);
+                long maxHistoryId = history.maxId(conn);
+                if (checkpoint != null && maxHistoryId > checkpoint) {
+                    String unflushed = history.rows(null, null, checkpoint, Long.MAX_VALUE);
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                        "UPDATE products p SET quantity = quantity - (SELECT COALESCE(SUM(ph.quantity), 0) " +
+                        "FROM " + unflushed + " ph WHERE ph.product_id = p.id) " +
+                        "WHERE p.id IN (SELECT ph.product_id FROM " + unflushed + " ph)")) {
+                        int repaired = pstmt.executeUpdate();
+                        System.err.println("Stock ledger: re-applied unflushed sales to " + repaired + " products");
+                    }
+                }
+                // With no checkpoint yet, everything already in history is reflected in products
+                writeCheckpoint(conn, maxHistoryId);
+                conn.commit();
+                committedHistoryId = maxHistoryId;
+                persistedHistoryId = maxHistoryId;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT id, quantity FROM products");
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    cells.put(id, new Cell(id, rs.getInt(2)));
+                }
+            }
+        }
+    }
+
+    private static Long readCheckpoint(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT last_history_id FROM stock_ledger_checkpoint WHERE id = 1");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    private static void writeCheckpoint(Connection conn, long historyId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE stock_ledger_checkpoint SET last_history_id = ? WHERE id = 1")) {
+            pstmt.setLong(1, historyId);
+            if (pstmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO stock_ledger_checkpoint (id, last_history_id) VALUES (1, ?)")) {
+            pstmt.setLong(1, historyId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static final class Cell {
+        final int productId;
+        final AtomicInteger available;
+        // Sold but not yet written to products.quantity (negative for sales)
+        final AtomicInteger unflushed = new AtomicInteger();
+        final AtomicBoolean dirty = new AtomicBoolean();
+
+        Cell(int productId, int quantity) {
+            this.productId = productId;
+            this.available = new AtomicInteger(quantity);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalyticsSnapshotTest {
+    private static final LocalDate TODAY = LocalDate.now();
+
+    // Product n is in category 1 + n % 2 and costs n + 0.99
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(2, 4, id -> 100);
+
+    private CatalogCache catalog;
+
+    @BeforeEach
+    void seedHistory() throws SQLException {
+        sold(1, 2, 3.98, TODAY.minusDays(5));
+        sold(1, 1, 1.99, TODAY.minusDays(5));
+        sold(2, 3, 8.97, TODAY.minusDays(5));
+        sold(1, 4, 7.96, TODAY.minusDays(2));
+        catalog = new CatalogCache(database.getPool());
+    }
+
+    @Test
+    void refreshAppendsOnlyNewSales() throws SQLException {
+        AnalyticsSnapshot snapshot = new AnalyticsSnapshot(database.getPool(), catalog, false, 2);
+        // One row per product and day
+        assertEquals(3, snapshot.getSalesRowCount());
+        assertSales(10, 2290, snapshot.getSales(TODAY.minusDays(7), TODAY, 0));
+        assertSales(3, 897, snapshot.getSales(TODAY.minusDays(7), TODAY, 1));
+
+        try (PurchaseService service = new PurchaseService(database.getPool(), 1, 16)) {
+            assertTrue(service.purchase(1, 5, 1.99).isCompleted());
+            assertTrue(service.purchase(3, 1, 3.99).isCompleted());
+        }
+        // Nothing follows live changes until the next refresh
+        assertEquals(3, snapshot.getSalesRowCount());
+        snapshot.refresh();
+
+        assertEquals(5, snapshot.getSalesRowCount());
+        assertSales(10, 2290, snapshot.getSales(TODAY.minusDays(7), TODAY.minusDays(1), 0));
+        assertSales(6, 995 + 399, snapshot.getSales(TODAY, TODAY, 0));
+        assertEquals(List.of(1, 2, 3), ids(snapshot.getTopSellers(TODAY.minusDays(7), TODAY, 0, 10)));
+        assertSameSales(new AnalyticsSnapshot(database.getPool(), catalog, false, 2), snapshot);
+
+        // A second refresh with nothing new leaves the columns as they were
+        snapshot.refresh();
+        assertEquals(5, snapshot.getSalesRowCount());
+    }
+
+    @Test
+    void lateSaleForAnEarlierDayIsMergedInOrder() throws SQLException {
+        AnalyticsSnapshot snapshot = new AnalyticsSnapshot(database.getPool(), catalog, true, 2);
+        sold(1, 1, 1.99, TODAY);
+        snapshot.refresh();
+
+        // Reaches the database after today's sale, but was made four days ago
+        sold(2, 2, 5.98, TODAY.minusDays(4));
+        sold(1, 1, 1.99, TODAY.minusDays(5));
+        snapshot.refresh();
+
+        // Product 1 on day -5 now has two rows, one from each refresh
+        assertEquals(6, snapshot.getSalesRowCount());
+        assertSales(2, 598, snapshot.getSales(TODAY.minusDays(4), TODAY.minusDays(3), 0));
+        assertSales(4, 796, snapshot.getSales(TODAY.minusDays(5), TODAY.minusDays(5), 2));
+        assertSameSales(new AnalyticsSnapshot(database.getPool(), catalog, false, 2), snapshot);
+    }
+
+    private void sold(int productId, int quantity, double totalPrice, LocalDate day) throws SQLException {
+        database.execute("INSERT INTO purchase_history (product_id, quantity, total_price, purchase_date) VALUES (" +
+            productId + ", " + quantity + ", " + totalPrice + ", TIMESTAMP '" + day + " 12:00:00')");
+    }
+
+    /** Every single day, and every category, sums to the same in both. */
+    private static void assertSameSales(AnalyticsSnapshot expected, AnalyticsSnapshot actual) {
+        for (LocalDate day = TODAY.minusDays(7); !day.isAfter(TODAY); day = day.plusDays(1)) {
+            for (int category = 0; category <= 2; category++) {
+                AnalyticsSnapshot.Total want = expected.getSales(day, day, category);
+                AnalyticsSnapshot.Total got = actual.getSales(day, day, category);
+                assertEquals(want.getQuantity(), got.getQuantity(), day + " in category " + category);
+                assertEquals(want.getCents(), got.getCents(), day + " in category " + category);
+            }
+        }
+    }
+
+    private static void assertSales(long units, long cents, AnalyticsSnapshot.Total total) {
+        assertEquals(units, total.getQuantity());
+        assertEquals(cents, total.getCents());
+    }
+
+    private static List<Integer> ids(List<AnalyticsSnapshot.Total> totals) {
+        return totals.stream().map(AnalyticsSnapshot.Total::getId).toList();
+    }
+}
@@ -0,0 +1,124 @@
+package com.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CategoryDeleterTest {
+    // Product n is in category 1 + n % 2, so category 2 holds the 25 odd ids
+    private static final int PRODUCTS = 50;
+    private static final int CHUNK = 5;
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(2, PRODUCTS, id -> 10);
+
+    @Test
+    void deleteCutShortResumesWhereItStopped() throws Exception {
+        try (PurchaseService service = new PurchaseService(database.getPool(), 1, 16)) {
+            assertTrue(service.purchase(1, 3, 9.99).isCompleted());
+        }
+
+        // The first run loses its database after two chunks, as if the till had died
+        ConnectionPool crashing = database.open();
+        CategoryDeleter first = new CategoryDeleter(crashing, new CatalogCache(crashing), null, CHUNK, 0);
+        first.addListener(progress -> {
+            if (progress.getDeleted() == 2 * CHUNK) {
+                crashing.close();
+            }
+        });
+        CompletableFuture<Boolean> cutShort = first.delete(2);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> cutShort.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(SQLException.class, failure.getCause());
+        assertEquals(2 * CHUNK, database.queryLong("SELECT products_deleted FROM " + CategoryDeleter.JOB_TABLE));
+        assertEquals(PRODUCTS / 2 - 2 * CHUNK, database.queryLong("SELECT COUNT(*) FROM products WHERE category_id = 2"));
+
+        CatalogCache catalog = new CatalogCache(database.getPool());
+        CategoryDeleter restarted = new CategoryDeleter(database.getPool(), catalog, null, CHUNK, 0);
+        List<CategoryDeleter.Progress> seen = new CopyOnWriteArrayList<>();
+        CompletableFuture<CategoryDeleter.Progress> finished = new CompletableFuture<>();
+        restarted.addListener(progress -> {
+            seen.add(progress);
+            if (progress.isFinished() || progress.getFailure() != null) {
+                finished.complete(progress);
+            }
+        });
+        // Wait on the resumed run itself; a delete(2) that lost the race with it would find no category
+        restarted.resumePending();
+        assertNull(finished.get(10, TimeUnit.SECONDS).getFailure());
+
+        // It picked up after the last chunk recorded rather than starting over
+        assertEquals(2 * CHUNK, seen.get(0).getDeleted());
+        assertEquals(PRODUCTS / 2, seen.get(seen.size() - 1).getDeleted());
+        assertTrue(seen.get(seen.size() - 1).isFinished());
+
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM categories WHERE id = 2"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM products WHERE category_id = 2"));
+        assertEquals(PRODUCTS / 2, database.queryLong("SELECT COUNT(*) FROM products WHERE category_id = 1"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM " + CategoryDeleter.JOB_TABLE));
+        assertEquals(PRODUCTS / 2, database.queryLong("SELECT COUNT(DISTINCT product_id) FROM " + CategoryDeleter.TOMBSTONE_TABLE));
+        assertEquals(PRODUCTS / 2, database.queryLong("SELECT COUNT(*) FROM " + CategoryDeleter.TOMBSTONE_TABLE));
+        assertNull(catalog.getCategory(2));
+        assertNull(catalog.getProduct(1));
+
+        // The sale of a deleted product is still there, and still attributable
+        assertEquals(3, database.queryLong("SELECT SUM(ph.quantity) FROM purchase_history ph JOIN " +
+            CategoryDeleter.TOMBSTONE_TABLE + " d ON d.product_id = ph.product_id WHERE d.category_name = 'Category 2'"));
+    }
+
+    @Test
+    void productMovedOutAfterItsChunkWasReadIsLeftEverywhere() throws Exception {
+        // Connections go to the start, the first chunk's read, then its delete; product 3 moves just before that
+        ConnectionPool pool = database.getPool();
+        CatalogCache catalog = new CatalogCache(pool);
+        AtomicInteger connections = new AtomicInteger();
+        DataSource moving = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+            new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getConnection") && connections.incrementAndGet() == 3) {
+                    // Moved as the Products tab would, telling the catalog too
+                    database.execute("UPDATE products SET category_id = 1 WHERE id = 3");
+                    catalog.productSaved(new Product(3, "Product 3", 3.99, 10, 1));
+                }
+                try {
+                    return method.invoke(pool, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        StockLedger ledger = new StockLedger(pool, 3_600_000);
+        try {
+            assertEquals(10, ledger.available(3));
+            CategoryDeleter deleter = new CategoryDeleter(moving, catalog, ledger, CHUNK, 0);
+            List<CategoryDeleter.Progress> seen = new CopyOnWriteArrayList<>();
+            deleter.addListener(seen::add);
+            assertTrue(deleter.delete(2).get(10, TimeUnit.SECONDS));
+
+            assertEquals(CHUNK - 1, seen.get(1).getDeleted());
+            assertEquals(PRODUCTS / 2 - 1, seen.get(seen.size() - 1).getDeleted());
+            assertEquals(1, database.queryLong("SELECT category_id FROM products WHERE id = 3"));
+            assertEquals(0, database.queryLong("SELECT COUNT(*) FROM " + CategoryDeleter.TOMBSTONE_TABLE + " WHERE product_id = 3"));
+            assertNotNull(catalog.getProduct(3));
+            assertNull(catalog.getProduct(5));
+            assertEquals(10, ledger.availableOrDefault(3, -1));
+            assertEquals(-1, ledger.availableOrDefault(5, -1));
+        } finally {
+            ledger.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.inventory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ChangeBusTest {
+    private final ChangeBus bus = ChangeBus.getInstance();
+    private final LinkedBlockingQueue<List<CatalogEvent>> deliveries = new LinkedBlockingQueue<>();
+    private final Consumer<List<CatalogEvent>> subscriber = deliveries::add;
+
+    @BeforeEach
+    void subscribe() {
+        bus.subscribe(subscriber);
+    }
+
+    @AfterEach
+    void unsubscribe() {
+        bus.unsubscribe(subscriber);
+    }
+
+    @Test
+    void bulkChangeIsDeliveredOnceWhenItEnds() throws InterruptedException {
+        bus.bulkChangeStarted();
+        for (int id = 1; id <= 10; id++) {
+            bus.productChanged(null, product(id));
+            // Several frames pass during an import
+            Thread.sleep(5);
+        }
+        assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS), "nothing is delivered during the bulk change");
+        bus.bulkChangeFinished();
+
+        List<CatalogEvent> events = deliveries.poll(10, TimeUnit.SECONDS);
+        assertNotNull(events);
+        assertEquals(10, events.size());
+        assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void frameScheduledBeforeABulkChangeWaitsForItToEnd() throws InterruptedException {
+        // Hold the EDT so the frame timer for the first change only starts once the bulk change has
+        CountDownLatch release = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        bus.productChanged(null, product(1));
+        bus.bulkChangeStarted();
+        release.countDown();
+        for (int id = 2; id <= 10; id++) {
+            bus.productChanged(null, product(id));
+            Thread.sleep(5);
+        }
+        assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS), "the frame must not deliver part of the bulk change");
+        bus.bulkChangeFinished();
+
+        List<CatalogEvent> events = deliveries.poll(10, TimeUnit.SECONDS);
+        assertNotNull(events);
+        assertEquals(10, events.size());
+        assertNull(deliveries.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void largeBulkChangeIsDeliveredAsAReload() throws InterruptedException {
+        bus.bulkChangeStarted();
+        for (int id = 1; id <= ChangeBus.MAX_HELD_EVENTS + 500; id++) {
+            bus.productChanged(null, product(id));
+        }
+        bus.bulkChangeFinished();
+
+        List<CatalogEvent> events = deliveries.poll(10, TimeUnit.SECONDS);
+        assertNotNull(events);
+        assertEquals(1, events.size());
+        assertEquals(CatalogEvent.Type.RELOADED, events.get(0).getType());
+    }
+
+    private static Product product(int id) {
+        return new Product(id, "Product " + id, 1.99, 10, 1);
+    }
+}
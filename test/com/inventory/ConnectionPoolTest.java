@@ -0,0 +1,119 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(2);
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void createTable() throws SQLException {
+        pool = database.getPool();
+        database.execute("CREATE TABLE numbers (n INT PRIMARY KEY)", "INSERT INTO numbers VALUES (1), (2), (3)");
+    }
+
+    @Test
+    void cachedStatementComesBackWithItsDefaultSettings() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT n FROM numbers ORDER BY n")) {
+            pstmt.setMaxRows(1);
+            pstmt.setFetchSize(1);
+            pstmt.setQueryTimeout(5);
+            assertEquals(1, count(pstmt));
+        }
+        long hits = pool.getStats().getStatementCacheHits();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT n FROM numbers ORDER BY n")) {
+            assertEquals(hits + 1, pool.getStats().getStatementCacheHits(), "the statement should be reused");
+            assertEquals(0, pstmt.getMaxRows());
+            assertEquals(0, pstmt.getQueryTimeout());
+            assertNotEquals(1, pstmt.getFetchSize());
+            assertEquals(3, count(pstmt));
+        }
+    }
+
+    @Test
+    void sessionSettingsAreRestoredAtCheckin() throws SQLException {
+        database.execute("CREATE SCHEMA other", "CREATE TABLE other.numbers (n INT PRIMARY KEY)");
+        int session;
+        int isolation;
+        String schema;
+        try (Connection conn = pool.getConnection()) {
+            session = sessionId(conn);
+            isolation = conn.getTransactionIsolation();
+            schema = conn.getSchema();
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT n FROM numbers")) {
+                assertEquals(3, count(pstmt));
+            }
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            conn.setSchema("OTHER");
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT n FROM numbers")) {
+                assertEquals(0, count(pstmt), "a statement cached under the old schema should not be reused");
+            }
+        }
+        assertNotEquals(Connection.TRANSACTION_SERIALIZABLE, isolation);
+
+        try (Connection conn = pool.getConnection()) {
+            assertEquals(session, sessionId(conn), "the same physical connection should be reused");
+            assertEquals(isolation, conn.getTransactionIsolation());
+            assertEquals(schema, conn.getSchema());
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT n FROM numbers")) {
+                assertEquals(3, count(pstmt));
+            }
+        }
+    }
+
+    @Test
+    void connectionDroppedRightAfterUseIsNotHandedOut() throws SQLException {
+        int dropped;
+        try (Connection other = pool.getConnection()) {
+            try (Connection conn = pool.getConnection()) {
+                dropped = sessionId(conn);
+            }
+            // Ends the now idle connection's session from the server side, a moment after it was used
+            try (PreparedStatement pstmt = other.prepareStatement("SELECT ABORT_SESSION(?)")) {
+                pstmt.setInt(1, dropped);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    assertTrue(rs.next() && rs.getBoolean(1));
+                }
+            }
+        }
+        // One borrower gets the connection returned last, the other would get the dropped one
+        try (Connection first = pool.getConnection();
+             Connection second = pool.getConnection()) {
+            assertNotEquals(dropped, sessionId(first));
+            assertNotEquals(dropped, sessionId(second));
+        }
+    }
+
+    private static int count(PreparedStatement pstmt) throws SQLException {
+        int rows = 0;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static int sessionId(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT SESSION_ID()");
+             ResultSet rs = pstmt.executeQuery()) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.inventory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DemandForecastTest {
+    private static final double DELTA = 1e-9;
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(2, 4, id -> 100);
+
+    private CatalogCache catalog;
+    private DemandForecast forecast;
+    private PurchaseService service;
+
+    @BeforeEach
+    void startForecast() throws SQLException {
+        // Product 1 sold 2 a day for the last ten days, product 2 one a day for the last five
+        LocalDate today = LocalDate.now();
+        for (int daysAgo = 1; daysAgo <= 10; daysAgo++) {
+            sold(1, 2, today.minusDays(daysAgo));
+            if (daysAgo <= 5) {
+                sold(2, 1, today.minusDays(daysAgo));
+            }
+        }
+        catalog = new CatalogCache(database.getPool());
+        forecast = newForecast();
+        service = new PurchaseService(database.getPool(), 1, 16);
+        service.addListener(forecast);
+    }
+
+    @AfterEach
+    void stopService() {
+        service.close();
+    }
+
+    @Test
+    void historyIsFittedFromTheFirstSale() {
+        DemandForecast.Forecast first = forecast.getForecast(1);
+        // Eleven days from the first sale, today included with nothing sold yet
+        assertEquals(20 / 11.0, first.getAverageDaily(), DELTA);
+        assertEquals(12 / 7.0, first.getRecentDaily(), DELTA);
+        // A steady two a day smooths to two, with no error to make safety stock from
+        assertEquals(2, first.getForecastDaily(), DELTA);
+        assertEquals(0, first.getDeviation(), DELTA);
+        assertEquals(14, first.getReorderPoint());
+        assertEquals(2, forecast.getForecasts().size());
+        assertNull(forecast.getForecast(3));
+    }
+
+    @Test
+    void saleRefitsOnlyTheProductItTouched() throws SQLException {
+        DemandForecast.Forecast untouched = forecast.getForecast(2);
+
+        assertTrue(service.purchase(1, 6, 1.99).isCompleted());
+        assertTrue(service.purchase(3, 4, 3.99).isCompleted());
+
+        DemandForecast.Forecast first = forecast.getForecast(1);
+        assertEquals(26 / 11.0, first.getAverageDaily(), DELTA);
+        assertEquals(18 / 7.0, first.getRecentDaily(), DELTA);
+        // Today's sales count towards the rates only until the day is over
+        assertEquals(2, first.getForecastDaily(), DELTA);
+        DemandForecast.Forecast second = forecast.getForecast(2);
+        assertEquals(untouched.getAverageDaily(), second.getAverageDaily(), DELTA);
+        assertEquals(untouched.getForecastDaily(), second.getForecastDaily(), DELTA);
+        // A product that hadn't sold in the window is picked up from its first sale
+        DemandForecast.Forecast third = forecast.getForecast(3);
+        assertNotNull(third);
+        assertEquals(4, third.getRecentDaily(), DELTA);
+
+        // What was added sale by sale matches a fresh read of the history, and a rebuild counts nothing twice
+        assertSameFits(newForecast(), forecast);
+        forecast.rebuild();
+        assertSameFits(newForecast(), forecast);
+    }
+
+    private DemandForecast newForecast() throws SQLException {
+        return new DemandForecast(database.getPool(), catalog, 30, DemandForecast.DEFAULT_ALPHA,
+            DemandForecast.DEFAULT_LEAD_TIME_DAYS, DemandForecast.DEFAULT_COVER_DAYS, 2);
+    }
+
+    private void sold(int productId, int quantity, LocalDate day) throws SQLException {
+        database.execute("INSERT INTO purchase_history (product_id, quantity, total_price, purchase_date) VALUES (" +
+            productId + ", " + quantity + ", " + quantity + ", TIMESTAMP '" + day + " 12:00:00')");
+    }
+
+    private static void assertSameFits(DemandForecast expected, DemandForecast actual) {
+        assertEquals(expected.getForecasts().size(), actual.getForecasts().size());
+        for (DemandForecast.Forecast fitted : expected.getForecasts()) {
+            DemandForecast.Forecast other = actual.getForecast(fitted.getProductId());
+            assertEquals(fitted.getAverageDaily(), other.getAverageDaily(), DELTA);
+            assertEquals(fitted.getRecentDaily(), other.getRecentDaily(), DELTA);
+            assertEquals(fitted.getForecastDaily(), other.getForecastDaily(), DELTA);
+            assertEquals(fitted.getDeviation(), other.getDeviation(), DELTA);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.inventory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryServerTest {
+    private static final String TOKEN = "till-secret";
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(1, 3, id -> 10);
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private PurchaseService purchases;
+    private InventoryServer server;
+
+    @BeforeEach
+    void setUp() throws SQLException, IOException {
+        ConnectionPool pool = database.getPool();
+        purchases = new PurchaseService(pool, 1, 16);
+        server = new InventoryServer(new LocalInventoryService(pool, new CatalogCache(pool), purchases, null), 0, TOKEN);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        purchases.close();
+    }
+
+    @Test
+    void apiNeedsTheToken() throws Exception {
+        assertEquals(200, get("/health", null).statusCode());
+        assertEquals(401, get("/api/products/1", null).statusCode());
+        assertEquals(401, get("/api/products/1", "till-secreT").statusCode());
+        assertEquals(401, post("/api/purchases", null, "{\"productId\": 1, \"quantity\": 1}").statusCode());
+        assertEquals(10, database.quantity(1));
+        assertEquals(200, get("/api/products/1", TOKEN).statusCode());
+    }
+
+    @Test
+    void malformedRequestsAreBadRequests() throws Exception {
+        for (String body : List.of(
+                "{\"productId\": 1, \"quantity\": }",
+                "{\"productId\": 1, \"quantity\": 1",
+                "{\"productId\": 1, \"quantity\": 1-2}",
+                "{\"productId\": 1, \"quantity\": 99999999999999999999}",
+                // Neither is quantity 2 or 1
+                "{\"productId\": 1, \"quantity\": 2.9}",
+                "{\"productId\": 1, \"quantity\": 4294967297}",
+                "{\"productId\": 1.5, \"quantity\": 1}",
+                "[1, 2]",
+                // Deep enough to overflow a parser without a limit
+                "[".repeat(100_000),
+                "{\"productId\": 1, \"quantity\": 1, \"x\": " + "[".repeat(Json.MAX_DEPTH) + "]".repeat(Json.MAX_DEPTH) + "}")) {
+            HttpResponse<String> response = post("/api/purchases", TOKEN, body);
+            assertEquals(400, response.statusCode(), body);
+            assertTrue(Json.parseObject(response.body()).get("error") instanceof String, response.body());
+        }
+        assertEquals(400, post("/api/orders", TOKEN, "{\"lines\": [{\"productId\": 1, \"quantity\": 0.5}]}").statusCode());
+        for (String limit : List.of("-1", "0", "201", "ten")) {
+            assertEquals(400, get("/api/products/search?q=product&limit=" + limit, TOKEN).statusCode(), limit);
+        }
+        assertEquals(10, database.quantity(1));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM purchase_history"));
+    }
+
+    @Test
+    void oversizedBodyIsRefused() throws Exception {
+        // Padding makes it too large, but it would otherwise be a valid sale
+        String sale = "{\"productId\": 1, \"quantity\": 1, \"note\": \"" + "x".repeat(InventoryServer.MAX_BODY_BYTES) + "\"}";
+        HttpResponse<String> response = post("/api/purchases", TOKEN, sale);
+        assertEquals(413, response.statusCode(), response.body());
+        assertTrue(Json.parseObject(response.body()).get("error") instanceof String, response.body());
+
+        // Sent in chunks there is no length to refuse it by, so it is cut off as it is read
+        byte[] bytes = sale.getBytes(StandardCharsets.UTF_8);
+        response = send(request("/api/purchases", TOKEN)
+            .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(bytes))));
+        assertEquals(413, response.statusCode(), response.body());
+        assertEquals(10, database.quantity(1));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM purchase_history"));
+
+        // Nested as deep as allowed is still read
+        response = post("/api/purchases", TOKEN, "{\"productId\": 1, \"quantity\": 1, \"x\": " +
+            "[".repeat(Json.MAX_DEPTH - 1) + "]".repeat(Json.MAX_DEPTH - 1) + "}");
+        assertEquals(200, response.statusCode(), response.body());
+    }
+
+    @Test
+    void saleIsRecordedAndReported() throws Exception {
+        HttpResponse<String> response = post("/api/purchases", TOKEN, "{\"productId\": 2, \"quantity\": 3}");
+        assertEquals(200, response.statusCode(), response.body());
+        Map<String, Object> sale = Json.parseObject(response.body());
+        assertEquals("COMPLETED", sale.get("status"));
+        assertEquals(2L, sale.get("productId"));
+        assertEquals(3L, sale.get("quantity"));
+        assertEquals(7, database.quantity(2));
+        assertEquals(3, database.queryLong("SELECT SUM(quantity) FROM purchase_history WHERE product_id = 2"));
+
+        response = get("/api/products/search?q=product&limit=2", TOKEN);
+        assertEquals(200, response.statusCode(), response.body());
+        assertEquals(2, ((List<?>) Json.parse(response.body())).size());
+    }
+
+    private HttpResponse<String> get(String path, String token) throws IOException, InterruptedException {
+        return send(request(path, token).GET());
+    }
+
+    private HttpResponse<String> post(String path, String token, String body) throws IOException, InterruptedException {
+        return send(request(path, token).POST(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path));
+        return token == null ? builder : builder.header(InventoryServer.TOKEN_HEADER, token);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,73 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LowStockMonitorTest {
+    // Indexed by product id; even ids are in category 1, odd ids in category 2
+    private static final int[] STOCK = {0, 0, 3, 4, 20, 2, 8, 5, 50, 1, 30};
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(2, STOCK.length - 1, id -> STOCK[id]);
+
+    private CatalogCache catalog;
+    private LowStockMonitor monitor;
+
+    @BeforeEach
+    void startMonitor() throws SQLException {
+        catalog = new CatalogCache(database.getPool());
+        monitor = new LowStockMonitor(database.getPool(), catalog, 5);
+    }
+
+    @Test
+    void alertsAreOrderedByShareOfThresholdLeft() throws SQLException {
+        // Out of stock first, then the smallest share of the threshold, then fewest units
+        assertEquals(List.of(1, 9, 5, 2, 3, 7), alertIds(monitor));
+        assertEquals(6, monitor.getAlertCount());
+        assertEquals(1, monitor.getMostCritical().getProductId());
+        assertEquals(List.of(), monitor.verify());
+    }
+
+    @Test
+    void productOverrideBeatsCategoryOverrideBeatsDefault() throws SQLException {
+        monitor.setCategoryThreshold(1, 10);
+        monitor.setProductThreshold(3, 2);
+        monitor.setProductThreshold(8, 60);
+
+        assertEquals(10, monitor.thresholdFor(catalog.getProduct(6)));
+        assertEquals(60, monitor.thresholdFor(catalog.getProduct(8)), "a product's own threshold beats its category's");
+        assertEquals(5, monitor.thresholdFor(catalog.getProduct(7)));
+        // 3 is no longer low at 4 of 2; 6 (8 of 10) and 8 (50 of 60) now are
+        assertNull(monitor.getAlert(3));
+        assertEquals(List.of(1, 9, 2, 5, 6, 8, 7), alertIds(monitor));
+
+        // Back to the default; at 4 of 5 it ties with 6 at 8 of 10, and has fewer units
+        monitor.setProductThreshold(3, null);
+        assertEquals(List.of(1, 9, 2, 5, 3, 6, 8, 7), alertIds(monitor));
+
+        // A sale moves just the product it touched
+        database.execute("UPDATE products SET quantity = 5 WHERE id = 4");
+        catalog.stockChanged(4, -15);
+        assertEquals(List.of(1, 9, 2, 5, 4, 3, 6, 8, 7), alertIds(monitor));
+        assertEquals(List.of(), monitor.verify());
+
+        // The overrides were stored, so a fresh monitor agrees
+        assertEquals(alertIds(monitor), alertIds(new LowStockMonitor(database.getPool(), new CatalogCache(database.getPool()), 5)));
+    }
+
+    private static List<Integer> alertIds(LowStockMonitor monitor) {
+        List<Integer> ids = new ArrayList<>();
+        for (LowStockMonitor.Alert alert : monitor.getAlerts()) {
+            ids.add(alert.getProductId());
+        }
+        return ids;
+    }
+}
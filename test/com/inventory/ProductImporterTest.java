@@ -0,0 +1,82 @@
+package com.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductImporterTest {
+    private static final int CHUNK = 4;
+
+    @TempDir
+    Path directory;
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(2, 2, id -> 10);
+
+    @Test
+    void badRowRejectsOnlyItselfNotItsChunk() throws Exception {
+        // Chunks are lines 2-5, 6-9 and 10-11. Line 4 doesn't parse; line 7 parses but its price
+        // is too large for the column, so only the database turns it down, failing its chunk's insert
+        List<String> lines = new ArrayList<>();
+        lines.add("name,price,quantity,category");
+        for (int line = 2; line <= 11; line++) {
+            String price = line == 7 ? "123456789012.50" : line + ".25";
+            String quantity = line == 4 ? "many" : String.valueOf(line);
+            lines.add("\"Item " + line + "\"," + price + "," + quantity + "," + (line % 2 == 0 ? "Garden" : "Category 1"));
+        }
+        Path file = Files.write(directory.resolve("products.csv"), lines);
+
+        CatalogCache catalog = new CatalogCache(database.getPool());
+        ImportResult result = new ProductImporter(database.getPool(), catalog, CHUNK, 2).importFile(file, null);
+
+        assertEquals(8, result.getImported());
+        assertEquals(2, result.getRejected());
+        assertEquals(1, result.getCategoriesCreated());
+        assertEquals(2, result.getRejectedLines().size());
+        assertTrue(result.getRejectedLines().get(0).startsWith("line 4: bad number"), result.getRejectedLines().get(0));
+        assertTrue(result.getRejectedLines().get(1).startsWith("line 7: "), result.getRejectedLines().get(1));
+
+        // The rest of line 7's chunk went in, once each
+        List<String> expected = new ArrayList<>();
+        for (int line : new int[] {2, 3, 5, 6, 8, 9, 10, 11}) {
+            expected.add("Item " + line);
+        }
+        assertEquals(expected, importedNames());
+        Category garden = catalog.findCategoryByName("Garden");
+        assertNotNull(garden);
+        assertEquals(4, database.queryLong("SELECT COUNT(*) FROM products WHERE category_id = " + garden.getId()));
+        // And the catalog has them without a reload
+        assertEquals(10, catalog.getProducts().size());
+        for (Product product : catalog.getProducts()) {
+            if (product.getName().equals("Item 6")) {
+                assertEquals(6.25, product.getPrice());
+                assertEquals(6, product.getQuantity());
+                assertEquals(garden.getId(), product.getCategoryId());
+            }
+        }
+    }
+
+    private List<String> importedNames() throws Exception {
+        List<String> names = new ArrayList<>();
+        try (Connection conn = database.getPool().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT name FROM products WHERE name LIKE 'Item %' ORDER BY id");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+}
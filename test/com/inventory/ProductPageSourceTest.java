@@ -0,0 +1,96 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductPageSourceTest {
+    private static final int PRODUCTS = 60;
+    private static final int PAGE = 7;
+    // The order each column sorts by, ties broken as the source breaks them
+    private static final String[] ORDER = {"p.id", "p.name, p.id", "p.price, p.id", "p.quantity, p.id",
+        "c.name, c.id, p.id"};
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(2).seeded(4, PRODUCTS, id -> id % 7);
+
+    private final ProductPageSource source = new ProductPageSource();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // Name order isn't id order, two categories share a name, and one is empty
+        database.execute("UPDATE categories SET name = 'Zeta' WHERE id = 1",
+            "UPDATE categories SET name = 'Alpha' WHERE id IN (2, 4)",
+            "INSERT INTO categories (id, name) VALUES (5, 'Beta')",
+            // A product whose category is gone isn't listed, nor counted
+            "UPDATE products SET category_id = 99 WHERE id = 10");
+    }
+
+    @Test
+    void everyOrderPagesThroughEveryProductOnce() throws SQLException {
+        try (Connection conn = database.getPool().getConnection()) {
+            assertEquals(PRODUCTS - 1, source.count(conn));
+            for (int column = 0; column < ORDER.length; column++) {
+                for (boolean ascending : new boolean[]{true, false}) {
+                    List<Integer> expected = expected(conn, column, ascending);
+                    assertEquals(PRODUCTS - 1, expected.size());
+
+                    List<Integer> paged = new ArrayList<>();
+                    Object[] anchor = null;
+                    RowPage page;
+                    do {
+                        page = source.fetch(conn, column, ascending, anchor, 0, PAGE);
+                        for (int row = 0; row < page.size(); row++) {
+                            paged.add((Integer) page.getValueAt(row, 0));
+                        }
+                        if (page.size() > 0) {
+                            anchor = source.anchorOf(page, column);
+                        }
+                    } while (page.size() == PAGE);
+                    String order = ORDER[column] + (ascending ? "" : " descending");
+                    assertEquals(expected, paged, order);
+
+                    // A jump skips whole pages from an anchor, across categories when sorted by one
+                    RowPage first = source.fetch(conn, column, ascending, null, 0, PAGE);
+                    RowPage jumped = source.fetch(conn, column, ascending, source.anchorOf(first, column), 3 * PAGE, PAGE);
+                    assertEquals(expected.subList(4 * PAGE, 5 * PAGE), ids(jumped), order);
+                    RowPage fromStart = source.fetch(conn, column, ascending, null, 5 * PAGE, PAGE);
+                    assertEquals(expected.subList(5 * PAGE, 6 * PAGE), ids(fromStart), order);
+                }
+            }
+        }
+    }
+
+    private static List<Integer> expected(Connection conn, int column, boolean ascending) throws SQLException {
+        String order = ORDER[column];
+        if (!ascending) {
+            order = String.join(" DESC, ", order.split(", ")) + " DESC";
+        }
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                 "SELECT p.id FROM products p JOIN categories c ON p.category_id = c.id ORDER BY " + order);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(RowPage page) {
+        List<Integer> ids = new ArrayList<>();
+        for (int row = 0; row < page.size(); row++) {
+            ids.add((Integer) page.getValueAt(row, 0));
+        }
+        return ids;
+    }
+}
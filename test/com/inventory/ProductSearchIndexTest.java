@@ -0,0 +1,80 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductSearchIndexTest {
+    private static final String[] NAMES = {
+        "Diet Cola", "Cola Classic", "Colander", "Chocolate Bar", "Dark Chocolate", "Crème Brûlée", "Coffee"};
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(2);
+
+    private CatalogCache catalog;
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void buildIndex() throws SQLException {
+        SchemaMigrations.migrate(database.getPool());
+        database.execute("INSERT INTO categories (id, name) VALUES (1, 'Food')");
+        // Product ids follow NAMES, from 1
+        for (int i = 0; i < NAMES.length; i++) {
+            database.execute("INSERT INTO products (id, name, price, quantity, category_id) VALUES (" +
+                (i + 1) + ", '" + NAMES[i] + "', 1.99, " + i + ", 1)");
+        }
+        catalog = new CatalogCache(database.getPool());
+        index = new ProductSearchIndex(catalog);
+    }
+
+    @Test
+    void namePrefixesComeBeforeWordPrefixesBeforeCorrections() {
+        // Names starting with the query in name order, then a later word, then "ola" in "chocolate"
+        assertEquals(List.of(2, 3, 1, 4, 5), ids(index.search("cola", 10)));
+        // Each tier stops once it has enough
+        assertEquals(List.of(2, 3), ids(index.search("cola", 2)));
+        assertEquals(List.of(2, 3, 1), ids(index.search("cola", 3)));
+    }
+
+    @Test
+    void everyQueryWordMustStartAWordOfTheName() {
+        assertEquals(List.of(1), ids(index.search("cola di", 10)));
+        assertEquals(List.of(5), ids(index.search("choc dark", 10)));
+        assertEquals(List.of(), ids(index.search("colander diet", 10)));
+    }
+
+    @Test
+    void misspeltWordsAreCorrectedAgainstTheVocabulary() {
+        assertEquals(List.of(4, 5), ids(index.search("choclate", 10)));
+        assertEquals(List.of(5), ids(index.search("darc choclate", 10)));
+        // Folded the same way as the names
+        assertEquals(List.of(6), ids(index.search("CREME brulee", 10)));
+    }
+
+    @Test
+    void filterAndCatalogChangesApply() {
+        // Quantities are the id less one, so the filter keeps the odd ids
+        assertEquals(List.of(3, 1, 5), ids(index.search("cola", 10, product -> product.getQuantity() % 2 == 0)));
+
+        catalog.productSaved(new Product(8, "Colaberry", 2.99, 5, 1));
+        catalog.productSaved(new Product(2, "Lemonade", 1.99, 1, 1));
+        catalog.productRemoved(3);
+        assertEquals(List.of(8, 1), ids(index.search("cola", 2)));
+        assertEquals(List.of(2), ids(index.search("lemon", 10)));
+        assertEquals(7, index.size());
+    }
+
+    private static List<Integer> ids(List<Product> products) {
+        List<Integer> ids = new ArrayList<>();
+        for (Product product : products) {
+            ids.add(product.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,121 @@
+package com.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PurchaseHistoryStoreTest {
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(1, 3, id -> 100);
+
+    @Test
+    void salesAreRoutedToThePartitionForTheirDate() throws SQLException {
+        ConnectionPool pool = database.getPool();
+        try (PurchaseHistoryStore byMonth = new PurchaseHistoryStore(pool, PurchaseHistoryStore.Granularity.MONTH, 0);
+             PurchaseHistoryStore byDay = new PurchaseHistoryStore(pool, PurchaseHistoryStore.Granularity.DAY, 0)) {
+            assertEquals("purchase_history_2024_05", byMonth.tableFor(LocalDate.of(2024, 5, 17)));
+            assertEquals("purchase_history_2024_06", byMonth.tableFor(LocalDate.of(2024, 6, 3)));
+            assertEquals("purchase_history_2024_05_17", byDay.tableFor(LocalDate.of(2024, 5, 17)));
+        }
+        try (Connection conn = pool.getConnection()) {
+            PurchaseHistoryStore.Layout layout = PurchaseHistoryStore.layout(conn);
+            // A day in June reads the June partition, and the unpartitioned table, but not May
+            String june = layout.rows(LocalDate.of(2024, 6, 3).atStartOfDay(), LocalDate.of(2024, 6, 4).atStartOfDay(), 0, Long.MAX_VALUE);
+            assertTrue(june.contains("purchase_history_2024_06 "), june);
+            assertFalse(june.contains("purchase_history_2024_05"), june);
+            String may17 = layout.rows(LocalDate.of(2024, 5, 17).atStartOfDay(), LocalDate.of(2024, 5, 18).atStartOfDay(), 0, Long.MAX_VALUE);
+            assertTrue(may17.contains("purchase_history_2024_05 "), may17);
+            assertTrue(may17.contains("purchase_history_2024_05_17 "), may17);
+            assertFalse(may17.contains("purchase_history_2024_06"), may17);
+        }
+    }
+
+    @Test
+    void maintenanceMovesRollsUpAndArchives() throws Exception {
+        ConnectionPool pool = database.getPool();
+        LocalDate today = LocalDate.now();
+        LocalDate expired = today.minusDays(40);
+        LocalDate recent = today.minusDays(3);
+        // Sold before the history was partitioned
+        database.execute("INSERT INTO purchase_history (id, product_id, quantity, total_price, purchase_date) VALUES " +
+            "(1, 1, 2, 3.00, TIMESTAMP '" + expired + " 10:00:00'), " +
+            "(2, 2, 1, 0.50, TIMESTAMP '" + recent + " 10:00:00'), " +
+            "(3, 2, 5, 2.50, TIMESTAMP '" + recent + " 18:00:00')");
+
+        try (PurchaseHistoryStore store = new PurchaseHistoryStore(pool, PurchaseHistoryStore.Granularity.DAY, 30);
+             PurchaseService service = new PurchaseService(pool, null, store, 1, 16)) {
+            PurchaseResult sale = service.purchase(3, 4, 1.00);
+            // Ids carry on from the unpartitioned table
+            assertEquals(4, sale.getPurchaseId());
+            store.maintain();
+        }
+
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM purchase_history"));
+        assertEquals(2, database.queryLong("SELECT COUNT(*) FROM " + table(recent)));
+        assertEquals(1, database.queryLong("SELECT COUNT(*) FROM " + table(today) + " WHERE id = 4"));
+        // Past retention and rolled up, so moved to the archive whole
+        assertEquals(1, database.queryLong("SELECT COUNT(*) FROM " + PurchaseHistoryStore.ARCHIVE_TABLE + " WHERE id = 1"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE LOWER(TABLE_NAME) = '" +
+            table(expired) + "'"));
+
+        // Finished days are rolled up, one row per product and day; today isn't finished
+        assertEquals(2, database.queryLong("SELECT quantity FROM " + PurchaseHistoryStore.ROLLUP_TABLE +
+            " WHERE sale_day = DATE '" + expired + "' AND product_id = 1"));
+        assertEquals(6, database.queryLong("SELECT quantity FROM " + PurchaseHistoryStore.ROLLUP_TABLE +
+            " WHERE sale_day = DATE '" + recent + "' AND product_id = 2"));
+        assertEquals(300, database.queryLong("SELECT total_price * 100 FROM " + PurchaseHistoryStore.ROLLUP_TABLE +
+            " WHERE sale_day = DATE '" + recent + "'"));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM " + PurchaseHistoryStore.ROLLUP_TABLE +
+            " WHERE sale_day = DATE '" + today + "'"));
+
+        // Rollups for the finished days, raw rows for today, and nothing lost to the archive
+        try (Connection conn = pool.getConnection()) {
+            String sales = PurchaseHistoryStore.layout(conn).dailySales(today.minusDays(45), Long.MAX_VALUE);
+            assertEquals(12, database.queryLong("SELECT SUM(s.quantity) FROM " + sales + " s"));
+        }
+    }
+
+    @Test
+    void saleReplayedIntoRolledUpDayReachesTheRollup() throws Exception {
+        ConnectionPool pool = database.getPool();
+        LocalDate day = LocalDate.now().minusDays(3);
+        long madeAt = day.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try (PurchaseHistoryStore store = new PurchaseHistoryStore(pool, PurchaseHistoryStore.Granularity.DAY, 0);
+             PurchaseService service = new PurchaseService(pool, null, store, 1, 16)) {
+            service.journalCheckpoint("till");
+            replay(service, new PurchaseJournal.Entry(1, madeAt, new int[]{1}, new int[]{2}, new double[]{1.25}));
+            store.maintain();
+            assertEquals(2, database.queryLong("SELECT SUM(quantity) FROM " + PurchaseHistoryStore.ROLLUP_TABLE));
+
+            // Made on the same day, but only reached the database after the day was rolled up
+            replay(service, new PurchaseJournal.Entry(2, madeAt, new int[]{1, 2}, new int[]{1, 3}, new double[]{1.25, 0.5}));
+            store.maintain();
+        }
+
+        assertEquals(6, database.queryLong("SELECT SUM(quantity) FROM " + PurchaseHistoryStore.ROLLUP_TABLE));
+        assertEquals(525, database.queryLong("SELECT SUM(total_price) * 100 FROM " + PurchaseHistoryStore.ROLLUP_TABLE));
+        try (Connection conn = database.getPool().getConnection()) {
+            PurchaseHistoryStore.Layout layout = PurchaseHistoryStore.layout(conn);
+            assertEquals(6, database.queryLong("SELECT SUM(r.quantity) FROM " + layout.rows(null, null, 0, Long.MAX_VALUE) + " r"));
+            assertEquals(6, database.queryLong("SELECT SUM(s.quantity) FROM " + layout.dailySales(day.minusDays(1), Long.MAX_VALUE) + " s"));
+        }
+    }
+
+    private static String table(LocalDate day) {
+        return String.format("purchase_history_%04d_%02d_%02d", day.getYear(), day.getMonthValue(), day.getDayOfMonth());
+    }
+
+    private static void replay(PurchaseService service, PurchaseJournal.Entry entry) throws Exception {
+        assertEquals(List.of(), service.replay("till", List.of(entry)).get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,209 @@
+package com.inventory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PurchaseJournalTest {
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    // The on-disk layout: a 32-byte segment header, then per record an 8-byte length and CRC, a
+    // 20-byte entry and 16 bytes per line
+    private static final int SEGMENT_HEADER_BYTES = 32;
+    private static final int ONE_LINE_RECORD_BYTES = 8 + 20 + 16;
+
+    @TempDir
+    Path directory;
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(1, 3, id -> 100);
+
+    private ConnectionPool pool;
+    private PurchaseService purchases;
+
+    @BeforeEach
+    void startPurchases() {
+        pool = database.getPool();
+        purchases = new PurchaseService(pool, 1, 16);
+    }
+
+    @AfterEach
+    void stopPurchases() {
+        purchases.close();
+    }
+
+    @Test
+    void recordWithBadChecksumIsDiscarded() throws Exception {
+        writeJournalThenCorruptLastRecord(segment -> {
+            // Flip a bit in the unit price of the fourth record
+            int offset = SEGMENT_HEADER_BYTES + 3 * ONE_LINE_RECORD_BYTES + ONE_LINE_RECORD_BYTES - 1;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            segment.read(b, offset);
+            b.put(0, (byte) (b.get(0) ^ 1)).rewind();
+            segment.write(b, offset);
+        });
+    }
+
+    @Test
+    void truncatedRecordIsDiscarded() throws Exception {
+        writeJournalThenCorruptLastRecord(segment -> {
+            // The length and checksum reached the disk, the end of the payload didn't
+            int offset = SEGMENT_HEADER_BYTES + 3 * ONE_LINE_RECORD_BYTES + ONE_LINE_RECORD_BYTES - 12;
+            segment.write(ByteBuffer.allocate(12), offset);
+        });
+    }
+
+    @Test
+    void opensAndAppendsWhileTheDatabaseIsDown() throws Exception {
+        ConnectionPool down = new ConnectionPool(new PoolConfig("jdbc:h2:mem:purchase_journal_down;MODE=MySQL",
+            "sa", "").setMinIdle(0));
+        down.close();
+        try (PurchaseService unreachable = new PurchaseService(down, 1, 16)) {
+            PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES, unreachable, 256);
+            try {
+                assertEquals(1, journal.append(new int[]{1}, new int[]{1}, new double[]{9.99}));
+                assertThrows(SQLException.class, journal::replay);
+                assertEquals(1, journal.getPendingCount());
+            } finally {
+                journal.close();
+            }
+        }
+
+        PurchaseJournal reopened = new PurchaseJournal(directory, SEGMENT_BYTES, purchases, 256);
+        try {
+            reopened.replay();
+        } finally {
+            reopened.close();
+        }
+        assertEquals(99, database.quantity(1));
+    }
+
+    @Test
+    void saleWhoseForceFailedIsNeverReplayed() throws Exception {
+        FailingJournal journal = new FailingJournal(directory, purchases);
+        try {
+            assertEquals(1, journal.append(new int[]{1}, new int[]{1}, new double[]{9.99}));
+            journal.failForces = true;
+            assertThrows(IOException.class, () -> journal.append(new int[]{2}, new int[]{5}, new double[]{9.99}));
+            journal.failForces = false;
+            assertEquals(0, journal.pending().stream().filter(entry -> entry.getProductId(0) == 2).count());
+            // The failed sale was never acknowledged, so its sequence number is handed out again
+            assertEquals(2, journal.append(new int[]{3}, new int[]{1}, new double[]{9.99}));
+            journal.replay();
+            assertEquals(0, journal.getPendingCount());
+        } finally {
+            journal.close();
+        }
+        assertEquals(99, database.quantity(1));
+        assertEquals(100, database.quantity(2));
+        assertEquals(99, database.quantity(3));
+
+        // Nor is it found on disk after a restart
+        PurchaseJournal reopened = new PurchaseJournal(directory, SEGMENT_BYTES, purchases, 256);
+        try {
+            assertEquals(0, reopened.pending().stream().filter(entry -> entry.getProductId(0) == 2).count());
+            reopened.replay();
+            assertEquals(3, reopened.append(new int[]{1}, new int[]{1}, new double[]{9.99}));
+        } finally {
+            reopened.close();
+        }
+        assertEquals(100, database.quantity(2));
+        assertEquals(2, BenchDatabase.checkStock(pool).getHistoryUnits());
+    }
+
+    /**
+     * Journals four sales, replaying the first two before the "crash", corrupts the fourth on disk
+     * and reopens the journal: the first three must be in the database exactly once.
+     */
+    private void writeJournalThenCorruptLastRecord(Corruption corruption) throws Exception {
+        PurchaseJournal journal = new PurchaseJournal(directory, SEGMENT_BYTES, purchases, 256);
+        String journalId = journal.getJournalId();
+        assertEquals(1, journal.append(new int[]{1}, new int[]{1}, new double[]{9.99}));
+        assertEquals(2, journal.append(new int[]{2}, new int[]{2}, new double[]{9.99}));
+        journal.replay();
+        assertEquals(3, journal.append(new int[]{3}, new int[]{3}, new double[]{9.99}));
+        assertEquals(4, journal.append(new int[]{1}, new int[]{4}, new double[]{9.99}));
+        journal.close();
+
+        List<Path> segments = segments();
+        assertEquals(1, segments.size());
+        try (FileChannel segment = FileChannel.open(segments.get(0), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            corruption.apply(segment);
+        }
+
+        PurchaseJournal reopened = new PurchaseJournal(directory, SEGMENT_BYTES, purchases, 256);
+        try {
+            assertEquals(journalId, reopened.getJournalId());
+            reopened.replay();
+            assertEquals(0, reopened.getPendingCount());
+            // The dropped sale was never acknowledged, so its sequence number is handed out again
+            assertEquals(4, reopened.append(new int[]{2}, new int[]{5}, new double[]{9.99}));
+        } finally {
+            reopened.close();
+        }
+
+        assertEquals(99, database.quantity(1));
+        assertEquals(98, database.quantity(2));
+        assertEquals(97, database.quantity(3));
+        BenchDatabase.StockCheck check = BenchDatabase.checkStock(pool);
+        assertTrue(check.isConsistent(), check.getExamples().toString());
+        assertEquals(6, check.getHistoryUnits());
+
+        // Opening and replaying again applies nothing twice
+        PurchaseJournal again = new PurchaseJournal(directory, SEGMENT_BYTES, purchases, 256);
+        try {
+            again.replay();
+        } finally {
+            again.close();
+        }
+        assertEquals(11, BenchDatabase.checkStock(pool).getHistoryUnits());
+        assertEquals(93, database.quantity(2));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal")).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /** A journal whose forces fail, as on a full or failing disk, while {@link #failForces} is set. */
+    private static final class FailingJournal extends PurchaseJournal {
+        volatile boolean failForces;
+
+        FailingJournal(Path directory, PurchaseService purchases) throws IOException, SQLException {
+            super(directory, SEGMENT_BYTES, purchases, 256);
+        }
+
+        @Override
+        void forceRange(MappedByteBuffer buffer, int offset, int length) {
+            if (failForces) {
+                throw new UncheckedIOException(new IOException("No space left on device"));
+            }
+            super.forceRange(buffer, offset, length);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Corruption {
+        void apply(FileChannel segment) throws IOException;
+    }
+}
@@ -0,0 +1,213 @@
+package com.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PurchaseServiceTest {
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(1, 3, id -> 10);
+
+    @Test
+    void failedBatchIsSplitSoOnlyTheBadPurchaseFails() throws Exception {
+        GatedDataSource gated = new GatedDataSource(database.getPool());
+        try (PurchaseService service = new PurchaseService(gated, 1, 16)) {
+            // Hold the committer inside the first purchase so the next three queue up as one batch
+            CompletableFuture<PurchaseResult> first = service.submit(1, 1, 9.99);
+            assertTrue(gated.entered.await(10, TimeUnit.SECONDS));
+            CompletableFuture<PurchaseResult> before = service.submit(1, 2, 9.99);
+            // Its total doesn't fit purchase_history.total_price, so the insert fails
+            CompletableFuture<PurchaseResult> bad = service.submit(2, 1, 1e12);
+            CompletableFuture<PurchaseResult> after = service.submit(3, 3, 9.99);
+            gated.open.countDown();
+
+            assertTrue(first.get(10, TimeUnit.SECONDS).isCompleted());
+            assertTrue(before.get(10, TimeUnit.SECONDS).isCompleted());
+            assertTrue(after.get(10, TimeUnit.SECONDS).isCompleted());
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(SQLException.class, failure.getCause());
+            // The first purchase, the batch of three, then each of the three on its own
+            assertEquals(5, gated.connections.get());
+        }
+
+        assertEquals(7, database.quantity(1));
+        assertEquals(10, database.quantity(2));
+        assertEquals(7, database.quantity(3));
+        BenchDatabase.StockCheck check = BenchDatabase.checkStock(database.getPool());
+        assertTrue(check.isConsistent(), check.getExamples().toString());
+        assertEquals(6, check.getHistoryUnits());
+    }
+
+    @Test
+    void purchaseQueuedWhileClosingFailsAndReleasesItsStock() throws Exception {
+        ConnectionPool pool = database.getPool();
+        ClosingLedger ledger = new ClosingLedger(pool);
+        try {
+            PurchaseService service = new PurchaseService(pool, ledger, 1, 16);
+            ledger.service = service;
+            // close() runs and drains the queue between the reservation and the enqueue
+            CompletableFuture<PurchaseResult> sale = service.submit(1, 4, 9.99);
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> sale.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(SQLException.class, failure.getCause());
+            assertEquals(10, ledger.available(1), "the reservation should be released");
+        } finally {
+            ledger.close();
+        }
+        assertEquals(10, database.quantity(1));
+    }
+
+    @Test
+    void orderWithOneShortLineSellsNothing() throws SQLException {
+        assertShortOrderSellsNothing(null);
+    }
+
+    @Test
+    void orderWithOneShortLineSellsNothingThroughTheLedger() throws SQLException {
+        StockLedger ledger = new StockLedger(database.getPool(), 3_600_000);
+        try {
+            assertShortOrderSellsNothing(ledger);
+        } finally {
+            ledger.close();
+        }
+    }
+
+    @Test
+    void linesForOneProductAtDifferentPricesAreRejected() {
+        try (PurchaseService service = new PurchaseService(database.getPool(), 1, 16)) {
+            assertThrows(IllegalArgumentException.class,
+                () -> service.submitOrder(new int[]{1, 1}, new int[]{1, 1}, new double[]{9.99, 4.99}));
+        }
+    }
+
+    private void assertShortOrderSellsNothing(StockLedger ledger) throws SQLException {
+        try (PurchaseService service = new PurchaseService(database.getPool(), ledger, 1, 16)) {
+            // Product 2's two lines merge into 11 units, one more than it has
+            OrderResult order = service.checkout(new int[]{1, 2, 3, 2}, new int[]{4, 6, 2, 5},
+                new double[]{9.99, 4.99, 1.50, 4.99});
+            assertFalse(order.isCompleted());
+            assertEquals(List.of(), order.getPurchases());
+            assertEquals(1, order.getRefused().size());
+            PurchaseResult refused = order.getRefused().get(0);
+            assertEquals(PurchaseResult.Status.INSUFFICIENT_STOCK, refused.getStatus());
+            assertEquals(2, refused.getProductId());
+            assertEquals(11, refused.getQuantity());
+            assertEquals(10, refused.getAvailableQuantity());
+            assertEquals(0, database.queryLong("SELECT COUNT(*) FROM purchase_history"));
+            for (int id = 1; id <= 3; id++) {
+                assertEquals(10, ledger == null ? database.quantity(id) : ledger.available(id));
+            }
+
+            // Every reservation was released, so all of the stock can still be sold
+            assertTrue(service.checkout(new int[]{1, 2, 3}, new int[]{10, 10, 10},
+                new double[]{9.99, 4.99, 1.50}).isCompleted());
+        }
+        if (ledger != null) {
+            ledger.flush();
+        }
+        for (int id = 1; id <= 3; id++) {
+            assertEquals(0, database.quantity(id));
+        }
+        assertEquals(3, database.queryLong("SELECT COUNT(*) FROM purchase_history"));
+    }
+
+    /** Closes {@link #service} from inside the first reservation, after taking the stock. */
+    private static final class ClosingLedger extends StockLedger {
+        volatile PurchaseService service;
+
+        ClosingLedger(DataSource dataSource) throws SQLException {
+            super(dataSource, 3_600_000);
+        }
+
+        @Override
+        public boolean reserve(int productId, int quantity) throws SQLException {
+            boolean reserved = super.reserve(productId, quantity);
+            service.close();
+            return reserved;
+        }
+    }
+
+    /** Counts connections, and makes the first caller wait until {@link #open} is released. */
+    private static final class GatedDataSource implements DataSource {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch open = new CountDownLatch(1);
+        final AtomicInteger connections = new AtomicInteger();
+        private final DataSource delegate;
+
+        GatedDataSource(DataSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            connections.incrementAndGet();
+            entered.countDown();
+            try {
+                if (!open.await(10, TimeUnit.SECONDS)) {
+                    throw new SQLException("Gate was never opened");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted at the gate", e);
+            }
+            return delegate.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return delegate.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return delegate.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return delegate.isWrapperFor(iface);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryPlanCheckTest {
+    // Large enough that H2 joins products to categories the wrong way round unless kept apart
+    private static final int PRODUCTS = 20_000;
+    // Well below the table size, so any whole-table read is reported, and well above a page
+    private static final long MAX_SCAN_ROWS = 2_000;
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(2).seeded(10, PRODUCTS, id -> id % 40);
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // A sale a second going back, so the History page has a range to read through
+        database.execute("INSERT INTO purchase_history (product_id, quantity, total_price, purchase_date) " +
+            "SELECT id, 1, price, DATEADD('SECOND', -id, CURRENT_TIMESTAMP) FROM products");
+    }
+
+    @Test
+    void droppedIndexIsReportedAsAScan() throws SQLException {
+        try (Connection conn = database.getPool().getConnection()) {
+            assertEquals(List.of(), QueryPlanCheck.verify(conn, MAX_SCAN_ROWS));
+
+            try (Statement stmt = conn.createStatement()) {
+                // On H2 the descending one would serve the low stock range as well
+                stmt.execute("DROP INDEX products_quantity");
+                stmt.execute("DROP INDEX products_quantity_desc");
+            }
+            List<String> problems = QueryPlanCheck.verify(conn, MAX_SCAN_ROWS);
+            assertEquals(3, problems.size(), problems.toString());
+            String sortedScan = ": reads " + (PRODUCTS + 1) + " rows of PUBLIC.PRODUCTS, then sorts them";
+            assertTrue(problems.get(0).startsWith("Products page by Quantity" + sortedScan), problems.get(0));
+            assertTrue(problems.get(1).startsWith("Products page by Quantity descending" + sortedScan), problems.get(1));
+            assertTrue(problems.get(2).startsWith("Low stock list: reads all of PUBLIC.PRODUCTS (" + PRODUCTS + " rows)"),
+                problems.get(2));
+        }
+    }
+
+    @Test
+    void pageJoinedBeforeItIsCutIsReported() throws SQLException {
+        // How the Products tab once read a page by name: no whole-table read, every table through an
+        // index, yet H2 walks each category's products and sorts them all
+        String joinedFirst = "SELECT p.id, p.name, p.price, p.quantity, c.name AS category " +
+            "FROM products p JOIN categories c ON p.category_id = c.id " +
+            "WHERE p.name >= ? AND (p.name > ? OR (p.name = ? AND p.id > ?)) ORDER BY p.name ASC, p.id ASC LIMIT ? OFFSET ?";
+        QueryPlanCheck.Check check = QueryPlanCheck.Check.paged("Products page by Name", joinedFirst,
+            "Product 1", "Product 1", "Product 1", 1, PagedTableModel.PAGE_SIZE, 0);
+        try (Connection conn = database.getPool().getConnection()) {
+            List<String> problems = QueryPlanCheck.verify(conn, List.of(check), MAX_SCAN_ROWS);
+            assertEquals(1, problems.size(), problems.toString());
+            assertTrue(problems.get(0).startsWith("Products page by Name: reads " + (PRODUCTS + 10) +
+                " rows of PUBLIC.PRODUCTS_CATEGORY, then sorts them"), problems.get(0));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.inventory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaRouterTest {
+    private static final long MAX_LAG_MILLIS = 5000;
+    // Long enough that only the test steps the checks after the first
+    private static final long NEVER = 3_600_000;
+
+    @RegisterExtension
+    final TestDatabase primary = new TestDatabase(2);
+    @RegisterExtension
+    final TestDatabase replica = new TestDatabase(2);
+
+    private ConnectionPool replicaPool;
+    private ReplicaRouter router;
+
+    @BeforeEach
+    void startRouter() throws SQLException, InterruptedException {
+        SchemaMigrations.migrate(primary.getPool());
+        primary.execute("CREATE TABLE origin (name VARCHAR(10))", "INSERT INTO origin VALUES ('primary')");
+        replica.execute("CREATE TABLE origin (name VARCHAR(10))", "INSERT INTO origin VALUES ('replica')",
+            "CREATE TABLE " + ReplicaRouter.HEARTBEAT_TABLE + " (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+        replicaPool = replica.open();
+        router = new ReplicaRouter(primary.getPool(), List.of(replicaPool), MAX_LAG_MILLIS, NEVER);
+        // The checker's first run, at once, only writes a beat, there being none yet to compare with.
+        // Wait for it, so it can't land between a test's own steps and write a newer one; a test's
+        // check() waits for it to finish
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (primary.queryLong("SELECT COUNT(*) FROM " + ReplicaRouter.HEARTBEAT_TABLE) == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "the first check never wrote a beat");
+            Thread.sleep(5);
+        }
+    }
+
+    @AfterEach
+    void stopRouter() {
+        router.close();
+    }
+
+    @Test
+    void currentReplicaServesReads() throws SQLException {
+        replicate(lastBeat());
+        router.check();
+
+        assertTrue(router.getReplicas().get(0).isHealthy());
+        assertEquals(0, router.getReplicas().get(0).getLagMillis());
+        assertEquals("replica", servedBy());
+        assertEquals(1, router.getReplicaBorrows());
+        assertEquals(0, router.getPrimaryFallbacks());
+    }
+
+    @Test
+    void laggingReplicaFallsBackToThePrimary() throws SQLException {
+        // Replication stopped a minute ago
+        replicate(System.currentTimeMillis() - 60_000);
+        router.check();
+
+        assertTrue(router.getReplicas().get(0).isHealthy());
+        assertTrue(router.getReplicas().get(0).getLagMillis() > MAX_LAG_MILLIS);
+        assertEquals("primary", servedBy());
+        assertEquals(0, router.getReplicaBorrows());
+        assertEquals(1, router.getPrimaryFallbacks());
+
+        // Catching up puts it back in rotation
+        replicate(lastBeat());
+        router.check();
+        assertEquals("replica", servedBy());
+    }
+
+    @Test
+    void downReplicaFallsBackToThePrimary() throws SQLException {
+        replicate(lastBeat());
+        router.check();
+        assertEquals("replica", servedBy());
+
+        // Every connection to it now fails
+        replicaPool.close();
+        assertEquals("primary", servedBy());
+        router.check();
+
+        assertFalse(router.getReplicas().get(0).isHealthy());
+        assertEquals("primary", servedBy());
+        assertEquals(2, router.getPrimaryFallbacks());
+    }
+
+    /** The beat the router last wrote to the primary. */
+    private long lastBeat() throws SQLException {
+        return primary.queryLong("SELECT beat_at FROM " + ReplicaRouter.HEARTBEAT_TABLE + " WHERE id = 1");
+    }
+
+    /** Stands in for replication: the replica has applied everything up to {@code beatAt}. */
+    private void replicate(long beatAt) throws SQLException {
+        replica.execute("DELETE FROM " + ReplicaRouter.HEARTBEAT_TABLE,
+            "INSERT INTO " + ReplicaRouter.HEARTBEAT_TABLE + " (id, beat_at) VALUES (1, " + beatAt + ")");
+    }
+
+    private String servedBy() throws SQLException {
+        try (Connection conn = router.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT name FROM origin");
+             ResultSet rs = pstmt.executeQuery()) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+}
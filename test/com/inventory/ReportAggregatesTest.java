@@ -0,0 +1,45 @@
+package com.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportAggregatesTest {
+    private static final int PRODUCTS = 20;
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(8).seeded(1, PRODUCTS, id -> 1_000_000);
+
+    @Test
+    void rebuildWhileSellingCountsEverySaleOnce() throws Exception {
+        ConnectionPool pool = database.getPool();
+        CatalogCache catalog = new CatalogCache(pool);
+        // Two committers, so history ids can commit out of order
+        try (PurchaseService service = new PurchaseService(pool, 2, 8)) {
+            ReportAggregates aggregates = new ReportAggregates(pool, catalog, service);
+            List<CompletableFuture<PurchaseResult>> sales = new ArrayList<>();
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 50; i++) {
+                    // Totals such as 3 x 0.35 aren't whole cents as doubles
+                    sales.add(service.submit(1 + i % PRODUCTS, 1 + i % 3, 0.35 + i % 7 * 0.1));
+                }
+                aggregates.rebuild();
+            }
+            for (CompletableFuture<PurchaseResult> sale : sales) {
+                assertTrue(sale.get(10, TimeUnit.SECONDS).isCompleted());
+            }
+            // Stock reaches the catalog through the service layer, which this test skips
+            catalog.reload();
+            assertEquals(List.of(), aggregates.verify());
+            aggregates.rebuild();
+            assertEquals(List.of(), aggregates.verify());
+        }
+    }
+}
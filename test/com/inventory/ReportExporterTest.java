@@ -0,0 +1,121 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportExporterTest {
+    // A quote and a comma, so CSV has to quote it, and a two-byte character
+    private static final String QUOTED = "Café \"Deluxe\", 1kg";
+    // Three- and four-byte characters, the last a surrogate pair
+    private static final String WIDE = "€ Saver 😀";
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(1, 3, id -> id == 2 ? 3 : 50);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        rename(1, QUOTED, "12.34");
+        rename(2, WIDE, "0.05");
+        rename(3, "Plain", "100.10");
+        try (PurchaseService service = new PurchaseService(database.getPool(), 1, 16)) {
+            assertTrue(service.purchase(1, 2, 12.34).isCompleted());
+            // 3 x 100.10 isn't 300.30 as a double
+            assertTrue(service.purchase(3, 3, 100.10).isCompleted());
+        }
+    }
+
+    @Test
+    void csvQuotesNamesAndWritesExactCents() throws Exception {
+        Path file = dir.resolve("report.csv");
+        assertEquals(ReportExporter.Format.CSV, ReportExporter.formatFor(file));
+        assertEquals(6, export(file));
+
+        assertEquals(List.of(
+            "section,product,quantity,price,total",
+            "inventory,Plain,47,100.10,4704.70",
+            "inventory,\"Café \"\"Deluxe\"\", 1kg\",48,12.34,592.32",
+            "inventory," + WIDE + ",3,0.05,0.15",
+            "sales,Plain,3,,300.30",
+            "sales,\"Café \"\"Deluxe\"\", 1kg\",2,,24.68",
+            "low_stock," + WIDE + ",3,,"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void binaryRoundTripsEverySection() throws Exception {
+        Path file = dir.resolve("report.bin");
+        assertEquals(ReportExporter.Format.BINARY, ReportExporter.formatFor(file));
+        assertEquals(6, export(file));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        assertArrayEquals(new byte[]{'I', 'N', 'V', 'R'}, magic);
+        assertEquals(1, in.readByte());
+
+        assertEquals(ReportExporter.INVENTORY, in.readByte());
+        assertEquals(List.of("Plain,47,10010,470470", QUOTED + ",48,1234,59232", WIDE + ",3,5,15"),
+            readRows(in, ReportExporter.INVENTORY));
+        assertEquals(ReportExporter.SALES, in.readByte());
+        assertEquals(List.of("Plain,3,30030", QUOTED + ",2,2468"), readRows(in, ReportExporter.SALES));
+        assertEquals(ReportExporter.LOW_STOCK, in.readByte());
+        assertEquals(List.of(WIDE + ",3"), readRows(in, ReportExporter.LOW_STOCK));
+        assertEquals(0, in.readByte());
+        assertEquals(-1, in.read(), "nothing follows the end tag");
+    }
+
+    private long export(Path file) throws SQLException, IOException {
+        try (Connection conn = database.getPool().getConnection()) {
+            return new ReportExporter(ReportExporter.formatFor(file)).export(conn, file, null);
+        }
+    }
+
+    /** A section's rows as {@code name,quantity[,price cents][,total cents]}. */
+    private static List<String> readRows(DataInputStream in, byte section) throws IOException {
+        List<String> rows = new ArrayList<>();
+        while (in.readByte() == 1) {
+            byte[] name = new byte[in.readUnsignedShort()];
+            in.readFully(name);
+            StringBuilder row = new StringBuilder(new String(name, StandardCharsets.UTF_8)).append(',').append(in.readInt());
+            if (section == ReportExporter.INVENTORY) {
+                row.append(',').append(in.readLong());
+            }
+            if (section != ReportExporter.LOW_STOCK) {
+                row.append(',').append(in.readLong());
+            }
+            rows.add(row.toString());
+        }
+        return rows;
+    }
+
+    private void rename(int productId, String name, String price) throws SQLException {
+        try (Connection conn = database.getPool().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("UPDATE products SET name = ?, price = ? WHERE id = ?")) {
+            pstmt.setString(1, name);
+            pstmt.setBigDecimal(2, new BigDecimal(price));
+            pstmt.setInt(3, productId);
+            pstmt.executeUpdate();
+        }
+    }
+}
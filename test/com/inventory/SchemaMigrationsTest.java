@@ -0,0 +1,65 @@
+package com.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SchemaMigrationsTest {
+    private static final String INDEX_COUNT =
+        "SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_SCHEMA = 'PUBLIC'";
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(2);
+
+    @Test
+    void migratingTwiceChangesNothing() throws SQLException {
+        int latest = SchemaMigrations.latestVersion();
+        assertEquals(latest, SchemaMigrations.migrate(database.getPool()));
+        List<String> applied = versions();
+        assertEquals(latest, applied.size());
+        for (int version = 1; version <= latest; version++) {
+            assertEquals(version, Integer.parseInt(applied.get(version - 1).split(" ")[0]));
+        }
+        long indexes = database.queryLong(INDEX_COUNT);
+
+        assertEquals(latest, SchemaMigrations.migrate(database.getPool()));
+        assertEquals(applied, versions(), "no migration should run or be recorded again");
+        assertEquals(indexes, database.queryLong(INDEX_COUNT));
+    }
+
+    @Test
+    void migrationCutShortIsFinishedNextTime() throws SQLException {
+        SchemaMigrations.migrate(database.getPool());
+        long indexes = database.queryLong(INDEX_COUNT);
+        // As if the run stopped after migration 2's first index, before recording it
+        database.execute("DELETE FROM " + SchemaMigrations.VERSION_TABLE + " WHERE version >= 2",
+            "DROP INDEX products_quantity", "DROP INDEX products_category", "DROP TABLE stock_ledger_checkpoint");
+
+        assertEquals(SchemaMigrations.latestVersion(), SchemaMigrations.migrate(database.getPool()));
+        assertEquals(SchemaMigrations.latestVersion(), versions().size());
+        assertEquals(indexes, database.queryLong(INDEX_COUNT));
+        assertEquals(0, database.queryLong("SELECT COUNT(*) FROM stock_ledger_checkpoint"));
+    }
+
+    /** Each recorded migration as {@code "version description applied_at"}, in version order. */
+    private List<String> versions() throws SQLException {
+        List<String> versions = new ArrayList<>();
+        try (Connection conn = database.getPool().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT version, description, applied_at FROM " +
+                 SchemaMigrations.VERSION_TABLE + " ORDER BY version");
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1) + " " + rs.getString(2) + " " + rs.getTimestamp(3));
+            }
+        }
+        return versions;
+    }
+}
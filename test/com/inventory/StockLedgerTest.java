@@ -0,0 +1,120 @@
+package com.inventory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockLedgerTest {
+    // Long enough that nothing is written behind unless the test flushes
+    private static final long NEVER = 3_600_000;
+    private static final int PRODUCTS = 5;
+    private static final int INITIAL_STOCK = 100;
+
+    @RegisterExtension
+    final TestDatabase database = new TestDatabase(4).seeded(1, PRODUCTS, id -> INITIAL_STOCK);
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = database.getPool();
+    }
+
+    @Test
+    void reconcileAfterCrashReappliesUnflushedSales() throws SQLException {
+        StockLedger crashed = new StockLedger(pool, NEVER);
+        int sold = 0;
+        try (PurchaseService service = new PurchaseService(pool, crashed, 1, 16)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(service.purchase(1 + i % PRODUCTS, 2, 9.99).isCompleted());
+                sold += 2;
+            }
+            crashed.flush();
+            // Committed to history but only held in the crashed ledger's counters
+            for (int i = 0; i < 7; i++) {
+                assertTrue(service.purchase(1 + i % 3, 1, 9.99).isCompleted());
+                sold += 1;
+            }
+        }
+        assertEquals(INITIAL_STOCK - 4, database.quantity(1), "only the flushed sales are in products yet");
+
+        StockLedger restarted = new StockLedger(pool, NEVER);
+        try {
+            BenchDatabase.StockCheck check = BenchDatabase.checkStock(pool);
+            assertTrue(check.isConsistent(), check.getExamples().toString());
+            assertEquals(sold, check.getHistoryUnits());
+            for (int id = 1; id <= PRODUCTS; id++) {
+                assertEquals(database.quantity(id), restarted.available(id));
+            }
+        } finally {
+            restarted.close();
+        }
+
+        // A second start finds nothing left to re-apply
+        new StockLedger(pool, NEVER).close();
+        assertTrue(BenchDatabase.checkStock(pool).isConsistent());
+    }
+
+    @Test
+    void checkpointNeverPassesACommitStillOnItsWayToTheLedger() throws Exception {
+        StockLedger crashed = new StockLedger(pool, NEVER);
+        try (PurchaseService second = new PurchaseService(pool, crashed, 1, 16)) {
+            // A committer by hand: its sale is committed to history but not yet handed to the ledger
+            assertTrue(crashed.reserve(1, 2));
+            crashed.lockHistoryOrder();
+            CompletableFuture<PurchaseResult> later = null;
+            try {
+                insertHistory(1, 2);
+                // The other committer's sale would get a higher id, so it must not reach the ledger first
+                later = second.submit(2, 3, 9.99);
+                Thread.sleep(200);
+                assertFalse(later.isDone(), "the second committer should wait for the first to hand over");
+                crashed.flush();
+                assertEquals(0, database.queryLong("SELECT last_history_id FROM stock_ledger_checkpoint WHERE id = 1"));
+
+                // Crash here, before the first committer's commitSales, and restart
+                new StockLedger(pool, NEVER).close();
+                BenchDatabase.StockCheck check = BenchDatabase.checkStock(pool);
+                assertTrue(check.isConsistent(), check.getExamples().toString());
+                assertEquals(2, check.getHistoryUnits());
+                assertEquals(INITIAL_STOCK - 2, database.quantity(1));
+            } finally {
+                // Let the crashed process's second committer finish before the database is dropped
+                crashed.unlockHistoryOrder();
+                if (later != null) {
+                    later.get(10, TimeUnit.SECONDS);
+                }
+            }
+        }
+    }
+
+    private long insertHistory(int productId, int quantity) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("INSERT INTO purchase_history " +
+                 "(product_id, quantity, total_price, purchase_date) VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setInt(1, productId);
+            pstmt.setInt(2, quantity);
+            pstmt.setBigDecimal(3, new BigDecimal("19.98"));
+            pstmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                assertTrue(keys.next());
+                return keys.getLong(1);
+            }
+        }
+    }
+}
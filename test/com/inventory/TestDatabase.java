@@ -0,0 +1,97 @@
+package com.inventory;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A private in-memory H2 database in MySQL mode for each test, registered with
+ * {@code @RegisterExtension}. It is opened before the class's own {@code @BeforeEach} methods,
+ * optionally seeded with {@link BenchDatabase#seed}, and dropped and closed after the test.
+ */
+final class TestDatabase implements BeforeEachCallback, AfterEachCallback {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final int maxSize;
+    private int categories;
+    private int products;
+    private IntUnaryOperator stock;
+    private String url;
+    private ConnectionPool pool;
+
+    TestDatabase(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /** Seeds {@code products} products over {@code categories} categories before each test. */
+    TestDatabase seeded(int categories, int products, IntUnaryOperator stock) {
+        this.categories = categories;
+        this.products = products;
+        this.stock = stock;
+        return this;
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) throws SQLException {
+        url = "jdbc:h2:mem:" + context.getRequiredTestClass().getSimpleName().toLowerCase(Locale.ROOT) +
+            DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        pool = open();
+        if (stock != null) {
+            BenchDatabase.seed(pool, categories, products, stock);
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        } finally {
+            pool.close();
+        }
+    }
+
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    /** Another pool on the same database, for a test that needs two; the caller closes it. */
+    ConnectionPool open() throws SQLException {
+        return new ConnectionPool(new PoolConfig(url, "sa", "").setMinIdle(0).setMaxSize(maxSize));
+    }
+
+    void execute(String... sql) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String statement : sql) {
+                stmt.execute(statement);
+            }
+        }
+    }
+
+    /** The single number {@code sql} selects. */
+    long queryLong(String sql) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            assertTrue(rs.next(), sql);
+            return rs.getLong(1);
+        }
+    }
+
+    /** The product's stock in the database. */
+    int quantity(int productId) throws SQLException {
+        return (int) queryLong("SELECT quantity FROM products WHERE id = " + productId);
+    }
+}